@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Extension to a {@link Drainable} {@link java.io.InputStream} or alike by adding a method that
+ * transfers all content to a {@link ByteBuffer}.
+ *
+ * <p>This can be used for optimizing for the case where the transport is able to expose the
+ * memory of its outbound buffers. Instead of writing the content through an {@code OutputStream},
+ * which usually involves an intermediate scratch buffer, the implementation can write the content
+ * directly into the transport's memory.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/7387")
+public interface ByteBufferDrainable extends Drainable {
+
+  /**
+   * Transfers the entire contents of this stream to the specified target, starting at its current
+   * position. The position of {@code target} is advanced by the number of bytes written. The
+   * caller must ensure {@code target} has enough remaining space for the whole content.
+   *
+   * @param target to write to.
+   * @return number of bytes written.
+   */
+  int drainTo(ByteBuffer target) throws IOException;
+}
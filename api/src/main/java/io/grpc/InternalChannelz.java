@@ -24,6 +24,7 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import java.net.SocketAddress;
 import java.security.cert.Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,9 +35,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.Immutable;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
@@ -48,6 +51,8 @@ import javax.net.ssl.SSLSession;
 public final class InternalChannelz {
   private static final Logger log = Logger.getLogger(InternalChannelz.class.getName());
   private static final InternalChannelz INSTANCE = new InternalChannelz();
+  @VisibleForTesting
+  static final int MAX_REMOVED_IDS = 16384;
 
   private final ConcurrentNavigableMap<Long, InternalInstrumented<ServerStats>> servers
       = new ConcurrentSkipListMap<>();
@@ -61,6 +66,16 @@ public final class InternalChannelz {
   private final ConcurrentMap<Long, ServerSocketMap> perServerSockets
       = new ConcurrentHashMap<>();
 
+  // For getChangesSince(). Cursors are generations; the generation only moves when changes are
+  // queried, so marking an entity changed is usually just a read.
+  private final AtomicLong generation = new AtomicLong(1);
+  private final ConcurrentMap<Long, ChangeMarker> changeMarkers = new ConcurrentHashMap<>();
+  private final Object removedLock = new Object();
+  @GuardedBy("removedLock")
+  private final ArrayDeque<RemovedId> removedIds = new ArrayDeque<>();
+  @GuardedBy("removedLock")
+  private long lastDroppedGeneration = -1;
+
   // A convenience class to avoid deeply nested types.
   private static final class ServerSocketMap
       extends ConcurrentSkipListMap<Long, InternalInstrumented<SocketStats>> {
@@ -240,14 +255,94 @@ public final class InternalChannelz {
     return contains(otherSockets, transportRef);
   }
 
-  private static <T extends InternalInstrumented<?>> void add(Map<Long, T> map, T object) {
+  private <T extends InternalInstrumented<?>> void add(Map<Long, T> map, T object) {
     T prev = map.put(object.getLogId().getId(), object);
     assert prev == null;
+    getChangeMarker(object.getLogId()).markChanged();
   }
 
-  private static <T extends InternalInstrumented<?>> void remove(Map<Long, T> map, T object) {
+  private <T extends InternalInstrumented<?>> void remove(Map<Long, T> map, T object) {
     T prev = map.remove(id(object));
     assert prev != null;
+    long id = id(object);
+    // An InProcessTransport can be registered twice; it is gone once neither registration is left
+    if (getSocket(id) == null) {
+      changeMarkers.remove(id);
+      synchronized (removedLock) {
+        if (removedIds.size() == MAX_REMOVED_IDS) {
+          lastDroppedGeneration = removedIds.removeFirst().generation;
+        }
+        // Read under the lock, so that a concurrent query either sees the removal or returns a
+        // cursor at or before its generation
+        removedIds.addLast(new RemovedId(id, generation.get()));
+      }
+    }
+  }
+
+  /**
+   * Returns the marker an entity uses to report that its stats changed, for {@link
+   * #getChangesSince}. The marker is dropped when the entity is removed.
+   */
+  public ChangeMarker getChangeMarker(InternalLogId logId) {
+    ChangeMarker marker = changeMarkers.get(logId.getId());
+    if (marker == null) {
+      ChangeMarker newMarker = new ChangeMarker(generation);
+      marker = changeMarkers.putIfAbsent(logId.getId(), newMarker);
+      if (marker == null) {
+        marker = newMarker;
+      }
+    }
+    return marker;
+  }
+
+  /**
+   * Returns the entities added, changed or removed since {@code cursor}, which is {@code 0} or the
+   * {@link ChangeList#cursor} of a previous call. A cursor of {@code 0} returns every entity.
+   *
+   * <p>Only entities that report changes through their {@link ChangeMarker} are returned when
+   * their stats change; others are returned when they are added. An entity may be returned again
+   * without having changed.
+   */
+  public ChangeList getChangesSince(long cursor) {
+    long nextCursor = generation.incrementAndGet();
+    List<InternalInstrumented<ChannelStats>> changedRootChannels = changed(rootChannels, cursor);
+    List<InternalInstrumented<ChannelStats>> changedSubchannels = changed(subchannels, cursor);
+    List<InternalInstrumented<ServerStats>> changedServers = changed(servers, cursor);
+    List<InternalInstrumented<SocketStats>> changedSockets = changed(otherSockets, cursor);
+    for (ServerSocketMap serverSockets : perServerSockets.values()) {
+      for (InternalInstrumented<SocketStats> socket : changed(serverSockets, cursor)) {
+        if (!otherSockets.containsKey(id(socket))) {
+          changedSockets.add(socket);
+        }
+      }
+    }
+    List<Long> removed = new ArrayList<>();
+    boolean complete;
+    synchronized (removedLock) {
+      complete = cursor == 0 || cursor > lastDroppedGeneration;
+      if (cursor != 0) {
+        for (RemovedId removedId : removedIds) {
+          if (removedId.generation >= cursor) {
+            removed.add(removedId.id);
+          }
+        }
+      }
+    }
+    return new ChangeList(
+        nextCursor, changedRootChannels, changedSubchannels, changedServers, changedSockets,
+        removed, complete);
+  }
+
+  private <T extends InternalInstrumented<?>> List<T> changed(Map<Long, T> map, long cursor) {
+    List<T> changed = new ArrayList<>();
+    for (T entity : map.values()) {
+      ChangeMarker marker = changeMarkers.get(id(entity));
+      // A missing marker means the entity is being added or removed right now
+      if (marker == null || marker.changedGeneration >= cursor) {
+        changed.add(entity);
+      }
+    }
+    return changed;
   }
 
   private static <T extends InternalInstrumented<?>> boolean contains(
@@ -255,6 +350,78 @@ public final class InternalChannelz {
     return map.containsKey(id.getId());
   }
 
+  /**
+   * Records when an entity last changed. Marking reads the current generation and writes it at
+   * most once per generation, so it is cheap enough to do on every call.
+   */
+  public static final class ChangeMarker {
+    private final AtomicLong generation;
+    private volatile long changedGeneration;
+
+    ChangeMarker(AtomicLong generation) {
+      this.generation = generation;
+      this.changedGeneration = generation.get();
+    }
+
+    /** Marks the entity as changed. */
+    public void markChanged() {
+      long current = generation.get();
+      if (changedGeneration != current) {
+        changedGeneration = current;
+        // If a query moved the generation meanwhile, it may have missed the write
+        long latest = generation.get();
+        if (latest != current) {
+          changedGeneration = latest;
+        }
+      }
+    }
+  }
+
+  private static final class RemovedId {
+    final long id;
+    final long generation;
+
+    RemovedId(long id, long generation) {
+      this.id = id;
+      this.generation = generation;
+    }
+  }
+
+  /** The result of {@link #getChangesSince}. */
+  public static final class ChangeList {
+    /** The cursor to pass to the next {@link #getChangesSince} call. */
+    public final long cursor;
+    public final List<InternalInstrumented<ChannelStats>> rootChannels;
+    public final List<InternalInstrumented<ChannelStats>> subchannels;
+    public final List<InternalInstrumented<ServerStats>> servers;
+    public final List<InternalInstrumented<SocketStats>> sockets;
+    /** The ids of the entities removed since the cursor. */
+    public final List<Long> removedIds;
+    /**
+     * Whether {@link #removedIds} is complete. If not, too many entities were removed since the
+     * cursor and the caller should start over with a cursor of {@code 0}.
+     */
+    public final boolean complete;
+
+    /** Creates an instance. */
+    public ChangeList(
+        long cursor,
+        List<InternalInstrumented<ChannelStats>> rootChannels,
+        List<InternalInstrumented<ChannelStats>> subchannels,
+        List<InternalInstrumented<ServerStats>> servers,
+        List<InternalInstrumented<SocketStats>> sockets,
+        List<Long> removedIds,
+        boolean complete) {
+      this.cursor = cursor;
+      this.rootChannels = checkNotNull(rootChannels, "rootChannels");
+      this.subchannels = checkNotNull(subchannels, "subchannels");
+      this.servers = checkNotNull(servers, "servers");
+      this.sockets = checkNotNull(sockets, "sockets");
+      this.removedIds = checkNotNull(removedIds, "removedIds");
+      this.complete = complete;
+    }
+  }
+
   public static final class RootChannelList {
     public final List<InternalInstrumented<ChannelStats>> channels;
     public final boolean end;
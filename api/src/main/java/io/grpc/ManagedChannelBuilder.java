@@ -106,6 +106,23 @@ public abstract class ManagedChannelBuilder<T extends ManagedChannelBuilder<T>>
    */
   public abstract T executor(Executor executor);
 
+  /**
+   * Execute application code on virtual threads, starting a new one for every task. This affects
+   * the callbacks of asynchronous and future stubs; blocking stubs already run their callbacks in
+   * the calling thread, which may itself be a virtual thread.
+   *
+   * <p>Virtual threads need Java 21. On older runtimes a warning is logged and the default
+   * executor is used, as if {@link #executor(Executor)} was called with {@code null}.
+   *
+   * @return this
+   * @throws UnsupportedOperationException if unsupported
+   * @since 1.43.0
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/8274")
+  public T virtualThreadExecutor() {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * Provides a custom executor that will be used for operations that block or are expensive.
    *
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Decides message by message whether a call that has a compressor should actually compress.
+ * Compressing tiny messages, or payloads that are already compressed such as images or encrypted
+ * blobs, costs CPU without saving bandwidth. A policy can send those messages uncompressed by
+ * clearing the per-message compressed flag, while the call keeps its negotiated encoding.
+ *
+ * <p>A policy is set on the client with {@link CallOptions#withMessageCompressionPolicy} and on
+ * the server with {@link ServerCall#setMessageCompressionPolicy}. It has no effect on calls that
+ * don't use a compressor, or that disabled compression with {@code setMessageCompression(false)}.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+@ThreadSafe
+public abstract class MessageCompressionPolicy {
+  /** Messages smaller than this are not compressed by {@link #adaptive()}. */
+  public static final int DEFAULT_MIN_MESSAGE_SIZE = 1024;
+
+  /**
+   * Compression is turned off by {@link #adaptive()} for methods whose messages don't shrink below
+   * this fraction of their original size.
+   */
+  public static final double DEFAULT_MAX_COMPRESSION_RATIO = 0.9;
+
+  /**
+   * Returns an adaptive policy using {@link #DEFAULT_MIN_MESSAGE_SIZE} and {@link
+   * #DEFAULT_MAX_COMPRESSION_RATIO}.
+   */
+  public static MessageCompressionPolicy adaptive() {
+    return adaptive(DEFAULT_MIN_MESSAGE_SIZE, DEFAULT_MAX_COMPRESSION_RATIO);
+  }
+
+  /**
+   * Returns a policy that skips compression for messages shorter than {@code minMessageSize}, and
+   * for methods that don't pay for it. For every method it keeps a moving average of the
+   * compressed-to-uncompressed size ratio. While that average is above {@code
+   * maxCompressionRatio}, only an occasional message is compressed, to notice when the payloads
+   * become compressible again. The state is shared by all calls that use the returned policy.
+   *
+   * @param minMessageSize the smallest message, in bytes, worth compressing. Messages whose size
+   *     is not known up front are not subject to this limit.
+   * @param maxCompressionRatio the largest compressed-to-uncompressed size ratio, between 0 and 1,
+   *     that is still worth compressing for
+   */
+  public static MessageCompressionPolicy adaptive(int minMessageSize, double maxCompressionRatio) {
+    checkArgument(minMessageSize >= 0, "minMessageSize must be non-negative");
+    checkArgument(
+        maxCompressionRatio > 0 && maxCompressionRatio <= 1,
+        "maxCompressionRatio must be in (0, 1]");
+    return new AdaptivePolicy(minMessageSize, maxCompressionRatio);
+  }
+
+  /**
+   * Returns the {@link Decider} for a new call of {@code method}. It is called once per call, and
+   * the returned decider is used for all outbound messages of that call.
+   */
+  public abstract Decider newDecider(MethodDescriptor<?, ?> method);
+
+  /**
+   * Makes the compression decision for the outbound messages of a call. Calls of the same method
+   * may share a decider, so implementations must be thread-safe.
+   */
+  @ThreadSafe
+  public abstract static class Decider {
+    /**
+     * Returns whether the next outbound message should be compressed.
+     *
+     * @param messageLength the serialized size of the message, or -1 if it is not known before
+     *     the message is written
+     */
+    public abstract boolean shouldCompress(int messageLength);
+
+    /**
+     * Reports the sizes of a message that was compressed, so that later decisions can take the
+     * achieved compression ratio into account.
+     */
+    public void messageCompressed(long uncompressedSize, long compressedSize) {
+    }
+  }
+
+  private static final class AdaptivePolicy extends MessageCompressionPolicy {
+    private final int minMessageSize;
+    private final double maxCompressionRatio;
+    private final ConcurrentMap<String, MethodDecider> deciders =
+        new ConcurrentHashMap<>();
+
+    AdaptivePolicy(int minMessageSize, double maxCompressionRatio) {
+      this.minMessageSize = minMessageSize;
+      this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    @Override
+    public Decider newDecider(MethodDescriptor<?, ?> method) {
+      String methodName = checkNotNull(method, "method").getFullMethodName();
+      MethodDecider decider = deciders.get(methodName);
+      if (decider == null) {
+        MethodDecider newDecider = new MethodDecider(minMessageSize, maxCompressionRatio);
+        decider = deciders.putIfAbsent(methodName, newDecider);
+        if (decider == null) {
+          decider = newDecider;
+        }
+      }
+      return decider;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("minMessageSize", minMessageSize)
+          .add("maxCompressionRatio", maxCompressionRatio)
+          .toString();
+    }
+  }
+
+  private static final class MethodDecider extends Decider {
+    /** While compression doesn't pay, one message out of this many is still compressed. */
+    private static final int PROBE_INTERVAL = 64;
+    /** Weight of the newest sample in the moving average. */
+    private static final double SMOOTHING_FACTOR = 0.25;
+
+    private final int minMessageSize;
+    private final double maxCompressionRatio;
+    private final AtomicInteger skipped = new AtomicInteger();
+    // Updates race when calls of the method compress concurrently. That loses a sample now and
+    // then, which is harmless for a heuristic and cheaper than synchronizing every message.
+    private volatile double compressionRatio = Double.NaN;
+
+    MethodDecider(int minMessageSize, double maxCompressionRatio) {
+      this.minMessageSize = minMessageSize;
+      this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    @Override
+    public boolean shouldCompress(int messageLength) {
+      if (messageLength != -1 && messageLength < minMessageSize) {
+        return false;
+      }
+      // NaN compares false, so compress until the first sample comes in.
+      if (!(compressionRatio > maxCompressionRatio)) {
+        return true;
+      }
+      return skipped.incrementAndGet() % PROBE_INTERVAL == 0;
+    }
+
+    @Override
+    public void messageCompressed(long uncompressedSize, long compressedSize) {
+      if (uncompressedSize <= 0 || compressedSize < 0) {
+        return;
+      }
+      double sample = (double) compressedSize / uncompressedSize;
+      double current = compressionRatio;
+      compressionRatio =
+          Double.isNaN(current) ? sample : current + SMOOTHING_FACTOR * (sample - current);
+    }
+  }
+}
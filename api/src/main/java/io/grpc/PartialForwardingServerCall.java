@@ -59,6 +59,12 @@ abstract class PartialForwardingServerCall<ReqT, RespT> extends ServerCall<ReqT,
     delegate().setMessageCompression(enabled);
   }
 
+  @Override
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+  public void setMessageCompressionPolicy(MessageCompressionPolicy policy) {
+    delegate().setMessageCompressionPolicy(policy);
+  }
+
   @Override
   @ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
   public void setCompression(String compressor) {
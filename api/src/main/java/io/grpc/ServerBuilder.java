@@ -74,6 +74,24 @@ public abstract class ServerBuilder<T extends ServerBuilder<T>> {
    */
   public abstract T executor(@Nullable Executor executor);
 
+  /**
+   * Execute application code on virtual threads, starting a new one for every task.
+   *
+   * <p>Virtual threads are cheap to block, so services written in a blocking style can handle as
+   * many concurrent calls as they have, instead of being limited by the size of a thread pool.
+   * Calls are still serialized, so each call's callbacks run one at a time, in order.
+   *
+   * <p>Virtual threads need Java 21. On older runtimes a warning is logged and the default
+   * executor is used, as if {@link #executor(Executor)} was called with {@code null}.
+   *
+   * @return this
+   * @throws UnsupportedOperationException if unsupported
+   * @since 1.43.0
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/8274")
+  public T virtualThreadExecutor() {
+    throw new UnsupportedOperationException();
+  }
 
   /**
    * Allows for defining a way to provide a custom executor to handle the server call.
@@ -194,6 +194,16 @@ public abstract class ServerCall<ReqT, RespT> {
     // noop
   }
 
+  /**
+   * Sets the policy that decides which outbound messages get compressed, if an encoding type has
+   * been negotiated. Without a policy every message is compressed. Compression disabled with
+   * {@link #setMessageCompression} stays disabled regardless of the policy.
+   */
+  @ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+  public void setMessageCompressionPolicy(MessageCompressionPolicy policy) {
+    // noop
+  }
+
   /**
    * Sets the compression algorithm for this call.  If the server does not support the compression
    * algorithm, the call will fail.  This method may only be called before {@link #sendHeaders}.
@@ -28,6 +28,9 @@ public interface ServerCallExecutorSupplier {
   /**
    * Returns an executor to handle the server call.
    * It should never throw. It should return null to fallback to the default executor.
+   *
+   * <p>To reject the call, for example when the server is overloaded, close it with {@link
+   * ServerCall#close} and return null. The call's handler is then not started.
    * */
   @Nullable
   <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata metadata);
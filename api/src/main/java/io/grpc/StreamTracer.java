@@ -65,6 +65,21 @@ public abstract class StreamTracer {
   public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
   }
 
+  /**
+   * The compression decision for an outbound message has been made. This is only called when the
+   * stream has a compressor, and precedes {@link #outboundMessageSent} for the same message.
+   *
+   * @param seqNo the sequential number of the message within the stream, starting from 0.  It can
+   *              be used to correlate with {@link #outboundMessage(int)} for the same message.
+   * @param compressed whether the message was compressed
+   * @param uncompressedSize the uncompressed serialized size of the message
+   * @param optionalCompressedSize the size of the message after compression. -1 if it was not
+   *              compressed
+   */
+  public void outboundMessageCompression(
+      int seqNo, boolean compressed, long uncompressedSize, long optionalCompressedSize) {
+  }
+
   /**
    * An inbound message has been fully read from the transport.
    *
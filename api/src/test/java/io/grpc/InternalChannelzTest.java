@@ -28,6 +28,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.InternalChannelz.ChangeList;
+import io.grpc.InternalChannelz.ChangeMarker;
 import io.grpc.InternalChannelz.ChannelStats;
 import io.grpc.InternalChannelz.RootChannelList;
 import io.grpc.InternalChannelz.ServerList;
@@ -293,6 +295,91 @@ public final class InternalChannelzTest {
     assertEquals("TLS_NULL_WITH_NULL_NULL", tls.cipherSuiteStandardName);
   }
 
+  @Test
+  public void getChangesSince_all() {
+    InternalInstrumented<ChannelStats> root = create();
+    InternalInstrumented<ChannelStats> subchannel = create();
+    InternalInstrumented<ServerStats> server = create();
+    InternalInstrumented<SocketStats> clientSocket = create();
+    InternalInstrumented<SocketStats> serverSocket = create();
+    channelz.addRootChannel(root);
+    channelz.addSubchannel(subchannel);
+    channelz.addServer(server);
+    channelz.addClientSocket(clientSocket);
+    channelz.addServerSocket(server, serverSocket);
+
+    ChangeList changes = channelz.getChangesSince(0);
+    assertTrue(changes.complete);
+    assertThat(changes.rootChannels).containsExactly(root);
+    assertThat(changes.subchannels).containsExactly(subchannel);
+    assertThat(changes.servers).containsExactly(server);
+    assertThat(changes.sockets).containsExactly(clientSocket, serverSocket);
+    assertThat(changes.removedIds).isEmpty();
+  }
+
+  @Test
+  public void getChangesSince_onlyChanged() {
+    InternalInstrumented<ChannelStats> root1 = create();
+    InternalInstrumented<ChannelStats> root2 = create();
+    channelz.addRootChannel(root1);
+    channelz.addRootChannel(root2);
+    ChangeMarker marker1 = channelz.getChangeMarker(root1.getLogId());
+    long cursor = channelz.getChangesSince(0).cursor;
+
+    ChangeList changes = channelz.getChangesSince(cursor);
+    assertThat(changes.rootChannels).isEmpty();
+
+    marker1.markChanged();
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.rootChannels).containsExactly(root1);
+
+    InternalInstrumented<ChannelStats> root3 = create();
+    channelz.addRootChannel(root3);
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.rootChannels).containsExactly(root3);
+
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.rootChannels).isEmpty();
+  }
+
+  @Test
+  public void getChangesSince_removed() {
+    InternalInstrumented<ChannelStats> root = create();
+    InternalInstrumented<SocketStats> socket = create();
+    channelz.addRootChannel(root);
+    channelz.addClientSocket(socket);
+    long cursor = channelz.getChangesSince(0).cursor;
+
+    channelz.removeRootChannel(root);
+    channelz.removeClientSocket(socket);
+    ChangeList changes = channelz.getChangesSince(cursor);
+    assertTrue(changes.complete);
+    assertThat(changes.rootChannels).isEmpty();
+    assertThat(changes.sockets).isEmpty();
+    assertThat(changes.removedIds).containsExactly(id(root), id(socket));
+
+    assertThat(channelz.getChangesSince(changes.cursor).removedIds).isEmpty();
+    // A full snapshot has no use for removals
+    assertThat(channelz.getChangesSince(0).removedIds).isEmpty();
+  }
+
+  @Test
+  public void getChangesSince_tooManyRemoved() {
+    long cursor = channelz.getChangesSince(0).cursor;
+    for (int i = 0; i <= InternalChannelz.MAX_REMOVED_IDS; i++) {
+      InternalInstrumented<ChannelStats> subchannel = create();
+      channelz.addSubchannel(subchannel);
+      channelz.removeSubchannel(subchannel);
+    }
+
+    ChangeList changes = channelz.getChangesSince(cursor);
+    assertFalse(changes.complete);
+    assertThat(changes.removedIds).hasSize(InternalChannelz.MAX_REMOVED_IDS);
+    ChangeList resync = channelz.getChangesSince(0);
+    assertTrue(resync.complete);
+    assertTrue(channelz.getChangesSince(resync.cursor).complete);
+  }
+
   private void assertEmptyServerSocketsPage(long serverId, long socketId) {
     ServerSocketsList emptyPage
         = channelz.getServerSockets(serverId, socketId, /*maxPageSize=*/ 1);
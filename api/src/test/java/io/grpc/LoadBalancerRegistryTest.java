@@ -41,7 +41,7 @@ public class LoadBalancerRegistryTest {
   @Test
   public void stockProviders() {
     LoadBalancerRegistry defaultRegistry = LoadBalancerRegistry.getDefaultRegistry();
-    assertThat(defaultRegistry.providers()).hasSize(3);
+    assertThat(defaultRegistry.providers()).hasSize(7);
 
     LoadBalancerProvider pickFirst = defaultRegistry.getProvider("pick_first");
     assertThat(pickFirst).isInstanceOf(PickFirstLoadBalancerProvider.class);
@@ -52,6 +52,27 @@ public class LoadBalancerRegistryTest {
         "io.grpc.util.SecretRoundRobinLoadBalancerProvider$Provider");
     assertThat(roundRobin.getPriority()).isEqualTo(5);
 
+    LoadBalancerProvider connectionPool = defaultRegistry.getProvider("connection_pool");
+    assertThat(connectionPool.getClass().getName()).isEqualTo(
+        "io.grpc.util.SecretConnectionPoolLoadBalancerProvider$Provider");
+    assertThat(connectionPool.getPriority()).isEqualTo(5);
+
+    LoadBalancerProvider leastRequest = defaultRegistry.getProvider("least_request");
+    assertThat(leastRequest.getClass().getName()).isEqualTo(
+        "io.grpc.util.SecretLeastRequestLoadBalancerProvider$Provider");
+    assertThat(leastRequest.getPriority()).isEqualTo(5);
+
+    LoadBalancerProvider outlierDetection =
+        defaultRegistry.getProvider("outlier_detection_experimental");
+    assertThat(outlierDetection.getClass().getName()).isEqualTo(
+        "io.grpc.util.SecretOutlierDetectionLoadBalancerProvider$Provider");
+    assertThat(outlierDetection.getPriority()).isEqualTo(5);
+
+    LoadBalancerProvider peakEwma = defaultRegistry.getProvider("peak_ewma_experimental");
+    assertThat(peakEwma.getClass().getName()).isEqualTo(
+        "io.grpc.util.SecretPeakEwmaLoadBalancerProvider$Provider");
+    assertThat(peakEwma.getPriority()).isEqualTo(5);
+
     LoadBalancerProvider grpclb = defaultRegistry.getProvider("grpclb");
     assertThat(grpclb).isInstanceOf(GrpclbLoadBalancerProvider.class);
     assertThat(grpclb.getPriority()).isEqualTo(5);
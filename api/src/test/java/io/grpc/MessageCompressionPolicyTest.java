@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import io.grpc.MessageCompressionPolicy.Decider;
+import io.grpc.testing.TestMethodDescriptors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MessageCompressionPolicy}. */
+@RunWith(JUnit4.class)
+public class MessageCompressionPolicyTest {
+  private final MethodDescriptor<Void, Void> method = TestMethodDescriptors.voidMethod();
+  private final MethodDescriptor<Void, Void> otherMethod =
+      method.toBuilder().setFullMethodName("service/other").build();
+
+  @Test
+  public void adaptive_skipsSmallMessages() {
+    Decider decider = MessageCompressionPolicy.adaptive(100, 0.9).newDecider(method);
+
+    assertThat(decider.shouldCompress(99)).isFalse();
+    assertThat(decider.shouldCompress(100)).isTrue();
+  }
+
+  @Test
+  public void adaptive_unknownLengthIgnoresSizeThreshold() {
+    Decider decider = MessageCompressionPolicy.adaptive(100, 0.9).newDecider(method);
+
+    assertThat(decider.shouldCompress(-1)).isTrue();
+  }
+
+  @Test
+  public void adaptive_stopsCompressingWhenRatioIsPoor() {
+    Decider decider = MessageCompressionPolicy.adaptive(0, 0.9).newDecider(method);
+    decider.messageCompressed(1000, 990);
+
+    int compressed = 0;
+    for (int i = 0; i < 640; i++) {
+      if (decider.shouldCompress(1000)) {
+        compressed++;
+      }
+    }
+    // Only the occasional probe goes through.
+    assertThat(compressed).isEqualTo(10);
+  }
+
+  @Test
+  public void adaptive_resumesCompressingWhenRatioRecovers() {
+    Decider decider = MessageCompressionPolicy.adaptive(0, 0.9).newDecider(method);
+    decider.messageCompressed(1000, 1000);
+    assertThat(decider.shouldCompress(1000)).isFalse();
+
+    decider.messageCompressed(1000, 100);
+
+    assertThat(decider.shouldCompress(1000)).isTrue();
+  }
+
+  @Test
+  public void adaptive_keepsStatePerMethod() {
+    MessageCompressionPolicy policy = MessageCompressionPolicy.adaptive(0, 0.9);
+    policy.newDecider(method).messageCompressed(1000, 1000);
+
+    assertThat(policy.newDecider(method).shouldCompress(1000)).isFalse();
+    assertThat(policy.newDecider(otherMethod).shouldCompress(1000)).isTrue();
+    assertThat(MessageCompressionPolicy.adaptive(0, 0.9).newDecider(method).shouldCompress(1000))
+        .isTrue();
+  }
+
+  @Test
+  public void adaptive_invalidArguments() {
+    try {
+      MessageCompressionPolicy.adaptive(-1, 0.9);
+      fail("Should have thrown");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      MessageCompressionPolicy.adaptive(0, 0);
+      fail("Should have thrown");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      MessageCompressionPolicy.adaptive(0, 1.1);
+      fail("Should have thrown");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+}
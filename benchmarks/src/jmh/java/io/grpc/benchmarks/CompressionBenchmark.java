@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.Codec;
+import io.grpc.netty.SnappyCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark comparing the throughput of the message compressors. Payloads are half random bytes
+ * and half repeated text, which is roughly what structured RPC messages look like.
+ */
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+  public enum Encoding {
+    GZIP(new Codec.Gzip()),
+    SNAPPY(new SnappyCodec());
+
+    private final Codec codec;
+
+    Encoding(Codec codec) {
+      this.codec = codec;
+    }
+  }
+
+  @Param({"GZIP", "SNAPPY"})
+  public Encoding encoding;
+
+  @Param({"1024", "65536", "1048576"})
+  public int payloadSize;
+
+  private byte[] payload;
+  private byte[] compressed;
+  private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    payload = new byte[payloadSize];
+    Random random = new Random(1);
+    byte[] text = "the quick brown fox jumps over the lazy dog ".getBytes("US-ASCII");
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (i / 64) % 2 == 0 ? (byte) random.nextInt() : text[i % text.length];
+    }
+    compressed = compress();
+  }
+
+  /**
+   * Compresses the payload.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public byte[] compress() throws IOException {
+    sink.reset();
+    OutputStream os = encoding.codec.compress(sink);
+    os.write(payload);
+    os.close();
+    return sink.toByteArray();
+  }
+
+  /**
+   * Decompresses the payload.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public long decompress() throws IOException {
+    InputStream is = encoding.codec.decompress(new ByteArrayInputStream(compressed));
+    try {
+      return ByteStreams.exhaust(is);
+    } finally {
+      is.close();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.benchmarks;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Codec;
+import io.grpc.benchmarks.proto.Messages.Payload;
+import io.grpc.benchmarks.proto.Messages.SimpleResponse;
+import io.grpc.util.CompressionDictionaryTrainer;
+import io.grpc.util.DeflateDictionaryCodec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark comparing gzip with dictionary compression on small, repetitive messages. The time
+ * per operation is the CPU cost of compressing one message; the average bytes on the wire per
+ * message is printed during setup.
+ */
+@State(Scope.Benchmark)
+public class DictionaryCompressionBenchmark {
+  public enum Encoding {
+    GZIP, DICTIONARY
+  }
+
+  private static final int MESSAGE_COUNT = 1024;
+
+  @Param({"GZIP", "DICTIONARY"})
+  public Encoding encoding;
+
+  @Param({"4096", "16384"})
+  public int dictionarySize;
+
+  private Codec codec;
+  private final byte[][] messages = new byte[MESSAGE_COUNT][];
+  private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+  private int next;
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    // Train on different messages than the ones that are compressed.
+    Random random = new Random(1);
+    CompressionDictionaryTrainer trainer = new CompressionDictionaryTrainer(MESSAGE_COUNT);
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      trainer.addSample(newMessage(random));
+    }
+    if (encoding == Encoding.DICTIONARY) {
+      codec = new DeflateDictionaryCodec("bench", trainer.train(dictionarySize));
+    } else {
+      codec = new Codec.Gzip();
+    }
+    long uncompressed = 0;
+    long wire = 0;
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      messages[i] = newMessage(random);
+      uncompressed += messages[i].length;
+      wire += compress(messages[i]);
+    }
+    System.out.printf("%n%s: %d bytes per message, %d on the wire%n",
+        encoding, uncompressed / MESSAGE_COUNT, wire / MESSAGE_COUNT);
+  }
+
+  /**
+   * Compresses one message.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int compress() throws IOException {
+    next = (next + 1) % MESSAGE_COUNT;
+    return compress(messages[next]);
+  }
+
+  private int compress(byte[] message) throws IOException {
+    sink.reset();
+    OutputStream os = codec.compress(sink);
+    os.write(message);
+    os.close();
+    return sink.size();
+  }
+
+  /**
+   * Returns a 200 to 800 byte message whose string fields repeat across messages, like typical
+   * unary RPC payloads.
+   */
+  private static byte[] newMessage(Random random) {
+    String[] statuses = {"ACTIVE", "SUSPENDED", "PENDING_VERIFICATION", "CLOSED"};
+    String[] regions = {"us-east1", "us-central1", "europe-west4", "asia-southeast1"};
+    StringBuilder body = new StringBuilder();
+    int entries = 1 + random.nextInt(5);
+    for (int i = 0; i < entries; i++) {
+      body.append("{\"account_status\":\"").append(statuses[random.nextInt(statuses.length)])
+          .append("\",\"region\":\"").append(regions[random.nextInt(regions.length)])
+          .append("\",\"quota_remaining\":").append(random.nextInt(100000))
+          .append(",\"feature_flags\":[\"beta_dashboard\",\"usage_alerts\"]}");
+    }
+    return SimpleResponse.newBuilder()
+        .setUsername("user" + random.nextInt(100000) + "@example.com")
+        .setOauthScope("https://www.googleapis.com/auth/cloud-platform.read-only")
+        .setPayload(Payload.newBuilder().setBody(ByteString.copyFromUtf8(body.toString())))
+        .build()
+        .toByteArray();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.benchmarks;
+
+import com.google.protobuf.ByteString;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.benchmarks.proto.Messages.Payload;
+import io.grpc.benchmarks.proto.Messages.SimpleRequest;
+import io.grpc.internal.CompositeReadableBuffer;
+import io.grpc.internal.ReadableBuffers;
+import io.grpc.protobuf.ProtoUtils;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for parsing protobuf messages out of transport buffers. {@code COPY} frames the
+ * message as byte arrays, which forces the marshaller to copy into a scratch buffer before
+ * parsing. {@code ZERO_COPY} frames it as direct {@link ByteBuffer}s, the way Netty delivers them,
+ * which lets the marshaller parse in place.
+ */
+@State(Scope.Benchmark)
+public class ProtoParseBenchmark {
+  public enum Framing {
+    COPY, ZERO_COPY
+  }
+
+  @Param({"COPY", "ZERO_COPY"})
+  public Framing framing;
+
+  @Param({"1024", "262144", "4194304"})
+  public int payloadSize;
+
+  /** Size of each transport frame, matching the default HTTP/2 max frame size. */
+  @Param({"16384"})
+  public int frameSize;
+
+  private final Marshaller<SimpleRequest> marshaller =
+      ProtoUtils.marshaller(SimpleRequest.getDefaultInstance());
+  private final List<byte[]> arrayFrames = new ArrayList<>();
+  private final List<ByteBuffer> directFrames = new ArrayList<>();
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setUp() {
+    byte[] body = new byte[payloadSize];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) i;
+    }
+    byte[] serialized = SimpleRequest.newBuilder()
+        .setResponseSize(payloadSize)
+        .setPayload(Payload.newBuilder().setBody(ByteString.copyFrom(body)))
+        .build()
+        .toByteArray();
+    for (int offset = 0; offset < serialized.length; offset += frameSize) {
+      int length = Math.min(frameSize, serialized.length - offset);
+      byte[] frame = new byte[length];
+      System.arraycopy(serialized, offset, frame, 0, length);
+      arrayFrames.add(frame);
+      ByteBuffer directFrame = ByteBuffer.allocateDirect(length);
+      directFrame.put(frame);
+      ((Buffer) directFrame).flip();
+      directFrames.add(directFrame);
+    }
+  }
+
+  /**
+   * Parses a message that spans several transport frames.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public SimpleRequest parse() throws Exception {
+    CompositeReadableBuffer composite = new CompositeReadableBuffer();
+    if (framing == Framing.ZERO_COPY) {
+      for (ByteBuffer frame : directFrames) {
+        composite.addBuffer(ReadableBuffers.wrap(frame.duplicate()));
+      }
+    } else {
+      for (byte[] frame : arrayFrames) {
+        composite.addBuffer(ReadableBuffers.wrap(frame));
+      }
+    }
+    InputStream stream = ReadableBuffers.openStream(composite, true);
+    try {
+      return marshaller.parse(stream);
+    } finally {
+      stream.close();
+    }
+  }
+}
@@ -19,6 +19,7 @@ package io.grpc.binder.internal;
 import io.grpc.Attributes;
 import io.grpc.Compressor;
 import io.grpc.Decompressor;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.StatusException;
@@ -165,6 +166,11 @@ final class MultiMessageServerStream implements ServerStream {
     // Ignore.
   }
 
+  @Override
+  public final void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    // Ignore.
+  }
+
   @Override
   public void setDecompressor(Decompressor decompressor) {
     // Ignore.
@@ -20,6 +20,7 @@ import io.grpc.Attributes;
 import io.grpc.Compressor;
 import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Status;
 import io.grpc.StatusException;
 import io.grpc.internal.ClientStream;
@@ -151,6 +152,11 @@ final class SingleMessageClientStream implements ClientStream {
     // Ignore.
   }
 
+  @Override
+  public final void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    // Ignore.
+  }
+
   @Override
   public void setAuthority(String authority) {
     // Ignore.
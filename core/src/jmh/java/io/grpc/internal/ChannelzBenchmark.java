@@ -38,7 +38,7 @@ import org.openjdk.jmh.annotations.State;
 @State(Scope.Benchmark)
 public class ChannelzBenchmark {
   // Number of items already present
-  @Param({"10", "100", "1000", "10000"})
+  @Param({"10", "100", "1000", "10000", "20000"})
   public int preexisting;
 
   public InternalChannelz channelz = new InternalChannelz();
@@ -51,6 +51,9 @@ public class ChannelzBenchmark {
   public InternalInstrumented<SocketStats> serverSocketToAdd;
   public InternalInstrumented<SocketStats> serverSocketToRemove;
 
+  public InternalChannelz.ChangeMarker changeMarker;
+  public long cursor;
+
   /**
    * Javadoc.
    */
@@ -71,6 +74,9 @@ public class ChannelzBenchmark {
 
     serverToAdd = create();
     serverSocketToAdd = create();
+
+    changeMarker = channelz.getChangeMarker(serverForServerSocket.getLogId());
+    cursor = channelz.getChangesSince(0).cursor;
   }
 
   private void populate(int count) {
@@ -130,6 +136,32 @@ public class ChannelzBenchmark {
     channelz.removeServerSocket(serverForServerSocket, serverSocketToRemove);
   }
 
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void markChanged() {
+    changeMarker.markChanged();
+  }
+
+  /** A query for everything, such as the first query of a client. */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public InternalChannelz.ChangeList getChangesSince_all() {
+    return channelz.getChangesSince(0);
+  }
+
+  /** A query of a client that keeps up, with one entity changed since its last query. */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public InternalChannelz.ChangeList getChangesSince_oneChanged() {
+    changeMarker.markChanged();
+    InternalChannelz.ChangeList changes = channelz.getChangesSince(cursor);
+    cursor = changes.cursor;
+    return changes;
+  }
+
   private static <T> InternalInstrumented<T> create() {
     return new InternalInstrumented<T>() {
       final InternalLogId id = InternalLogId.allocate(getClass(), "fake-tag");
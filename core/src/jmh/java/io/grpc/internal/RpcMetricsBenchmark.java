@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.util.RpcMetrics;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for the per-call cost of {@link RpcMetrics}: a unary call with one message each way.
+ * {@link #serverContext} includes the creation of the {@link StatsTraceContext}, for comparison
+ * with {@link StatsTraceContextBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class RpcMetricsBenchmark {
+
+  private final String methodName = MethodDescriptor.generateFullMethodName("service", "method");
+  private final Metadata emptyMetadata = new Metadata();
+  private final RpcMetrics metrics = RpcMetrics.create();
+  private final List<ServerStreamTracer.Factory> serverStreamTracerFactories =
+      Collections.singletonList(metrics.getServerStreamTracerFactory());
+  private final ClientStreamTracer.StreamInfo streamInfo =
+      ClientStreamTracer.StreamInfo.newBuilder().build();
+  private ClientStreamTracer.Factory clientTracerFactory;
+  private ServerStreamTracer.ServerCallInfo<Void, Void> serverCallInfo;
+
+  /**
+   * Javadoc comment.
+   */
+  @Setup
+  public void setUp() {
+    MethodDescriptor<Void, Void> method = MethodDescriptor.<Void, Void>newBuilder()
+        .setType(MethodDescriptor.MethodType.UNARY)
+        .setFullMethodName(methodName)
+        .setRequestMarshaller(TestMethodDescriptors.voidMarshaller())
+        .setResponseMarshaller(TestMethodDescriptors.voidMarshaller())
+        .build();
+    serverCallInfo = new ServerCallInfoImpl<>(method, Attributes.EMPTY, null);
+    metrics.getClientInterceptor().interceptCall(method, CallOptions.DEFAULT, new Channel() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        clientTracerFactory = callOptions.getStreamTracerFactories().get(0);
+        return null;
+      }
+
+      @Override
+      public String authority() {
+        return "localhost";
+      }
+    });
+  }
+
+  /**
+   * Javadoc comment.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public ServerStreamTracer serverCall() {
+    ServerStreamTracer tracer = metrics.getServerStreamTracerFactory()
+        .newServerStreamTracer(methodName, emptyMetadata);
+    tracer.serverCallStarted(serverCallInfo);
+    tracer.inboundMessage(0);
+    tracer.inboundWireSize(100);
+    tracer.outboundMessage(0);
+    tracer.outboundWireSize(100);
+    tracer.streamClosed(Status.OK);
+    return tracer;
+  }
+
+  /**
+   * Javadoc comment.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public ClientStreamTracer clientCall() {
+    ClientStreamTracer tracer =
+        clientTracerFactory.newClientStreamTracer(streamInfo, emptyMetadata);
+    tracer.outboundMessage(0);
+    tracer.outboundWireSize(100);
+    tracer.inboundMessage(0);
+    tracer.inboundWireSize(100);
+    tracer.streamClosed(Status.OK);
+    return tracer;
+  }
+
+  /**
+   * Javadoc comment.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public StatsTraceContext serverContext() {
+    StatsTraceContext context = StatsTraceContext.newServerContext(
+        serverStreamTracerFactories, methodName, emptyMetadata);
+    context.streamClosed(Status.OK);
+    return context;
+  }
+}
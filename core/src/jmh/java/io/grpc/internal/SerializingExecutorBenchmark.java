@@ -28,6 +28,7 @@ import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
 
 /**
  * SerializingExecutor benchmark.
@@ -36,6 +37,8 @@ import org.openjdk.jmh.annotations.TearDown;
  * it is a gauge that the code is behaving roughly as expected, to increase confidence that our
  * understanding of the code is correct (and will behave as expected in other cases). Even more
  * helpfully it pushes the implementation, which should weed out many multithreading bugs.
+ *
+ * <p>Run with {@code -prof gc} to see the allocation per queued runnable.
  */
 @State(Scope.Thread)
 public class SerializingExecutorBenchmark {
@@ -95,4 +98,41 @@ public class SerializingExecutorBenchmark {
       throw new AssertionError();
     }
   }
+
+  /**
+   * An executor shared by the benchmark threads, like the call executor of a stream that the
+   * transport and the application both queue callbacks to.
+   */
+  @State(Scope.Benchmark)
+  public static class SharedExecutor {
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    final Executor executor = new SerializingExecutor(executorService);
+
+    /**
+     * Teardown.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+      executorService.shutdownNow();
+      if (!executorService.awaitTermination(1, TimeUnit.SECONDS)) {
+        throw new RuntimeException("executor failed to shut down in a timely fashion");
+      }
+    }
+  }
+
+  /**
+   * Queues a burst of runnables from several threads at once, and waits for the last one of the
+   * burst to run.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Threads(4)
+  public void contendedRunnables(SharedExecutor shared) throws Exception {
+    for (int i = 0; i < 16; i++) {
+      shared.executor.execute(incrRunnable);
+    }
+    shared.executor.execute(phaserRunnable);
+    phaser.arriveAndAwaitAdvance();
+  }
 }
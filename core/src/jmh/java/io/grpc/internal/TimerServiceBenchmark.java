@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmark for the timer service shared by channels, under the load of many calls with deadlines
+ * that finish before their deadline: every operation schedules a timeout and then cancels it.
+ */
+@State(Scope.Benchmark)
+public class TimerServiceBenchmark {
+  public enum Timer {
+    THREAD_POOL, HASHED_WHEEL
+  }
+
+  @Param({"THREAD_POOL", "HASHED_WHEEL"})
+  public Timer timer;
+
+  private ScheduledExecutorService service;
+  private final Runnable task = new Runnable() {
+    @Override
+    public void run() {}
+  };
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setUp() {
+    if (timer == Timer.HASHED_WHEEL) {
+      service = new HashedWheelTimerService(GrpcUtil.getThreadFactory("timer-%d", true));
+    } else {
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(1, GrpcUtil.getThreadFactory("timer-%d", true));
+      // As configured for GrpcUtil.TIMER_SERVICE.
+      executor.setRemoveOnCancelPolicy(true);
+      service = executor;
+    }
+    // Other calls' deadlines that are pending meanwhile.
+    for (int i = 0; i < 10000; i++) {
+      service.schedule(task, 1 + i % 60, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Teardown.
+   */
+  @TearDown
+  public void tearDown() {
+    service.shutdownNow();
+  }
+
+  /**
+   * Schedules a deadline and cancels it, as for a call that finishes in time.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Threads(4)
+  public boolean scheduleAndCancel() {
+    ScheduledFuture<?> future = service.schedule(task, 20, TimeUnit.SECONDS);
+    return future.cancel(false);
+  }
+}
@@ -35,6 +35,7 @@ import io.grpc.Grpc;
 import io.grpc.InternalChannelz.SocketStats;
 import io.grpc.InternalLogId;
 import io.grpc.InternalMetadata;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.SecurityLevel;
@@ -630,6 +631,11 @@ final class InProcessTransport implements ServerTransport, ConnectionClientTrans
         // noop
       }
 
+      @Override
+      public void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+        // noop
+      }
+
       @Override
       public void optimizeForDirectExecutor() {}
 
@@ -806,6 +812,9 @@ final class InProcessTransport implements ServerTransport, ConnectionClientTrans
       @Override
       public void setMessageCompression(boolean enable) {}
 
+      @Override
+      public void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {}
+
       @Override
       public void setAuthority(String string) {
         InProcessStream.this.authority = string;
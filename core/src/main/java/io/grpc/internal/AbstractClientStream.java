@@ -34,6 +34,7 @@ import io.grpc.Deadline;
 import io.grpc.Decompressor;
 import io.grpc.DecompressorRegistry;
 import io.grpc.Grpc;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.internal.ClientStreamListener.RpcProgress;
@@ -532,6 +533,11 @@ public abstract class AbstractClientStream extends AbstractStream
       return this;
     }
 
+    @Override
+    public Framer setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+      return this;
+    }
+
     @Override
     public Framer setCompressor(Compressor compressor) {
       return this;
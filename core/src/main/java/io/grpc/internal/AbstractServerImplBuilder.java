@@ -68,6 +68,12 @@ public abstract class AbstractServerImplBuilder
     return thisT();
   }
 
+  @Override
+  public T virtualThreadExecutor() {
+    delegate().virtualThreadExecutor();
+    return thisT();
+  }
+
   @Override
   public T callExecutor(ServerCallExecutorSupplier executorSupplier) {
     delegate().callExecutor(executorSupplier);
@@ -23,6 +23,7 @@ import com.google.common.annotations.VisibleForTesting;
 import io.grpc.Codec;
 import io.grpc.Compressor;
 import io.grpc.Decompressor;
+import io.grpc.MessageCompressionPolicy;
 import io.perfmark.Link;
 import io.perfmark.PerfMark;
 import java.io.InputStream;
@@ -52,6 +53,11 @@ public abstract class AbstractStream implements Stream {
     framer().setMessageCompression(enable);
   }
 
+  @Override
+  public final void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    framer().setMessageCompressionDecider(decider);
+  }
+
   @Override
   public final void request(int numMessages) {
     transportState().requestMessagesFromDeframer(numMessages);
@@ -14,23 +14,24 @@
  * limitations under the License.
  */
 
-package io.grpc.rls;
+package io.grpc.internal;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
-import io.grpc.internal.TimeProvider;
+import com.google.common.math.LongMath;
+import java.math.RoundingMode;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
- * Implementation of {@link Throttler} that keeps track of recent history (the duration of which is
- * specified to the constructor) and throttles requests at the client side based on the number of
- * requests that the
+ * Client-side throttler that keeps track of recent history (the duration of which is specified to
+ * the builder) and throttles requests at the client side based on the number of requests that the
  * backend has accepted and the total number of requests generated. A given request will be
  * throttled with a probability
  * <pre>
@@ -39,17 +40,21 @@ import java.util.concurrent.atomic.AtomicReferenceArray;
  * where requests is the total number of requests, accepts is the total number of requests that the
  * backend has accepted and ratio_for_accepts is just a constant multiplier passed to the
  * constructor (see the description of ratio_for_accepts for more information).
+ *
+ * <p>Callers must call {@link #shouldThrottle} before each request and, for every request that was
+ * not throttled, {@link #registerBackendResponse} once the backend has answered.
  */
-final class AdaptiveThrottler implements Throttler {
+@ThreadSafe
+public final class AdaptiveThrottler {
 
-  private static final int DEFAULT_HISTORY_SECONDS = 30;
-  private static final int DEFAULT_REQUEST_PADDING = 8;
-  private static final float DEFAULT_RATIO_FOR_ACCEPT = 1.2f;
+  static final long DEFAULT_HISTORY_NANOS = TimeUnit.SECONDS.toNanos(30);
+  static final int DEFAULT_REQUEST_PADDING = 8;
+  static final float DEFAULT_RATIO_FOR_ACCEPT = 1.2f;
 
   /**
    * The duration of history of calls used by Adaptive Throttler.
    */
-  private final int historySeconds;
+  private final long historyNanos;
   /**
    * A magic number to tune the aggressiveness of the throttling. High numbers throttle less. The
    * default is 8.
@@ -76,16 +81,21 @@ final class AdaptiveThrottler implements Throttler {
   final TimeBasedAccumulator throttledStat;
 
   private AdaptiveThrottler(Builder builder) {
-    this.historySeconds = builder.historySeconds;
+    this.historyNanos = builder.historyNanos;
     this.requestsPadding = builder.requestsPadding;
     this.ratioForAccepts = builder.ratioForAccepts;
     this.timeProvider = builder.timeProvider;
-    long internalNanos = TimeUnit.SECONDS.toNanos(historySeconds);
-    this.requestStat = new TimeBasedAccumulator(internalNanos, timeProvider);
-    this.throttledStat = new TimeBasedAccumulator(internalNanos, timeProvider);
+    this.requestStat = new TimeBasedAccumulator(historyNanos, timeProvider);
+    this.throttledStat = new TimeBasedAccumulator(historyNanos, timeProvider);
   }
 
-  @Override
+  /**
+   * Checks if a given request should be throttled by the client. This should be called for every
+   * request before allowing it to hit the network. If the returned value is true, the request
+   * should be aborted immediately (as if it had been throttled by the server).
+   *
+   * <p>This updates internal state and should be called exactly once for each request.
+   */
   public boolean shouldThrottle() {
     return shouldThrottle(randomFloat());
   }
@@ -116,7 +126,12 @@ final class AdaptiveThrottler implements Throttler {
     return (requests - ratioForAccepts * accepts) / (requests + requestsPadding);
   }
 
-  @Override
+  /**
+   * Registers a response received from the backend for a request allowed by {@link
+   * #shouldThrottle}. This should be called exactly once for each such request.
+   *
+   * @param throttled specifies whether the request was throttled by the backend.
+   */
   public void registerBackendResponse(boolean throttled) {
     long now = timeProvider.currentTimeNanos();
     requestStat.increment(now);
@@ -132,7 +147,7 @@ final class AdaptiveThrottler implements Throttler {
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
-        .add("historySeconds", historySeconds)
+        .add("historyNanos", historyNanos)
         .add("requestsPadding", requestsPadding)
         .add("ratioForAccepts", ratioForAccepts)
         .add("requestStat", requestStat)
@@ -145,20 +160,21 @@ final class AdaptiveThrottler implements Throttler {
   }
 
   /** Builder for {@link AdaptiveThrottler}. */
-  static final class Builder {
+  public static final class Builder {
 
     private float ratioForAccepts = DEFAULT_RATIO_FOR_ACCEPT;
-    private int historySeconds = DEFAULT_HISTORY_SECONDS;
+    private long historyNanos = DEFAULT_HISTORY_NANOS;
     private int requestsPadding = DEFAULT_REQUEST_PADDING;
-    private TimeProvider timeProvider = TimeProvider.SYSTEM_TIME_PROVIDER;
+    private TimeProvider timeProvider = TimeProvider.MONOTONIC_TIME_PROVIDER;
 
     public Builder setRatioForAccepts(float ratioForAccepts) {
       this.ratioForAccepts = ratioForAccepts;
       return this;
     }
 
-    public Builder setHistorySeconds(int historySeconds) {
-      this.historySeconds = historySeconds;
+    /** Sets the duration of history used to compute the throttle probability. */
+    public Builder setHistory(long duration, TimeUnit unit) {
+      this.historyNanos = unit.toNanos(duration);
       return this;
     }
 
@@ -205,8 +221,9 @@ final class AdaptiveThrottler implements Throttler {
       }
     }
 
-    // Represents a slot which is not initialized and is unusable.
-    private static final Slot NULL_SLOT = new Slot(-1);
+    // Represents a slot which is not initialized and is unusable. It ends before any time, as a
+    // monotonic clock may be negative.
+    private static final Slot NULL_SLOT = new Slot(Long.MIN_VALUE);
 
     /** The array of slots. */
     private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(NUM_SLOTS);
@@ -277,7 +294,8 @@ final class AdaptiveThrottler implements Throttler {
      * @return the nearest slot boundary in nanos
      */
     private long getSlotEndTime(long time) {
-      return (time / slotNanos + 1) * slotNanos;
+      // Round down, so that negative times end up in the slot after them as well.
+      return (LongMath.divide(time, slotNanos, RoundingMode.FLOOR) + 1) * slotNanos;
     }
 
     /**
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import io.grpc.Status.Code;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive throttling policy data object. Each policy owns the {@link AdaptiveThrottler} shared by
+ * all the calls the method config applies to, so a policy in the default method config throttles
+ * the channel as a whole.
+ */
+final class AdaptiveThrottlingPolicy {
+  final float ratioForAccepts;
+  final int requestsPadding;
+  final long historyNanos;
+  final Set<Code> throttledStatusCodes;
+  final AdaptiveThrottler throttler;
+
+  /**
+   * The caller is supposed to have validated the arguments and handled throwing exception or
+   * logging warnings already, so we avoid repeating args check here.
+   */
+  AdaptiveThrottlingPolicy(
+      float ratioForAccepts, int requestsPadding, long historyNanos,
+      Set<Code> throttledStatusCodes, TimeProvider timeProvider) {
+    this.ratioForAccepts = ratioForAccepts;
+    this.requestsPadding = requestsPadding;
+    this.historyNanos = historyNanos;
+    this.throttledStatusCodes = ImmutableSet.copyOf(throttledStatusCodes);
+    this.throttler = AdaptiveThrottler.builder()
+        .setRatioForAccepts(ratioForAccepts)
+        .setRequestsPadding(requestsPadding)
+        .setHistory(historyNanos, TimeUnit.NANOSECONDS)
+        .setTimeProvider(timeProvider)
+        .build();
+  }
+
+  /** Records the outcome of a call that was let through by {@link #throttler}. */
+  void registerBackendResponse(Code code) {
+    throttler.registerBackendResponse(throttledStatusCodes.contains(code));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    // The throttler state is not compared, so that an unchanged config keeps its history.
+    if (this == other) {
+      return true;
+    }
+    if (other == null || getClass() != other.getClass()) {
+      return false;
+    }
+    AdaptiveThrottlingPolicy that = (AdaptiveThrottlingPolicy) other;
+    return Float.compare(ratioForAccepts, that.ratioForAccepts) == 0
+        && requestsPadding == that.requestsPadding
+        && historyNanos == that.historyNanos
+        && Objects.equal(throttledStatusCodes, that.throttledStatusCodes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(ratioForAccepts, requestsPadding, historyNanos, throttledStatusCodes);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("ratioForAccepts", ratioForAccepts)
+        .add("requestsPadding", requestsPadding)
+        .add("historyNanos", historyNanos)
+        .add("throttledStatusCodes", throttledStatusCodes)
+        .toString();
+  }
+}
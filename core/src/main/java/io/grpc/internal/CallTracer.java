@@ -18,8 +18,10 @@ package io.grpc.internal;
 
 import static io.grpc.internal.TimeProvider.SYSTEM_TIME_PROVIDER;
 
+import io.grpc.InternalChannelz.ChangeMarker;
 import io.grpc.InternalChannelz.ChannelStats;
 import io.grpc.InternalChannelz.ServerStats;
+import javax.annotation.Nullable;
 
 /**
  * A collection of call stats for channelz.
@@ -30,6 +32,8 @@ final class CallTracer {
   private final LongCounter callsSucceeded = LongCounterFactory.create();
   private final LongCounter callsFailed = LongCounterFactory.create();
   private volatile long lastCallStartedNanos;
+  @Nullable
+  private volatile ChangeMarker changeMarker;
 
   CallTracer(TimeProvider timeProvider) {
     this.timeProvider = timeProvider;
@@ -38,6 +42,7 @@ final class CallTracer {
   public void reportCallStarted() {
     callsStarted.add(1);
     lastCallStartedNanos = timeProvider.currentTimeNanos();
+    markChanged();
   }
 
   public void reportCallEnded(boolean success) {
@@ -46,6 +51,19 @@ final class CallTracer {
     } else {
       callsFailed.add(1);
     }
+    markChanged();
+  }
+
+  /** Sets the marker to report changes to channelz with. */
+  void setChangeMarker(ChangeMarker changeMarker) {
+    this.changeMarker = changeMarker;
+  }
+
+  private void markChanged() {
+    ChangeMarker marker = changeMarker;
+    if (marker != null) {
+      marker.markChanged();
+    }
   }
 
   void updateBuilder(ChannelStats.Builder builder) {
@@ -19,6 +19,7 @@ package io.grpc.internal;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import io.grpc.ChannelLogger;
+import io.grpc.InternalChannelz.ChangeMarker;
 import io.grpc.InternalChannelz.ChannelStats;
 import io.grpc.InternalChannelz.ChannelTrace;
 import io.grpc.InternalChannelz.ChannelTrace.Event;
@@ -49,6 +50,8 @@ final class ChannelTracer {
 
   @GuardedBy("lock")
   private int eventsLogged;
+  @Nullable
+  private volatile ChangeMarker changeMarker;
 
   /**
    * Creates a channel tracer and log the creation event of the underlying channel.
@@ -118,6 +121,15 @@ final class ChannelTracer {
         events.add(event);
       }
     }
+    ChangeMarker marker = changeMarker;
+    if (marker != null) {
+      marker.markChanged();
+    }
+  }
+
+  /** Sets the marker to report new events to channelz with. */
+  void setChangeMarker(ChangeMarker changeMarker) {
+    this.changeMarker = changeMarker;
   }
 
   static void logOnly(InternalLogId logId, Level logLevel, String msg) {
@@ -91,6 +91,9 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT> {
       new ContextCancellationListener();
   private final ScheduledExecutorService deadlineCancellationExecutor;
   private boolean fullStreamDecompression;
+  // Set when the call was let through by the method's adaptive throttling, to report its outcome.
+  @Nullable
+  private AdaptiveThrottlingPolicy throttlingPolicy;
   private DecompressorRegistry decompressorRegistry = DecompressorRegistry.getDefaultInstance();
   private CompressorRegistry compressorRegistry = CompressorRegistry.getDefaultInstance();
 
@@ -252,17 +255,29 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT> {
 
     Deadline effectiveDeadline = effectiveDeadline();
     boolean deadlineExceeded = effectiveDeadline != null && effectiveDeadline.isExpired();
-    if (!deadlineExceeded) {
-      logIfContextNarrowedTimeout(
-          effectiveDeadline, context.getDeadline(), callOptions.getDeadline());
-      stream = clientStreamProvider.newStream(method, callOptions, headers, context);
-    } else {
+    MethodInfo methodInfo = callOptions.getOption(MethodInfo.KEY);
+    AdaptiveThrottlingPolicy methodThrottlingPolicy =
+        methodInfo == null ? null : methodInfo.adaptiveThrottlingPolicy;
+    if (deadlineExceeded) {
       ClientStreamTracer[] tracers =
           GrpcUtil.getClientStreamTracers(callOptions, headers, 0, false);
       stream = new FailingClientStream(
           DEADLINE_EXCEEDED.withDescription(
               "ClientCall started after deadline exceeded: " + effectiveDeadline),
           tracers);
+    } else if (methodThrottlingPolicy != null
+        && methodThrottlingPolicy.throttler.shouldThrottle()) {
+      ClientStreamTracer[] tracers =
+          GrpcUtil.getClientStreamTracers(callOptions, headers, 0, false);
+      stream = new FailingClientStream(
+          Status.UNAVAILABLE.withDescription(
+              "Call throttled by the client, as the backend is rejecting requests"),
+          tracers);
+    } else {
+      logIfContextNarrowedTimeout(
+          effectiveDeadline, context.getDeadline(), callOptions.getDeadline());
+      throttlingPolicy = methodThrottlingPolicy;
+      stream = clientStreamProvider.newStream(method, callOptions, headers, context);
     }
 
     if (callExecutorIsDirect) {
@@ -281,6 +296,10 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT> {
       stream.setDeadline(effectiveDeadline);
     }
     stream.setCompressor(compressor);
+    if (callOptions.getMessageCompressionPolicy() != null) {
+      stream.setMessageCompressionDecider(
+          callOptions.getMessageCompressionPolicy().newDecider(method));
+    }
     if (fullStreamDecompression) {
       stream.setFullStreamDecompression(fullStreamDecompression);
     }
@@ -559,6 +578,9 @@ final class ClientCallImpl<ReqT, RespT> extends ClientCall<ReqT, RespT> {
   }
 
   private void closeObserver(Listener<RespT> observer, Status status, Metadata trailers) {
+    if (throttlingPolicy != null) {
+      throttlingPolicy.registerBackendResponse(status.getCode());
+    }
     observer.onClose(status, trailers);
   }
 
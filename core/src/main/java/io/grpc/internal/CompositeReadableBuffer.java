@@ -259,6 +259,10 @@ public class CompositeReadableBuffer extends AbstractReadableBuffer {
     if (readableBuffers.isEmpty()) {
       return null;
     }
+    // A fully read component stays at the head until the next read, but its buffer would be empty.
+    while (readableBuffers.size() > 1 && readableBuffers.peek().readableBytes() == 0) {
+      advanceBuffer();
+    }
     return readableBuffers.peek().getByteBuffer();
   }
 
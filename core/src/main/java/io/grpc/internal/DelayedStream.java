@@ -24,6 +24,7 @@ import io.grpc.Attributes;
 import io.grpc.Compressor;
 import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.internal.ClientStreamListener.RpcProgress;
@@ -437,6 +438,18 @@ class DelayedStream implements ClientStream {
     }
   }
 
+  @Override
+  public void setMessageCompressionDecider(final MessageCompressionPolicy.Decider decider) {
+    checkState(listener == null, "May only be called before start");
+    checkNotNull(decider, "decider");
+    preStartPendingCalls.add(new Runnable() {
+      @Override
+      public void run() {
+        realStream.setMessageCompressionDecider(decider);
+      }
+    });
+  }
+
   @VisibleForTesting
   ClientStream getRealStream() {
     return realStream;
@@ -21,6 +21,7 @@ import io.grpc.Attributes;
 import io.grpc.Compressor;
 import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Status;
 import java.io.InputStream;
 
@@ -62,6 +63,11 @@ abstract class ForwardingClientStream implements ClientStream {
     delegate().setMessageCompression(enable);
   }
 
+  @Override
+  public void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    delegate().setMessageCompressionDecider(decider);
+  }
+
   @Override
   public void cancel(Status reason) {
     delegate().cancel(reason);
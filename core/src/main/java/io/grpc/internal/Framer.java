@@ -17,6 +17,7 @@
 package io.grpc.internal;
 
 import io.grpc.Compressor;
+import io.grpc.MessageCompressionPolicy;
 import java.io.InputStream;
 
 /** Interface for framing gRPC messages. */
@@ -43,6 +44,9 @@ public interface Framer {
   /** Enable or disable compression. */
   Framer setMessageCompression(boolean enable);
 
+  /** Set the decider consulted for each message while compression is enabled. */
+  Framer setMessageCompressionDecider(MessageCompressionPolicy.Decider decider);
+
   /** Set the compressor used for compression. */
   Framer setCompressor(Compressor compressor);
 
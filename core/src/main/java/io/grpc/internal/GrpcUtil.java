@@ -531,6 +531,14 @@ public final class GrpcUtil {
     }
   }
 
+  /**
+   * Whether {@link #TIMER_SERVICE} is a {@link HashedWheelTimerService}, which schedules and
+   * cancels in constant time, rather than a {@link
+   * java.util.concurrent.ScheduledThreadPoolExecutor}. Off by default.
+   */
+  private static final boolean USE_HASHED_WHEEL_TIMER = Boolean.parseBoolean(
+      System.getProperty("io.grpc.internal.GrpcUtil.useHashedWheelTimer", "false"));
+
   /**
    * Shared executor for channels.
    */
@@ -560,6 +568,9 @@ public final class GrpcUtil {
       new Resource<ScheduledExecutorService>() {
         @Override
         public ScheduledExecutorService create() {
+          if (USE_HASHED_WHEEL_TIMER) {
+            return new HashedWheelTimerService(getThreadFactory("grpc-timer-%d", true));
+          }
           // We don't use newSingleThreadScheduledExecutor because it doesn't return a
           // ScheduledThreadPoolExecutor.
           ScheduledExecutorService service = Executors.newScheduledThreadPool(
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ScheduledExecutorService} backed by a hashed timing wheel, for the many short-lived
+ * timers of RPCs: deadlines, keepalives, idle timeouts and retry backoffs, most of which are
+ * cancelled long before they fire. Scheduling and cancelling link and unlink the timer in its
+ * bucket of the wheel in O(1), under a lock per bucket, where {@link
+ * java.util.concurrent.ScheduledThreadPoolExecutor} sifts a heap under a single lock.
+ *
+ * <p>Tasks run on a single timer thread, so they must be short. A task runs no earlier than its
+ * delay, but up to one tick (a millisecond by default) later, as the wheel only looks at whole
+ * ticks. The timer thread parks until the next timer is due, and indefinitely when there are no
+ * timers, rather than waking up every tick, or every turn of the wheel for timers of later turns.
+ *
+ * <p>{@link #shutdown} cancels the timers that have not fired yet, as there is no one left to use
+ * their results once a shared timer is released.
+ */
+final class HashedWheelTimerService extends AbstractExecutorService
+    implements ScheduledExecutorService {
+  private static final Logger log = Logger.getLogger(HashedWheelTimerService.class.getName());
+
+  static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  static final int DEFAULT_WHEEL_SIZE = 1024;
+
+  /** {@link #wakeupNanos} while the worker is running, and will look at new timers anyway. */
+  private static final long AWAKE = Long.MIN_VALUE;
+  /** {@link #wakeupNanos} while the worker is parked until a timer is added. */
+  private static final long IDLE = Long.MAX_VALUE;
+
+  private final ThreadFactory threadFactory;
+  private final Wheel wheel;
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private volatile boolean shutdown;
+  /** When the parked worker will wake up on its own, or {@link #AWAKE} or {@link #IDLE}. */
+  private volatile long wakeupNanos = AWAKE;
+  @Nullable
+  private volatile Thread workerThread;
+  // Written by the worker before it terminates.
+  private final List<Runnable> notRun = new ArrayList<>();
+
+  HashedWheelTimerService(ThreadFactory threadFactory) {
+    this(threadFactory, DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+  }
+
+  HashedWheelTimerService(ThreadFactory threadFactory, long tickNanos, int wheelSize) {
+    this.threadFactory = checkNotNull(threadFactory, "threadFactory");
+    this.wheel = new Wheel(System.nanoTime(), tickNanos, wheelSize);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return enqueue(new WheelTimeout<Void>(
+        wheel, Executors.<Void>callable(command, null), deadline(delay, unit), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return enqueue(new WheelTimeout<V>(
+        wheel, checkNotNull(callable, "callable"), deadline(delay, unit), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(
+      Runnable command, long initialDelay, long period, TimeUnit unit) {
+    checkArgument(period > 0, "period must be positive");
+    return enqueue(new WheelTimeout<Void>(
+        wheel, Executors.<Void>callable(command, null), deadline(initialDelay, unit),
+        unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(
+      Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    checkArgument(delay > 0, "delay must be positive");
+    return enqueue(new WheelTimeout<Void>(
+        wheel, Executors.<Void>callable(command, null), deadline(initialDelay, unit),
+        -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  private static long deadline(long delay, TimeUnit unit) {
+    long now = System.nanoTime();
+    long delayNanos = unit.toNanos(Math.max(0, delay));
+    // Avoid overflow, as ScheduledThreadPoolExecutor does.
+    return delayNanos > Long.MAX_VALUE / 2 ? now + Long.MAX_VALUE / 2 : now + delayNanos;
+  }
+
+  private <V> WheelTimeout<V> enqueue(WheelTimeout<V> timeout) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Timer has been shut down");
+    }
+    if (!started.get() && started.compareAndSet(false, true)) {
+      Thread thread = threadFactory.newThread(new Worker());
+      workerThread = thread;
+      thread.start();
+    }
+    if (!wheel.add(timeout)) {
+      throw new RejectedExecutionException("Timer has been shut down");
+    }
+    // The worker publishes wakeupNanos before it looks at the wheel a last time, so either it
+    // sees the new timeout, or this sees the time it is going to sleep until.
+    long wakeup = wakeupNanos;
+    if (wakeup != AWAKE && (wakeup == IDLE || timeout.deadlineNanos - wakeup < 0)) {
+      LockSupport.unpark(workerThread);
+    }
+    return timeout;
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    if (!started.getAndSet(true)) {
+      terminated.countDown();
+      return;
+    }
+    LockSupport.unpark(workerThread);
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    try {
+      terminated.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(notRun);
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return terminated.getCount() == 0;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  private final class Worker implements Runnable {
+    private final List<WheelTimeout<?>> expired = new ArrayList<>();
+
+    @Override
+    public void run() {
+      try {
+        while (!shutdown) {
+          wakeupNanos = AWAKE;
+          wheel.expire(System.nanoTime(), expired);
+          for (int i = 0; i < expired.size(); i++) {
+            runTimeout(expired.get(i));
+          }
+          expired.clear();
+
+          long nextWakeup = wheel.nextTickNanos();
+          wakeupNanos = nextWakeup == Long.MAX_VALUE ? IDLE : nextWakeup;
+          // A timeout added before wakeupNanos was published may be due earlier.
+          if (wheel.nextTickNanos() != nextWakeup || shutdown) {
+            continue;
+          }
+          if (nextWakeup == Long.MAX_VALUE) {
+            LockSupport.park(this);
+          } else {
+            long parkNanos = nextWakeup - System.nanoTime();
+            if (parkNanos > 0) {
+              LockSupport.parkNanos(this, parkNanos);
+            }
+          }
+        }
+      } finally {
+        wakeupNanos = AWAKE;
+        wheel.close(notRun);
+        for (Runnable timeout : notRun) {
+          ((WheelTimeout<?>) timeout).cancel(false);
+        }
+        terminated.countDown();
+      }
+    }
+
+    private void runTimeout(WheelTimeout<?> timeout) {
+      try {
+        timeout.run();
+      } catch (Throwable t) {
+        // FutureTask catches what the task throws, so this is a bug in the timeout itself.
+        log.log(Level.SEVERE, "Exception while running timer task " + timeout, t);
+      }
+      if (timeout.isPeriodic() && !timeout.isDone() && !wheel.add(timeout)) {
+        timeout.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * The buckets of timeouts. Timeouts are added and removed from any thread; expiring them and
+   * looking for the next one is done by the worker thread only.
+   */
+  @VisibleForTesting
+  static final class Wheel {
+    private final long startNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] buckets;
+    /** The next tick to expire. */
+    private long tick;
+
+    Wheel(long startNanos, long tickNanos, int wheelSize) {
+      checkArgument(tickNanos > 0, "tickNanos must be positive");
+      checkArgument(
+          wheelSize > 0 && (wheelSize & (wheelSize - 1)) == 0, "wheelSize must be a power of 2");
+      this.startNanos = startNanos;
+      this.tickNanos = tickNanos;
+      this.mask = wheelSize - 1;
+      this.buckets = new Bucket[wheelSize];
+      for (int i = 0; i < wheelSize; i++) {
+        buckets[i] = new Bucket(i - wheelSize);
+      }
+    }
+
+    /** Adds the timeout, unless the wheel has been closed. */
+    boolean add(WheelTimeout<?> timeout) {
+      // Round up, so that a timeout never fires early.
+      long sinceStartNanos = Math.max(0, timeout.deadlineNanos - startNanos);
+      long deadlineTick = (sinceStartNanos + tickNanos - 1) / tickNanos;
+      while (true) {
+        Bucket bucket = buckets[(int) (deadlineTick & mask)];
+        synchronized (bucket) {
+          if (bucket.closed) {
+            return false;
+          }
+          if (deadlineTick > bucket.expiredTick) {
+            bucket.link(timeout, deadlineTick);
+            break;
+          }
+          // The worker is already past this tick, so the timeout is due on the next one.
+          deadlineTick = bucket.expiredTick + 1;
+        }
+      }
+      // Cancelling looks for the bucket after marking the timeout cancelled, and this checks for
+      // cancellation after setting the bucket, so a timeout cancelled meanwhile is not left behind.
+      if (timeout.isCancelled()) {
+        remove(timeout);
+      }
+      return true;
+    }
+
+    void remove(WheelTimeout<?> timeout) {
+      Bucket bucket = timeout.bucket;
+      if (bucket != null) {
+        synchronized (bucket) {
+          if (timeout.bucket == bucket) {
+            bucket.unlink(timeout);
+          }
+        }
+      }
+    }
+
+    /**
+     * Moves the timeouts due by {@code nowNanos} to {@code expired}. Timeouts due on the same tick
+     * are in no particular order.
+     */
+    void expire(long nowNanos, List<? super WheelTimeout<?>> expired) {
+      long currentTick = Math.max(0, nowNanos - startNanos) / tickNanos;
+      // After a long sleep, visit each bucket once, for the last of its ticks that has passed.
+      for (long t = Math.max(tick, currentTick - mask); t <= currentTick; t++) {
+        Bucket bucket = buckets[(int) (t & mask)];
+        synchronized (bucket) {
+          bucket.expiredTick = t;
+          long minTick = Long.MAX_VALUE;
+          WheelTimeout<?> timeout = bucket.head;
+          while (timeout != null) {
+            WheelTimeout<?> next = timeout.next;
+            if (timeout.deadlineTick <= t) {
+              bucket.unlink(timeout);
+              expired.add(timeout);
+            } else {
+              minTick = Math.min(minTick, timeout.deadlineTick);
+            }
+            timeout = next;
+          }
+          bucket.minTick = minTick;
+        }
+      }
+      tick = Math.max(tick, currentTick + 1);
+    }
+
+    /**
+     * Returns when the next timeout is due, or {@code Long.MAX_VALUE} if there are no timeouts.
+     * Buckets that only hold timeouts for later turns of the wheel are skipped, so the worker does
+     * not wake up for them every turn. The result may be early if that timeout was removed since
+     * its bucket was last expired, but never late.
+     */
+    long nextTickNanos() {
+      long nextTick = Long.MAX_VALUE;
+      for (long t = tick; t <= tick + mask; t++) {
+        long minTick = buckets[(int) (t & mask)].minTick;
+        if (minTick <= t) {
+          return startNanos + t * tickNanos;
+        }
+        nextTick = Math.min(nextTick, minTick);
+      }
+      return nextTick == Long.MAX_VALUE ? Long.MAX_VALUE : startNanos + nextTick * tickNanos;
+    }
+
+    int size() {
+      int size = 0;
+      for (Bucket bucket : buckets) {
+        size += bucket.size;
+      }
+      return size;
+    }
+
+    /** Removes all the timeouts, and rejects the ones added later. */
+    void close(List<? super WheelTimeout<?>> removed) {
+      for (Bucket bucket : buckets) {
+        synchronized (bucket) {
+          bucket.closed = true;
+          while (bucket.head != null) {
+            removed.add(bucket.head);
+            bucket.unlink(bucket.head);
+          }
+        }
+      }
+    }
+  }
+
+  private static final class Bucket {
+    @GuardedBy("this")
+    WheelTimeout<?> head;
+    /** The last tick the worker has expired this bucket for. */
+    @GuardedBy("this")
+    long expiredTick;
+    @GuardedBy("this")
+    boolean closed;
+    // Written under the lock, and read without it by the worker looking for the next timeout.
+    volatile int size;
+    /**
+     * No later than the earliest deadline tick in the bucket, or {@code Long.MAX_VALUE} if it is
+     * empty. Only lowered when linking, and recomputed when expiring.
+     */
+    volatile long minTick = Long.MAX_VALUE;
+
+    Bucket(long expiredTick) {
+      this.expiredTick = expiredTick;
+    }
+
+    @GuardedBy("this")
+    void link(WheelTimeout<?> timeout, long deadlineTick) {
+      timeout.deadlineTick = deadlineTick;
+      timeout.prev = null;
+      timeout.next = head;
+      if (head != null) {
+        head.prev = timeout;
+      }
+      head = timeout;
+      timeout.bucket = this;
+      size++;
+      if (deadlineTick < minTick) {
+        minTick = deadlineTick;
+      }
+    }
+
+    @GuardedBy("this")
+    void unlink(WheelTimeout<?> timeout) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+      size--;
+      if (size == 0) {
+        minTick = Long.MAX_VALUE;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static final class WheelTimeout<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+    private final Wheel wheel;
+    /**
+     * Positive for a fixed rate, negative for a fixed delay, and zero if the timeout runs once.
+     */
+    private final long periodNanos;
+    // Moved forward by the worker after each run of a periodic timeout.
+    volatile long deadlineNanos;
+    // The bucket the timeout is linked in, which guards the fields below.
+    @Nullable
+    volatile Bucket bucket;
+    long deadlineTick;
+    WheelTimeout<?> prev;
+    WheelTimeout<?> next;
+
+    WheelTimeout(Wheel wheel, Callable<V> callable, long deadlineNanos, long periodNanos) {
+      super(callable);
+      this.wheel = wheel;
+      this.deadlineNanos = deadlineNanos;
+      this.periodNanos = periodNanos;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return periodNanos != 0;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+      } else if (runAndReset()) {
+        deadlineNanos = periodNanos > 0
+            ? deadlineNanos + periodNanos
+            : System.nanoTime() - periodNanos;
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        // Unlink right away, so that the task and what it references can be collected.
+        wheel.remove(this);
+      }
+      return cancelled;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+      long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+  }
+}
@@ -16,34 +16,146 @@
 
 package io.grpc.internal;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableSet;
 import io.grpc.Status.Code;
 import java.util.Set;
-import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Hedging policy data object.
+ *
+ * <p>When {@link #hedgingDelayPercentile} is set, the policy also tracks the latency of the calls
+ * it applies to, and hedges at that percentile of the recent latencies instead of at the fixed
+ * {@link #hedgingDelayNanos}, which is only used until enough calls have completed. When
+ * {@link #hedgingBudgetPercent} is set, hedges are limited to that percentage of the calls. Like
+ * {@link AdaptiveThrottlingPolicy}, the state is shared by all the calls the method config applies
+ * to.
  */
-@Immutable
 final class HedgingPolicy {
+  @VisibleForTesting
+  static final long LATENCY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+  @VisibleForTesting
+  static final int MIN_LATENCY_SAMPLES = 100;
+  /** The budget saved up by calls that were not hedged, in hedges. */
+  @VisibleForTesting
+  static final int MAX_BUDGET_HEDGES = 10;
+  private static final int THREE_DECIMAL_PLACES_SCALE_UP = 1000;
+  private static final int MAX_BUDGET_TOKENS = MAX_BUDGET_HEDGES * THREE_DECIMAL_PLACES_SCALE_UP;
+
   final int maxAttempts;
   final long hedgingDelayNanos;
   final Set<Code> nonFatalStatusCodes;
+  @Nullable
+  final Double hedgingDelayPercentile;
+  @Nullable
+  final Double hedgingBudgetPercent;
+
+  private final TimeProvider timeProvider;
+  @Nullable
+  private final LatencyHistogram latencies;
+  /** 1000 times the number of hedges that may be sent. */
+  @Nullable
+  private final AtomicInteger budgetTokens;
+  private final int budgetTokensPerCall;
 
   /**
    * The caller is supposed to have validated the arguments and handled throwing exception or
    * logging warnings already, so we avoid repeating args check here.
    */
   HedgingPolicy(int maxAttempts, long hedgingDelayNanos, Set<Code> nonFatalStatusCodes) {
+    this(maxAttempts, hedgingDelayNanos, nonFatalStatusCodes, null, null,
+        TimeProvider.MONOTONIC_TIME_PROVIDER);
+  }
+
+  HedgingPolicy(
+      int maxAttempts, long hedgingDelayNanos, Set<Code> nonFatalStatusCodes,
+      @Nullable Double hedgingDelayPercentile, @Nullable Double hedgingBudgetPercent,
+      TimeProvider timeProvider) {
     this.maxAttempts = maxAttempts;
     this.hedgingDelayNanos = hedgingDelayNanos;
     this.nonFatalStatusCodes = ImmutableSet.copyOf(nonFatalStatusCodes);
+    this.hedgingDelayPercentile = hedgingDelayPercentile;
+    this.hedgingBudgetPercent = hedgingBudgetPercent;
+    this.timeProvider = timeProvider;
+    this.latencies = hedgingDelayPercentile == null
+        ? null : new LatencyHistogram(LATENCY_WINDOW_NANOS, MIN_LATENCY_SAMPLES, timeProvider);
+    if (hedgingBudgetPercent == null) {
+      this.budgetTokens = null;
+      this.budgetTokensPerCall = 0;
+    } else {
+      this.budgetTokensPerCall = (int) (hedgingBudgetPercent * THREE_DECIMAL_PLACES_SCALE_UP / 100);
+      this.budgetTokens = new AtomicInteger(MAX_BUDGET_TOKENS);
+    }
+  }
+
+  /** Whether {@link #recordLatency} should be called for the completed calls. */
+  boolean isLatencyTracked() {
+    return latencies != null;
+  }
+
+  long currentTimeNanos() {
+    return timeProvider.currentTimeNanos();
+  }
+
+  /** Records the latency of a completed call. */
+  void recordLatency(long latencyNanos) {
+    if (latencies != null) {
+      latencies.record(latencyNanos);
+    }
+  }
+
+  /** Returns how long to wait before sending the next hedge. */
+  long currentHedgingDelayNanos() {
+    if (latencies != null) {
+      long percentileNanos = latencies.percentileNanos(hedgingDelayPercentile);
+      if (percentileNanos >= 0) {
+        return percentileNanos;
+      }
+    }
+    return hedgingDelayNanos;
+  }
+
+  /** Adds the budget earned by a new call. */
+  void onCallStarted() {
+    if (budgetTokens == null) {
+      return;
+    }
+    while (true) {
+      int currentCount = budgetTokens.get();
+      if (currentCount >= MAX_BUDGET_TOKENS) {
+        return;
+      }
+      int incremented = Math.min(currentCount + budgetTokensPerCall, MAX_BUDGET_TOKENS);
+      if (budgetTokens.compareAndSet(currentCount, incremented)) {
+        return;
+      }
+    }
+  }
+
+  /** Takes one hedge out of the budget, returning {@code false} if there is none left. */
+  boolean tryAcquireHedge() {
+    if (budgetTokens == null) {
+      return true;
+    }
+    while (true) {
+      int currentCount = budgetTokens.get();
+      if (currentCount < THREE_DECIMAL_PLACES_SCALE_UP) {
+        return false;
+      }
+      if (budgetTokens.compareAndSet(currentCount, currentCount - THREE_DECIMAL_PLACES_SCALE_UP)) {
+        return true;
+      }
+    }
   }
 
   @Override
   public boolean equals(Object other) {
+    // The latencies and the budget are not compared, so that an unchanged config keeps them.
     if (this == other) {
       return true;
     }
@@ -53,12 +165,16 @@ final class HedgingPolicy {
     HedgingPolicy that = (HedgingPolicy) other;
     return maxAttempts == that.maxAttempts
         && hedgingDelayNanos == that.hedgingDelayNanos
-        && Objects.equal(nonFatalStatusCodes, that.nonFatalStatusCodes);
+        && Objects.equal(nonFatalStatusCodes, that.nonFatalStatusCodes)
+        && Objects.equal(hedgingDelayPercentile, that.hedgingDelayPercentile)
+        && Objects.equal(hedgingBudgetPercent, that.hedgingBudgetPercent);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(maxAttempts, hedgingDelayNanos, nonFatalStatusCodes);
+    return Objects.hashCode(
+        maxAttempts, hedgingDelayNanos, nonFatalStatusCodes, hedgingDelayPercentile,
+        hedgingBudgetPercent);
   }
 
   @Override
@@ -67,6 +183,8 @@ final class HedgingPolicy {
         .add("maxAttempts", maxAttempts)
         .add("hedgingDelayNanos", hedgingDelayNanos)
         .add("nonFatalStatusCodes", nonFatalStatusCodes)
+        .add("hedgingDelayPercentile", hedgingDelayPercentile)
+        .add("hedgingBudgetPercent", hedgingBudgetPercent)
         .toString();
   }
 }
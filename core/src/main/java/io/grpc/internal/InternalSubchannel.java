@@ -27,8 +27,8 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.SettableFuture;
 import com.google.errorprone.annotations.ForOverride;
 import io.grpc.Attributes;
 import io.grpc.CallOptions;
@@ -44,6 +44,7 @@ import io.grpc.InternalChannelz.ChannelStats;
 import io.grpc.InternalInstrumented;
 import io.grpc.InternalLogId;
 import io.grpc.InternalWithLogId;
+import io.grpc.LoadBalancer.CreateSubchannelArgs;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
@@ -53,7 +54,10 @@ import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -65,10 +69,20 @@ import javax.annotation.concurrent.ThreadSafe;
 @ThreadSafe
 final class InternalSubchannel implements InternalInstrumented<ChannelStats>, TransportProvider {
 
+  /**
+   * The delay before also connecting to the next address while a connection attempt is pending,
+   * as in RFC 8305 ("Happy Eyeballs"). The first transport to become ready is used, and the others
+   * are shut down. Zero, the default, tries the addresses one after another.
+   */
+  static final CreateSubchannelArgs.Key<Long> CONNECTION_ATTEMPT_DELAY_NANOS =
+      CreateSubchannelArgs.Key.createWithDefault(
+          "internal:connection-attempt-delay-nanos", 0L);
+
   private final InternalLogId logId;
   private final String authority;
   private final String userAgent;
   private final BackoffPolicy.Provider backoffPolicyProvider;
+  private final long connectionAttemptDelayNanos;
   private final Callback callback;
   private final ClientTransportFactory transportFactory;
   private final ScheduledExecutorService scheduledExecutor;
@@ -83,8 +97,8 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
   private final SynchronizationContext syncContext;
 
   /**
-   * The index of the address corresponding to pendingTransport/activeTransport, or at beginning if
-   * both are null.
+   * The index of the address of the latest pending transport, or of activeTransport, or at
+   * beginning if there are neither.
    *
    * <p>Note: any {@link Index#updateAddresses(List)} should also update {@link #addressGroups}.
    */
@@ -112,6 +126,12 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
 
   @Nullable
   private ScheduledHandle reconnectTask;
+  /**
+   * Starts a transport to the next address while the pending ones are still connecting.
+   * Non-{@code null} only while racing addresses.
+   */
+  @Nullable
+  private ScheduledHandle connectionAttemptTask;
   @Nullable
   private ScheduledHandle shutdownDueToUpdateTask;
   @Nullable
@@ -122,7 +142,7 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
    * will be present, but previously used transports that still have streams or are stopping may
    * also be present.
    */
-  private final Collection<ConnectionClientTransport> transports = new ArrayList<>();
+  private final Collection<ConnectionClientTransport> transports = new CopyOnWriteArrayList<>();
 
   // Must only be used from syncContext
   private final InUseStateAggregator<ConnectionClientTransport> inUseStateAggregator =
@@ -139,10 +159,12 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
       };
 
   /**
-   * The to-be active transport, which is not ready yet.
+   * The to-be active transports, which are not ready yet, and their addresses in {@link
+   * #addressIndex}, in the order they were started. There is more than one only while racing
+   * addresses.
    */
-  @Nullable
-  private ConnectionClientTransport pendingTransport;
+  private final Map<ConnectionClientTransport, SocketAddress> pendingTransports =
+      new LinkedHashMap<>();
 
   /**
    * The transport for new outgoing requests. Non-null only in READY state.
@@ -155,7 +177,7 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
   private Status shutdownReason;
 
   InternalSubchannel(List<EquivalentAddressGroup> addressGroups, String authority, String userAgent,
-      BackoffPolicy.Provider backoffPolicyProvider,
+      BackoffPolicy.Provider backoffPolicyProvider, long connectionAttemptDelayNanos,
       ClientTransportFactory transportFactory, ScheduledExecutorService scheduledExecutor,
       Supplier<Stopwatch> stopwatchSupplier, SynchronizationContext syncContext, Callback callback,
       InternalChannelz channelz, CallTracer callsTracer, ChannelTracer channelTracer,
@@ -170,6 +192,7 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
     this.authority = authority;
     this.userAgent = userAgent;
     this.backoffPolicyProvider = backoffPolicyProvider;
+    this.connectionAttemptDelayNanos = connectionAttemptDelayNanos;
     this.transportFactory = transportFactory;
     this.scheduledExecutor = scheduledExecutor;
     this.connectingTimer = stopwatchSupplier.get();
@@ -228,7 +251,8 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
     if (addressIndex.isAtBeginning()) {
       connectingTimer.reset().start();
     }
-    SocketAddress address = addressIndex.getCurrentAddress();
+    SocketAddress indexAddress = addressIndex.getCurrentAddress();
+    SocketAddress address = indexAddress;
 
     HttpConnectProxiedSocketAddress proxiedAddr = null;
     if (address instanceof HttpConnectProxiedSocketAddress) {
@@ -254,13 +278,69 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
                 .newClientTransport(address, options, transportLogger), callsTracer);
     transportLogger.logId = transport.getLogId();
     channelz.addClientSocket(transport);
-    pendingTransport = transport;
+    pendingTransports.put(transport, indexAddress);
     transports.add(transport);
     Runnable runnable = transport.start(new TransportListener(transport, address));
     if (runnable != null) {
       syncContext.executeLater(runnable);
     }
     channelLogger.log(ChannelLogLevel.INFO, "Started transport {0}", transportLogger.logId);
+    if (connectionAttemptDelayNanos > 0 && addressIndex.hasNextAddress()) {
+      scheduleConnectionAttempt();
+    }
+  }
+
+  /**
+   * Starts a transport to the next address after {@link #connectionAttemptDelayNanos}, without
+   * waiting for the pending ones to fail.
+   */
+  private void scheduleConnectionAttempt() {
+    syncContext.throwIfNotInThisSynchronizationContext();
+
+    class NextConnectionAttempt implements Runnable {
+      @Override
+      public void run() {
+        connectionAttemptTask = null;
+        if (!addressIndex.hasNextAddress()) {
+          // The addresses have been updated since
+          return;
+        }
+        addressIndex.increment();
+        channelLogger.log(
+            ChannelLogLevel.INFO, "No transport ready after {0} ns, racing the next address",
+            connectionAttemptDelayNanos);
+        startNewTransport();
+      }
+    }
+
+    Preconditions.checkState(
+        connectionAttemptTask == null, "previous connectionAttemptTask is not done");
+    connectionAttemptTask = syncContext.schedule(
+        new NextConnectionAttempt(),
+        connectionAttemptDelayNanos,
+        TimeUnit.NANOSECONDS,
+        scheduledExecutor);
+  }
+
+  private void cancelConnectionAttemptTask() {
+    syncContext.throwIfNotInThisSynchronizationContext();
+
+    if (connectionAttemptTask != null) {
+      connectionAttemptTask.cancel();
+      connectionAttemptTask = null;
+    }
+  }
+
+  /** Shuts down the pending transports and forgets them. */
+  private void shutdownPendingTransports(Status reason) {
+    syncContext.throwIfNotInThisSynchronizationContext();
+
+    List<ConnectionClientTransport> savedPendingTransports =
+        new ArrayList<>(pendingTransports.keySet());
+    pendingTransports.clear();
+    for (ConnectionClientTransport transport : savedPendingTransports) {
+      transport.shutdown(reason);
+    }
   }
 
   /**
@@ -359,13 +439,20 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
               addressIndex.reset();
               gotoNonErrorState(IDLE);
             } else {
-              pendingTransport.shutdown(
+              cancelConnectionAttemptTask();
+              shutdownPendingTransports(
                   Status.UNAVAILABLE.withDescription(
                     "InternalSubchannel closed pending transport due to address change"));
-              pendingTransport = null;
               addressIndex.reset();
               startNewTransport();
             }
+          } else if (state.getState() == CONNECTING) {
+            shutdownRemovedPendingTransports(newImmutableAddressGroups);
+            if (connectionAttemptDelayNanos > 0 && connectionAttemptTask == null
+                && addressIndex.hasNextAddress()) {
+              // There are new addresses to race
+              scheduleConnectionAttempt();
+            }
           }
         }
         if (savedTransport != null) {
@@ -401,26 +488,57 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
     });
   }
 
+  /** Shuts down the transports still racing for addresses that are not in {@code groups}. */
+  private void shutdownRemovedPendingTransports(List<EquivalentAddressGroup> groups) {
+    List<ConnectionClientTransport> removedTransports = new ArrayList<>();
+    for (Map.Entry<ConnectionClientTransport, SocketAddress> entry :
+        pendingTransports.entrySet()) {
+      if (!containsAddress(groups, entry.getValue())) {
+        removedTransports.add(entry.getKey());
+      }
+    }
+    for (ConnectionClientTransport transport : removedTransports) {
+      pendingTransports.remove(transport);
+      transport.shutdown(
+          Status.UNAVAILABLE.withDescription(
+              "InternalSubchannel closed pending transport due to address change"));
+    }
+    if (pendingTransports.isEmpty()) {
+      // The current address had already failed, while the others were racing
+      cancelConnectionAttemptTask();
+      addressIndex.reset();
+      startNewTransport();
+    }
+  }
+
+  private static boolean containsAddress(
+      List<EquivalentAddressGroup> groups, SocketAddress address) {
+    for (EquivalentAddressGroup group : groups) {
+      if (group.getAddresses().contains(address)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void shutdown(final Status reason) {
     syncContext.execute(new Runnable() {
       @Override
       public void run() {
         ManagedClientTransport savedActiveTransport;
-        ConnectionClientTransport savedPendingTransport;
         if (state.getState() == SHUTDOWN) {
           return;
         }
         shutdownReason = reason;
         savedActiveTransport = activeTransport;
-        savedPendingTransport = pendingTransport;
         activeTransport = null;
-        pendingTransport = null;
         gotoNonErrorState(SHUTDOWN);
         addressIndex.reset();
         if (transports.isEmpty()) {
           handleTermination();
         }  // else: the callback will be run once all transports have been terminated
         cancelReconnectTask();
+        cancelConnectionAttemptTask();
         if (shutdownDueToUpdateTask != null) {
           shutdownDueToUpdateTask.cancel();
           shutdownDueToUpdateTransport.shutdown(reason);
@@ -430,9 +548,7 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
         if (savedActiveTransport != null) {
           savedActiveTransport.shutdown(reason);
         }
-        if (savedPendingTransport != null) {
-          savedPendingTransport.shutdown(reason);
-        }
+        shutdownPendingTransports(reason);
       }
     });
   }
@@ -503,21 +619,14 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
 
   @Override
   public ListenableFuture<ChannelStats> getStats() {
-    final SettableFuture<ChannelStats> channelStatsFuture = SettableFuture.create();
-    syncContext.execute(new Runnable() {
-      @Override
-      public void run() {
-        ChannelStats.Builder builder = new ChannelStats.Builder();
-        List<EquivalentAddressGroup> addressGroupsSnapshot = addressIndex.getGroups();
-        List<InternalWithLogId> transportsSnapshot = new ArrayList<InternalWithLogId>(transports);
-        builder.setTarget(addressGroupsSnapshot.toString()).setState(getState());
-        builder.setSockets(transportsSnapshot);
-        callsTracer.updateBuilder(builder);
-        channelTracer.updateBuilder(builder);
-        channelStatsFuture.set(builder.build());
-      }
-    });
-    return channelStatsFuture;
+    // Read without syncContext: transports is copy-on-write and the rest is volatile
+    ChannelStats.Builder builder = new ChannelStats.Builder();
+    List<InternalWithLogId> transportsSnapshot = new ArrayList<InternalWithLogId>(transports);
+    builder.setTarget(addressGroups.toString()).setState(getState());
+    builder.setSockets(transportsSnapshot);
+    callsTracer.updateBuilder(builder);
+    channelTracer.updateBuilder(builder);
+    return Futures.immediateFuture(builder.build());
   }
 
   ConnectivityState getState() {
@@ -553,9 +662,14 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
             Preconditions.checkState(activeTransport == null,
                 "Unexpected non-null activeTransport");
             transport.shutdown(shutdownReason);
-          } else if (pendingTransport == transport) {
+          } else if (pendingTransports.containsKey(transport)) {
             activeTransport = transport;
-            pendingTransport = null;
+            addressIndex.seekTo(pendingTransports.remove(transport));
+            cancelConnectionAttemptTask();
+            // The addresses raced, and this one won
+            shutdownPendingTransports(
+                Status.UNAVAILABLE.withDescription(
+                    "InternalSubchannel closed pending transport as another one is ready"));
             gotoNonErrorState(READY);
           }
         }
@@ -582,20 +696,21 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
             activeTransport = null;
             addressIndex.reset();
             gotoNonErrorState(IDLE);
-          } else if (pendingTransport == transport) {
+          } else if (pendingTransports.remove(transport) != null) {
             Preconditions.checkState(state.getState() == CONNECTING,
                 "Expected state is CONNECTING, actual state is %s", state.getState());
-            addressIndex.increment();
-            // Continue reconnect if there are still addresses to try.
-            if (!addressIndex.isValid()) {
-              pendingTransport = null;
+            cancelConnectionAttemptTask();
+            if (addressIndex.hasNextAddress()) {
+              // Continue reconnect if there are still addresses to try, without waiting for the
+              // other pending transports.
+              addressIndex.increment();
+              startNewTransport();
+            } else if (pendingTransports.isEmpty()) {
               addressIndex.reset();
               // Initiate backoff
               // Transition to TRANSIENT_FAILURE
               scheduleBackoff(s);
-            } else {
-              startNewTransport();
-            }
+            }  // else: wait for the pending transports of the other addresses
           }
         }
       });
@@ -718,6 +833,12 @@ final class InternalSubchannel implements InternalInstrumented<ChannelStats>, Tr
       return groupIndex == 0 && addressIndex == 0;
     }
 
+    /** Returns true if {@link #increment} would leave the index valid. */
+    public boolean hasNextAddress() {
+      return groupIndex < addressGroups.size() - 1
+          || addressIndex < addressGroups.get(groupIndex).getAddresses().size() - 1;
+    }
+
     public void increment() {
       EquivalentAddressGroup group = addressGroups.get(groupIndex);
       addressIndex++;
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A fixed-size histogram of recent latencies, for estimating percentiles without keeping the
+ * samples. The latencies are recorded in {@link LongHistogram}s, so an estimate is within 12.5% of
+ * the true value.
+ *
+ * <p>Samples are kept for between one and two windows. Recording is a pair of atomic increments;
+ * only rotating the windows takes a lock.
+ */
+@ThreadSafe
+final class LatencyHistogram {
+  private final long windowNanos;
+  private final int minSampleCount;
+  private final TimeProvider timeProvider;
+  private final Object lock = new Object();
+
+  private volatile Window current;
+  private volatile Window previous;
+
+  LatencyHistogram(long windowNanos, int minSampleCount, TimeProvider timeProvider) {
+    checkArgument(windowNanos > 0, "windowNanos must be positive");
+    checkArgument(minSampleCount > 0, "minSampleCount must be positive");
+    this.windowNanos = windowNanos;
+    this.minSampleCount = minSampleCount;
+    this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+    long now = timeProvider.currentTimeNanos();
+    this.current = new Window(now);
+    this.previous = new Window(now - windowNanos);
+  }
+
+  /** Records a latency. Negative values are recorded as zero. */
+  void record(long latencyNanos) {
+    Window window = currentWindow();
+    window.counts.record(latencyNanos);
+    window.total.incrementAndGet();
+  }
+
+  /**
+   * Returns the estimated latency at {@code percentile} (in (0, 100)) of the recent samples, or
+   * {@code -1} if fewer than the minimum number of samples have been recorded.
+   */
+  long percentileNanos(double percentile) {
+    Window cur = currentWindow();
+    Window prev = previous;
+    long total = cur.total.get() + prev.total.get();
+    if (total < minSampleCount) {
+      return -1;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * total);
+    long seen = 0;
+    for (int i = 0; i < LongHistogram.BUCKET_COUNT; i++) {
+      seen += cur.counts.getCount(i) + prev.counts.getCount(i);
+      if (seen >= rank) {
+        return LongHistogram.bucketUpperBound(i);
+      }
+    }
+    // The totals are incremented after the counts, so a concurrent record() can leave the loop
+    // short by a few samples.
+    return LongHistogram.bucketUpperBound(LongHistogram.BUCKET_COUNT - 1);
+  }
+
+  private Window currentWindow() {
+    Window window = current;
+    long now = timeProvider.currentTimeNanos();
+    if (now - window.startNanos < windowNanos) {
+      return window;
+    }
+    synchronized (lock) {
+      window = current;
+      long elapsed = now - window.startNanos;
+      if (elapsed >= windowNanos) {
+        // Keep the window that just ended, unless it is stale as well.
+        long start = now - elapsed % windowNanos;
+        previous = elapsed < 2 * windowNanos ? window : new Window(start - windowNanos);
+        current = window = new Window(start);
+      }
+      return window;
+    }
+  }
+
+  private static final class Window {
+    final long startNanos;
+    final LongHistogram counts = new LongHistogram();
+    final AtomicLong total = new AtomicLong();
+
+    Window(long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+}
@@ -20,7 +20,7 @@ package io.grpc.internal;
  * A factory for creating {@link LongCounter} objects. The concrete implementation returned may
  * be platform dependent.
  */
-final class LongCounterFactory {
+public final class LongCounterFactory {
   /**
    * Creates a LongCounter.
    */
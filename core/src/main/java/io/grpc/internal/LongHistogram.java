@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A lock-free histogram of non-negative longs, in the manner of HdrHistogram. Buckets are
+ * log-linear: each power of two is split into {@value #SUB_BUCKETS} buckets, so a value is known
+ * to within 12.5%, and the whole range of a {@code long} fits in under 500 counters. Recording is
+ * a single atomic increment.
+ */
+@ThreadSafe
+public final class LongHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  public static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  /** Records a value. Negative values are recorded as zero. */
+  public void record(long value) {
+    counts.incrementAndGet(bucketIndex(Math.max(value, 0)));
+  }
+
+  /** Returns the number of values recorded in the bucket. */
+  public long getCount(int bucket) {
+    return counts.get(bucket);
+  }
+
+  /** Returns a copy of the counts of all the buckets. */
+  public long[] getCounts() {
+    long[] copy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy[i] = counts.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the upper bound of the bucket holding the value at {@code percentile} (in [0, 100])
+   * of {@code counts}, or {@code -1} if {@code counts} is empty.
+   */
+  public static long percentile(long[] counts, double percentile) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return -1;
+    }
+    long rank = Math.max((long) Math.ceil(percentile / 100 * total), 1);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return bucketUpperBound(i);
+      }
+    }
+    return bucketUpperBound(counts.length - 1);
+  }
+
+  /** Returns the bucket a non-negative value is recorded in. */
+  public static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the largest value recorded in the bucket. */
+  public static long bucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -28,8 +28,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.SettableFuture;
 import io.grpc.Attributes;
 import io.grpc.CallCredentials;
 import io.grpc.CallOptions;
@@ -96,6 +96,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -225,18 +226,18 @@ final class ManagedChannelImpl extends ManagedChannel implements
   // Must be accessed from the syncContext
   private boolean panicMode;
 
-  // Must be mutated from syncContext
-  // If any monitoring hook to be added later needs to get a snapshot of this Set, we could
-  // switch to a ConcurrentHashMap.
-  private final Set<InternalSubchannel> subchannels = new HashSet<>(16, .75f);
+  // Must be mutated from syncContext. Concurrent so that channelz can read it from any thread.
+  private final Set<InternalSubchannel> subchannels =
+      Collections.newSetFromMap(new ConcurrentHashMap<InternalSubchannel, Boolean>(16, .75f));
 
   // Must be accessed from syncContext
   @Nullable
   private Collection<RealChannel.PendingCall<?, ?>> pendingCalls;
   private final Object pendingCallsInUseObject = new Object();
 
-  // Must be mutated from syncContext
-  private final Set<OobChannel> oobChannels = new HashSet<>(1, .75f);
+  // Must be mutated from syncContext. Concurrent so that channelz can read it from any thread.
+  private final Set<OobChannel> oobChannels =
+      Collections.newSetFromMap(new ConcurrentHashMap<OobChannel, Boolean>(1, .75f));
 
   // reprocess() must be run from syncContext
   private final DelayedClientTransport delayedTransport;
@@ -318,25 +319,24 @@ final class ManagedChannelImpl extends ManagedChannel implements
 
   @Override
   public ListenableFuture<ChannelStats> getStats() {
-    final SettableFuture<ChannelStats> ret = SettableFuture.create();
-    final class StatsFetcher implements Runnable {
-      @Override
-      public void run() {
-        ChannelStats.Builder builder = new InternalChannelz.ChannelStats.Builder();
-        channelCallTracer.updateBuilder(builder);
-        channelTracer.updateBuilder(builder);
-        builder.setTarget(target).setState(channelStateManager.getState());
-        List<InternalWithLogId> children = new ArrayList<>();
-        children.addAll(subchannels);
-        children.addAll(oobChannels);
-        builder.setSubchannels(children);
-        ret.set(builder.build());
-      }
-    }
+    // Everything here is safe to read from any thread, so the stats do not wait for syncContext
+    ChannelStats.Builder builder = new InternalChannelz.ChannelStats.Builder();
+    channelCallTracer.updateBuilder(builder);
+    channelTracer.updateBuilder(builder);
+    builder.setTarget(target).setState(channelStateManager.getState());
+    List<InternalWithLogId> children = new ArrayList<>();
+    children.addAll(subchannels);
+    children.addAll(oobChannels);
+    builder.setSubchannels(children);
+    return Futures.immediateFuture(builder.build());
+  }
 
-    // subchannels and oobchannels can only be accessed from syncContext
-    syncContext.execute(new StatsFetcher());
-    return ret;
+  // Lets channelz report the entity when its calls or trace change.
+  private void trackChanges(
+      InternalWithLogId entity, CallTracer callTracer, ChannelTracer channelTracer) {
+    InternalChannelz.ChangeMarker changeMarker = channelz.getChangeMarker(entity.getLogId());
+    callTracer.setChangeMarker(changeMarker);
+    channelTracer.setChangeMarker(changeMarker);
   }
 
   @Override
@@ -575,16 +575,14 @@ final class ManagedChannelImpl extends ManagedChannel implements
 
           @Override
           ClientStream newSubstream(
-              Metadata newHeaders, ClientStreamTracer.Factory factory, int previousAttempts,
-              boolean isTransparentRetry) {
-            CallOptions newOptions = callOptions.withStreamTracerFactory(factory);
+              Metadata newHeaders, int previousAttempts, boolean isTransparentRetry) {
             ClientStreamTracer[] tracers = GrpcUtil.getClientStreamTracers(
-                newOptions, newHeaders, previousAttempts, isTransparentRetry);
+                callOptions, newHeaders, previousAttempts, isTransparentRetry);
             ClientTransport transport =
-                getTransport(new PickSubchannelArgsImpl(method, newHeaders, newOptions));
+                getTransport(new PickSubchannelArgsImpl(method, newHeaders, callOptions));
             Context origContext = context.attach();
             try {
-              return transport.newStream(method, newHeaders, newOptions, tracers);
+              return transport.newStream(method, newHeaders, callOptions, tracers);
             } finally {
               context.detach(origContext);
             }
@@ -721,6 +719,7 @@ final class ManagedChannelImpl extends ManagedChannel implements
     channelCallTracer = callTracerFactory.create();
     this.channelz = checkNotNull(builder.channelz);
     channelz.addRootChannel(this);
+    trackChanges(this, channelCallTracer, channelTracer);
 
     if (!lookUpServiceConfig) {
       if (defaultServiceConfig != null) {
@@ -1524,9 +1523,10 @@ final class ManagedChannelImpl extends ManagedChannel implements
           new ChannelTracer(
               oobLogId, maxTraceEvents, oobChannelCreationTime,
               "OobChannel for " + addressGroup);
+      CallTracer oobCallTracer = callTracerFactory.create();
       final OobChannel oobChannel = new OobChannel(
           authority, balancerRpcExecutorPool, oobTransportFactory.getScheduledExecutorService(),
-          syncContext, callTracerFactory.create(), oobChannelTracer, channelz, timeProvider);
+          syncContext, oobCallTracer, oobChannelTracer, channelz, timeProvider);
       channelTracer.reportEvent(new ChannelTrace.Event.Builder()
           .setDescription("Child OobChannel created")
           .setSeverity(ChannelTrace.Event.Severity.CT_INFO)
@@ -1555,14 +1555,16 @@ final class ManagedChannelImpl extends ManagedChannel implements
         }
       }
 
+      CallTracer subchannelCallTracer = callTracerFactory.create();
       final InternalSubchannel internalSubchannel = new InternalSubchannel(
           addressGroup,
-          authority, userAgent, backoffPolicyProvider, oobTransportFactory,
+          authority, userAgent, backoffPolicyProvider, /* connectionAttemptDelayNanos= */ 0,
+          oobTransportFactory,
           oobTransportFactory.getScheduledExecutorService(), stopwatchSupplier, syncContext,
           // All callback methods are run from syncContext
           new ManagedOobChannelCallback(),
           channelz,
-          callTracerFactory.create(),
+          subchannelCallTracer,
           subchannelTracer,
           subchannelLogId,
           subchannelLogger);
@@ -1574,6 +1576,8 @@ final class ManagedChannelImpl extends ManagedChannel implements
           .build());
       channelz.addSubchannel(oobChannel);
       channelz.addSubchannel(internalSubchannel);
+      trackChanges(oobChannel, oobCallTracer, oobChannelTracer);
+      trackChanges(internalSubchannel, subchannelCallTracer, subchannelTracer);
       oobChannel.setSubchannel(internalSubchannel);
       final class AddOobChannel implements Runnable {
         @Override
@@ -1788,7 +1792,10 @@ final class ManagedChannelImpl extends ManagedChannel implements
             // Try to use config if returned from name resolver
             // Otherwise, try to use the default config if available
             if (validServiceConfig != null) {
-              effectiveServiceConfig = validServiceConfig;
+              // Keep the current instance of an unchanged config, so that per-method state such as
+              // adaptive throttling history survives re-resolution.
+              effectiveServiceConfig = validServiceConfig.equals(lastServiceConfig)
+                  ? lastServiceConfig : validServiceConfig;
               if (resolvedConfigSelector != null) {
                 realChannel.updateConfigSelector(resolvedConfigSelector);
                 if (effectiveServiceConfig.getDefaultConfigSelector() != null) {
@@ -1996,18 +2003,20 @@ final class ManagedChannelImpl extends ManagedChannel implements
         }
       }
 
+      CallTracer subchannelCallTracer = callTracerFactory.create();
       final InternalSubchannel internalSubchannel = new InternalSubchannel(
           args.getAddresses(),
           authority(),
           userAgent,
           backoffPolicyProvider,
+          args.getOption(InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS),
           transportFactory,
           transportFactory.getScheduledExecutorService(),
           stopwatchSupplier,
           syncContext,
           new ManagedInternalSubchannelCallback(),
           channelz,
-          callTracerFactory.create(),
+          subchannelCallTracer,
           subchannelTracer,
           subchannelLogId,
           subchannelLogger);
@@ -2021,6 +2030,7 @@ final class ManagedChannelImpl extends ManagedChannel implements
 
       this.subchannel = internalSubchannel;
       channelz.addSubchannel(internalSubchannel);
+      trackChanges(internalSubchannel, subchannelCallTracer, subchannelTracer);
       subchannels.add(internalSubchannel);
     }
 
@@ -326,6 +326,15 @@ public final class ManagedChannelImplBuilder
     return this;
   }
 
+  @Override
+  public ManagedChannelImplBuilder virtualThreadExecutor() {
+    Executor executor = VirtualThreadExecutor.getInstance();
+    if (executor == null) {
+      log.warning("Virtual threads need Java 21, using the default executor instead");
+    }
+    return executor(executor);
+  }
+
   @Override
   public ManagedChannelImplBuilder offloadExecutor(Executor executor) {
     if (executor != null) {
@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -222,13 +223,15 @@ final class ManagedChannelServiceConfig {
         && Objects.equal(serviceMethodMap, that.serviceMethodMap)
         && Objects.equal(serviceMap, that.serviceMap)
         && Objects.equal(retryThrottling, that.retryThrottling)
-        && Objects.equal(loadBalancingConfig, that.loadBalancingConfig);
+        && Objects.equal(loadBalancingConfig, that.loadBalancingConfig)
+        && Objects.equal(healthCheckingConfig, that.healthCheckingConfig);
   }
 
   @Override
   public int hashCode() {
     return Objects.hashCode(
-        defaultMethodConfig, serviceMethodMap, serviceMap, retryThrottling, loadBalancingConfig);
+        defaultMethodConfig, serviceMethodMap, serviceMap, retryThrottling, loadBalancingConfig,
+        healthCheckingConfig);
   }
 
   @Override
@@ -256,6 +259,7 @@ final class ManagedChannelServiceConfig {
     final Integer maxOutboundMessageSize;
     final RetryPolicy retryPolicy;
     final HedgingPolicy hedgingPolicy;
+    final AdaptiveThrottlingPolicy adaptiveThrottlingPolicy;
 
     /**
      * Constructor.
@@ -291,6 +295,11 @@ final class ManagedChannelServiceConfig {
           retryEnabled ? ServiceConfigUtil.getHedgingPolicyFromMethodConfig(methodConfig) : null;
       hedgingPolicy = hedgingPolicyMap == null
           ? null : hedgingPolicy(hedgingPolicyMap, maxHedgedAttemptsLimit);
+
+      Map<String, ?> adaptiveThrottlingMap =
+          ServiceConfigUtil.getAdaptiveThrottlingFromMethodConfig(methodConfig);
+      adaptiveThrottlingPolicy = adaptiveThrottlingMap == null
+          ? null : adaptiveThrottlingPolicy(adaptiveThrottlingMap);
     }
 
     @Override
@@ -301,7 +310,8 @@ final class ManagedChannelServiceConfig {
           maxInboundMessageSize,
           maxOutboundMessageSize,
           retryPolicy,
-          hedgingPolicy);
+          hedgingPolicy,
+          adaptiveThrottlingPolicy);
     }
 
     @Override
@@ -315,7 +325,8 @@ final class ManagedChannelServiceConfig {
           && Objects.equal(this.maxInboundMessageSize, that.maxInboundMessageSize)
           && Objects.equal(this.maxOutboundMessageSize, that.maxOutboundMessageSize)
           && Objects.equal(this.retryPolicy, that.retryPolicy)
-          && Objects.equal(this.hedgingPolicy, that.hedgingPolicy);
+          && Objects.equal(this.hedgingPolicy, that.hedgingPolicy)
+          && Objects.equal(this.adaptiveThrottlingPolicy, that.adaptiveThrottlingPolicy);
     }
 
     @Override
@@ -327,6 +338,7 @@ final class ManagedChannelServiceConfig {
           .add("maxOutboundMessageSize", maxOutboundMessageSize)
           .add("retryPolicy", retryPolicy)
           .add("hedgingPolicy", hedgingPolicy)
+          .add("adaptiveThrottlingPolicy", adaptiveThrottlingPolicy)
           .toString();
     }
 
@@ -391,9 +403,57 @@ final class ManagedChannelServiceConfig {
       checkArgument(
           hedgingDelayNanos >= 0, "hedgingDelay must not be negative: %s", hedgingDelayNanos);
 
+      Double hedgingDelayPercentile =
+          ServiceConfigUtil.getHedgingDelayPercentileFromHedgingPolicy(hedgingPolicy);
+      checkArgument(
+          hedgingDelayPercentile == null
+              || (hedgingDelayPercentile > 0 && hedgingDelayPercentile < 100),
+          "hedgingDelayPercentile must be in (0, 100): %s", hedgingDelayPercentile);
+
+      Double hedgingBudgetPercent =
+          ServiceConfigUtil.getHedgingBudgetPercentFromHedgingPolicy(hedgingPolicy);
+      checkArgument(
+          hedgingBudgetPercent == null
+              || (hedgingBudgetPercent > 0 && hedgingBudgetPercent <= 100),
+          "hedgingBudgetPercent must be in (0, 100]: %s", hedgingBudgetPercent);
+
       return new HedgingPolicy(
           maxAttempts, hedgingDelayNanos,
-          ServiceConfigUtil.getNonFatalStatusCodesFromHedgingPolicy(hedgingPolicy));
+          ServiceConfigUtil.getNonFatalStatusCodesFromHedgingPolicy(hedgingPolicy),
+          hedgingDelayPercentile, hedgingBudgetPercent, TimeProvider.MONOTONIC_TIME_PROVIDER);
+    }
+
+    private static AdaptiveThrottlingPolicy adaptiveThrottlingPolicy(
+        Map<String, ?> adaptiveThrottling) {
+      Double ratioForAccepts =
+          ServiceConfigUtil.getRatioForAcceptsFromAdaptiveThrottling(adaptiveThrottling);
+      if (ratioForAccepts == null) {
+        ratioForAccepts = (double) AdaptiveThrottler.DEFAULT_RATIO_FOR_ACCEPT;
+      }
+      checkArgument(
+          ratioForAccepts >= 1, "ratioForAccepts must be at least 1: %s", ratioForAccepts);
+
+      Integer requestsPadding =
+          ServiceConfigUtil.getRequestsPaddingFromAdaptiveThrottling(adaptiveThrottling);
+      if (requestsPadding == null) {
+        requestsPadding = AdaptiveThrottler.DEFAULT_REQUEST_PADDING;
+      }
+      checkArgument(
+          requestsPadding > 0, "requestsPadding must be greater than 0: %s", requestsPadding);
+
+      Long historyNanos =
+          ServiceConfigUtil.getHistoryNanosFromAdaptiveThrottling(adaptiveThrottling);
+      if (historyNanos == null) {
+        historyNanos = AdaptiveThrottler.DEFAULT_HISTORY_NANOS;
+      }
+      checkArgument(
+          historyNanos >= TimeUnit.SECONDS.toNanos(1),
+          "history must be at least 1s: %s", historyNanos);
+
+      return new AdaptiveThrottlingPolicy(
+          ratioForAccepts.floatValue(), requestsPadding, historyNanos,
+          ServiceConfigUtil.getThrottledStatusCodesFromAdaptiveThrottling(adaptiveThrottling),
+          TimeProvider.MONOTONIC_TIME_PROVIDER);
     }
   }
 
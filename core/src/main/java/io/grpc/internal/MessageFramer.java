@@ -22,10 +22,12 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.lang.Math.min;
 
 import com.google.common.io.ByteStreams;
+import io.grpc.ByteBufferDrainable;
 import io.grpc.Codec;
 import io.grpc.Compressor;
 import io.grpc.Drainable;
 import io.grpc.KnownLength;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Status;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -75,6 +77,8 @@ public class MessageFramer implements Framer {
   private WritableBuffer buffer;
   private Compressor compressor = Codec.Identity.NONE;
   private boolean messageCompression = true;
+  @Nullable
+  private MessageCompressionPolicy.Decider compressionDecider;
   private final OutputStreamAdapter outputStreamAdapter = new OutputStreamAdapter();
   private final ByteBuffer headerScratch = ByteBuffer.allocate(HEADER_LENGTH);
   private final WritableBufferAllocator bufferAllocator;
@@ -112,6 +116,12 @@ public class MessageFramer implements Framer {
     return this;
   }
 
+  @Override
+  public MessageFramer setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    compressionDecider = checkNotNull(decider, "decider");
+    return this;
+  }
+
   @Override
   public void setMaxOutboundMessageSize(int maxSize) {
     checkState(maxOutboundMessageSize == NO_MAX_OUTBOUND_MESSAGE_SIZE, "max size already set");
@@ -130,12 +140,15 @@ public class MessageFramer implements Framer {
     currentMessageSeqNo++;
     currentMessageWireSize = 0;
     statsTraceCtx.outboundMessage(currentMessageSeqNo);
-    boolean compressed = messageCompression && compressor != Codec.Identity.NONE;
+    boolean compressionEnabled = messageCompression && compressor != Codec.Identity.NONE;
+    boolean compressed = false;
     int written = -1;
     int messageLength = -2;
     try {
       messageLength = getKnownLength(message);
-      if (messageLength != 0 && compressed) {
+      compressed = compressionEnabled && messageLength != 0
+          && (compressionDecider == null || compressionDecider.shouldCompress(messageLength));
+      if (compressed) {
         written = writeCompressed(message, messageLength);
       } else {
         written = writeUncompressed(message, messageLength);
@@ -157,6 +170,14 @@ public class MessageFramer implements Framer {
       String err = String.format("Message length inaccurate %s != %s", written, messageLength);
       throw Status.INTERNAL.withDescription(err).asRuntimeException();
     }
+    if (compressionEnabled) {
+      long compressedSize = compressed ? currentMessageWireSize : -1;
+      if (compressed && compressionDecider != null) {
+        compressionDecider.messageCompressed(written, compressedSize);
+      }
+      statsTraceCtx.outboundMessageCompression(
+          currentMessageSeqNo, compressed, written, compressedSize);
+    }
     statsTraceCtx.outboundUncompressedSize(written);
     statsTraceCtx.outboundWireSize(currentMessageWireSize);
     statsTraceCtx.outboundMessageSent(currentMessageSeqNo, currentMessageWireSize, written);
@@ -225,6 +246,17 @@ public class MessageFramer implements Framer {
     if (buffer == null) {
       buffer = bufferAllocator.allocate(headerScratch.position() + messageLength);
     }
+    if (message instanceof ByteBufferDrainable
+        && buffer.writableBytes() >= headerScratch.position() + messageLength
+        && buffer.byteBufferSupported()) {
+      // The whole frame fits, so let the message serialize itself straight into the transport's
+      // memory instead of going through the OutputStream adapter.
+      buffer.write(headerScratch.array(), 0, headerScratch.position());
+      ByteBuffer target = buffer.getByteBuffer();
+      int written = ((ByteBufferDrainable) message).drainTo(target);
+      buffer.advanceWriteIndex(written);
+      return written;
+    }
     writeRaw(headerScratch.array(), 0, headerScratch.position());
     return writeToOutputStream(message, outputStreamAdapter);
   }
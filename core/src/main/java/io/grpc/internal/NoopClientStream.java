@@ -20,6 +20,7 @@ import io.grpc.Attributes;
 import io.grpc.Compressor;
 import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Status;
 import java.io.InputStream;
 import javax.annotation.Nonnull;
@@ -66,6 +67,11 @@ public class NoopClientStream implements ClientStream {
     // noop
   }
 
+  @Override
+  public void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider) {
+    // noop
+  }
+
   @Override
   public void optimizeForDirectExecutor() {}
 
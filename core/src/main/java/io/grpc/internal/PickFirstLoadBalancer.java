@@ -16,6 +16,7 @@
 
 package io.grpc.internal;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.grpc.ConnectivityState.CONNECTING;
 import static io.grpc.ConnectivityState.IDLE;
@@ -29,12 +30,14 @@ import io.grpc.EquivalentAddressGroup;
 import io.grpc.LoadBalancer;
 import io.grpc.Status;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A {@link LoadBalancer} that provides no load-balancing over the addresses from the {@link
  * io.grpc.NameResolver}.  The channel's default behavior is used, which is walking down the address
- * list and sticking to the first that works.
+ * list and sticking to the first that works. An address that has not connected within the
+ * connection attempt delay does not hold up the next one, which is then tried alongside it.
  */
 final class PickFirstLoadBalancer extends LoadBalancer {
   private final Helper helper;
@@ -48,9 +51,15 @@ final class PickFirstLoadBalancer extends LoadBalancer {
   public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
     List<EquivalentAddressGroup> servers = resolvedAddresses.getAddresses();
     if (subchannel == null) {
+      Object lbConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+      PickFirstLoadBalancerConfig config = lbConfig instanceof PickFirstLoadBalancerConfig
+          ? (PickFirstLoadBalancerConfig) lbConfig : PickFirstLoadBalancerConfig.DEFAULT;
       final Subchannel subchannel = helper.createSubchannel(
           CreateSubchannelArgs.newBuilder()
               .setAddresses(servers)
+              .addOption(
+                  InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS,
+                  config.connectionAttemptDelayNanos)
               .build());
       subchannel.start(new SubchannelStateListener() {
           @Override
@@ -169,4 +178,42 @@ final class PickFirstLoadBalancer extends LoadBalancer {
       return PickResult.withNoResult();
     }
   }
+
+  /**
+   * The config of pick_first. It is read when the subchannel is created, so later changes only
+   * apply after a name resolution error.
+   */
+  static final class PickFirstLoadBalancerConfig {
+    /** The Connection Attempt Delay recommended by RFC 8305. */
+    static final PickFirstLoadBalancerConfig DEFAULT =
+        new PickFirstLoadBalancerConfig(TimeUnit.MILLISECONDS.toNanos(250));
+
+    /** The delay before racing the next address, or 0 to try the addresses one at a time. */
+    final long connectionAttemptDelayNanos;
+
+    PickFirstLoadBalancerConfig(long connectionAttemptDelayNanos) {
+      checkArgument(
+          connectionAttemptDelayNanos >= 0, "connectionAttemptDelayNanos must not be negative");
+      this.connectionAttemptDelayNanos = connectionAttemptDelayNanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PickFirstLoadBalancerConfig
+          && connectionAttemptDelayNanos
+              == ((PickFirstLoadBalancerConfig) o).connectionAttemptDelayNanos;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.valueOf(connectionAttemptDelayNanos).hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("connectionAttemptDelayNanos", connectionAttemptDelayNanos)
+          .toString();
+    }
+  }
 }
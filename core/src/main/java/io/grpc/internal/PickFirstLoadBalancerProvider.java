@@ -19,16 +19,23 @@ package io.grpc.internal;
 import io.grpc.LoadBalancer;
 import io.grpc.LoadBalancerProvider;
 import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.PickFirstLoadBalancer.PickFirstLoadBalancerConfig;
 import java.util.Map;
 
 /**
  * Provider for the "pick_first" balancing policy.
  *
  * <p>This provides no load-balancing over the addresses from the {@link NameResolver}.  It walks
- * down the address list and sticks to the first that works.
+ * down the address list and sticks to the first that works. An address that has not connected
+ * within the optional {@code connectionAttemptDelay} (250ms by default) is raced with the next
+ * one; {@code "0s"} tries them one at a time:
+ *
+ * <pre>
+ * "loadBalancingConfig": [{"pick_first": {"connectionAttemptDelay": "0.25s"}}]
+ * </pre>
  */
 public final class PickFirstLoadBalancerProvider extends LoadBalancerProvider {
-  private static final String NO_CONFIG = "no service config";
 
   @Override
   public boolean isAvailable() {
@@ -53,6 +60,21 @@ public final class PickFirstLoadBalancerProvider extends LoadBalancerProvider {
   @Override
   public ConfigOrError parseLoadBalancingPolicyConfig(
       Map<String, ?> rawLoadBalancingPolicyConfig) {
-    return ConfigOrError.fromConfig(NO_CONFIG);
+    try {
+      Long delayNanos =
+          JsonUtil.getStringAsDuration(rawLoadBalancingPolicyConfig, "connectionAttemptDelay");
+      if (delayNanos == null) {
+        return ConfigOrError.fromConfig(PickFirstLoadBalancerConfig.DEFAULT);
+      }
+      if (delayNanos < 0) {
+        return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(
+            "connectionAttemptDelay must not be negative"));
+      }
+      return ConfigOrError.fromConfig(new PickFirstLoadBalancerConfig(delayNanos));
+    } catch (RuntimeException e) {
+      return ConfigOrError.fromError(
+          Status.INVALID_ARGUMENT.withCause(e).withDescription(
+              "Failed parsing configuration for " + getPolicyName()));
+    }
   }
 }
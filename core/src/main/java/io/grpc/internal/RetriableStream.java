@@ -22,18 +22,25 @@ import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
+import com.google.common.io.ByteStreams;
 import io.grpc.Attributes;
-import io.grpc.ClientStreamTracer;
+import io.grpc.ByteBufferDrainable;
 import io.grpc.Compressor;
 import io.grpc.Deadline;
 import io.grpc.DecompressorRegistry;
+import io.grpc.KnownLength;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 import io.grpc.SynchronizationContext;
 import io.grpc.internal.ClientStreamListener.RpcProgress;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -118,6 +125,9 @@ abstract class RetriableStream<ReqT> implements ClientStream {
   private long nextBackoffIntervalNanos;
   private Status cancellationStatus;
   private boolean isClosed;
+  // Only set when the hedging policy tracks latencies. Written before the first substream is
+  // started, so it is visible to the substream listeners.
+  private long callStartNanos;
 
   RetriableStream(
       MethodDescriptor<ReqT, ?> method, Metadata headers,
@@ -219,19 +229,9 @@ abstract class RetriableStream<ReqT> implements ClientStream {
 
   private Substream createSubstream(int previousAttemptCount, boolean isTransparentRetry) {
     Substream sub = new Substream(previousAttemptCount);
-    // one tracer per substream
-    final ClientStreamTracer bufferSizeTracer = new BufferSizeTracer(sub);
-    ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.InternalLimitedInfoFactory() {
-      @Override
-      public ClientStreamTracer newClientStreamTracer(
-          ClientStreamTracer.StreamInfo info, Metadata headers) {
-        return bufferSizeTracer;
-      }
-    };
-
     Metadata newHeaders = updateHeaders(headers, previousAttemptCount);
     // NOTICE: This set _must_ be done before stream.start() and it actually is.
-    sub.stream = newSubstream(newHeaders, tracerFactory, previousAttemptCount, isTransparentRetry);
+    sub.stream = newSubstream(newHeaders, previousAttemptCount, isTransparentRetry);
     return sub;
   }
 
@@ -240,8 +240,7 @@ abstract class RetriableStream<ReqT> implements ClientStream {
    * Client stream is not yet started.
    */
   abstract ClientStream newSubstream(
-      Metadata headers, ClientStreamTracer.Factory tracerFactory, int previousAttempts,
-      boolean isTransparentRetry);
+      Metadata headers, int previousAttempts, boolean isTransparentRetry);
 
   /** Adds grpc-previous-rpc-attempts in the headers of a retry/hedging RPC. */
   @VisibleForTesting
@@ -363,8 +362,12 @@ abstract class RetriableStream<ReqT> implements ClientStream {
       state.buffer.add(new StartEntry());
     }
 
+    if (isHedging && hedgingPolicy.isLatencyTracked()) {
+      callStartNanos = hedgingPolicy.currentTimeNanos();
+    }
     Substream substream = createSubstream(0, false);
     if (isHedging) {
+      hedgingPolicy.onCallStarted();
       FutureCanceller scheduledHedgingRef = null;
 
       synchronized (lock) {
@@ -379,7 +382,7 @@ abstract class RetriableStream<ReqT> implements ClientStream {
         scheduledHedgingRef.setFuture(
             scheduledExecutorService.schedule(
                 new HedgingRunnable(scheduledHedgingRef),
-                hedgingPolicy.hedgingDelayNanos,
+                hedgingPolicy.currentHedgingDelayNanos(),
                 TimeUnit.NANOSECONDS));
       }
     }
@@ -436,6 +439,16 @@ abstract class RetriableStream<ReqT> implements ClientStream {
             @SuppressWarnings("GuardedBy")
             @Override
             public void run() {
+              if (!hedgingPolicy.tryAcquireHedge()) {
+                // Out of hedging budget; the attempts already sent will have to do.
+                synchronized (lock) {
+                  if (!scheduledHedgingRef.isCancelled()) {
+                    state = state.freezeHedging();
+                    scheduledHedging = null;
+                  }
+                }
+                return;
+              }
               // It's safe to read state.hedgingAttemptCount here.
               // If this run is not cancelled, the value of state.hedgingAttemptCount won't change
               // until state.addActiveHedge() is called subsequently, even the state could possibly
@@ -470,7 +483,7 @@ abstract class RetriableStream<ReqT> implements ClientStream {
                 future.setFuture(
                     scheduledExecutorService.schedule(
                         new HedgingRunnable(future),
-                        hedgingPolicy.hedgingDelayNanos,
+                        hedgingPolicy.currentHedgingDelayNanos(),
                         TimeUnit.NANOSECONDS));
               }
               drain(newSubstream);
@@ -544,13 +557,131 @@ abstract class RetriableStream<ReqT> implements ClientStream {
     }
 
     class SendMessageEntry implements BufferEntry {
+      // The message serialized once, and replayed to every attempt, instead of marshalling it
+      // again for each retry and hedge. Hedges may be sent it at any time, so it is serialized
+      // right away. Otherwise the first attempt is sent the marshalled message as is, so that it
+      // keeps the marshaller's zero-copy path, and it is only serialized when it is replayed.
+      @GuardedBy("this")
+      @Nullable
+      private byte[] serialized;
+      @GuardedBy("this")
+      private boolean sent;
+
+      SendMessageEntry(@Nullable byte[] serialized) {
+        this.serialized = serialized;
+      }
+
       @Override
       public void runWith(Substream substream) {
-        substream.stream.writeMessage(method.streamRequest(message));
+        InputStream stream = null;
+        long size = -1;
+        synchronized (this) {
+          if (serialized == null) {
+            stream = method.streamRequest(message);
+            size = knownLength(stream);
+            if (sent || size < 0) {
+              serialized = serialize(stream);
+            }
+          }
+          sent = true;
+          if (serialized != null) {
+            stream = new SerializedMessageStream(serialized);
+            size = serialized.length;
+          }
+        }
+        substream.stream.writeMessage(stream);
+        messageBuffered(substream, size);
+      }
+    }
+
+    delayOrExecute(new SendMessageEntry(
+        isHedging ? serialize(method.streamRequest(message)) : null));
+  }
+
+  /** Returns the length of the stream, or -1 if it is only known once the stream is read. */
+  private static long knownLength(InputStream stream) {
+    if (stream instanceof KnownLength || stream instanceof ByteArrayInputStream) {
+      try {
+        return stream.available();
+      } catch (IOException e) {
+        throw Status.INTERNAL.withDescription("Failed to serialize message").withCause(e)
+            .asRuntimeException();
+      }
+    }
+    return -1;
+  }
+
+  private static byte[] serialize(InputStream stream) {
+    try {
+      try {
+        if (stream instanceof KnownLength) {
+          // Marshallers of known length, like protobuf's, can write straight into the array.
+          byte[] bytes = new byte[stream.available()];
+          ByteStreams.readFully(stream, bytes);
+          if (stream.read() != -1) {
+            throw Status.INTERNAL.withDescription("Message length inaccurate").asRuntimeException();
+          }
+          return bytes;
+        }
+        return ByteStreams.toByteArray(stream);
+      } finally {
+        stream.close();
+      }
+    } catch (IOException e) {
+      throw Status.INTERNAL.withDescription("Failed to serialize message").withCause(e)
+          .asRuntimeException();
+    }
+  }
+
+  /**
+   * Reads a serialized message shared by the attempts. It drains to the transport in a single
+   * write, where a plain stream would be copied through a scratch buffer.
+   */
+  private static final class SerializedMessageStream extends InputStream
+      implements ByteBufferDrainable, KnownLength {
+    private final byte[] bytes;
+    private int position;
+
+    SerializedMessageStream(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int read() {
+      return position < bytes.length ? bytes[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (position >= bytes.length) {
+        return len == 0 ? 0 : -1;
       }
+      int count = Math.min(len, bytes.length - position);
+      System.arraycopy(bytes, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return bytes.length - position;
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      int count = available();
+      target.write(bytes, position, count);
+      position = bytes.length;
+      return count;
     }
 
-    delayOrExecute(new SendMessageEntry());
+    @Override
+    public int drainTo(ByteBuffer target) {
+      int count = available();
+      target.put(bytes, position, count);
+      position = bytes.length;
+      return count;
+    }
   }
 
   @Override
@@ -647,6 +778,18 @@ abstract class RetriableStream<ReqT> implements ClientStream {
     delayOrExecute(new MessageCompressionEntry());
   }
 
+  @Override
+  public final void setMessageCompressionDecider(final MessageCompressionPolicy.Decider decider) {
+    class MessageCompressionDeciderEntry implements BufferEntry {
+      @Override
+      public void runWith(Substream substream) {
+        substream.stream.setMessageCompressionDecider(decider);
+      }
+    }
+
+    delayOrExecute(new MessageCompressionDeciderEntry());
+  }
+
   @Override
   public final void halfClose() {
     class HalfCloseEntry implements BufferEntry {
@@ -778,6 +921,16 @@ abstract class RetriableStream<ReqT> implements ClientStream {
         && !state.hedgingFrozen;
   }
 
+  /**
+   * Records how long the call took, from its start to the close of the attempt that completed it,
+   * however many attempts it took.
+   */
+  private void recordCallLatency() {
+    if (isHedging && hedgingPolicy.isLatencyTracked()) {
+      hedgingPolicy.recordLatency(hedgingPolicy.currentTimeNanos() - callStartNanos);
+    }
+  }
+
   @SuppressWarnings("GuardedBy")
   private void freezeHedging() {
     Future<?> futureToBeCancelled = null;
@@ -838,6 +991,7 @@ abstract class RetriableStream<ReqT> implements ClientStream {
       if (substream.bufferLimitExceeded) {
         commitAndRun(substream);
         if (state.winningSubstream == substream) {
+          recordCallLatency();
           listenerSerializeExecutor.execute(
               new Runnable() {
                 @Override
@@ -952,6 +1106,7 @@ abstract class RetriableStream<ReqT> implements ClientStream {
 
       commitAndRun(substream);
       if (state.winningSubstream == substream) {
+        recordCallLatency();
         listenerSerializeExecutor.execute(
             new Runnable() {
               @Override
@@ -1282,6 +1437,9 @@ abstract class RetriableStream<ReqT> implements ClientStream {
     // setting to true must be GuardedBy RetriableStream.lock
     boolean bufferLimitExceeded;
 
+    // GuardedBy RetriableStream.lock
+    long bufferNeeded;
+
     final int previousAttemptCount;
 
     Substream(int previousAttemptCount) {
@@ -1291,64 +1449,49 @@ abstract class RetriableStream<ReqT> implements ClientStream {
 
 
   /**
-   * Traces the buffer used by a substream.
+   * A message of {@code bytes} has been written to the substream, and must be kept for later
+   * attempts. Commits the substream if the buffer limits are exceeded. The buffered messages are
+   * shared by all the substreams, so the RPC uses as much buffer as the substream that has been
+   * sent the most.
    */
-  class BufferSizeTracer extends ClientStreamTracer {
-    // Each buffer size tracer is dedicated to one specific substream.
-    private final Substream substream;
-
-    @GuardedBy("lock")
-    long bufferNeeded;
-
-    BufferSizeTracer(Substream substream) {
-      this.substream = substream;
+  private void messageBuffered(Substream substream, long bytes) {
+    if (state.winningSubstream != null) {
+      return;
     }
 
-    /**
-     * A message is sent to the wire, so its reference would be released if no retry or
-     * hedging were involved. So at this point we have to hold the reference of the message longer
-     * for retry, and we need to increment {@code substream.bufferNeeded}.
-     */
-    @Override
-    public void outboundWireSize(long bytes) {
-      if (state.winningSubstream != null) {
+    Runnable postCommitTask = null;
+
+    // TODO(zdapeng): avoid using the same lock for both in-bound and out-bound.
+    synchronized (lock) {
+      if (state.winningSubstream != null || substream.closed) {
+        return;
+      }
+      substream.bufferNeeded += bytes;
+      if (substream.bufferNeeded <= perRpcBufferUsed) {
         return;
       }
 
-      Runnable postCommitTask = null;
-
-      // TODO(zdapeng): avoid using the same lock for both in-bound and out-bound.
-      synchronized (lock) {
-        if (state.winningSubstream != null || substream.closed) {
-          return;
-        }
-        bufferNeeded += bytes;
-        if (bufferNeeded <= perRpcBufferUsed) {
-          return;
-        }
+      if (substream.bufferNeeded > perRpcBufferLimit) {
+        substream.bufferLimitExceeded = true;
+      } else {
+        // Only update channelBufferUsed when perRpcBufferUsed is not exceeding perRpcBufferLimit.
+        long savedChannelBufferUsed =
+            channelBufferUsed.addAndGet(substream.bufferNeeded - perRpcBufferUsed);
+        perRpcBufferUsed = substream.bufferNeeded;
 
-        if (bufferNeeded > perRpcBufferLimit) {
+        if (savedChannelBufferUsed > channelBufferLimit) {
           substream.bufferLimitExceeded = true;
-        } else {
-          // Only update channelBufferUsed when perRpcBufferUsed is not exceeding perRpcBufferLimit.
-          long savedChannelBufferUsed =
-              channelBufferUsed.addAndGet(bufferNeeded - perRpcBufferUsed);
-          perRpcBufferUsed = bufferNeeded;
-
-          if (savedChannelBufferUsed > channelBufferLimit) {
-            substream.bufferLimitExceeded = true;
-          }
-        }
-
-        if (substream.bufferLimitExceeded) {
-          postCommitTask = commit(substream);
         }
       }
 
-      if (postCommitTask != null) {
-        postCommitTask.run();
+      if (substream.bufferLimitExceeded) {
+        postCommitTask = commit(substream);
       }
     }
+
+    if (postCommitTask != null) {
+      postCommitTask.run();
+    }
   }
 
   /**
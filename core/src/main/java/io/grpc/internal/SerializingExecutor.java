@@ -18,62 +18,95 @@ package io.grpc.internal;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import io.grpc.Deadline;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Executor ensuring that all {@link Runnable} tasks submitted are executed in order
  * using the provided {@link Executor}, and serially such that no two will ever be
  * running at the same time.
+ *
+ * <p>Tasks are queued in a pair of arrays that are reused, so queuing a task doesn't allocate once
+ * the arrays are large enough. A drain takes every queued task at once and runs the batch without
+ * holding the lock, which keeps producers from contending with the task being run. A drain may be
+ * given a budget, in tasks and in time; once it is used up the executor yields its thread and
+ * resubmits itself to the underlying executor, so a busy stream can't starve the others sharing
+ * that executor.
  */
 // TODO(madongfly): figure out a way to not expose it or move it to transport package.
 public final class SerializingExecutor implements Executor, Runnable {
   private static final Logger log =
       Logger.getLogger(SerializingExecutor.class.getName());
 
-  // When using Atomic*FieldUpdater, some Samsung Android 5.0.x devices encounter a bug in their JDK
-  // reflection API that triggers a NoSuchFieldException. When this occurs, fallback to a
-  // synchronized implementation.
-  private static final AtomicHelper atomicHelper = getAtomicHelper();
-
-  private static AtomicHelper getAtomicHelper() {
-    AtomicHelper helper;
-    try {
-      helper =
-          new FieldUpdaterAtomicHelper(
-              AtomicIntegerFieldUpdater.newUpdater(SerializingExecutor.class, "runState"));
-    } catch (Throwable t) {
-      log.log(Level.SEVERE, "FieldUpdaterAtomicHelper failed", t);
-      helper = new SynchronizedAtomicHelper();
-    }
-    return helper;
-  }
-
-  private static final int STOPPED = 0;
-  private static final int RUNNING = -1;
+  private static final int INITIAL_CAPACITY = 4;
+  /** Arrays larger than this are dropped after a drain instead of being kept for reuse. */
+  private static final int MAX_RETAINED_CAPACITY = 1024;
 
   /** Underlying executor that all submitted Runnable objects are run on. */
   private Executor executor;
 
-  /** A list of Runnables to be run in order. */
-  private final Queue<Runnable> runQueue = new ConcurrentLinkedQueue<>();
+  private final int maxBatchSize;
+  private final long maxBatchNanos;
+  private final Deadline.Ticker ticker;
 
-  private volatile int runState = STOPPED;
+  /** Runnables waiting to be run, in order. */
+  @GuardedBy("this")
+  private Runnable[] pending = new Runnable[INITIAL_CAPACITY];
+  @GuardedBy("this")
+  private int pendingCount;
+  /** Whether a drain is scheduled or running. */
+  @GuardedBy("this")
+  private boolean running;
+  /** The batch being run, swapped with {@link #pending} at the start of every batch. */
+  @GuardedBy("this")
+  private Runnable[] draining = new Runnable[INITIAL_CAPACITY];
 
   /**
-   * Creates a SerializingExecutor, running tasks using {@code executor}.
+   * Creates a SerializingExecutor, running tasks using {@code executor}. A drain runs until no
+   * tasks are left.
    *
    * @param executor Executor in which tasks should be run. Must not be null.
    */
   public SerializingExecutor(Executor executor) {
+    this(executor, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Creates a SerializingExecutor, running tasks using {@code executor}, that yields the thread
+   * after running {@code maxBatchSize} tasks or after {@code maxBatchTime}, whichever comes first.
+   * The remaining tasks are run by a new drain submitted to {@code executor}. Don't set a budget
+   * when {@code executor} runs tasks in the calling thread, as yielding would recurse.
+   *
+   * @param executor Executor in which tasks should be run. Must not be null.
+   * @param maxBatchSize the number of tasks a drain may run, or {@link Integer#MAX_VALUE}
+   * @param maxBatchTime the time a drain may run for, or {@link Long#MAX_VALUE}. The time is
+   *     checked after each task, so a single long task isn't interrupted
+   */
+  public SerializingExecutor(
+      Executor executor, int maxBatchSize, long maxBatchTime, TimeUnit unit) {
+    this(executor, maxBatchSize, maxBatchTime, unit, Deadline.getSystemTicker());
+  }
+
+  @VisibleForTesting
+  SerializingExecutor(
+      Executor executor, int maxBatchSize, long maxBatchTime, TimeUnit unit,
+      Deadline.Ticker ticker) {
     Preconditions.checkNotNull(executor, "'executor' must not be null.");
+    Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+    Preconditions.checkArgument(maxBatchTime > 0, "maxBatchTime must be positive");
     this.executor = executor;
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchNanos =
+        maxBatchTime == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(maxBatchTime);
+    this.ticker = checkNotNull(ticker, "ticker");
   }
 
   /**
@@ -91,33 +124,48 @@ public final class SerializingExecutor implements Executor, Runnable {
    */
   @Override
   public void execute(Runnable r) {
-    runQueue.add(checkNotNull(r, "'r' must not be null."));
+    checkNotNull(r, "'r' must not be null.");
+    synchronized (this) {
+      if (pendingCount == pending.length) {
+        pending = Arrays.copyOf(pending, pending.length * 2);
+      }
+      pending[pendingCount++] = r;
+      if (running) {
+        return;
+      }
+      running = true;
+    }
     schedule(r);
   }
 
+  /**
+   * Submits a drain. The caller must have set {@link #running}.
+   */
   private void schedule(@Nullable Runnable removable) {
-    if (atomicHelper.runStateCompareAndSet(this, STOPPED, RUNNING)) {
-      boolean success = false;
-      try {
-        executor.execute(this);
-        success = true;
-      } finally {
-        // It is possible that at this point that there are still tasks in
-        // the queue, it would be nice to keep trying but the error may not
-        // be recoverable.  So we update our state and propagate so that if
-        // our caller deems it recoverable we won't be stuck.
-        if (!success) {
+    boolean success = false;
+    try {
+      executor.execute(this);
+      success = true;
+    } finally {
+      // It is possible that at this point that there are still tasks in
+      // the queue, it would be nice to keep trying but the error may not
+      // be recoverable.  So we update our state and propagate so that if
+      // our caller deems it recoverable we won't be stuck.
+      if (!success) {
+        synchronized (this) {
           if (removable != null) {
-            // This case can only be reached if 'this' was not currently running, and we failed to
-            // reschedule.  The item should still be in the queue for removal.
-            // ConcurrentLinkedQueue claims that null elements are not allowed, but seems to not
-            // throw if the item to remove is null.  If removable is present in the queue twice,
-            // the wrong one may be removed.  It doesn't seem possible for this case to exist today.
-            // This is important to run in case of RejectedExectuionException, so that future calls
-            // to execute don't succeed and accidentally run a previous runnable.
-            runQueue.remove(removable);
+            // This is important to run in case of RejectedExectuionException, so that future
+            // calls to execute don't succeed and accidentally run a previous runnable. Tasks
+            // queued by other threads since are after it, so search from the end.
+            for (int i = pendingCount - 1; i >= 0; i--) {
+              if (pending[i] == removable) {
+                System.arraycopy(pending, i + 1, pending, i, pendingCount - i - 1);
+                pending[--pendingCount] = null;
+                break;
+              }
+            }
           }
-          atomicHelper.runStateSet(this, STOPPED);
+          running = false;
         }
       }
     }
@@ -125,68 +173,97 @@ public final class SerializingExecutor implements Executor, Runnable {
 
   @Override
   public void run() {
-    Runnable r;
-    try {
-      Executor oldExecutor = executor;
-      while (oldExecutor == executor && (r = runQueue.poll()) != null ) {
-        try {
-          r.run();
-        } catch (RuntimeException e) {
-          // Log it and keep going.
-          log.log(Level.SEVERE, "Exception while executing runnable " + r, e);
+    Executor oldExecutor = executor;
+    long startNanos = maxBatchNanos == Long.MAX_VALUE ? 0 : ticker.nanoTime();
+    int budget = maxBatchSize;
+    while (true) {
+      Runnable[] batch;
+      int batchSize;
+      synchronized (this) {
+        if (pendingCount == 0) {
+          running = false;
+          return;
         }
+        batch = pending;
+        batchSize = pendingCount;
+        pending = draining;
+        pendingCount = 0;
+        draining = batch;
       }
-    } finally {
-      atomicHelper.runStateSet(this, STOPPED);
-    }
-    if (!runQueue.isEmpty()) {
-      // we didn't enqueue anything but someone else did.
-      schedule(null);
-    }
-  }
-
-  private abstract static class AtomicHelper {
-    public abstract boolean runStateCompareAndSet(SerializingExecutor obj, int expect, int update);
-
-    public abstract void runStateSet(SerializingExecutor obj, int newValue);
-  }
-
-  private static final class FieldUpdaterAtomicHelper extends AtomicHelper {
-    private final AtomicIntegerFieldUpdater<SerializingExecutor> runStateUpdater;
-
-    private FieldUpdaterAtomicHelper(
-        AtomicIntegerFieldUpdater<SerializingExecutor> runStateUpdater) {
-      this.runStateUpdater = runStateUpdater;
-    }
-
-    @Override
-    public boolean runStateCompareAndSet(SerializingExecutor obj, int expect, int update) {
-      return runStateUpdater.compareAndSet(obj, expect, update);
-    }
-
-    @Override
-    public void runStateSet(SerializingExecutor obj, int newValue) {
-      runStateUpdater.set(obj, newValue);
-    }
-  }
-
-  private static final class SynchronizedAtomicHelper extends AtomicHelper {
-    @Override
-    public boolean runStateCompareAndSet(SerializingExecutor obj, int expect, int update) {
-      synchronized (obj) {
-        if (obj.runState == expect) {
-          obj.runState = update;
-          return true;
+      int next = 0;
+      boolean yielded = false;
+      boolean completed = false;
+      try {
+        while (next < batchSize) {
+          Runnable r = batch[next];
+          batch[next++] = null;
+          try {
+            r.run();
+          } catch (RuntimeException e) {
+            // Log it and keep going.
+            log.log(Level.SEVERE, "Exception while executing runnable " + r, e);
+          }
+          if (oldExecutor != executor
+              || --budget == 0
+              || (maxBatchNanos != Long.MAX_VALUE
+                  && ticker.nanoTime() - startNanos >= maxBatchNanos)) {
+            yielded = true;
+            break;
+          }
+        }
+        completed = true;
+      } finally {
+        if (next < batchSize) {
+          // Stopped early, or a task threw an Error. The rest of the batch goes back in front of
+          // whatever was queued since, for the next drain.
+          requeue(batch, next, batchSize);
+        } else if (batch.length > MAX_RETAINED_CAPACITY) {
+          synchronized (this) {
+            draining = new Runnable[INITIAL_CAPACITY];
+          }
+        }
+        if (!completed) {
+          // A task threw an Error, even if it was the last one of the batch. The next execute()
+          // starts a new drain.
+          synchronized (this) {
+            running = false;
+          }
         }
-        return false;
+      }
+      if (yielded) {
+        synchronized (this) {
+          if (pendingCount == 0) {
+            running = false;
+            return;
+          }
+        }
+        // Other tasks on the executor get a turn, or the tasks left move to the new executor.
+        schedule(null);
+        return;
       }
     }
+  }
 
-    @Override
-    public void runStateSet(SerializingExecutor obj, int newValue) {
-      synchronized (obj) {
-        obj.runState = newValue;
+  /**
+   * Puts the tasks of {@code batch} in {@code [from, to)} back in front of the tasks queued since
+   * the batch was taken.
+   */
+  private void requeue(Runnable[] batch, int from, int to) {
+    int count = to - from;
+    synchronized (this) {
+      Runnable[] queued = pending;
+      int queuedCount = pendingCount;
+      Runnable[] merged =
+          count + queuedCount <= batch.length ? batch : new Runnable[count + queuedCount];
+      System.arraycopy(batch, from, merged, 0, count);
+      System.arraycopy(queued, 0, merged, count, queuedCount);
+      if (merged == batch && count + queuedCount < to) {
+        Arrays.fill(batch, count + queuedCount, to, null);
       }
+      Arrays.fill(queued, 0, queuedCount, null);
+      pending = merged;
+      pendingCount = count + queuedCount;
+      draining = queued;
     }
   }
 }
@@ -34,6 +34,7 @@ import io.grpc.CompressorRegistry;
 import io.grpc.Context;
 import io.grpc.DecompressorRegistry;
 import io.grpc.InternalDecompressorRegistry;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.ServerCall;
@@ -183,6 +184,12 @@ final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
     stream.setMessageCompression(enable);
   }
 
+  @Override
+  public void setMessageCompressionPolicy(MessageCompressionPolicy policy) {
+    checkNotNull(policy, "policy");
+    stream.setMessageCompressionDecider(policy.newDecider(method));
+  }
+
   @Override
   public void setCompression(String compressorName) {
     // Added here to give a better error message.
@@ -210,6 +217,10 @@ final class ServerCallImpl<ReqT, RespT> extends ServerCall<ReqT, RespT> {
     }
   }
 
+  boolean isCloseCalled() {
+    return closeCalled;
+  }
+
   private void closeInternal(Status status, Metadata trailers) {
     checkState(!closeCalled, "call already closed");
     try {
@@ -162,6 +162,7 @@ public final class ServerImpl extends io.grpc.Server implements InternalInstrume
     this.serverCallTracer = builder.callTracerFactory.create();
     this.ticker = checkNotNull(builder.ticker, "ticker");
     channelz.addServer(this);
+    serverCallTracer.setChangeMarker(channelz.getChangeMarker(logId));
     this.executorSupplier = builder.executorSupplier;
   }
 
@@ -555,6 +556,13 @@ public final class ServerImpl extends io.grpc.Server implements InternalInstrume
             }
             wrapMethod = wrapMethod(stream, method, statsTraceCtx);
             callParams = maySwitchExecutor(wrapMethod, stream, headers, context, tag);
+            if (callParams.call.isCloseCalled()) {
+              // The executor supplier rejected the call, so its handler isn't started.
+              jumpListener.setListener(NOOP_LISTENER);
+              context.cancel(null);
+              future.cancel(false);
+              return;
+            }
             future.set(callParams);
           } catch (Throwable t) {
             jumpListener.setListener(NOOP_LISTENER);
@@ -125,6 +125,15 @@ public final class ServerImplBuilder extends ServerBuilder<ServerImplBuilder> {
     return this;
   }
 
+  @Override
+  public ServerImplBuilder virtualThreadExecutor() {
+    Executor executor = VirtualThreadExecutor.getInstance();
+    if (executor == null) {
+      log.warning("Virtual threads need Java 21, using the default executor instead");
+    }
+    return executor(executor);
+  }
+
   @Override
   public ServerImplBuilder callExecutor(ServerCallExecutorSupplier executorSupplier) {
     this.executorSupplier = checkNotNull(executorSupplier);
@@ -197,6 +197,16 @@ public final class ServiceConfigUtil {
     return JsonUtil.getStringAsDuration(hedgingPolicy, "hedgingDelay");
   }
 
+  @Nullable
+  static Double getHedgingDelayPercentileFromHedgingPolicy(Map<String, ?> hedgingPolicy) {
+    return JsonUtil.getNumber(hedgingPolicy, "hedgingDelayPercentile");
+  }
+
+  @Nullable
+  static Double getHedgingBudgetPercentFromHedgingPolicy(Map<String, ?> hedgingPolicy) {
+    return JsonUtil.getNumber(hedgingPolicy, "hedgingBudgetPercent");
+  }
+
   static Set<Status.Code> getNonFatalStatusCodesFromHedgingPolicy(Map<String, ?> hedgingPolicy) {
     String nonFatalStatusCodesKey = "nonFatalStatusCodes";
     Set<Status.Code> codes = getListOfStatusCodesAsSet(hedgingPolicy, nonFatalStatusCodesKey);
@@ -207,6 +217,34 @@ public final class ServiceConfigUtil {
     return codes;
   }
 
+  @Nullable
+  static Double getRatioForAcceptsFromAdaptiveThrottling(Map<String, ?> adaptiveThrottling) {
+    return JsonUtil.getNumber(adaptiveThrottling, "ratioForAccepts");
+  }
+
+  @Nullable
+  static Integer getRequestsPaddingFromAdaptiveThrottling(Map<String, ?> adaptiveThrottling) {
+    return JsonUtil.getNumberAsInteger(adaptiveThrottling, "requestsPadding");
+  }
+
+  @Nullable
+  static Long getHistoryNanosFromAdaptiveThrottling(Map<String, ?> adaptiveThrottling) {
+    return JsonUtil.getStringAsDuration(adaptiveThrottling, "history");
+  }
+
+  static Set<Status.Code> getThrottledStatusCodesFromAdaptiveThrottling(
+      Map<String, ?> adaptiveThrottling) {
+    String throttledStatusCodesKey = "throttledStatusCodes";
+    Set<Status.Code> codes =
+        getListOfStatusCodesAsSet(adaptiveThrottling, throttledStatusCodesKey);
+    if (codes == null) {
+      return Collections.unmodifiableSet(
+          EnumSet.of(Status.Code.RESOURCE_EXHAUSTED, Status.Code.UNAVAILABLE));
+    }
+    verify(!codes.contains(Status.Code.OK), "%s must not contain OK", throttledStatusCodesKey);
+    return codes;
+  }
+
   @Nullable
   static String getServiceFromName(Map<String, ?> name) {
     return JsonUtil.getString(name, "service");
@@ -227,6 +265,23 @@ public final class ServiceConfigUtil {
     return JsonUtil.getObject(methodConfig, "hedgingPolicy");
   }
 
+  /*
+   * "adaptiveThrottling": {
+   *   // Throttles when requests exceed ratioForAccepts times the accepted requests. Default 1.2.
+   *   "ratioForAccepts": number,
+   *   // Makes throttling less aggressive at low request rates. Default 8.
+   *   "requestsPadding": number,
+   *   // The window of recent requests considered. Default "30s".
+   *   "history": string,
+   *   // Statuses counted as rejected by the backend. Default RESOURCE_EXHAUSTED, UNAVAILABLE.
+   *   "throttledStatusCodes": [string|number]
+   * }
+   */
+  @Nullable
+  static Map<String, ?> getAdaptiveThrottlingFromMethodConfig(Map<String, ?> methodConfig) {
+    return JsonUtil.getObject(methodConfig, "adaptiveThrottling");
+  }
+
   @Nullable
   static List<Map<String, ?>> getNameListFromMethodConfig(
       Map<String, ?> methodConfig) {
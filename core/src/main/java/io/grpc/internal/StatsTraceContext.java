@@ -190,6 +190,19 @@ public final class StatsTraceContext {
     }
   }
 
+  /**
+   * See {@link StreamTracer#outboundMessageCompression}.
+   *
+   * <p>Called from {@link io.grpc.internal.Framer}.
+   */
+  public void outboundMessageCompression(
+      int seqNo, boolean compressed, long uncompressedSize, long optionalCompressedSize) {
+    for (StreamTracer tracer : tracers) {
+      tracer.outboundMessageCompression(
+          seqNo, compressed, uncompressedSize, optionalCompressedSize);
+    }
+  }
+
   /**
    * See {@link StreamTracer#inboundMessageRead}.
    *
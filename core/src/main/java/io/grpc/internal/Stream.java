@@ -17,6 +17,7 @@
 package io.grpc.internal;
 
 import io.grpc.Compressor;
+import io.grpc.MessageCompressionPolicy;
 import java.io.InputStream;
 
 /**
@@ -87,4 +88,10 @@ public interface Stream {
    * but may not have any effect if compression is not enabled on the call.
    */
   void setMessageCompression(boolean enable);
+
+  /**
+   * Sets the decider that picks which messages get compressed while per-message compression is
+   * enabled. By default every message is compressed.
+   */
+  void setMessageCompressionDecider(MessageCompressionPolicy.Decider decider);
 }
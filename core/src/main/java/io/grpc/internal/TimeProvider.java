@@ -32,4 +32,15 @@ public interface TimeProvider {
       return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
     }
   };
+
+  /**
+   * Reads {@link System#nanoTime}, which only makes sense for measuring elapsed time, but is not
+   * affected by changes to the wall clock.
+   */
+  TimeProvider MONOTONIC_TIME_PROVIDER = new TimeProvider() {
+    @Override
+    public long currentTimeNanos() {
+      return System.nanoTime();
+    }
+  };
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * An executor that runs every task on a new virtual thread. Virtual threads are cheap to create
+ * and to block, so blocking application code can run on as many of them as there are calls,
+ * instead of being limited by the size of a thread pool.
+ *
+ * <p>Virtual threads need Java 21, and gRPC builds for Java 7, so they are created through
+ * reflection. {@link #getInstance} returns {@code null} on runtimes without them.
+ */
+public final class VirtualThreadExecutor implements Executor {
+  private static final Logger log = Logger.getLogger(VirtualThreadExecutor.class.getName());
+
+  @Nullable
+  private static final VirtualThreadExecutor INSTANCE =
+      create("grpc-virtual-executor-");
+
+  private final ThreadFactory threadFactory;
+
+  private VirtualThreadExecutor(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+   * Returns the shared executor, or {@code null} if the runtime doesn't support virtual threads.
+   */
+  @Nullable
+  public static VirtualThreadExecutor getInstance() {
+    return INSTANCE;
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static VirtualThreadExecutor create(String namePrefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, namePrefix, 0L);
+      ThreadFactory threadFactory =
+          (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return new VirtualThreadExecutor(threadFactory);
+    } catch (NoSuchMethodException e) {
+      // Before Java 19.
+      return null;
+    } catch (Exception e) {
+      // Java 19 and 20 have the API as a preview feature, which fails unless enabled.
+      log.log(Level.FINE, "Virtual threads are not available", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    threadFactory.newThread(checkNotNull(command, "command")).start();
+  }
+
+  @Override
+  public String toString() {
+    return "VirtualThreadExecutor";
+  }
+}
@@ -16,6 +16,8 @@
 
 package io.grpc.internal;
 
+import java.nio.ByteBuffer;
+
 /**
  * An interface for a byte buffer that can only be written to.
  * {@link WritableBuffer}s are a generic way to transfer bytes to
@@ -50,6 +52,29 @@ public interface WritableBuffer {
    */
   int readableBytes();
 
+  /**
+   * Indicates whether or not {@link #getByteBuffer} operation is supported.
+   */
+  boolean byteBufferSupported();
+
+  /**
+   * Gets a {@link ByteBuffer} that shares memory with the {@link #writableBytes()} of this buffer,
+   * so that content can be put into it without an intermediate copy. Bytes put into the returned
+   * buffer only become readable once they are committed with {@link #advanceWriteIndex}. This is
+   * an optional method, so callers should first check {@link #byteBufferSupported}.
+   *
+   * @throws UnsupportedOperationException if this operation is not supported.
+   */
+  ByteBuffer getByteBuffer();
+
+  /**
+   * Commits {@code length} bytes put into the buffer returned by {@link #getByteBuffer} as
+   * written.
+   *
+   * @throws UnsupportedOperationException if this operation is not supported.
+   */
+  void advanceWriteIndex(int length);
+
   /**
    * Releases the buffer, indicating to the {@link WritableBufferAllocator} that
    * this buffer is no longer used and its resources can be reused.
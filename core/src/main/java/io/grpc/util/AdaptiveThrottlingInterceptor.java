@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Sets;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors.CheckedForwardingClientCall;
+import io.grpc.ExperimentalApi;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.internal.AdaptiveThrottler;
+import io.grpc.internal.TimeProvider;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link ClientInterceptor} that sheds load from an overloaded backend by failing calls locally,
+ * as described in the "Handling Overload" chapter of the Google SRE book. It counts the calls made
+ * and the calls the backend accepted over a recent time window, and once the backend rejects too
+ * many of them, fails new calls with {@link Status.Code#UNAVAILABLE} with a probability of
+ * <pre>
+ *   (requests - ratioForAccepts * accepts) / (requests + requestsPadding)
+ * </pre>
+ * without sending them. A call counts as rejected when it fails with one of the throttled status
+ * codes, {@code RESOURCE_EXHAUSTED} and {@code UNAVAILABLE} by default.
+ *
+ * <p>All calls going through one interceptor instance share its statistics, so use one instance
+ * per backend. The same throttling can be configured per method with the {@code
+ * "adaptiveThrottling"} field of a method config in the service config.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/3982")
+@ThreadSafe
+public final class AdaptiveThrottlingInterceptor implements ClientInterceptor {
+  private final AdaptiveThrottler throttler;
+  private final Set<Status.Code> throttledCodes;
+
+  private AdaptiveThrottlingInterceptor(Builder builder) {
+    this.throttler = AdaptiveThrottler.builder()
+        .setRatioForAccepts(builder.ratioForAccepts)
+        .setRequestsPadding(builder.requestsPadding)
+        .setHistory(builder.historyNanos, TimeUnit.NANOSECONDS)
+        .setTimeProvider(builder.timeProvider)
+        .build();
+    this.throttledCodes = Collections.unmodifiableSet(EnumSet.copyOf(builder.throttledCodes));
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+      MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+    return new ThrottlingCall<>(next.newCall(method, callOptions));
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("throttler", throttler)
+        .add("throttledCodes", throttledCodes)
+        .toString();
+  }
+
+  private final class ThrottlingCall<ReqT, RespT>
+      extends CheckedForwardingClientCall<ReqT, RespT> {
+
+    ThrottlingCall(ClientCall<ReqT, RespT> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    protected void checkedStart(Listener<RespT> responseListener, Metadata headers) {
+      if (throttler.shouldThrottle()) {
+        throw Status.UNAVAILABLE
+            .withDescription("Call throttled by the client, as the backend is rejecting requests")
+            .asRuntimeException();
+      }
+      delegate().start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+          throttler.registerBackendResponse(throttledCodes.contains(status.getCode()));
+          super.onClose(status, trailers);
+        }
+      }, headers);
+    }
+  }
+
+  /** Builder for {@link AdaptiveThrottlingInterceptor}. */
+  public static final class Builder {
+    private float ratioForAccepts = 1.2f;
+    private int requestsPadding = 8;
+    private long historyNanos = TimeUnit.SECONDS.toNanos(30);
+    private Set<Status.Code> throttledCodes =
+        EnumSet.of(Status.Code.RESOURCE_EXHAUSTED, Status.Code.UNAVAILABLE);
+    private TimeProvider timeProvider = TimeProvider.MONOTONIC_TIME_PROVIDER;
+
+    private Builder() {}
+
+    /**
+     * Sets how many requests may be sent for each request the backend accepts before throttling
+     * starts. Higher values throttle less and let the backend see more of the demand. Defaults to
+     * 1.2.
+     */
+    public Builder setRatioForAccepts(float ratioForAccepts) {
+      checkArgument(ratioForAccepts >= 1, "ratioForAccepts must be at least 1");
+      this.ratioForAccepts = ratioForAccepts;
+      return this;
+    }
+
+    /**
+     * Sets the number of requests added to the denominator of the throttle probability, which keeps
+     * a few rejections at low request rates from throttling. Defaults to 8.
+     */
+    public Builder setRequestsPadding(int requestsPadding) {
+      checkArgument(requestsPadding > 0, "requestsPadding must be positive");
+      this.requestsPadding = requestsPadding;
+      return this;
+    }
+
+    /**
+     * Sets the time window of requests considered. Defaults to 30 seconds.
+     */
+    public Builder setHistory(long history, TimeUnit unit) {
+      long historyNanos = unit.toNanos(history);
+      checkArgument(historyNanos >= TimeUnit.SECONDS.toNanos(1), "history must be at least 1s");
+      this.historyNanos = historyNanos;
+      return this;
+    }
+
+    /**
+     * Sets the status codes that mean the backend rejected a call. Defaults to {@code
+     * RESOURCE_EXHAUSTED} and {@code UNAVAILABLE}.
+     */
+    public Builder setThrottledCodes(Status.Code first, Status.Code... rest) {
+      Set<Status.Code> codes = Sets.immutableEnumSet(first, rest);
+      checkArgument(!codes.contains(Status.Code.OK), "throttled codes must not contain OK");
+      this.throttledCodes = codes;
+      return this;
+    }
+
+    @VisibleForTesting
+    Builder setTimeProvider(TimeProvider timeProvider) {
+      this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+      return this;
+    }
+
+    public AdaptiveThrottlingInterceptor build() {
+      return new AdaptiveThrottlingInterceptor(this);
+    }
+  }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import io.grpc.Deadline;
+import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.Status;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link ServerCallExecutorSupplier} that isolates services or methods from each other by
+ * running their calls in separate {@link Bulkhead}s. A bulkhead runs at most a fixed number of
+ * tasks at a time and queues the rest, so a slow method can only occupy its own share of threads
+ * and only delays the calls in its own queue.
+ *
+ * <p>New calls are rejected with {@link Status.Code#RESOURCE_EXHAUSTED} when their bulkhead's queue
+ * is too long, or when its oldest queued task has waited too long. Rejected calls fail before
+ * their handler runs. Calls already admitted are never rejected, since a call can't be failed
+ * cleanly half way through.
+ *
+ * <p>Calls are matched to a bulkhead by full method name first, then by service name. Calls
+ * without a bulkhead run on the server's executor.
+ *
+ * <pre>
+ * Bulkhead reports = Bulkhead.newBuilder("reports", reportsPool)
+ *     .setMaxConcurrency(8)
+ *     .setMaxQueueDepth(100)
+ *     .setMaxQueueWait(500, TimeUnit.MILLISECONDS)
+ *     .build();
+ * server = ServerBuilder.forPort(port)
+ *     .callExecutor(BulkheadServerCallExecutorSupplier.newBuilder()
+ *         .addMethod(ReportServiceGrpc.getGenerateMethod(), reports)
+ *         .build())
+ *     ...
+ * </pre>
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/8274")
+@ThreadSafe
+public final class BulkheadServerCallExecutorSupplier implements ServerCallExecutorSupplier {
+  private final Map<String, Bulkhead> methodBulkheads;
+  private final Map<String, Bulkhead> serviceBulkheads;
+  @Nullable
+  private final Bulkhead defaultBulkhead;
+
+  private BulkheadServerCallExecutorSupplier(Builder builder) {
+    this.methodBulkheads = Collections.unmodifiableMap(new HashMap<>(builder.methodBulkheads));
+    this.serviceBulkheads = Collections.unmodifiableMap(new HashMap<>(builder.serviceBulkheads));
+    this.defaultBulkhead = builder.defaultBulkhead;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  @Nullable
+  @Override
+  public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata metadata) {
+    Bulkhead bulkhead = getBulkhead(call.getMethodDescriptor());
+    if (bulkhead == null) {
+      return null;
+    }
+    if (!bulkhead.tryAdmit()) {
+      call.close(
+          Status.RESOURCE_EXHAUSTED.withDescription(
+              "Bulkhead " + bulkhead.getName() + " is overloaded"),
+          new Metadata());
+      return null;
+    }
+    return bulkhead;
+  }
+
+  @Nullable
+  private Bulkhead getBulkhead(MethodDescriptor<?, ?> method) {
+    Bulkhead bulkhead = methodBulkheads.get(method.getFullMethodName());
+    if (bulkhead == null) {
+      String serviceName = method.getServiceName();
+      if (serviceName != null) {
+        bulkhead = serviceBulkheads.get(serviceName);
+      }
+    }
+    return bulkhead != null ? bulkhead : defaultBulkhead;
+  }
+
+  /**
+   * Builder for {@link BulkheadServerCallExecutorSupplier}. A bulkhead may be shared by several
+   * services and methods.
+   */
+  public static final class Builder {
+    private final Map<String, Bulkhead> methodBulkheads = new HashMap<>();
+    private final Map<String, Bulkhead> serviceBulkheads = new HashMap<>();
+    @Nullable
+    private Bulkhead defaultBulkhead;
+
+    private Builder() {}
+
+    /**
+     * Runs the calls of {@code method} in {@code bulkhead}. This takes precedence over the
+     * bulkhead of the method's service.
+     */
+    public Builder addMethod(MethodDescriptor<?, ?> method, Bulkhead bulkhead) {
+      return addMethod(checkNotNull(method, "method").getFullMethodName(), bulkhead);
+    }
+
+    /**
+     * Runs the calls of the method with the given full name, like {@code
+     * "package.Service/Method"}, in {@code bulkhead}.
+     */
+    public Builder addMethod(String fullMethodName, Bulkhead bulkhead) {
+      methodBulkheads.put(
+          checkNotNull(fullMethodName, "fullMethodName"), checkNotNull(bulkhead, "bulkhead"));
+      return this;
+    }
+
+    /**
+     * Runs the calls of the service with the given name, like {@code "package.Service"}, in
+     * {@code bulkhead}.
+     */
+    public Builder addService(String serviceName, Bulkhead bulkhead) {
+      serviceBulkheads.put(
+          checkNotNull(serviceName, "serviceName"), checkNotNull(bulkhead, "bulkhead"));
+      return this;
+    }
+
+    /**
+     * Runs the calls that don't match any method or service in {@code bulkhead}, instead of the
+     * server's executor.
+     */
+    public Builder setDefaultBulkhead(Bulkhead bulkhead) {
+      this.defaultBulkhead = checkNotNull(bulkhead, "bulkhead");
+      return this;
+    }
+
+    public BulkheadServerCallExecutorSupplier build() {
+      return new BulkheadServerCallExecutorSupplier(this);
+    }
+  }
+
+  /**
+   * An executor that runs at most {@code maxConcurrency} tasks at a time on an underlying executor
+   * and queues the others. It keeps statistics on how long tasks wait in its queue.
+   *
+   * <p>The tasks of a call are the drains of its serializing executor, so the concurrency limit
+   * bounds the number of calls running application code at once.
+   */
+  @ThreadSafe
+  public static final class Bulkhead implements Executor {
+    private static final Logger log = Logger.getLogger(Bulkhead.class.getName());
+
+    private final String name;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int maxQueueDepth;
+    private final long maxQueueWaitNanos;
+    private final Deadline.Ticker ticker;
+
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final Queue<QueuedTask> queue = new ArrayDeque<>();
+    @GuardedBy("lock")
+    private int running;
+    @GuardedBy("lock")
+    private long callsAdmitted;
+    @GuardedBy("lock")
+    private long callsRejected;
+    @GuardedBy("lock")
+    private long tasksRun;
+    @GuardedBy("lock")
+    private long totalQueueNanos;
+    @GuardedBy("lock")
+    private long maxQueueNanos;
+
+    private Bulkhead(Builder builder) {
+      this.name = builder.name;
+      this.executor = builder.executor;
+      this.maxConcurrency = builder.maxConcurrency;
+      this.maxQueueDepth = builder.maxQueueDepth;
+      this.maxQueueWaitNanos = builder.maxQueueWaitNanos;
+      this.ticker = builder.ticker;
+    }
+
+    /**
+     * Creates a builder for a bulkhead that runs its tasks on {@code executor}. The bulkhead
+     * doesn't take ownership of the executor.
+     */
+    public static Builder newBuilder(String name, Executor executor) {
+      return new Builder(name, executor);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Decides whether a new call may use this bulkhead.
+     */
+    boolean tryAdmit() {
+      synchronized (lock) {
+        QueuedTask oldest = queue.peek();
+        if (queue.size() >= maxQueueDepth
+            || (oldest != null && ticker.nanoTime() - oldest.enqueueNanos >= maxQueueWaitNanos)) {
+          callsRejected++;
+          return false;
+        }
+        callsAdmitted++;
+        return true;
+      }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      QueuedTask task = new QueuedTask(checkNotNull(command, "command"), ticker.nanoTime());
+      synchronized (lock) {
+        if (running >= maxConcurrency) {
+          queue.add(task);
+          return;
+        }
+        running++;
+      }
+      boolean success = false;
+      try {
+        executor.execute(new Worker(task));
+        success = true;
+      } finally {
+        if (!success) {
+          synchronized (lock) {
+            running--;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns a snapshot of the bulkhead's statistics.
+     */
+    public Stats getStats() {
+      synchronized (lock) {
+        return new Stats(
+            name, running, queue.size(), callsAdmitted, callsRejected, tasksRun, totalQueueNanos,
+            maxQueueNanos);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("name", name)
+          .add("maxConcurrency", maxConcurrency)
+          .add("maxQueueDepth", maxQueueDepth)
+          .add("maxQueueWaitNanos", maxQueueWaitNanos)
+          .toString();
+    }
+
+    /**
+     * Runs a task, then the tasks queued behind it, on one thread of the underlying executor.
+     */
+    private final class Worker implements Runnable {
+      private QueuedTask task;
+
+      Worker(QueuedTask task) {
+        this.task = task;
+      }
+
+      @Override
+      public void run() {
+        boolean done = false;
+        try {
+          while (task != null) {
+            long queueNanos = ticker.nanoTime() - task.enqueueNanos;
+            synchronized (lock) {
+              tasksRun++;
+              totalQueueNanos += queueNanos;
+              maxQueueNanos = Math.max(maxQueueNanos, queueNanos);
+            }
+            try {
+              task.command.run();
+            } catch (RuntimeException e) {
+              log.log(Level.SEVERE, "Exception while executing runnable " + task.command, e);
+            }
+            synchronized (lock) {
+              task = queue.poll();
+              if (task == null) {
+                running--;
+              }
+            }
+          }
+          done = true;
+        } finally {
+          if (!done) {
+            // An Error escaped. Hand the queue to a new worker, if there is one.
+            handOff();
+          }
+        }
+      }
+    }
+
+    private void handOff() {
+      QueuedTask next;
+      synchronized (lock) {
+        next = queue.poll();
+        if (next == null) {
+          running--;
+          return;
+        }
+      }
+      try {
+        executor.execute(new Worker(next));
+      } catch (RuntimeException e) {
+        synchronized (lock) {
+          running--;
+        }
+        log.log(Level.SEVERE, "Failed to run the tasks of bulkhead " + name, e);
+      }
+    }
+
+    private static final class QueuedTask {
+      final Runnable command;
+      final long enqueueNanos;
+
+      QueuedTask(Runnable command, long enqueueNanos) {
+        this.command = command;
+        this.enqueueNanos = enqueueNanos;
+      }
+    }
+
+    /**
+     * Builder for {@link Bulkhead}.
+     */
+    public static final class Builder {
+      private final String name;
+      private final Executor executor;
+      private int maxConcurrency = Integer.MAX_VALUE;
+      private int maxQueueDepth = Integer.MAX_VALUE;
+      private long maxQueueWaitNanos = Long.MAX_VALUE;
+      private Deadline.Ticker ticker = Deadline.getSystemTicker();
+
+      private Builder(String name, Executor executor) {
+        this.name = checkNotNull(name, "name");
+        this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Sets the number of tasks that may run at once. Usually the number of threads of the
+       * executor that this bulkhead may use. Unlimited by default.
+       */
+      public Builder setMaxConcurrency(int maxConcurrency) {
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.maxConcurrency = maxConcurrency;
+        return this;
+      }
+
+      /**
+       * Rejects new calls while this many tasks are queued. A call has at most one task queued at
+       * a time, so this is the number of calls waiting for a thread. Unlimited by default.
+       */
+      public Builder setMaxQueueDepth(int maxQueueDepth) {
+        checkArgument(maxQueueDepth > 0, "maxQueueDepth must be positive");
+        this.maxQueueDepth = maxQueueDepth;
+        return this;
+      }
+
+      /**
+       * Rejects new calls while the oldest queued task has waited this long. Unlimited by default.
+       */
+      public Builder setMaxQueueWait(long maxQueueWait, TimeUnit unit) {
+        checkArgument(maxQueueWait > 0, "maxQueueWait must be positive");
+        this.maxQueueWaitNanos = unit.toNanos(maxQueueWait);
+        return this;
+      }
+
+      @VisibleForTesting
+      Builder setTicker(Deadline.Ticker ticker) {
+        this.ticker = checkNotNull(ticker, "ticker");
+        return this;
+      }
+
+      public Bulkhead build() {
+        return new Bulkhead(this);
+      }
+    }
+  }
+
+  /**
+   * Statistics of a {@link Bulkhead}, as of when they were taken.
+   */
+  public static final class Stats {
+    private final String name;
+    private final int runningTasks;
+    private final int queuedTasks;
+    private final long callsAdmitted;
+    private final long callsRejected;
+    private final long tasksRun;
+    private final long totalQueueNanos;
+    private final long maxQueueNanos;
+
+    Stats(
+        String name, int runningTasks, int queuedTasks, long callsAdmitted, long callsRejected,
+        long tasksRun, long totalQueueNanos, long maxQueueNanos) {
+      this.name = name;
+      this.runningTasks = runningTasks;
+      this.queuedTasks = queuedTasks;
+      this.callsAdmitted = callsAdmitted;
+      this.callsRejected = callsRejected;
+      this.tasksRun = tasksRun;
+      this.totalQueueNanos = totalQueueNanos;
+      this.maxQueueNanos = maxQueueNanos;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the number of tasks running. */
+    public int getRunningTasks() {
+      return runningTasks;
+    }
+
+    /** Returns the number of tasks waiting to run. */
+    public int getQueuedTasks() {
+      return queuedTasks;
+    }
+
+    public long getCallsAdmitted() {
+      return callsAdmitted;
+    }
+
+    public long getCallsRejected() {
+      return callsRejected;
+    }
+
+    /** Returns the number of tasks that started running. */
+    public long getTasksRun() {
+      return tasksRun;
+    }
+
+    /** Returns the time that the tasks counted by {@link #getTasksRun} spent queued, in total. */
+    public long getTotalQueueNanos() {
+      return totalQueueNanos;
+    }
+
+    /** Returns the longest time that a task spent queued. */
+    public long getMaxQueueNanos() {
+      return maxQueueNanos;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("name", name)
+          .add("runningTasks", runningTasks)
+          .add("queuedTasks", queuedTasks)
+          .add("callsAdmitted", callsAdmitted)
+          .add("callsRejected", callsRejected)
+          .add("tasksRun", tasksRun)
+          .add("totalQueueNanos", totalQueueNanos)
+          .add("maxQueueNanos", maxQueueNanos)
+          .toString();
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.ExperimentalApi;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Builds a preset dictionary for {@link DeflateDictionaryCodec} from sampled messages.
+ *
+ * <p>Samples are kept in a fixed-size reservoir, so the trainer can be fed from live traffic for
+ * as long as needed. Training picks the segments of the samples that share the most content with
+ * other samples, and orders them so the most valuable segment ends up at the end of the
+ * dictionary, where matches are cheapest to encode.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+@ThreadSafe
+public final class CompressionDictionaryTrainer {
+  /** Matches shorter than this are not worth much to deflate, so shorter content is not scored. */
+  private static final int GRAM_LENGTH = 8;
+  /** Length of the segments the dictionary is assembled from. */
+  private static final int SEGMENT_LENGTH = 64;
+
+  private final int maxSamples;
+  private final Random random;
+  @GuardedBy("this")
+  private final List<byte[]> samples = new ArrayList<>();
+  @GuardedBy("this")
+  private long samplesSeen;
+
+  /**
+   * Creates a trainer that keeps up to {@code maxSamples} samples.
+   */
+  public CompressionDictionaryTrainer(int maxSamples) {
+    this(maxSamples, new Random());
+  }
+
+  @VisibleForTesting
+  CompressionDictionaryTrainer(int maxSamples, Random random) {
+    checkArgument(maxSamples > 0, "maxSamples must be positive");
+    this.maxSamples = maxSamples;
+    this.random = checkNotNull(random, "random");
+  }
+
+  /**
+   * Offers a serialized message as a sample. Once the reservoir is full, every message seen so far
+   * has the same chance of being kept.
+   */
+  public void addSample(byte[] message) {
+    checkNotNull(message, "message");
+    if (message.length < GRAM_LENGTH) {
+      return;
+    }
+    synchronized (this) {
+      samplesSeen++;
+      if (samples.size() < maxSamples) {
+        samples.add(message.clone());
+        return;
+      }
+      long slot = (long) (random.nextDouble() * samplesSeen);
+      if (slot < maxSamples) {
+        samples.set((int) slot, message.clone());
+      }
+    }
+  }
+
+  /**
+   * Returns the number of samples currently held.
+   */
+  public synchronized int getSampleCount() {
+    return samples.size();
+  }
+
+  /**
+   * Builds a dictionary of at most {@code maxSize} bytes from the samples held. The result may be
+   * shorter when the samples don't share enough content, and is empty when they share none.
+   */
+  public byte[] train(int maxSize) {
+    checkArgument(
+        maxSize > 0 && maxSize <= DeflateDictionaryCodec.MAX_DICTIONARY_SIZE,
+        "maxSize must be in (0, %s]", DeflateDictionaryCodec.MAX_DICTIONARY_SIZE);
+    List<byte[]> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(samples);
+    }
+    Map<Long, int[]> frequencies = countSampleFrequencies(snapshot);
+
+    // Samples are split into groups, and each round takes the best segment of every group. The
+    // grams of a chosen segment stop counting, so later segments cover different content.
+    List<Segment> segments = new ArrayList<>();
+    int groupCount = Math.max(1, Math.min(snapshot.size(), maxSize / SEGMENT_LENGTH));
+    int size = 0;
+    boolean progress = true;
+    while (size < maxSize && progress) {
+      progress = false;
+      for (int group = 0; group < groupCount && size < maxSize; group++) {
+        Segment best = null;
+        for (int i = group; i < snapshot.size(); i += groupCount) {
+          Segment candidate = bestSegment(snapshot.get(i), frequencies);
+          if (candidate != null && (best == null || candidate.score > best.score)) {
+            best = candidate;
+          }
+        }
+        if (best == null) {
+          continue;
+        }
+        for (int pos = best.offset; pos + GRAM_LENGTH <= best.offset + best.length; pos++) {
+          frequencies.remove(gramAt(best.sample, pos));
+        }
+        segments.add(best);
+        size += best.length;
+        progress = true;
+      }
+    }
+
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override
+      public int compare(Segment a, Segment b) {
+        return Long.compare(a.score, b.score);
+      }
+    });
+    // The best segments are last, so drop from the front if the last round overshot.
+    byte[] dictionary = new byte[Math.min(size, maxSize)];
+    int end = dictionary.length;
+    for (int i = segments.size() - 1; i >= 0 && end > 0; i--) {
+      Segment segment = segments.get(i);
+      int length = Math.min(segment.length, end);
+      System.arraycopy(
+          segment.sample, segment.offset + segment.length - length, dictionary, end - length,
+          length);
+      end -= length;
+    }
+    return dictionary;
+  }
+
+  /**
+   * Counts, for every gram, the number of samples it appears in. Counting each sample once keeps
+   * a long run inside a single message from looking like shared content.
+   */
+  private static Map<Long, int[]> countSampleFrequencies(List<byte[]> samples) {
+    Map<Long, int[]> frequencies = new HashMap<>();
+    Map<Long, Integer> lastSample = new HashMap<>();
+    for (int s = 0; s < samples.size(); s++) {
+      byte[] sample = samples.get(s);
+      for (int pos = 0; pos + GRAM_LENGTH <= sample.length; pos++) {
+        Long gram = gramAt(sample, pos);
+        Integer previous = lastSample.put(gram, s);
+        if (previous != null && previous == s) {
+          continue;
+        }
+        int[] count = frequencies.get(gram);
+        if (count == null) {
+          frequencies.put(gram, new int[] {1});
+        } else {
+          count[0]++;
+        }
+      }
+    }
+    return frequencies;
+  }
+
+  /**
+   * Finds the segment of {@code sample} whose grams are shared by the most other samples. Returns
+   * {@code null} if no gram in the sample is shared.
+   */
+  private static Segment bestSegment(byte[] sample, Map<Long, int[]> frequencies) {
+    int length = Math.min(SEGMENT_LENGTH, sample.length);
+    int gramsPerSegment = length - GRAM_LENGTH + 1;
+    int gramCount = sample.length - GRAM_LENGTH + 1;
+    long[] scores = new long[gramCount];
+    for (int pos = 0; pos < gramCount; pos++) {
+      int[] count = frequencies.get(gramAt(sample, pos));
+      // A gram only seen in one sample doesn't help compress any other message.
+      scores[pos] = count == null ? 0 : count[0] - 1;
+    }
+    long windowScore = 0;
+    for (int pos = 0; pos < gramsPerSegment; pos++) {
+      windowScore += scores[pos];
+    }
+    long bestScore = windowScore;
+    int bestOffset = 0;
+    for (int start = 1; start + gramsPerSegment <= gramCount; start++) {
+      windowScore += scores[start + gramsPerSegment - 1] - scores[start - 1];
+      if (windowScore > bestScore) {
+        bestScore = windowScore;
+        bestOffset = start;
+      }
+    }
+    if (bestScore <= 0) {
+      return null;
+    }
+    return new Segment(sample, bestOffset, length, bestScore);
+  }
+
+  private static long gramAt(byte[] data, int pos) {
+    long gram = 0;
+    for (int i = 0; i < GRAM_LENGTH; i++) {
+      gram = (gram << 8) | (data[pos + i] & 0xff);
+    }
+    return gram;
+  }
+
+  private static final class Segment {
+    final byte[] sample;
+    final int offset;
+    final int length;
+    final long score;
+
+    Segment(byte[] sample, int offset, int length, long score) {
+      this.sample = sample;
+      this.offset = offset;
+      this.length = length;
+      this.score = score;
+    }
+  }
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.SynchronizationContext.ScheduledHandle;
+import io.grpc.internal.TimeProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer} that keeps a pool of connections to each {@link EquivalentAddressGroup}
+ * from the {@link NameResolver}, to go past the throughput of a single HTTP/2 connection: one TCP
+ * connection, one event loop and the peer's {@code MAX_CONCURRENT_STREAMS}.
+ *
+ * <p>Each RPC goes to the ready connection with the fewest active streams. When all of them have
+ * {@code maxConcurrentStreams} active streams, another connection is opened to the address of the
+ * least loaded one, up to {@code maxConnectionsPerAddress}. Connections above {@code
+ * minConnectionsPerAddress} are closed once they have had no active streams for {@code
+ * idleTimeout}.
+ */
+final class ConnectionPoolLoadBalancer extends LoadBalancer {
+  private static final Status EMPTY_OK = Status.OK.withDescription("no subchannels ready");
+
+  private final Helper helper;
+  private final SynchronizationContext syncContext;
+  private final TimeProvider timeProvider;
+  private final Map<EquivalentAddressGroup, AddressPool> pools = new LinkedHashMap<>();
+  private ConnectionPoolConfig config = ConnectionPoolConfig.DEFAULT;
+  @Nullable
+  private ScheduledHandle idleTimer;
+  private ConnectivityState currentState;
+  private ConnectionPoolPicker currentPicker = new EmptyPicker(EMPTY_OK);
+
+  ConnectionPoolLoadBalancer(Helper helper) {
+    this(helper, TimeProvider.MONOTONIC_TIME_PROVIDER);
+  }
+
+  @VisibleForTesting
+  ConnectionPoolLoadBalancer(Helper helper, TimeProvider timeProvider) {
+    this.helper = checkNotNull(helper, "helper");
+    this.syncContext = checkNotNull(helper.getSynchronizationContext(), "syncContext");
+    this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    Object lbConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+    config = lbConfig instanceof ConnectionPoolConfig
+        ? (ConnectionPoolConfig) lbConfig : ConnectionPoolConfig.DEFAULT;
+
+    Map<EquivalentAddressGroup, EquivalentAddressGroup> latestAddrs = new LinkedHashMap<>();
+    for (EquivalentAddressGroup eag : resolvedAddresses.getAddresses()) {
+      latestAddrs.put(new EquivalentAddressGroup(eag.getAddresses()), eag);
+    }
+    List<Connection> removedConnections = new ArrayList<>();
+    for (Map.Entry<EquivalentAddressGroup, EquivalentAddressGroup> latestEntry :
+        latestAddrs.entrySet()) {
+      AddressPool pool = pools.get(latestEntry.getKey());
+      if (pool == null) {
+        pool = new AddressPool(latestEntry.getValue());
+        pools.put(latestEntry.getKey(), pool);
+      } else {
+        // EAG's Attributes may have changed.
+        pool.addressGroup = latestEntry.getValue();
+        for (Connection connection : pool.connections) {
+          connection.subchannel.updateAddresses(
+              Collections.singletonList(latestEntry.getValue()));
+        }
+      }
+      while (pool.connections.size() < config.minConnectionsPerAddress) {
+        addConnection(pool);
+      }
+      while (pool.connections.size() > config.maxConnectionsPerAddress) {
+        removedConnections.add(pool.connections.remove(pool.connections.size() - 1));
+      }
+      // The limits may have changed.
+      pool.growing.set(false);
+    }
+    List<EquivalentAddressGroup> removedAddrs = new ArrayList<>(pools.keySet());
+    removedAddrs.removeAll(latestAddrs.keySet());
+    for (EquivalentAddressGroup addressGroup : removedAddrs) {
+      removedConnections.addAll(pools.remove(addressGroup).connections);
+    }
+
+    // Update the picker before shutting down the subchannels, to reduce the chance of the race
+    // between picking a subchannel and shutting it down.
+    updateBalancingState();
+    for (Connection connection : removedConnections) {
+      connection.subchannel.shutdown();
+    }
+    scheduleIdleTimer();
+  }
+
+  @Override
+  public void handleNameResolutionError(Status error) {
+    if (currentState != READY) {
+      updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(error));
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    if (idleTimer != null) {
+      idleTimer.cancel();
+      idleTimer = null;
+    }
+    for (AddressPool pool : pools.values()) {
+      for (Connection connection : pool.connections) {
+        connection.subchannel.shutdown();
+      }
+    }
+    pools.clear();
+  }
+
+  private void addConnection(final AddressPool pool) {
+    final Subchannel subchannel = checkNotNull(
+        helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+            .setAddresses(pool.addressGroup)
+            .build()),
+        "subchannel");
+    final Connection connection = new Connection(pool, subchannel, timeProvider);
+    pool.connections.add(connection);
+    subchannel.start(new SubchannelStateListener() {
+      @Override
+      public void onSubchannelState(ConnectivityStateInfo state) {
+        processSubchannelState(connection, state);
+      }
+    });
+    subchannel.requestConnection();
+  }
+
+  /**
+   * Called by the picker when all the ready connections are saturated. Opens one more connection
+   * to the address, unless one is already being opened.
+   */
+  void requestConnection(final AddressPool pool) {
+    if (!pool.growing.compareAndSet(false, true)) {
+      return;
+    }
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        // A full pool stays marked as growing until a connection is removed, so that the picker
+        // does not keep asking.
+        if (pools.get(pool.key()) != pool
+            || pool.connections.size() >= config.maxConnectionsPerAddress) {
+          return;
+        }
+        // Cleared once the new connection is ready or has failed.
+        addConnection(pool);
+        updateBalancingState();
+        scheduleIdleTimer();
+      }
+    });
+  }
+
+  private void processSubchannelState(Connection connection, ConnectivityStateInfo stateInfo) {
+    if (!connection.pool.connections.contains(connection)
+        || pools.get(connection.pool.key()) != connection.pool) {
+      return;
+    }
+    if (stateInfo.getState() == TRANSIENT_FAILURE || stateInfo.getState() == IDLE) {
+      helper.refreshNameResolution();
+    }
+    if (stateInfo.getState() == IDLE) {
+      connection.subchannel.requestConnection();
+    }
+    if (stateInfo.getState() == READY || stateInfo.getState() == TRANSIENT_FAILURE) {
+      connection.pool.growing.set(false);
+    }
+    if (connection.state.getState() == TRANSIENT_FAILURE
+        && (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE)) {
+      return;
+    }
+    connection.state = stateInfo;
+    updateBalancingState();
+  }
+
+  private void scheduleIdleTimer() {
+    if (idleTimer != null && idleTimer.isPending()) {
+      return;
+    }
+    boolean hasExtraConnections = false;
+    for (AddressPool pool : pools.values()) {
+      hasExtraConnections |= pool.connections.size() > config.minConnectionsPerAddress;
+    }
+    if (hasExtraConnections) {
+      idleTimer = syncContext.schedule(
+          new IdleTimerTask(), config.idleTimeoutNanos, TimeUnit.NANOSECONDS,
+          helper.getScheduledExecutorService());
+    }
+  }
+
+  private final class IdleTimerTask implements Runnable {
+    @Override
+    public void run() {
+      long now = timeProvider.currentTimeNanos();
+      List<Connection> removedConnections = new ArrayList<>();
+      for (AddressPool pool : pools.values()) {
+        // Close the newest connections first, so that the oldest ones keep serving.
+        for (int i = pool.connections.size() - 1;
+            i >= 0 && pool.connections.size() > config.minConnectionsPerAddress; i--) {
+          Connection connection = pool.connections.get(i);
+          if (connection.activeStreams.get() == 0
+              && now - connection.idleSinceNanos >= config.idleTimeoutNanos) {
+            removedConnections.add(pool.connections.remove(i));
+            pool.growing.set(false);
+          }
+        }
+      }
+      if (!removedConnections.isEmpty()) {
+        updateBalancingState();
+        for (Connection connection : removedConnections) {
+          connection.subchannel.shutdown();
+        }
+      }
+      scheduleIdleTimer();
+    }
+  }
+
+  private void updateBalancingState() {
+    List<Connection> readyList = new ArrayList<>();
+    boolean isConnecting = false;
+    Status aggStatus = EMPTY_OK;
+    for (AddressPool pool : pools.values()) {
+      for (Connection connection : pool.connections) {
+        ConnectivityStateInfo stateInfo = connection.state;
+        if (stateInfo.getState() == READY) {
+          readyList.add(connection);
+        } else if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+          isConnecting = true;
+        }
+        if (aggStatus == EMPTY_OK || !aggStatus.isOk()) {
+          aggStatus = stateInfo.getStatus();
+        }
+      }
+    }
+    if (!readyList.isEmpty()) {
+      updateBalancingState(
+          READY, new ReadyPicker(this, readyList, config.maxConcurrentStreams));
+    } else {
+      updateBalancingState(
+          isConnecting ? CONNECTING : TRANSIENT_FAILURE, new EmptyPicker(aggStatus));
+    }
+  }
+
+  private void updateBalancingState(ConnectivityState state, ConnectionPoolPicker picker) {
+    if (state != currentState || !picker.isEquivalentTo(currentPicker)) {
+      helper.updateBalancingState(state, picker);
+      currentState = state;
+      currentPicker = picker;
+    }
+  }
+
+  @VisibleForTesting
+  List<Subchannel> getSubchannels(EquivalentAddressGroup addressGroup) {
+    List<Subchannel> subchannels = new ArrayList<>();
+    AddressPool pool = pools.get(new EquivalentAddressGroup(addressGroup.getAddresses()));
+    if (pool != null) {
+      for (Connection connection : pool.connections) {
+        subchannels.add(connection.subchannel);
+      }
+    }
+    return subchannels;
+  }
+
+  /** The connections to one address group. */
+  static final class AddressPool {
+    EquivalentAddressGroup addressGroup;
+    // Only accessed from the SynchronizationContext.
+    final List<Connection> connections = new ArrayList<>();
+    /** Whether a connection is being opened because the others are saturated. */
+    final AtomicBoolean growing = new AtomicBoolean();
+
+    AddressPool(EquivalentAddressGroup addressGroup) {
+      this.addressGroup = addressGroup;
+    }
+
+    EquivalentAddressGroup key() {
+      return new EquivalentAddressGroup(addressGroup.getAddresses());
+    }
+  }
+
+  /** A subchannel in a pool, that counts its active streams. */
+  static final class Connection extends ClientStreamTracer.Factory {
+    final AddressPool pool;
+    final Subchannel subchannel;
+    private final TimeProvider timeProvider;
+    final AtomicInteger activeStreams = new AtomicInteger();
+    volatile long idleSinceNanos;
+    // Only accessed from the SynchronizationContext.
+    ConnectivityStateInfo state = ConnectivityStateInfo.forNonError(IDLE);
+
+    Connection(AddressPool pool, Subchannel subchannel, TimeProvider timeProvider) {
+      this.pool = pool;
+      this.subchannel = subchannel;
+      this.timeProvider = timeProvider;
+      this.idleSinceNanos = timeProvider.currentTimeNanos();
+    }
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      activeStreams.incrementAndGet();
+      return new ClientStreamTracer() {
+        @Override
+        public void streamClosed(Status status) {
+          if (activeStreams.decrementAndGet() == 0) {
+            idleSinceNanos = timeProvider.currentTimeNanos();
+          }
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("subchannel", subchannel)
+          .add("activeStreams", activeStreams.get())
+          .toString();
+    }
+  }
+
+  // Only subclasses are ReadyPicker or EmptyPicker
+  private abstract static class ConnectionPoolPicker extends SubchannelPicker {
+    abstract boolean isEquivalentTo(ConnectionPoolPicker picker);
+  }
+
+  @VisibleForTesting
+  static final class ReadyPicker extends ConnectionPoolPicker {
+    private static final AtomicIntegerFieldUpdater<ReadyPicker> indexUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(ReadyPicker.class, "index");
+
+    private final ConnectionPoolLoadBalancer loadBalancer;
+    private final List<Connection> list; // non-empty
+    private final int maxConcurrentStreams;
+    @SuppressWarnings("unused")
+    private volatile int index;
+
+    ReadyPicker(
+        ConnectionPoolLoadBalancer loadBalancer, List<Connection> list, int maxConcurrentStreams) {
+      checkArgument(!list.isEmpty(), "empty list");
+      this.loadBalancer = loadBalancer;
+      this.list = list;
+      this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      // Start from a different connection each time, so that ties are broken round-robin.
+      int size = list.size();
+      int start = (indexUpdater.getAndIncrement(this) & Integer.MAX_VALUE) % size;
+      Connection leastLoaded = null;
+      int leastActive = Integer.MAX_VALUE;
+      for (int i = 0; i < size && leastActive > 0; i++) {
+        Connection connection = list.get((start + i) % size);
+        int active = connection.activeStreams.get();
+        if (active < leastActive) {
+          leastLoaded = connection;
+          leastActive = active;
+        }
+      }
+      if (leastActive >= maxConcurrentStreams) {
+        loadBalancer.requestConnection(leastLoaded.pool);
+      }
+      return PickResult.withSubchannel(leastLoaded.subchannel, leastLoaded);
+    }
+
+    @Override
+    boolean isEquivalentTo(ConnectionPoolPicker picker) {
+      if (!(picker instanceof ReadyPicker)) {
+        return false;
+      }
+      ReadyPicker other = (ReadyPicker) picker;
+      // the lists cannot contain duplicate connections
+      return other == this
+          || (list.size() == other.list.size()
+              && maxConcurrentStreams == other.maxConcurrentStreams
+              && new HashSet<>(list).containsAll(other.list));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(ReadyPicker.class).add("list", list).toString();
+    }
+  }
+
+  @VisibleForTesting
+  static final class EmptyPicker extends ConnectionPoolPicker {
+    private final Status status;
+
+    EmptyPicker(Status status) {
+      this.status = checkNotNull(status, "status");
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      return status.isOk() ? PickResult.withNoResult() : PickResult.withError(status);
+    }
+
+    @Override
+    boolean isEquivalentTo(ConnectionPoolPicker picker) {
+      return picker instanceof EmptyPicker && (Objects.equal(status, ((EmptyPicker) picker).status)
+          || (status.isOk() && ((EmptyPicker) picker).status.isOk()));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(EmptyPicker.class).add("status", status).toString();
+    }
+  }
+
+  static final class ConnectionPoolConfig {
+    static final ConnectionPoolConfig DEFAULT =
+        new ConnectionPoolConfig(1, 4, 100, TimeUnit.SECONDS.toNanos(30));
+
+    final int minConnectionsPerAddress;
+    final int maxConnectionsPerAddress;
+    final int maxConcurrentStreams;
+    final long idleTimeoutNanos;
+
+    ConnectionPoolConfig(
+        int minConnectionsPerAddress, int maxConnectionsPerAddress, int maxConcurrentStreams,
+        long idleTimeoutNanos) {
+      this.minConnectionsPerAddress = minConnectionsPerAddress;
+      this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ConnectionPoolConfig)) {
+        return false;
+      }
+      ConnectionPoolConfig that = (ConnectionPoolConfig) o;
+      return minConnectionsPerAddress == that.minConnectionsPerAddress
+          && maxConnectionsPerAddress == that.maxConnectionsPerAddress
+          && maxConcurrentStreams == that.maxConcurrentStreams
+          && idleTimeoutNanos == that.idleTimeoutNanos;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(
+          minConnectionsPerAddress, maxConnectionsPerAddress, maxConcurrentStreams,
+          idleTimeoutNanos);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("minConnectionsPerAddress", minConnectionsPerAddress)
+          .add("maxConnectionsPerAddress", maxConnectionsPerAddress)
+          .add("maxConcurrentStreams", maxConcurrentStreams)
+          .add("idleTimeoutNanos", idleTimeoutNanos)
+          .toString();
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.Codec;
+import io.grpc.ExperimentalApi;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A zlib {@link Codec} that primes the compressor with a preset dictionary. Small messages
+ * barely compress on their own because there is no history to refer back to. A dictionary made of
+ * content that recurs across messages, such as common string values, supplies that history, which
+ * makes dictionary compression effective for messages of a few hundred bytes.
+ *
+ * <p>The message encoding is {@code deflate-dict-<id>}. Both peers must register a codec with the
+ * same id and dictionary: {@code CompressorRegistry.register(codec)} on the sending side and
+ * {@code DecompressorRegistry.with(codec, true)} on the receiving side, which advertises the
+ * encoding in {@code grpc-accept-encoding}. When a dictionary is replaced, give it a new id and
+ * keep decompressors for the old id registered until no peer uses it anymore. A stream that was
+ * compressed with a different dictionary is rejected, because zlib records the dictionary's
+ * Adler-32 checksum.
+ *
+ * <p>Dictionaries can be built from sampled traffic with {@link CompressionDictionaryTrainer}.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+@ThreadSafe
+public final class DeflateDictionaryCodec implements Codec {
+  /** Prefix of the message encoding, which is followed by the dictionary id. */
+  public static final String ENCODING_PREFIX = "deflate-dict-";
+
+  /** Deflate only looks back this far, so the rest of a larger dictionary would be ignored. */
+  public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+  private static final Pattern ID_PATTERN = Pattern.compile("[0-9A-Za-z._]+");
+  private static final int BUFFER_SIZE = 512;
+
+  private final String messageEncoding;
+  private final byte[] dictionary;
+  private final int dictionaryChecksum;
+  private final int level;
+
+  /**
+   * Creates a codec using the default compression level.
+   *
+   * @param id identifies the dictionary. It may contain letters, digits, '.' and '_'
+   * @param dictionary the preset dictionary. The content that recurs most should be at the end,
+   *     where it is cheapest to refer to.
+   */
+  public DeflateDictionaryCodec(String id, byte[] dictionary) {
+    this(id, dictionary, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a codec.
+   *
+   * @param id identifies the dictionary. It may contain letters, digits, '.' and '_'
+   * @param dictionary the preset dictionary. The content that recurs most should be at the end,
+   *     where it is cheapest to refer to.
+   * @param level the {@link Deflater} compression level, from 0 to 9 or -1 for the default
+   */
+  public DeflateDictionaryCodec(String id, byte[] dictionary, int level) {
+    checkNotNull(id, "id");
+    checkArgument(ID_PATTERN.matcher(id).matches(), "Invalid dictionary id: %s", id);
+    checkNotNull(dictionary, "dictionary");
+    checkArgument(dictionary.length > 0, "dictionary is empty");
+    checkArgument(
+        dictionary.length <= MAX_DICTIONARY_SIZE,
+        "dictionary is larger than %s bytes", MAX_DICTIONARY_SIZE);
+    checkArgument(
+        level == Deflater.DEFAULT_COMPRESSION
+            || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+        "Invalid compression level: %s", level);
+    this.messageEncoding = ENCODING_PREFIX + id;
+    this.dictionary = dictionary.clone();
+    Adler32 adler = new Adler32();
+    adler.update(this.dictionary, 0, this.dictionary.length);
+    this.dictionaryChecksum = (int) adler.getValue();
+    this.level = level;
+  }
+
+  @Override
+  public String getMessageEncoding() {
+    return messageEncoding;
+  }
+
+  @Override
+  public OutputStream compress(OutputStream os) throws IOException {
+    Deflater deflater = new Deflater(level);
+    deflater.setDictionary(dictionary);
+    return new DeflaterEndingOutputStream(new DeflaterOutputStream(os, deflater, BUFFER_SIZE),
+        deflater);
+  }
+
+  @Override
+  public InputStream decompress(InputStream is) throws IOException {
+    return new DictionaryInflaterInputStream(is);
+  }
+
+  /**
+   * {@link DeflaterOutputStream} doesn't release a {@link Deflater} it was given, so this frees the
+   * native memory once the stream is closed instead of waiting for finalization.
+   */
+  private static final class DeflaterEndingOutputStream extends FilterOutputStream {
+    private final Deflater deflater;
+
+    DeflaterEndingOutputStream(DeflaterOutputStream out, Deflater deflater) {
+      super(out);
+      this.deflater = deflater;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Reads a zlib stream that expects the codec's dictionary. {@link
+   * java.util.zip.InflaterInputStream} reports end of stream when a dictionary is needed, so the
+   * inflate loop is done here.
+   */
+  private final class DictionaryInflaterInputStream extends InputStream {
+    private final InputStream in;
+    private final Inflater inflater = new Inflater();
+    private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+    private final byte[] singleByte = new byte[1];
+    private boolean closed;
+
+    DictionaryInflaterInputStream(InputStream in) {
+      this.in = checkNotNull(in, "in");
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        while (true) {
+          int n = inflater.inflate(b, off, len);
+          if (n > 0) {
+            return n;
+          }
+          if (inflater.finished()) {
+            return -1;
+          }
+          if (inflater.needsDictionary()) {
+            if (inflater.getAdler() != dictionaryChecksum) {
+              throw new IOException(
+                  "Stream was compressed with a different dictionary than " + messageEncoding);
+            }
+            inflater.setDictionary(dictionary);
+          } else if (inflater.needsInput()) {
+            int read = in.read(inputBuffer, 0, inputBuffer.length);
+            if (read == -1) {
+              throw new EOFException("Unexpected end of " + messageEncoding + " stream");
+            }
+            inflater.setInput(inputBuffer, 0, read);
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Invalid " + messageEncoding + " stream", e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        inflater.end();
+        in.close();
+      }
+    }
+  }
+}
@@ -68,6 +68,13 @@ public abstract class ForwardingClientStreamTracer extends ClientStreamTracer {
     delegate().outboundMessageSent(seqNo, optionalWireSize, optionalUncompressedSize);
   }
 
+  @Override
+  public void outboundMessageCompression(
+      int seqNo, boolean compressed, long uncompressedSize, long optionalCompressedSize) {
+    delegate().outboundMessageCompression(
+        seqNo, compressed, uncompressedSize, optionalCompressedSize);
+  }
+
   @Override
   public void inboundMessageRead(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
     delegate().inboundMessageRead(seqNo, optionalWireSize, optionalUncompressedSize);
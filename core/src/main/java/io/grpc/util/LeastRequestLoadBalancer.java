@@ -0,0 +1,406 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer} that sends each RPC to the ready subchannel with the fewest in-flight
+ * RPCs out of {@code choiceCount} picked at random ("power of two choices"). The in-flight RPCs
+ * are counted by a {@link ClientStreamTracer} on each pick, so picking takes no lock.
+ */
+final class LeastRequestLoadBalancer extends LoadBalancer {
+  @VisibleForTesting
+  static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO =
+      Attributes.Key.create("state-info");
+  @VisibleForTesting
+  static final Attributes.Key<InFlightCounter> IN_FLIGHT = Attributes.Key.create("in-flight");
+
+  private static final Status EMPTY_OK = Status.OK.withDescription("no subchannels ready");
+
+  private final Helper helper;
+  private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
+  @Nullable
+  private final Random random;
+  private int choiceCount = LeastRequestConfig.DEFAULT.choiceCount;
+
+  private ConnectivityState currentState;
+  private LeastRequestPicker currentPicker = new EmptyPicker(EMPTY_OK);
+
+  LeastRequestLoadBalancer(Helper helper) {
+    this(helper, null);
+  }
+
+  /**
+   * Creates an instance that picks subchannels with {@code random}, or with {@link
+   * ThreadLocalRandom} if {@code null}.
+   */
+  @VisibleForTesting
+  LeastRequestLoadBalancer(Helper helper, @Nullable Random random) {
+    this.helper = checkNotNull(helper, "helper");
+    this.random = random;
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    Object lbConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+    choiceCount = lbConfig instanceof LeastRequestConfig
+        ? ((LeastRequestConfig) lbConfig).choiceCount : LeastRequestConfig.DEFAULT.choiceCount;
+
+    Map<EquivalentAddressGroup, EquivalentAddressGroup> latestAddrs = new HashMap<>();
+    for (EquivalentAddressGroup eag : resolvedAddresses.getAddresses()) {
+      latestAddrs.put(stripAttrs(eag), eag);
+    }
+    Set<EquivalentAddressGroup> removedAddrs = new HashSet<>(subchannels.keySet());
+    removedAddrs.removeAll(latestAddrs.keySet());
+
+    for (Map.Entry<EquivalentAddressGroup, EquivalentAddressGroup> latestEntry :
+        latestAddrs.entrySet()) {
+      Subchannel existingSubchannel = subchannels.get(latestEntry.getKey());
+      if (existingSubchannel != null) {
+        // EAG's Attributes may have changed.
+        existingSubchannel.updateAddresses(Collections.singletonList(latestEntry.getValue()));
+        continue;
+      }
+      Attributes subchannelAttrs = Attributes.newBuilder()
+          .set(STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE)))
+          .set(IN_FLIGHT, new InFlightCounter())
+          .build();
+      final Subchannel subchannel = checkNotNull(
+          helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+              .setAddresses(latestEntry.getValue())
+              .setAttributes(subchannelAttrs)
+              .build()),
+          "subchannel");
+      subchannel.start(new SubchannelStateListener() {
+          @Override
+          public void onSubchannelState(ConnectivityStateInfo state) {
+            processSubchannelState(subchannel, state);
+          }
+        });
+      subchannels.put(latestEntry.getKey(), subchannel);
+      subchannel.requestConnection();
+    }
+
+    List<Subchannel> removedSubchannels = new ArrayList<>();
+    for (EquivalentAddressGroup addressGroup : removedAddrs) {
+      removedSubchannels.add(subchannels.remove(addressGroup));
+    }
+
+    // Update the picker before shutting down the subchannels, to reduce the chance of the race
+    // between picking a subchannel and shutting it down.
+    updateBalancingState();
+
+    for (Subchannel removedSubchannel : removedSubchannels) {
+      shutdownSubchannel(removedSubchannel);
+    }
+  }
+
+  @Override
+  public void handleNameResolutionError(Status error) {
+    if (currentState != READY) {
+      updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(error));
+    }
+  }
+
+  private void processSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+    if (subchannels.get(stripAttrs(subchannel.getAddresses())) != subchannel) {
+      return;
+    }
+    if (stateInfo.getState() == TRANSIENT_FAILURE || stateInfo.getState() == IDLE) {
+      helper.refreshNameResolution();
+    }
+    if (stateInfo.getState() == IDLE) {
+      subchannel.requestConnection();
+    }
+    Ref<ConnectivityStateInfo> subchannelStateRef = getSubchannelStateInfoRef(subchannel);
+    if (subchannelStateRef.value.getState() == TRANSIENT_FAILURE
+        && (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE)) {
+      return;
+    }
+    subchannelStateRef.value = stateInfo;
+    updateBalancingState();
+  }
+
+  private void shutdownSubchannel(Subchannel subchannel) {
+    subchannel.shutdown();
+    getSubchannelStateInfoRef(subchannel).value = ConnectivityStateInfo.forNonError(SHUTDOWN);
+  }
+
+  @Override
+  public void shutdown() {
+    for (Subchannel subchannel : getSubchannels()) {
+      shutdownSubchannel(subchannel);
+    }
+    subchannels.clear();
+  }
+
+  /**
+   * Updates picker with the list of active subchannels (state == READY).
+   */
+  @SuppressWarnings("ReferenceEquality")
+  private void updateBalancingState() {
+    List<Subchannel> activeList = new ArrayList<>(subchannels.size());
+    for (Subchannel subchannel : getSubchannels()) {
+      if (getSubchannelStateInfoRef(subchannel).value.getState() == READY) {
+        activeList.add(subchannel);
+      }
+    }
+    if (activeList.isEmpty()) {
+      // No READY subchannels, determine aggregate state and error status
+      boolean isConnecting = false;
+      Status aggStatus = EMPTY_OK;
+      for (Subchannel subchannel : getSubchannels()) {
+        ConnectivityStateInfo stateInfo = getSubchannelStateInfoRef(subchannel).value;
+        if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+          isConnecting = true;
+        }
+        if (aggStatus == EMPTY_OK || !aggStatus.isOk()) {
+          aggStatus = stateInfo.getStatus();
+        }
+      }
+      updateBalancingState(isConnecting ? CONNECTING : TRANSIENT_FAILURE,
+          // If all subchannels are TRANSIENT_FAILURE, return the Status associated with
+          // an arbitrary subchannel, otherwise return OK.
+          new EmptyPicker(aggStatus));
+    } else {
+      updateBalancingState(READY, new ReadyPicker(activeList, choiceCount, random));
+    }
+  }
+
+  private void updateBalancingState(ConnectivityState state, LeastRequestPicker picker) {
+    if (state != currentState || !picker.isEquivalentTo(currentPicker)) {
+      helper.updateBalancingState(state, picker);
+      currentState = state;
+      currentPicker = picker;
+    }
+  }
+
+  private static EquivalentAddressGroup stripAttrs(EquivalentAddressGroup eag) {
+    return new EquivalentAddressGroup(eag.getAddresses());
+  }
+
+  @VisibleForTesting
+  Collection<Subchannel> getSubchannels() {
+    return subchannels.values();
+  }
+
+  private static Ref<ConnectivityStateInfo> getSubchannelStateInfoRef(Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(STATE_INFO), "STATE_INFO");
+  }
+
+  private static InFlightCounter getInFlightCounter(Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(IN_FLIGHT), "IN_FLIGHT");
+  }
+
+  /** Counts the in-flight RPCs of a subchannel, from the pick to the close of the stream. */
+  @VisibleForTesting
+  static final class InFlightCounter extends ClientStreamTracer.Factory {
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      inFlight.incrementAndGet();
+      return new ClientStreamTracer() {
+        @Override
+        public void streamClosed(Status status) {
+          inFlight.decrementAndGet();
+        }
+      };
+    }
+
+    int get() {
+      return inFlight.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(inFlight.get());
+    }
+  }
+
+  // Only subclasses are ReadyPicker or EmptyPicker
+  private abstract static class LeastRequestPicker extends SubchannelPicker {
+    abstract boolean isEquivalentTo(LeastRequestPicker picker);
+  }
+
+  @VisibleForTesting
+  static final class ReadyPicker extends LeastRequestPicker {
+    private final List<Subchannel> list; // non-empty
+    private final int choiceCount;
+    @Nullable
+    private final Random random;
+
+    ReadyPicker(List<Subchannel> list, int choiceCount, @Nullable Random random) {
+      checkArgument(!list.isEmpty(), "empty list");
+      this.list = list;
+      this.choiceCount = choiceCount;
+      this.random = random;
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      Subchannel candidate = list.get(nextIndex());
+      InFlightCounter candidateCounter = getInFlightCounter(candidate);
+      if (list.size() > 1) {
+        int candidateInFlight = candidateCounter.get();
+        for (int i = 1; i < choiceCount; i++) {
+          Subchannel subchannel = list.get(nextIndex());
+          InFlightCounter counter = getInFlightCounter(subchannel);
+          int inFlight = counter.get();
+          if (inFlight < candidateInFlight) {
+            candidate = subchannel;
+            candidateCounter = counter;
+            candidateInFlight = inFlight;
+          }
+        }
+      }
+      return PickResult.withSubchannel(candidate, candidateCounter);
+    }
+
+    private int nextIndex() {
+      int size = list.size();
+      if (size == 1) {
+        return 0;
+      }
+      return random != null ? random.nextInt(size) : ThreadLocalRandom.current().nextInt(size);
+    }
+
+    @VisibleForTesting
+    List<Subchannel> getList() {
+      return list;
+    }
+
+    @Override
+    boolean isEquivalentTo(LeastRequestPicker picker) {
+      if (!(picker instanceof ReadyPicker)) {
+        return false;
+      }
+      ReadyPicker other = (ReadyPicker) picker;
+      // the lists cannot contain duplicate subchannels
+      return other == this
+          || (list.size() == other.list.size()
+              && choiceCount == other.choiceCount
+              && new HashSet<>(list).containsAll(other.list));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(ReadyPicker.class)
+          .add("list", list)
+          .add("choiceCount", choiceCount)
+          .toString();
+    }
+  }
+
+  @VisibleForTesting
+  static final class EmptyPicker extends LeastRequestPicker {
+    private final Status status;
+
+    EmptyPicker(Status status) {
+      this.status = checkNotNull(status, "status");
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      return status.isOk() ? PickResult.withNoResult() : PickResult.withError(status);
+    }
+
+    @Override
+    boolean isEquivalentTo(LeastRequestPicker picker) {
+      return picker instanceof EmptyPicker && (Objects.equal(status, ((EmptyPicker) picker).status)
+          || (status.isOk() && ((EmptyPicker) picker).status.isOk()));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(EmptyPicker.class).add("status", status).toString();
+    }
+  }
+
+  static final class LeastRequestConfig {
+    static final LeastRequestConfig DEFAULT = new LeastRequestConfig(2);
+    /** The largest choiceCount accepted; larger values are capped. */
+    static final int MAX_CHOICE_COUNT = 10;
+
+    final int choiceCount;
+
+    LeastRequestConfig(int choiceCount) {
+      checkArgument(choiceCount >= 2, "choiceCount must be at least 2");
+      this.choiceCount = Math.min(choiceCount, MAX_CHOICE_COUNT);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof LeastRequestConfig
+          && choiceCount == ((LeastRequestConfig) o).choiceCount;
+    }
+
+    @Override
+    public int hashCode() {
+      return choiceCount;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this).add("choiceCount", choiceCount).toString();
+    }
+  }
+
+  /**
+   * A lighter weight Reference than AtomicReference.
+   */
+  @VisibleForTesting
+  static final class Ref<T> {
+    T value;
+
+    Ref(T value) {
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,812 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.Internal;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.SynchronizationContext.ScheduledHandle;
+import io.grpc.internal.ServiceConfigUtil.PolicySelection;
+import io.grpc.internal.TimeProvider;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer} that wraps a child policy and ejects the addresses that are outliers in
+ * success rate, failure percentage or latency. The calls to each address are counted by a {@link
+ * ClientStreamTracer}, and every interval the counts of the last interval are compared across
+ * addresses. The subchannels of an ejected address look TRANSIENT_FAILURE to the child policy
+ * until the ejection expires. An address ejected again is ejected for a longer time, and the
+ * ejected addresses are bounded by {@code maxEjectionPercent}.
+ */
+@Internal
+public final class OutlierDetectionLoadBalancer extends ForwardingLoadBalancer {
+  // The tracker of a subchannel's address, which the picker finds through any wrapping of the
+  // subchannel by the child policy.
+  private static final Attributes.Key<AddressTracker> ADDRESS_TRACKER =
+      Attributes.Key.create("outlier-detection-address-tracker");
+  private static final Status EJECTED_STATUS =
+      Status.UNAVAILABLE.withDescription("Ejected by outlier detection");
+  private static final ClientStreamTracer NOOP_TRACER = new ClientStreamTracer() {};
+
+  private final Helper helper;
+  private final SynchronizationContext syncContext;
+  private final TimeProvider timeProvider;
+  @Nullable
+  private final Random random;
+  private final GracefulSwitchLoadBalancer switchLb;
+  private final Map<SocketAddress, AddressTracker> trackers = new HashMap<>();
+  private OutlierDetectionLoadBalancerConfig config;
+  @Nullable
+  private ScheduledHandle detectionTimer;
+  private long detectionTimerStartNanos;
+
+  public OutlierDetectionLoadBalancer(Helper helper) {
+    this(helper, TimeProvider.MONOTONIC_TIME_PROVIDER, null);
+  }
+
+  /**
+   * Creates an instance that enforces ejections with {@code random}, or with {@link
+   * ThreadLocalRandom} if {@code null}.
+   */
+  @VisibleForTesting
+  OutlierDetectionLoadBalancer(
+      Helper helper, TimeProvider timeProvider, @Nullable Random random) {
+    this.helper = checkNotNull(helper, "helper");
+    this.syncContext = checkNotNull(helper.getSynchronizationContext(), "syncContext");
+    this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+    this.random = random;
+    this.switchLb = new GracefulSwitchLoadBalancer(new OutlierDetectionHelper());
+  }
+
+  @Override
+  protected LoadBalancer delegate() {
+    return switchLb;
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    config = (OutlierDetectionLoadBalancerConfig)
+        checkNotNull(resolvedAddresses.getLoadBalancingPolicyConfig(), "config");
+
+    Set<SocketAddress> addresses = new HashSet<>();
+    for (EquivalentAddressGroup eag : resolvedAddresses.getAddresses()) {
+      // Only addresses that are alone in their group are tracked, as in subchannels.
+      if (eag.getAddresses().size() == 1) {
+        addresses.add(eag.getAddresses().get(0));
+      }
+    }
+    for (Map.Entry<SocketAddress, AddressTracker> entry :
+        new ArrayList<>(trackers.entrySet())) {
+      if (!addresses.contains(entry.getKey())) {
+        trackers.remove(entry.getKey());
+        for (OutlierDetectionSubchannel subchannel :
+            new ArrayList<>(entry.getValue().subchannels)) {
+          subchannel.setTracker(null);
+        }
+      }
+    }
+    for (SocketAddress address : addresses) {
+      if (!trackers.containsKey(address)) {
+        trackers.put(address, new AddressTracker());
+      }
+    }
+
+    if (!config.isDetectionEnabled()) {
+      cancelDetectionTimer();
+      for (AddressTracker tracker : trackers.values()) {
+        tracker.uneject();
+        tracker.ejectionTimeMultiplier = 0;
+      }
+    } else {
+      long delayNanos = config.intervalNanos;
+      long nowNanos = timeProvider.currentTimeNanos();
+      if (detectionTimer != null) {
+        // The interval may have changed, but the detection keeps its phase.
+        delayNanos = Math.max(0L, config.intervalNanos - (nowNanos - detectionTimerStartNanos));
+        detectionTimer.cancel();
+      } else {
+        detectionTimerStartNanos = nowNanos;
+        for (AddressTracker tracker : trackers.values()) {
+          tracker.resetCallCounters();
+        }
+      }
+      scheduleDetection(delayNanos);
+    }
+
+    switchLb.switchTo(config.childPolicy.getProvider());
+    switchLb.handleResolvedAddresses(resolvedAddresses.toBuilder()
+        .setLoadBalancingPolicyConfig(config.childPolicy.getConfig())
+        .build());
+  }
+
+  @Override
+  public void shutdown() {
+    cancelDetectionTimer();
+    switchLb.shutdown();
+  }
+
+  private void scheduleDetection(long delayNanos) {
+    detectionTimer = syncContext.schedule(new Runnable() {
+      @Override
+      public void run() {
+        detectionTimerStartNanos = timeProvider.currentTimeNanos();
+        detectOutliers(detectionTimerStartNanos);
+        scheduleDetection(config.intervalNanos);
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS, helper.getScheduledExecutorService());
+  }
+
+  private void cancelDetectionTimer() {
+    if (detectionTimer != null) {
+      detectionTimer.cancel();
+      detectionTimer = null;
+    }
+  }
+
+  private void detectOutliers(long nowNanos) {
+    for (AddressTracker tracker : trackers.values()) {
+      tracker.swapCallCounters();
+    }
+    if (config.successRateEjection != null) {
+      successRateEjection(config.successRateEjection, nowNanos);
+    }
+    if (config.failurePercentageEjection != null) {
+      failurePercentageEjection(config.failurePercentageEjection, nowNanos);
+    }
+    if (config.latencyEjection != null) {
+      latencyEjection(config.latencyEjection, nowNanos);
+    }
+    long maxEjectionTimeNanos = Math.max(config.baseEjectionTimeNanos, config.maxEjectionTimeNanos);
+    for (AddressTracker tracker : trackers.values()) {
+      if (!tracker.ejected) {
+        if (tracker.ejectionTimeMultiplier > 0) {
+          tracker.ejectionTimeMultiplier--;
+        }
+      } else if (nowNanos - tracker.ejectionTimeNanos >= Math.min(
+          config.baseEjectionTimeNanos * tracker.ejectionTimeMultiplier, maxEjectionTimeNanos)) {
+        tracker.uneject();
+      }
+    }
+  }
+
+  private void successRateEjection(SuccessRateEjection ejection, long nowNanos) {
+    List<AddressTracker> candidates = new ArrayList<>();
+    for (AddressTracker tracker : trackers.values()) {
+      if (!tracker.ejected && tracker.inactiveCounter.volume() >= ejection.requestVolume) {
+        candidates.add(tracker);
+      }
+    }
+    if (candidates.isEmpty() || candidates.size() < ejection.minimumHosts) {
+      return;
+    }
+    double[] successRates = new double[candidates.size()];
+    for (int i = 0; i < successRates.length; i++) {
+      CallCounter counter = candidates.get(i).inactiveCounter;
+      successRates[i] = (double) counter.successCount.get() / counter.volume();
+    }
+    double mean = mean(successRates);
+    double threshold =
+        mean - standardDeviation(successRates, mean) * (ejection.stdevFactor / 1000.0);
+    for (int i = 0; i < successRates.length; i++) {
+      if (ejectedPercentage() >= config.maxEjectionPercent) {
+        return;
+      }
+      if (successRates[i] < threshold && isEnforced(ejection.enforcementPercentage)) {
+        eject(candidates.get(i), nowNanos);
+      }
+    }
+  }
+
+  private void failurePercentageEjection(FailurePercentageEjection ejection, long nowNanos) {
+    List<AddressTracker> candidates = new ArrayList<>();
+    for (AddressTracker tracker : trackers.values()) {
+      if (!tracker.ejected && tracker.inactiveCounter.volume() >= ejection.requestVolume) {
+        candidates.add(tracker);
+      }
+    }
+    if (candidates.isEmpty() || candidates.size() < ejection.minimumHosts) {
+      return;
+    }
+    for (AddressTracker tracker : candidates) {
+      if (ejectedPercentage() >= config.maxEjectionPercent) {
+        return;
+      }
+      CallCounter counter = tracker.inactiveCounter;
+      double failurePercentage = 100.0 * counter.failureCount.get() / counter.volume();
+      if (failurePercentage > ejection.threshold
+          && isEnforced(ejection.enforcementPercentage)) {
+        eject(tracker, nowNanos);
+      }
+    }
+  }
+
+  private void latencyEjection(LatencyEjection ejection, long nowNanos) {
+    List<AddressTracker> candidates = new ArrayList<>();
+    for (AddressTracker tracker : trackers.values()) {
+      // Failed calls are often fast, so only the latency of the successful ones is compared.
+      if (!tracker.ejected && tracker.inactiveCounter.successCount.get() > 0
+          && tracker.inactiveCounter.successCount.get() >= ejection.requestVolume) {
+        candidates.add(tracker);
+      }
+    }
+    if (candidates.isEmpty() || candidates.size() < ejection.minimumHosts) {
+      return;
+    }
+    double[] latencies = new double[candidates.size()];
+    for (int i = 0; i < latencies.length; i++) {
+      CallCounter counter = candidates.get(i).inactiveCounter;
+      latencies[i] = (double) counter.latencyNanosSum.get() / counter.successCount.get();
+    }
+    double mean = mean(latencies);
+    double threshold = mean + standardDeviation(latencies, mean) * (ejection.stdevFactor / 1000.0);
+    for (int i = 0; i < latencies.length; i++) {
+      if (ejectedPercentage() >= config.maxEjectionPercent) {
+        return;
+      }
+      if (latencies[i] > threshold && isEnforced(ejection.enforcementPercentage)) {
+        eject(candidates.get(i), nowNanos);
+      }
+    }
+  }
+
+  private void eject(AddressTracker tracker, long nowNanos) {
+    tracker.ejected = true;
+    tracker.ejectionTimeNanos = nowNanos;
+    // Once the multiplier reaches maxEjectionTime it would not lengthen the ejection.
+    if (config.baseEjectionTimeNanos * tracker.ejectionTimeMultiplier
+        < config.maxEjectionTimeNanos) {
+      tracker.ejectionTimeMultiplier++;
+    }
+    for (OutlierDetectionSubchannel subchannel : tracker.subchannels) {
+      subchannel.eject();
+    }
+  }
+
+  private double ejectedPercentage() {
+    int ejectedCount = 0;
+    for (AddressTracker tracker : trackers.values()) {
+      if (tracker.ejected) {
+        ejectedCount++;
+      }
+    }
+    return 100.0 * ejectedCount / trackers.size();
+  }
+
+  private boolean isEnforced(int enforcementPercentage) {
+    Random random = this.random != null ? this.random : ThreadLocalRandom.current();
+    return random.nextInt(100) < enforcementPercentage;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  private static double standardDeviation(double[] values, double mean) {
+    double squaredDifferenceSum = 0;
+    for (double value : values) {
+      squaredDifferenceSum += (value - mean) * (value - mean);
+    }
+    return Math.sqrt(squaredDifferenceSum / values.length);
+  }
+
+  @Nullable
+  private AddressTracker trackerFor(List<EquivalentAddressGroup> addressGroups) {
+    if (addressGroups.size() != 1 || addressGroups.get(0).getAddresses().size() != 1) {
+      return null;
+    }
+    return trackers.get(addressGroups.get(0).getAddresses().get(0));
+  }
+
+  private final class OutlierDetectionHelper extends ForwardingLoadBalancerHelper {
+    @Override
+    protected Helper delegate() {
+      return helper;
+    }
+
+    @Override
+    public Subchannel createSubchannel(CreateSubchannelArgs args) {
+      OutlierDetectionSubchannel subchannel =
+          new OutlierDetectionSubchannel(helper.createSubchannel(args));
+      subchannel.setTracker(trackerFor(args.getAddresses()));
+      return subchannel;
+    }
+
+    @Override
+    public void updateBalancingState(ConnectivityState newState, SubchannelPicker newPicker) {
+      helper.updateBalancingState(newState, new OutlierDetectionPicker(newPicker));
+    }
+  }
+
+  /**
+   * A subchannel of the child policy. While its address is ejected it reports TRANSIENT_FAILURE
+   * to the child policy, and it reports its real state again when the ejection expires.
+   */
+  private final class OutlierDetectionSubchannel extends ForwardingSubchannel {
+    private final Subchannel delegate;
+    @Nullable
+    private AddressTracker tracker;
+    // The delegate's attributes with the tracker. Read by the picker.
+    private volatile Attributes attributes;
+    @Nullable
+    private SubchannelStateListener listener;
+    @Nullable
+    private ConnectivityStateInfo lastState;
+    private boolean ejected;
+
+    OutlierDetectionSubchannel(Subchannel delegate) {
+      this.delegate = checkNotNull(delegate, "delegate");
+      this.attributes = delegate.getAttributes();
+    }
+
+    @Override
+    protected Subchannel delegate() {
+      return delegate;
+    }
+
+    @Override
+    public void start(final SubchannelStateListener listener) {
+      this.listener = listener;
+      delegate.start(new SubchannelStateListener() {
+        @Override
+        public void onSubchannelState(ConnectivityStateInfo newState) {
+          lastState = newState;
+          if (!ejected) {
+            listener.onSubchannelState(newState);
+          }
+        }
+      });
+      if (ejected) {
+        // Let the child policy finish adding the subchannel first.
+        syncContext.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (ejected) {
+              listener.onSubchannelState(ConnectivityStateInfo.forTransientFailure(EJECTED_STATUS));
+            }
+          }
+        });
+      }
+    }
+
+    @Override
+    public Attributes getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public void shutdown() {
+      setTracker(null);
+      delegate.shutdown();
+    }
+
+    @Override
+    public void updateAddresses(List<EquivalentAddressGroup> addrs) {
+      delegate.updateAddresses(addrs);
+      setTracker(trackerFor(addrs));
+    }
+
+    void setTracker(@Nullable AddressTracker newTracker) {
+      if (tracker == newTracker) {
+        return;
+      }
+      if (tracker != null) {
+        tracker.subchannels.remove(this);
+      }
+      tracker = newTracker;
+      if (newTracker != null) {
+        newTracker.subchannels.add(this);
+      }
+      attributes = newTracker == null ? delegate.getAttributes()
+          : delegate.getAttributes().toBuilder().set(ADDRESS_TRACKER, newTracker).build();
+      if (newTracker != null && newTracker.ejected) {
+        eject();
+      } else {
+        uneject();
+      }
+    }
+
+    void eject() {
+      if (ejected) {
+        return;
+      }
+      ejected = true;
+      if (listener != null) {
+        listener.onSubchannelState(ConnectivityStateInfo.forTransientFailure(EJECTED_STATUS));
+      }
+    }
+
+    void uneject() {
+      if (!ejected) {
+        return;
+      }
+      ejected = false;
+      if (listener != null && lastState != null) {
+        listener.onSubchannelState(lastState);
+      }
+    }
+  }
+
+  /** Counts the result of the calls on the picked subchannels. */
+  private final class OutlierDetectionPicker extends SubchannelPicker {
+    private final SubchannelPicker delegate;
+
+    OutlierDetectionPicker(SubchannelPicker delegate) {
+      this.delegate = checkNotNull(delegate, "delegate");
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      PickResult result = delegate.pickSubchannel(args);
+      Subchannel subchannel = result.getSubchannel();
+      AddressTracker tracker =
+          subchannel != null ? subchannel.getAttributes().get(ADDRESS_TRACKER) : null;
+      if (tracker == null) {
+        return result;
+      }
+      return PickResult.withSubchannel(
+          subchannel, new CallResultTracerFactory(tracker, result.getStreamTracerFactory()));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this).add("delegate", delegate).toString();
+    }
+  }
+
+  private final class CallResultTracerFactory extends ClientStreamTracer.Factory {
+    private final AddressTracker tracker;
+    @Nullable
+    private final ClientStreamTracer.Factory delegate;
+
+    CallResultTracerFactory(AddressTracker tracker, @Nullable ClientStreamTracer.Factory delegate) {
+      this.tracker = tracker;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      final ClientStreamTracer delegateTracer =
+          delegate != null ? delegate.newClientStreamTracer(info, headers) : NOOP_TRACER;
+      final long startNanos = timeProvider.currentTimeNanos();
+      return new ForwardingClientStreamTracer() {
+        @Override
+        protected ClientStreamTracer delegate() {
+          return delegateTracer;
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+          tracker.activeCounter.record(
+              status.isOk(), timeProvider.currentTimeNanos() - startNanos);
+          delegateTracer.streamClosed(status);
+        }
+      };
+    }
+  }
+
+  /**
+   * The calls and ejection state of an address. Calls are counted in the active counter, which is
+   * swapped with the inactive one at the start of each detection.
+   */
+  private static final class AddressTracker {
+    private volatile CallCounter activeCounter = new CallCounter();
+    private CallCounter inactiveCounter = new CallCounter();
+    private final Set<OutlierDetectionSubchannel> subchannels = new HashSet<>();
+    private boolean ejected;
+    private long ejectionTimeNanos;
+    private int ejectionTimeMultiplier;
+
+    void swapCallCounters() {
+      inactiveCounter.reset();
+      CallCounter counter = activeCounter;
+      activeCounter = inactiveCounter;
+      inactiveCounter = counter;
+    }
+
+    void resetCallCounters() {
+      activeCounter.reset();
+      inactiveCounter.reset();
+    }
+
+    void uneject() {
+      ejected = false;
+      for (OutlierDetectionSubchannel subchannel : subchannels) {
+        subchannel.uneject();
+      }
+    }
+  }
+
+  private static final class CallCounter {
+    final AtomicLong successCount = new AtomicLong();
+    final AtomicLong failureCount = new AtomicLong();
+    final AtomicLong latencyNanosSum = new AtomicLong();
+
+    void record(boolean success, long latencyNanos) {
+      if (success) {
+        successCount.incrementAndGet();
+        latencyNanosSum.addAndGet(latencyNanos);
+      } else {
+        failureCount.incrementAndGet();
+      }
+    }
+
+    long volume() {
+      return successCount.get() + failureCount.get();
+    }
+
+    void reset() {
+      successCount.set(0);
+      failureCount.set(0);
+      latencyNanosSum.set(0);
+    }
+  }
+
+  /** The parsed config of the outlier detection policy. */
+  public static final class OutlierDetectionLoadBalancerConfig {
+    public final long intervalNanos;
+    public final long baseEjectionTimeNanos;
+    public final long maxEjectionTimeNanos;
+    public final int maxEjectionPercent;
+    @Nullable
+    public final SuccessRateEjection successRateEjection;
+    @Nullable
+    public final FailurePercentageEjection failurePercentageEjection;
+    @Nullable
+    public final LatencyEjection latencyEjection;
+    public final PolicySelection childPolicy;
+
+    /**
+     * Creates a config. Each of {@code successRateEjection}, {@code failurePercentageEjection}
+     * and {@code latencyEjection} enables its algorithm when not {@code null}.
+     */
+    public OutlierDetectionLoadBalancerConfig(
+        long intervalNanos, long baseEjectionTimeNanos, long maxEjectionTimeNanos,
+        int maxEjectionPercent, @Nullable SuccessRateEjection successRateEjection,
+        @Nullable FailurePercentageEjection failurePercentageEjection,
+        @Nullable LatencyEjection latencyEjection, PolicySelection childPolicy) {
+      checkArgument(intervalNanos > 0, "intervalNanos must be positive");
+      checkArgument(baseEjectionTimeNanos > 0, "baseEjectionTimeNanos must be positive");
+      checkArgument(maxEjectionTimeNanos > 0, "maxEjectionTimeNanos must be positive");
+      checkArgument(maxEjectionPercent >= 0 && maxEjectionPercent <= 100,
+          "maxEjectionPercent must be in [0, 100]");
+      this.intervalNanos = intervalNanos;
+      this.baseEjectionTimeNanos = baseEjectionTimeNanos;
+      this.maxEjectionTimeNanos = maxEjectionTimeNanos;
+      this.maxEjectionPercent = maxEjectionPercent;
+      this.successRateEjection = successRateEjection;
+      this.failurePercentageEjection = failurePercentageEjection;
+      this.latencyEjection = latencyEjection;
+      this.childPolicy = checkNotNull(childPolicy, "childPolicy");
+    }
+
+    boolean isDetectionEnabled() {
+      return successRateEjection != null || failurePercentageEjection != null
+          || latencyEjection != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof OutlierDetectionLoadBalancerConfig)) {
+        return false;
+      }
+      OutlierDetectionLoadBalancerConfig that = (OutlierDetectionLoadBalancerConfig) o;
+      return intervalNanos == that.intervalNanos
+          && baseEjectionTimeNanos == that.baseEjectionTimeNanos
+          && maxEjectionTimeNanos == that.maxEjectionTimeNanos
+          && maxEjectionPercent == that.maxEjectionPercent
+          && Objects.equal(successRateEjection, that.successRateEjection)
+          && Objects.equal(failurePercentageEjection, that.failurePercentageEjection)
+          && Objects.equal(latencyEjection, that.latencyEjection)
+          && childPolicy.equals(that.childPolicy);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(intervalNanos, baseEjectionTimeNanos, maxEjectionTimeNanos,
+          maxEjectionPercent, successRateEjection, failurePercentageEjection, latencyEjection,
+          childPolicy);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("intervalNanos", intervalNanos)
+          .add("baseEjectionTimeNanos", baseEjectionTimeNanos)
+          .add("maxEjectionTimeNanos", maxEjectionTimeNanos)
+          .add("maxEjectionPercent", maxEjectionPercent)
+          .add("successRateEjection", successRateEjection)
+          .add("failurePercentageEjection", failurePercentageEjection)
+          .add("latencyEjection", latencyEjection)
+          .add("childPolicy", childPolicy)
+          .toString();
+    }
+  }
+
+  /**
+   * Ejects the addresses whose success rate is more than {@code stdevFactor / 1000} standard
+   * deviations below the mean.
+   */
+  public static final class SuccessRateEjection {
+    public final int stdevFactor;
+    public final int enforcementPercentage;
+    public final int minimumHosts;
+    public final int requestVolume;
+
+    /** Creates a success rate ejection config. */
+    public SuccessRateEjection(
+        int stdevFactor, int enforcementPercentage, int minimumHosts, int requestVolume) {
+      checkArgument(enforcementPercentage >= 0 && enforcementPercentage <= 100,
+          "enforcementPercentage must be in [0, 100]");
+      this.stdevFactor = stdevFactor;
+      this.enforcementPercentage = enforcementPercentage;
+      this.minimumHosts = minimumHosts;
+      this.requestVolume = requestVolume;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SuccessRateEjection)) {
+        return false;
+      }
+      SuccessRateEjection that = (SuccessRateEjection) o;
+      return stdevFactor == that.stdevFactor
+          && enforcementPercentage == that.enforcementPercentage
+          && minimumHosts == that.minimumHosts
+          && requestVolume == that.requestVolume;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(stdevFactor, enforcementPercentage, minimumHosts, requestVolume);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("stdevFactor", stdevFactor)
+          .add("enforcementPercentage", enforcementPercentage)
+          .add("minimumHosts", minimumHosts)
+          .add("requestVolume", requestVolume)
+          .toString();
+    }
+  }
+
+  /** Ejects the addresses whose percentage of failed calls is above {@code threshold}. */
+  public static final class FailurePercentageEjection {
+    public final int threshold;
+    public final int enforcementPercentage;
+    public final int minimumHosts;
+    public final int requestVolume;
+
+    /** Creates a failure percentage ejection config. */
+    public FailurePercentageEjection(
+        int threshold, int enforcementPercentage, int minimumHosts, int requestVolume) {
+      checkArgument(threshold >= 0 && threshold <= 100, "threshold must be in [0, 100]");
+      checkArgument(enforcementPercentage >= 0 && enforcementPercentage <= 100,
+          "enforcementPercentage must be in [0, 100]");
+      this.threshold = threshold;
+      this.enforcementPercentage = enforcementPercentage;
+      this.minimumHosts = minimumHosts;
+      this.requestVolume = requestVolume;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof FailurePercentageEjection)) {
+        return false;
+      }
+      FailurePercentageEjection that = (FailurePercentageEjection) o;
+      return threshold == that.threshold
+          && enforcementPercentage == that.enforcementPercentage
+          && minimumHosts == that.minimumHosts
+          && requestVolume == that.requestVolume;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(threshold, enforcementPercentage, minimumHosts, requestVolume);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("threshold", threshold)
+          .add("enforcementPercentage", enforcementPercentage)
+          .add("minimumHosts", minimumHosts)
+          .add("requestVolume", requestVolume)
+          .toString();
+    }
+  }
+
+  /**
+   * Ejects the addresses whose mean latency of successful calls is more than {@code stdevFactor /
+   * 1000} standard deviations above the mean. {@code requestVolume} counts successful calls.
+   */
+  public static final class LatencyEjection {
+    public final int stdevFactor;
+    public final int enforcementPercentage;
+    public final int minimumHosts;
+    public final int requestVolume;
+
+    /** Creates a latency ejection config. */
+    public LatencyEjection(
+        int stdevFactor, int enforcementPercentage, int minimumHosts, int requestVolume) {
+      checkArgument(enforcementPercentage >= 0 && enforcementPercentage <= 100,
+          "enforcementPercentage must be in [0, 100]");
+      this.stdevFactor = stdevFactor;
+      this.enforcementPercentage = enforcementPercentage;
+      this.minimumHosts = minimumHosts;
+      this.requestVolume = requestVolume;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof LatencyEjection)) {
+        return false;
+      }
+      LatencyEjection that = (LatencyEjection) o;
+      return stdevFactor == that.stdevFactor
+          && enforcementPercentage == that.enforcementPercentage
+          && minimumHosts == that.minimumHosts
+          && requestVolume == that.requestVolume;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(stdevFactor, enforcementPercentage, minimumHosts, requestVolume);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("stdevFactor", stdevFactor)
+          .add("enforcementPercentage", enforcementPercentage)
+          .add("minimumHosts", minimumHosts)
+          .add("requestVolume", requestVolume)
+          .toString();
+    }
+  }
+}
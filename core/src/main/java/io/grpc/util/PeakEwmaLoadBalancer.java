@@ -0,0 +1,309 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.internal.TimeProvider;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer} that sends each RPC to the less loaded of two random ready subchannels,
+ * where the load of a subchannel is its peak-sensitive moving average of latency ("Peak EWMA")
+ * times its in-flight RPCs plus one. A latency above the average replaces it at once, so a
+ * subchannel that stalls is avoided from its next response on, and the average then decays back
+ * over {@code decayTime}. Latencies and in-flight RPCs are recorded by a {@link
+ * ClientStreamTracer} on each pick, so picking takes no lock. Subchannels are managed as by
+ * round_robin.
+ */
+final class PeakEwmaLoadBalancer extends RoundRobinLoadBalancer {
+  @VisibleForTesting
+  static final Attributes.Key<PeakEwmaTracker> PEAK_EWMA = Attributes.Key.create("peak-ewma");
+
+  private final TimeProvider timeProvider;
+  @Nullable
+  private final Random random;
+  private PeakEwmaConfig config = PeakEwmaConfig.DEFAULT;
+
+  PeakEwmaLoadBalancer(Helper helper) {
+    this(helper, TimeProvider.MONOTONIC_TIME_PROVIDER, null);
+  }
+
+  /**
+   * Creates an instance that picks subchannels with {@code random}, or with {@link
+   * ThreadLocalRandom} if {@code null}.
+   */
+  @VisibleForTesting
+  PeakEwmaLoadBalancer(Helper helper, TimeProvider timeProvider, @Nullable Random random) {
+    super(helper);
+    this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+    this.random = random;
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    Object lbConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+    PeakEwmaConfig newConfig =
+        lbConfig instanceof PeakEwmaConfig ? (PeakEwmaConfig) lbConfig : PeakEwmaConfig.DEFAULT;
+    if (!newConfig.equals(config)) {
+      config = newConfig;
+      for (Subchannel subchannel : getSubchannels()) {
+        getPeakEwmaTracker(subchannel).setDecayTimeNanos(config.decayTimeNanos);
+      }
+    }
+    super.handleResolvedAddresses(resolvedAddresses);
+  }
+
+  @Override
+  void addSubchannelAttributes(Attributes.Builder subchannelAttrs) {
+    subchannelAttrs.set(PEAK_EWMA, new PeakEwmaTracker(timeProvider, config.decayTimeNanos));
+  }
+
+  @Override
+  RoundRobinPicker createReadyPicker(List<Subchannel> activeList) {
+    return new PeakEwmaPicker(activeList, timeProvider, random);
+  }
+
+  private static PeakEwmaTracker getPeakEwmaTracker(Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(PEAK_EWMA), "PEAK_EWMA");
+  }
+
+  /**
+   * Tracks the in-flight RPCs and the Peak EWMA latency of a subchannel. The latency of an RPC is
+   * the time from the pick to its response headers, or to its close if it has none, so that long
+   * streams are not mistaken for slow ones.
+   */
+  @VisibleForTesting
+  static final class PeakEwmaTracker extends ClientStreamTracer.Factory {
+    /**
+     * The load of a subchannel with in-flight RPCs but no latency yet, so that a new subchannel
+     * only gets a few RPCs until the first response tells how fast it is.
+     */
+    private static final double PENDING_WITHOUT_LATENCY_PENALTY = Long.MAX_VALUE >> 16;
+
+    private final TimeProvider timeProvider;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<Ewma> ewma;
+    private volatile long decayTimeNanos;
+
+    PeakEwmaTracker(TimeProvider timeProvider, long decayTimeNanos) {
+      this.timeProvider = timeProvider;
+      this.decayTimeNanos = decayTimeNanos;
+      this.ewma = new AtomicReference<>(new Ewma(0, timeProvider.currentTimeNanos()));
+    }
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      inFlight.incrementAndGet();
+      final long startNanos = timeProvider.currentTimeNanos();
+      return new ClientStreamTracer() {
+        final AtomicBoolean latencyRecorded = new AtomicBoolean();
+
+        @Override
+        public void inboundHeaders() {
+          recordLatency();
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+          recordLatency();
+          inFlight.decrementAndGet();
+        }
+
+        private void recordLatency() {
+          if (latencyRecorded.compareAndSet(false, true)) {
+            record(startNanos, timeProvider.currentTimeNanos());
+          }
+        }
+      };
+    }
+
+    void setDecayTimeNanos(long decayTimeNanos) {
+      this.decayTimeNanos = decayTimeNanos;
+    }
+
+    private void record(long startNanos, long nowNanos) {
+      double latencyNanos = Math.max(nowNanos - startNanos, 0);
+      while (true) {
+        Ewma current = ewma.get();
+        double cost = latencyNanos > current.costNanos
+            ? latencyNanos
+            : current.decayedCost(nowNanos, decayTimeNanos) + latencyNanos
+                * (1 - current.weight(nowNanos, decayTimeNanos));
+        if (ewma.compareAndSet(current, new Ewma(cost, Math.max(nowNanos, current.stampNanos)))) {
+          return;
+        }
+      }
+    }
+
+    /** Returns the average latency decayed until {@code nowNanos}. */
+    @VisibleForTesting
+    double getCostNanos(long nowNanos) {
+      return ewma.get().decayedCost(nowNanos, decayTimeNanos);
+    }
+
+    double getLoad(long nowNanos) {
+      double cost = getCostNanos(nowNanos);
+      int pending = inFlight.get();
+      if (cost == 0 && pending != 0) {
+        return PENDING_WITHOUT_LATENCY_PENALTY + pending;
+      }
+      return cost * (pending + 1);
+    }
+
+    @Override
+    public String toString() {
+      Ewma current = ewma.get();
+      return MoreObjects.toStringHelper(this)
+          .add("costNanos", current.costNanos)
+          .add("inFlight", inFlight.get())
+          .toString();
+    }
+  }
+
+  /**
+   * The average latency as of {@code stampNanos}. It is replaced as a whole so that it can be
+   * updated without a lock.
+   */
+  private static final class Ewma {
+    final double costNanos;
+    final long stampNanos;
+
+    Ewma(double costNanos, long stampNanos) {
+      this.costNanos = costNanos;
+      this.stampNanos = stampNanos;
+    }
+
+    /** The weight of the average after the time since {@code stampNanos}. */
+    double weight(long nowNanos, long decayTimeNanos) {
+      return Math.exp(-(double) Math.max(nowNanos - stampNanos, 0) / decayTimeNanos);
+    }
+
+    double decayedCost(long nowNanos, long decayTimeNanos) {
+      return costNanos * weight(nowNanos, decayTimeNanos);
+    }
+  }
+
+  @VisibleForTesting
+  static final class PeakEwmaPicker extends RoundRobinPicker {
+    private final List<Subchannel> list; // non-empty
+    private final TimeProvider timeProvider;
+    @Nullable
+    private final Random random;
+
+    PeakEwmaPicker(List<Subchannel> list, TimeProvider timeProvider, @Nullable Random random) {
+      checkArgument(!list.isEmpty(), "empty list");
+      this.list = list;
+      this.timeProvider = timeProvider;
+      this.random = random;
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      int size = list.size();
+      if (size == 1) {
+        Subchannel subchannel = list.get(0);
+        return PickResult.withSubchannel(subchannel, getPeakEwmaTracker(subchannel));
+      }
+      // Two distinct choices
+      int first = nextInt(size);
+      int second = nextInt(size - 1);
+      if (second >= first) {
+        second++;
+      }
+      Subchannel candidate = list.get(first);
+      PeakEwmaTracker candidateTracker = getPeakEwmaTracker(candidate);
+      Subchannel other = list.get(second);
+      PeakEwmaTracker otherTracker = getPeakEwmaTracker(other);
+      long nowNanos = timeProvider.currentTimeNanos();
+      if (otherTracker.getLoad(nowNanos) < candidateTracker.getLoad(nowNanos)) {
+        candidate = other;
+        candidateTracker = otherTracker;
+      }
+      return PickResult.withSubchannel(candidate, candidateTracker);
+    }
+
+    private int nextInt(int bound) {
+      return random != null ? random.nextInt(bound) : ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    @VisibleForTesting
+    List<Subchannel> getList() {
+      return list;
+    }
+
+    @Override
+    boolean isEquivalentTo(RoundRobinPicker picker) {
+      if (!(picker instanceof PeakEwmaPicker)) {
+        return false;
+      }
+      PeakEwmaPicker other = (PeakEwmaPicker) picker;
+      // the lists cannot contain duplicate subchannels
+      return other == this
+          || (list.size() == other.list.size() && new HashSet<>(list).containsAll(other.list));
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(PeakEwmaPicker.class).add("list", list).toString();
+    }
+  }
+
+  static final class PeakEwmaConfig {
+    static final PeakEwmaConfig DEFAULT = new PeakEwmaConfig(TimeUnit.SECONDS.toNanos(10));
+
+    final long decayTimeNanos;
+
+    PeakEwmaConfig(long decayTimeNanos) {
+      checkArgument(decayTimeNanos > 0, "decayTimeNanos must be positive");
+      this.decayTimeNanos = decayTimeNanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PeakEwmaConfig
+          && decayTimeNanos == ((PeakEwmaConfig) o).decayTimeNanos;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.valueOf(decayTimeNanos).hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this).add("decayTimeNanos", decayTimeNanos).toString();
+    }
+  }
+}
@@ -49,8 +49,11 @@ import javax.annotation.Nonnull;
 /**
  * A {@link LoadBalancer} that provides round-robin load-balancing over the {@link
  * EquivalentAddressGroup}s from the {@link NameResolver}.
+ *
+ * <p>Subclasses keep the management of subchannels and of the aggregate state, but may attach
+ * their own state to each subchannel and pick among the ready ones differently.
  */
-final class RoundRobinLoadBalancer extends LoadBalancer {
+class RoundRobinLoadBalancer extends LoadBalancer {
   @VisibleForTesting
   static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO =
       Attributes.Key.create("state-info");
@@ -96,6 +99,7 @@ final class RoundRobinLoadBalancer extends LoadBalancer {
           // AtomicReference which will allow mutating state info for given channel.
           .set(STATE_INFO,
               new Ref<>(ConnectivityStateInfo.forNonError(IDLE)));
+      addSubchannelAttributes(subchannelAttrs);
 
       final Subchannel subchannel = checkNotNull(
           helper.createSubchannel(CreateSubchannelArgs.newBuilder()
@@ -198,10 +202,7 @@ final class RoundRobinLoadBalancer extends LoadBalancer {
           // an arbitrary subchannel, otherwise return OK.
           new EmptyPicker(aggStatus));
     } else {
-      // initialize the Picker to a random start index to ensure that a high frequency of Picker
-      // churn does not skew subchannel selection.
-      int startIndex = random.nextInt(activeList.size());
-      updateBalancingState(READY, new ReadyPicker(activeList, startIndex));
+      updateBalancingState(READY, createReadyPicker(activeList));
     }
   }
 
@@ -213,6 +214,21 @@ final class RoundRobinLoadBalancer extends LoadBalancer {
     }
   }
 
+  /**
+   * Adds to the attributes of a new subchannel. The values may be mutable, to hold per-subchannel
+   * state for the picker.
+   */
+  void addSubchannelAttributes(Attributes.Builder subchannelAttrs) {
+  }
+
+  /** Creates the picker over the non-empty list of ready subchannels. */
+  RoundRobinPicker createReadyPicker(List<Subchannel> activeList) {
+    // initialize the Picker to a random start index to ensure that a high frequency of Picker
+    // churn does not skew subchannel selection.
+    int startIndex = random.nextInt(activeList.size());
+    return new ReadyPicker(activeList, startIndex);
+  }
+
   /**
    * Filters out non-ready subchannels.
    */
@@ -265,8 +281,8 @@ final class RoundRobinLoadBalancer extends LoadBalancer {
     return aCopy;
   }
 
-  // Only subclasses are ReadyPicker or EmptyPicker
-  private abstract static class RoundRobinPicker extends SubchannelPicker {
+  // Only subclasses are EmptyPicker and the ready pickers
+  abstract static class RoundRobinPicker extends SubchannelPicker {
     abstract boolean isEquivalentTo(RoundRobinPicker picker);
   }
 
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ExperimentalApi;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import io.grpc.internal.LongCounter;
+import io.grpc.internal.LongCounterFactory;
+import io.grpc.internal.LongHistogram;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lightweight per-method RPC metrics, without a dependency on a stats library. For each method
+ * it counts the calls started and completed by status code and the messages and wire bytes sent
+ * and received, and keeps a histogram of the call latency. Counters are {@code LongAdder}s where
+ * available, and the histogram is recorded with a single atomic increment, so recording adds
+ * little to a call.
+ *
+ * <p>Install {@link #getClientInterceptor} on channels and {@link #getServerStreamTracerFactory}
+ * on servers, then read the metrics with {@link #getClientSnapshots}, {@link
+ * #getServerSnapshots}, or in the Prometheus text format with {@link #writeText}. On the client,
+ * each attempt of a retried or hedged call is counted separately.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/2861")
+@ThreadSafe
+public final class RpcMetrics {
+  private static final Status.Code[] CODES = Status.Code.values();
+  private static final int STARTED = 0;
+  private static final int SENT_MESSAGES = 1;
+  private static final int SENT_BYTES = 2;
+  private static final int RECEIVED_MESSAGES = 3;
+  private static final int RECEIVED_BYTES = 4;
+  private static final int LATENCY_SUM_NANOS = 5;
+  private static final int COMPLETED = 6;
+  private static final int COUNTERS = COMPLETED + CODES.length;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+  /**
+   * The name the server calls of unknown methods are recorded under, so that clients cannot grow
+   * the metrics with made-up method names.
+   */
+  @VisibleForTesting
+  static final String OTHER_METHOD_NAME = "other";
+
+  private final Ticker ticker;
+  private final ConcurrentMap<String, MethodMetrics> clientMethods = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, MethodMetrics> serverMethods = new ConcurrentHashMap<>();
+  private final ClientInterceptor clientInterceptor = new MetricsClientInterceptor();
+  private final ServerStreamTracer.Factory serverTracerFactory = new ServerTracerFactory();
+
+  @VisibleForTesting
+  RpcMetrics(Ticker ticker) {
+    this.ticker = checkNotNull(ticker, "ticker");
+  }
+
+  public static RpcMetrics create() {
+    return new RpcMetrics(Ticker.systemTicker());
+  }
+
+  /** Returns the interceptor that records the calls of a channel. */
+  public ClientInterceptor getClientInterceptor() {
+    return clientInterceptor;
+  }
+
+  /** Returns the tracer factory that records the calls of a server. */
+  public ServerStreamTracer.Factory getServerStreamTracerFactory() {
+    return serverTracerFactory;
+  }
+
+  /** Returns the metrics of the client calls, by method name. */
+  public List<MethodSnapshot> getClientSnapshots() {
+    return snapshots(clientMethods);
+  }
+
+  /**
+   * Returns the metrics of the server calls, by method name. The calls of methods the server does
+   * not know are recorded together under {@code "other"}.
+   */
+  public List<MethodSnapshot> getServerSnapshots() {
+    return snapshots(serverMethods);
+  }
+
+  /**
+   * Writes all the metrics in the Prometheus text exposition format, for example for a metrics
+   * endpoint of an admin server. Latencies are given as a summary with the 50th, 90th and 99th
+   * percentiles.
+   */
+  public void writeText(Appendable out) throws IOException {
+    writeText(out, "grpc_client", getClientSnapshots());
+    writeText(out, "grpc_server", getServerSnapshots());
+  }
+
+  private static void writeText(Appendable out, String prefix, List<MethodSnapshot> snapshots)
+      throws IOException {
+    if (snapshots.isEmpty()) {
+      return;
+    }
+    writeCounter(out, prefix + "_started_total", snapshots, STARTED);
+    String completed = prefix + "_completed_total";
+    out.append("# TYPE ").append(completed).append(" counter\n");
+    for (MethodSnapshot snapshot : snapshots) {
+      for (Status.Code code : CODES) {
+        long count = snapshot.getCompleted(code);
+        if (count != 0) {
+          out.append(completed).append("{grpc_method=\"");
+          appendEscaped(out, snapshot.getMethodName());
+          out.append("\",grpc_status=\"").append(code.name()).append("\"} ")
+              .append(Long.toString(count)).append('\n');
+        }
+      }
+    }
+    writeCounter(out, prefix + "_sent_messages_total", snapshots, SENT_MESSAGES);
+    writeCounter(out, prefix + "_sent_bytes_total", snapshots, SENT_BYTES);
+    writeCounter(out, prefix + "_received_messages_total", snapshots, RECEIVED_MESSAGES);
+    writeCounter(out, prefix + "_received_bytes_total", snapshots, RECEIVED_BYTES);
+
+    String latency = prefix + "_latency_seconds";
+    out.append("# TYPE ").append(latency).append(" summary\n");
+    for (MethodSnapshot snapshot : snapshots) {
+      for (double quantile : QUANTILES) {
+        long nanos = snapshot.getLatencyPercentileNanos(quantile * 100);
+        out.append(latency).append("{grpc_method=\"");
+        appendEscaped(out, snapshot.getMethodName());
+        out.append("\",quantile=\"").append(Double.toString(quantile)).append("\"} ")
+            .append(nanos < 0 ? "NaN" : seconds(nanos)).append('\n');
+      }
+      out.append(latency).append("_sum{grpc_method=\"");
+      appendEscaped(out, snapshot.getMethodName());
+      out.append("\"} ").append(seconds(snapshot.getLatencySumNanos())).append('\n');
+      out.append(latency).append("_count{grpc_method=\"");
+      appendEscaped(out, snapshot.getMethodName());
+      out.append("\"} ").append(Long.toString(snapshot.getCompletedTotal())).append('\n');
+    }
+  }
+
+  private static void writeCounter(
+      Appendable out, String name, List<MethodSnapshot> snapshots, int counter)
+      throws IOException {
+    out.append("# TYPE ").append(name).append(" counter\n");
+    for (MethodSnapshot snapshot : snapshots) {
+      out.append(name).append("{grpc_method=\"");
+      appendEscaped(out, snapshot.getMethodName());
+      out.append("\"} ").append(Long.toString(snapshot.counters[counter])).append('\n');
+    }
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+  }
+
+  private static void appendEscaped(Appendable out, String value) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' || c == '"') {
+        out.append('\\').append(c);
+      } else if (c == '\n') {
+        out.append("\\n");
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  private static List<MethodSnapshot> snapshots(ConcurrentMap<String, MethodMetrics> methods) {
+    List<MethodSnapshot> snapshots = new ArrayList<>(methods.size());
+    for (MethodMetrics metrics : methods.values()) {
+      snapshots.add(metrics.snapshot());
+    }
+    Collections.sort(snapshots, new Comparator<MethodSnapshot>() {
+      @Override
+      public int compare(MethodSnapshot a, MethodSnapshot b) {
+        return a.getMethodName().compareTo(b.getMethodName());
+      }
+    });
+    return Collections.unmodifiableList(snapshots);
+  }
+
+  private MethodMetrics getMethodMetrics(
+      ConcurrentMap<String, MethodMetrics> methods, String fullMethodName) {
+    MethodMetrics metrics = methods.get(fullMethodName);
+    if (metrics == null) {
+      MethodMetrics newMetrics = new MethodMetrics(fullMethodName);
+      metrics = methods.putIfAbsent(fullMethodName, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  /** The metrics of one method, which is also the factory of its client tracers. */
+  private final class MethodMetrics extends ClientStreamTracer.Factory {
+    final String methodName;
+    final LongCounter[] counters = new LongCounter[COUNTERS];
+    final LongHistogram latency = new LongHistogram();
+
+    MethodMetrics(String methodName) {
+      this.methodName = methodName;
+      for (int i = 0; i < COUNTERS; i++) {
+        counters[i] = LongCounterFactory.create();
+      }
+    }
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      counters[STARTED].add(1);
+      return new ClientTracer(this, ticker.read());
+    }
+
+    void streamClosed(Status status, long startNanos) {
+      long latencyNanos = ticker.read() - startNanos;
+      latency.record(latencyNanos);
+      counters[LATENCY_SUM_NANOS].add(latencyNanos);
+      counters[COMPLETED + status.getCode().ordinal()].add(1);
+    }
+
+    MethodSnapshot snapshot() {
+      long[] values = new long[COUNTERS];
+      for (int i = 0; i < COUNTERS; i++) {
+        values[i] = counters[i].value();
+      }
+      return new MethodSnapshot(methodName, values, latency.getCounts());
+    }
+  }
+
+  private final class MetricsClientInterceptor implements ClientInterceptor {
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+      MethodMetrics metrics = getMethodMetrics(clientMethods, method.getFullMethodName());
+      return next.newCall(method, callOptions.withStreamTracerFactory(metrics));
+    }
+  }
+
+  private static final class ClientTracer extends ClientStreamTracer {
+    private final MethodMetrics metrics;
+    private final long startNanos;
+
+    ClientTracer(MethodMetrics metrics, long startNanos) {
+      this.metrics = metrics;
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void outboundMessage(int seqNo) {
+      metrics.counters[SENT_MESSAGES].add(1);
+    }
+
+    @Override
+    public void outboundWireSize(long bytes) {
+      metrics.counters[SENT_BYTES].add(bytes);
+    }
+
+    @Override
+    public void inboundMessage(int seqNo) {
+      metrics.counters[RECEIVED_MESSAGES].add(1);
+    }
+
+    @Override
+    public void inboundWireSize(long bytes) {
+      metrics.counters[RECEIVED_BYTES].add(bytes);
+    }
+
+    @Override
+    public void streamClosed(Status status) {
+      metrics.streamClosed(status, startNanos);
+    }
+  }
+
+  private final class ServerTracerFactory extends ServerStreamTracer.Factory {
+    @Override
+    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+      // The method name comes from the client, so wait for the server to find the method
+      return new ServerTracer(ticker.read());
+    }
+  }
+
+  private final class ServerTracer extends ServerStreamTracer {
+    private final long startNanos;
+    /** Set when the call is started, which only happens for methods the server knows. */
+    private volatile MethodMetrics metrics;
+
+    ServerTracer(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void serverCallStarted(ServerCallInfo<?, ?> callInfo) {
+      MethodMetrics metrics =
+          getMethodMetrics(serverMethods, callInfo.getMethodDescriptor().getFullMethodName());
+      metrics.counters[STARTED].add(1);
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void outboundMessage(int seqNo) {
+      metrics().counters[SENT_MESSAGES].add(1);
+    }
+
+    @Override
+    public void outboundWireSize(long bytes) {
+      metrics().counters[SENT_BYTES].add(bytes);
+    }
+
+    @Override
+    public void inboundMessage(int seqNo) {
+      metrics().counters[RECEIVED_MESSAGES].add(1);
+    }
+
+    @Override
+    public void inboundWireSize(long bytes) {
+      metrics().counters[RECEIVED_BYTES].add(bytes);
+    }
+
+    @Override
+    public void streamClosed(Status status) {
+      MethodMetrics metrics = this.metrics;
+      if (metrics == null) {
+        // Unknown method, or the call failed before it was started
+        metrics = getMethodMetrics(serverMethods, OTHER_METHOD_NAME);
+        metrics.counters[STARTED].add(1);
+      }
+      metrics.streamClosed(status, startNanos);
+    }
+
+    private MethodMetrics metrics() {
+      MethodMetrics metrics = this.metrics;
+      return metrics != null ? metrics : getMethodMetrics(serverMethods, OTHER_METHOD_NAME);
+    }
+  }
+
+  /** The metrics of one method at one point in time. */
+  @Immutable
+  public static final class MethodSnapshot {
+    private final String methodName;
+    private final long[] counters;
+    private final long[] latencyCounts;
+
+    MethodSnapshot(String methodName, long[] counters, long[] latencyCounts) {
+      this.methodName = methodName;
+      this.counters = counters;
+      this.latencyCounts = latencyCounts;
+    }
+
+    /** Returns the full name of the method. */
+    public String getMethodName() {
+      return methodName;
+    }
+
+    /** Returns the number of calls started. */
+    public long getStarted() {
+      return counters[STARTED];
+    }
+
+    /** Returns the number of calls completed with {@code code}. */
+    public long getCompleted(Status.Code code) {
+      return counters[COMPLETED + code.ordinal()];
+    }
+
+    /** Returns the number of calls completed. */
+    public long getCompletedTotal() {
+      long total = 0;
+      for (int i = COMPLETED; i < COUNTERS; i++) {
+        total += counters[i];
+      }
+      return total;
+    }
+
+    public long getSentMessages() {
+      return counters[SENT_MESSAGES];
+    }
+
+    /** Returns the bytes of the messages sent, as framed and compressed on the wire. */
+    public long getSentBytes() {
+      return counters[SENT_BYTES];
+    }
+
+    public long getReceivedMessages() {
+      return counters[RECEIVED_MESSAGES];
+    }
+
+    /** Returns the bytes of the messages received, as framed and compressed on the wire. */
+    public long getReceivedBytes() {
+      return counters[RECEIVED_BYTES];
+    }
+
+    /** Returns the total latency of the completed calls. */
+    public long getLatencySumNanos() {
+      return counters[LATENCY_SUM_NANOS];
+    }
+
+    /**
+     * Returns the latency at {@code percentile} (in [0, 100]) of the completed calls, within
+     * 12.5%, or {@code -1} if no call has completed.
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+      return LongHistogram.percentile(latencyCounts, percentile);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("methodName", methodName)
+          .add("started", getStarted())
+          .add("completed", getCompletedTotal())
+          .add("p50Nanos", getLatencyPercentileNanos(50))
+          .add("p99Nanos", getLatencyPercentileNanos(99))
+          .toString();
+    }
+  }
+}
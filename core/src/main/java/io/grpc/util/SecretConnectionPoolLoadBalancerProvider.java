@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.util.ConnectionPoolLoadBalancer.ConnectionPoolConfig;
+import java.util.Map;
+
+/**
+ * Provider for the "connection_pool" balancing policy, which keeps several connections to each
+ * address and sends each RPC to the least loaded one. It is configured in the service config:
+ *
+ * <pre>
+ * "loadBalancingConfig": [{"connection_pool": {
+ *   "minConnectionsPerAddress": 1,
+ *   "maxConnectionsPerAddress": 4,
+ *   "maxConcurrentStreams": 100,
+ *   "idleTimeout": "30s"
+ * }}]
+ * </pre>
+ *
+ * <p>All the fields are optional, and default to the values above. {@code maxConcurrentStreams}
+ * should be the {@code MAX_CONCURRENT_STREAMS} setting of the servers; it is when a connection is
+ * considered saturated.
+ */
+// Make it package-private so that it cannot be directly referenced by users.  Java service loader
+// requires the provider to be public, but we can hide it under a package-private class.
+final class SecretConnectionPoolLoadBalancerProvider {
+  private SecretConnectionPoolLoadBalancerProvider() {
+  }
+
+  public static final class Provider extends LoadBalancerProvider {
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public int getPriority() {
+      return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+      return "connection_pool";
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+      return new ConnectionPoolLoadBalancer(helper);
+    }
+
+    @Override
+    public ConfigOrError parseLoadBalancingPolicyConfig(
+        Map<String, ?> rawLoadBalancingPolicyConfig) {
+      ConnectionPoolConfig defaults = ConnectionPoolConfig.DEFAULT;
+      try {
+        Integer minConnections =
+            JsonUtil.getNumberAsInteger(rawLoadBalancingPolicyConfig, "minConnectionsPerAddress");
+        Integer maxConnections =
+            JsonUtil.getNumberAsInteger(rawLoadBalancingPolicyConfig, "maxConnectionsPerAddress");
+        Integer maxConcurrentStreams =
+            JsonUtil.getNumberAsInteger(rawLoadBalancingPolicyConfig, "maxConcurrentStreams");
+        Long idleTimeoutNanos =
+            JsonUtil.getStringAsDuration(rawLoadBalancingPolicyConfig, "idleTimeout");
+        int min = minConnections != null ? minConnections : defaults.minConnectionsPerAddress;
+        // An explicit minimum above the default maximum raises the maximum with it.
+        int max = maxConnections != null
+            ? maxConnections : Math.max(min, defaults.maxConnectionsPerAddress);
+        ConnectionPoolConfig config = new ConnectionPoolConfig(
+            min,
+            max,
+            maxConcurrentStreams != null ? maxConcurrentStreams : defaults.maxConcurrentStreams,
+            idleTimeoutNanos != null ? idleTimeoutNanos : defaults.idleTimeoutNanos);
+        if (config.minConnectionsPerAddress < 1) {
+          return invalidConfig("minConnectionsPerAddress must be at least 1");
+        }
+        if (config.maxConnectionsPerAddress < config.minConnectionsPerAddress) {
+          return invalidConfig(
+              "maxConnectionsPerAddress must not be less than minConnectionsPerAddress");
+        }
+        if (config.maxConcurrentStreams < 1) {
+          return invalidConfig("maxConcurrentStreams must be at least 1");
+        }
+        if (config.idleTimeoutNanos <= 0) {
+          return invalidConfig("idleTimeout must be positive");
+        }
+        return ConfigOrError.fromConfig(config);
+      } catch (RuntimeException e) {
+        return ConfigOrError.fromError(
+            Status.INVALID_ARGUMENT.withCause(e).withDescription(
+                "Failed parsing configuration for " + getPolicyName()));
+      }
+    }
+
+    private static ConfigOrError invalidConfig(String description) {
+      return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(description));
+    }
+  }
+}
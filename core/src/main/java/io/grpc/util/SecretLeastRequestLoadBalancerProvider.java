@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.util.LeastRequestLoadBalancer.LeastRequestConfig;
+import java.util.Map;
+
+/**
+ * Provider for the "least_request" balancing policy, which sends each RPC to the less loaded of
+ * two random ready subchannels. It is configured in the service config:
+ *
+ * <pre>
+ * "loadBalancingConfig": [{"least_request": {"choiceCount": 2}}]
+ * </pre>
+ *
+ * <p>{@code choiceCount} is optional and defaults to 2. Values above 10 are treated as 10.
+ */
+// Make it package-private so that it cannot be directly referenced by users.  Java service loader
+// requires the provider to be public, but we can hide it under a package-private class.
+final class SecretLeastRequestLoadBalancerProvider {
+  private SecretLeastRequestLoadBalancerProvider() {
+  }
+
+  public static final class Provider extends LoadBalancerProvider {
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public int getPriority() {
+      return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+      return "least_request";
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+      return new LeastRequestLoadBalancer(helper);
+    }
+
+    @Override
+    public ConfigOrError parseLoadBalancingPolicyConfig(
+        Map<String, ?> rawLoadBalancingPolicyConfig) {
+      try {
+        Integer choiceCount =
+            JsonUtil.getNumberAsInteger(rawLoadBalancingPolicyConfig, "choiceCount");
+        if (choiceCount == null) {
+          return ConfigOrError.fromConfig(LeastRequestConfig.DEFAULT);
+        }
+        if (choiceCount < 2) {
+          return ConfigOrError.fromError(
+              Status.INVALID_ARGUMENT.withDescription("choiceCount must be at least 2"));
+        }
+        return ConfigOrError.fromConfig(new LeastRequestConfig(choiceCount));
+      } catch (RuntimeException e) {
+        return ConfigOrError.fromError(
+            Status.INVALID_ARGUMENT.withCause(e).withDescription(
+                "Failed parsing configuration for " + getPolicyName()));
+      }
+    }
+  }
+}
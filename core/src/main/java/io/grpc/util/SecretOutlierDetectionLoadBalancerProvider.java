@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.LoadBalancerRegistry;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.internal.ServiceConfigUtil;
+import io.grpc.internal.ServiceConfigUtil.LbConfig;
+import io.grpc.internal.ServiceConfigUtil.PolicySelection;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.LatencyEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.OutlierDetectionLoadBalancerConfig;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider for the "outlier_detection_experimental" balancing policy, which ejects the outlier
+ * addresses of its child policy. It is configured in the service config:
+ *
+ * <pre>
+ * "loadBalancingConfig": [{"outlier_detection_experimental": {
+ *   "interval": "10s",
+ *   "baseEjectionTime": "30s",
+ *   "maxEjectionTime": "300s",
+ *   "maxEjectionPercent": 10,
+ *   "successRateEjection": {
+ *     "stdevFactor": 1900, "enforcementPercentage": 100, "minimumHosts": 5, "requestVolume": 100
+ *   },
+ *   "failurePercentageEjection": {
+ *     "threshold": 85, "enforcementPercentage": 100, "minimumHosts": 5, "requestVolume": 50
+ *   },
+ *   "latencyEjection": {
+ *     "stdevFactor": 1900, "enforcementPercentage": 100, "minimumHosts": 5, "requestVolume": 100
+ *   },
+ *   "childPolicy": [{"round_robin": {}}]
+ * }}]
+ * </pre>
+ *
+ * <p>Only {@code childPolicy} is required; the values above are the defaults. Each ejection
+ * algorithm runs only if its object is present.
+ */
+// Make it package-private so that it cannot be directly referenced by users.  Java service loader
+// requires the provider to be public, but we can hide it under a package-private class.
+final class SecretOutlierDetectionLoadBalancerProvider {
+  private SecretOutlierDetectionLoadBalancerProvider() {
+  }
+
+  public static final class Provider extends LoadBalancerProvider {
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public int getPriority() {
+      return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+      return "outlier_detection_experimental";
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+      return new OutlierDetectionLoadBalancer(helper);
+    }
+
+    @Override
+    public ConfigOrError parseLoadBalancingPolicyConfig(Map<String, ?> rawConfig) {
+      try {
+        return parseConfig(rawConfig);
+      } catch (RuntimeException e) {
+        return ConfigOrError.fromError(
+            Status.INVALID_ARGUMENT.withCause(e).withDescription(
+                "Failed parsing configuration for " + getPolicyName()));
+      }
+    }
+
+    private static ConfigOrError parseConfig(Map<String, ?> rawConfig) {
+      List<LbConfig> childConfigCandidates = ServiceConfigUtil.unwrapLoadBalancingConfigList(
+          JsonUtil.getListOfObjects(rawConfig, "childPolicy"));
+      if (childConfigCandidates == null || childConfigCandidates.isEmpty()) {
+        return ConfigOrError.fromError(
+            Status.INVALID_ARGUMENT.withDescription("No child policy in outlier_detection"));
+      }
+      ConfigOrError childConfig = ServiceConfigUtil.selectLbPolicyFromList(
+          childConfigCandidates, LoadBalancerRegistry.getDefaultRegistry());
+      if (childConfig.getError() != null) {
+        return childConfig;
+      }
+
+      SuccessRateEjection successRateEjection = null;
+      Map<String, ?> rawSuccessRate = JsonUtil.getObject(rawConfig, "successRateEjection");
+      if (rawSuccessRate != null) {
+        successRateEjection = new SuccessRateEjection(
+            getInt(rawSuccessRate, "stdevFactor", 1900),
+            getPercentage(rawSuccessRate, "enforcementPercentage", 100),
+            getInt(rawSuccessRate, "minimumHosts", 5),
+            getInt(rawSuccessRate, "requestVolume", 100));
+      }
+      FailurePercentageEjection failurePercentageEjection = null;
+      Map<String, ?> rawFailurePercentage =
+          JsonUtil.getObject(rawConfig, "failurePercentageEjection");
+      if (rawFailurePercentage != null) {
+        failurePercentageEjection = new FailurePercentageEjection(
+            getPercentage(rawFailurePercentage, "threshold", 85),
+            getPercentage(rawFailurePercentage, "enforcementPercentage", 100),
+            getInt(rawFailurePercentage, "minimumHosts", 5),
+            getInt(rawFailurePercentage, "requestVolume", 50));
+      }
+      LatencyEjection latencyEjection = null;
+      Map<String, ?> rawLatency = JsonUtil.getObject(rawConfig, "latencyEjection");
+      if (rawLatency != null) {
+        latencyEjection = new LatencyEjection(
+            getInt(rawLatency, "stdevFactor", 1900),
+            getPercentage(rawLatency, "enforcementPercentage", 100),
+            getInt(rawLatency, "minimumHosts", 5),
+            getInt(rawLatency, "requestVolume", 100));
+      }
+
+      return ConfigOrError.fromConfig(new OutlierDetectionLoadBalancerConfig(
+          getDuration(rawConfig, "interval", 10),
+          getDuration(rawConfig, "baseEjectionTime", 30),
+          getDuration(rawConfig, "maxEjectionTime", 300),
+          getPercentage(rawConfig, "maxEjectionPercent", 10),
+          successRateEjection,
+          failurePercentageEjection,
+          latencyEjection,
+          (PolicySelection) childConfig.getConfig()));
+    }
+
+    private static long getDuration(Map<String, ?> rawConfig, String key, long defaultSeconds) {
+      Long nanos = JsonUtil.getStringAsDuration(rawConfig, key);
+      if (nanos == null) {
+        return TimeUnit.SECONDS.toNanos(defaultSeconds);
+      }
+      if (nanos <= 0) {
+        throw new IllegalArgumentException(key + " must be positive");
+      }
+      return nanos;
+    }
+
+    private static int getInt(Map<String, ?> rawConfig, String key, int defaultValue) {
+      Integer value = JsonUtil.getNumberAsInteger(rawConfig, key);
+      if (value == null) {
+        return defaultValue;
+      }
+      if (value < 0) {
+        throw new IllegalArgumentException(key + " must not be negative");
+      }
+      return value;
+    }
+
+    private static int getPercentage(Map<String, ?> rawConfig, String key, int defaultValue) {
+      int value = getInt(rawConfig, key, defaultValue);
+      if (value > 100) {
+        throw new IllegalArgumentException(key + " must be at most 100");
+      }
+      return value;
+    }
+  }
+}
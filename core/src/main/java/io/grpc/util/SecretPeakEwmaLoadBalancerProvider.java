@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.util.PeakEwmaLoadBalancer.PeakEwmaConfig;
+import java.util.Map;
+
+/**
+ * Provider for the "peak_ewma_experimental" balancing policy, which sends each RPC to the
+ * subchannel with the lower latency times load of two random ready subchannels. It is configured
+ * in the service config:
+ *
+ * <pre>
+ * "loadBalancingConfig": [{"peak_ewma_experimental": {"decayTime": "10s"}}]
+ * </pre>
+ *
+ * <p>{@code decayTime} is optional and defaults to 10 seconds. It is how fast a latency sample
+ * loses weight in the average.
+ */
+// Make it package-private so that it cannot be directly referenced by users.  Java service loader
+// requires the provider to be public, but we can hide it under a package-private class.
+final class SecretPeakEwmaLoadBalancerProvider {
+  private SecretPeakEwmaLoadBalancerProvider() {
+  }
+
+  public static final class Provider extends LoadBalancerProvider {
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public int getPriority() {
+      return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+      return "peak_ewma_experimental";
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+      return new PeakEwmaLoadBalancer(helper);
+    }
+
+    @Override
+    public ConfigOrError parseLoadBalancingPolicyConfig(
+        Map<String, ?> rawLoadBalancingPolicyConfig) {
+      try {
+        Long decayTimeNanos =
+            JsonUtil.getStringAsDuration(rawLoadBalancingPolicyConfig, "decayTime");
+        if (decayTimeNanos == null) {
+          return ConfigOrError.fromConfig(PeakEwmaConfig.DEFAULT);
+        }
+        if (decayTimeNanos <= 0) {
+          return ConfigOrError.fromError(
+              Status.INVALID_ARGUMENT.withDescription("decayTime must be positive"));
+        }
+        return ConfigOrError.fromConfig(new PeakEwmaConfig(decayTimeNanos));
+      } catch (RuntimeException e) {
+        return ConfigOrError.fromError(
+            Status.INVALID_ARGUMENT.withCause(e).withDescription(
+                "Failed parsing configuration for " + getPolicyName()));
+      }
+    }
+  }
+}
@@ -14,12 +14,10 @@
  * limitations under the License.
  */
 
-package io.grpc.rls;
+package io.grpc.internal;
 
 import static com.google.common.truth.Truth.assertThat;
 
-import io.grpc.internal.FakeClock;
-import io.grpc.internal.TimeProvider;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,7 +31,7 @@ public class AdaptiveThrottlerTest {
   private final TimeProvider fakeTimeProvider = fakeClock.getTimeProvider();
   private final AdaptiveThrottler throttler =
       new AdaptiveThrottler.Builder()
-          .setHistorySeconds(1)
+          .setHistory(1, TimeUnit.SECONDS)
           .setRatioForAccepts(1.0f)
           .setRequestsPadding(1)
           .setTimeProvider(fakeTimeProvider)
@@ -104,4 +102,28 @@ public class AdaptiveThrottlerTest {
         .isWithin(TOLERANCE)
         .of(2.0f / 3.0f);
   }
+
+  @Test
+  public void negativeMonotonicTime() {
+    final long[] nowNanos = {-TimeUnit.MILLISECONDS.toNanos(100)};
+    AdaptiveThrottler throttler =
+        new AdaptiveThrottler.Builder()
+            .setHistory(1, TimeUnit.SECONDS)
+            .setTimeProvider(new TimeProvider() {
+              @Override
+              public long currentTimeNanos() {
+                return nowNanos[0];
+              }
+            })
+            .build();
+
+    throttler.registerBackendResponse(true);
+    nowNanos[0] = -1;
+    throttler.registerBackendResponse(false);
+    nowNanos[0] = TimeUnit.MILLISECONDS.toNanos(100);
+    throttler.registerBackendResponse(true);
+
+    assertThat(throttler.requestStat.get(nowNanos[0])).isEqualTo(3L);
+    assertThat(throttler.throttledStat.get(nowNanos[0])).isEqualTo(2L);
+  }
 }
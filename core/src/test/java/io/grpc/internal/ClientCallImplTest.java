@@ -55,6 +55,7 @@ import io.grpc.Deadline;
 import io.grpc.Decompressor;
 import io.grpc.DecompressorRegistry;
 import io.grpc.InternalConfigSelector;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
@@ -76,6 +77,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -435,6 +437,47 @@ public class ClientCallImplTest {
     assertThat(actualDeadline).isLessThan(Deadline.after(1001, SECONDS));
   }
 
+  @Test
+  public void methodInfoAdaptiveThrottling() {
+    Map<String, ?> rawMethodConfig = ImmutableMap.of(
+        "adaptiveThrottling", ImmutableMap.of("ratioForAccepts", 1.0D, "requestsPadding", 1.0D));
+    MethodInfo methodInfo = new MethodInfo(rawMethodConfig, false, 0, 0);
+    CallOptions callOptions = CallOptions.DEFAULT.withOption(MethodInfo.KEY, methodInfo);
+
+    // Every call the backend rejects raises the chance that the next one is throttled.
+    int streams = 0;
+    Status throttled = null;
+    for (int i = 0; i < 100 && throttled == null; i++) {
+      ClientCallImpl<Void, Void> call = new ClientCallImpl<>(
+          method,
+          MoreExecutors.directExecutor(),
+          callOptions,
+          clientStreamProvider,
+          deadlineCancellationExecutor,
+          channelCallTracer, configSelector);
+      final AtomicReference<Status> closeStatus = new AtomicReference<>();
+      call.start(new NoopClientCall.NoopClientCallListener<Void>() {
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+          closeStatus.set(status);
+        }
+      }, new Metadata());
+      throttled = closeStatus.get();
+      if (throttled == null) {
+        streams++;
+        verify(stream, times(streams)).start(listenerArgumentCaptor.capture());
+        listenerArgumentCaptor.getValue()
+            .closed(Status.RESOURCE_EXHAUSTED, PROCESSED, new Metadata());
+      }
+    }
+
+    assertThat(streams).isAtLeast(1);
+    assertThat(throttled.getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+    assertThat(throttled.getDescription()).contains("throttled");
+    verify(clientStreamProvider, times(streams)).newStream(
+        same(method), any(CallOptions.class), any(Metadata.class), any(Context.class));
+  }
+
   @Test
   public void authorityNotPropagatedToStream() {
     ClientCallImpl<Void, Void> call = new ClientCallImpl<>(
@@ -1059,6 +1102,23 @@ public class ClientCallImplTest {
     verify(stream).setMaxOutboundMessageSize(2);
   }
 
+  @Test
+  public void startSetsMessageCompressionDecider() {
+    MessageCompressionPolicy policy = MessageCompressionPolicy.adaptive();
+    ClientCallImpl<Void, Void> call = new ClientCallImpl<>(
+        method,
+        new SerializingExecutor(Executors.newSingleThreadExecutor()),
+        baseCallOptions.withMessageCompressionPolicy(policy),
+        clientStreamProvider,
+        deadlineCancellationExecutor,
+        channelCallTracer, configSelector)
+            .setDecompressorRegistry(decompressorRegistry);
+
+    call.start(callListener, new Metadata());
+
+    verify(stream).setMessageCompressionDecider(policy.newDecider(method));
+  }
+
   @Test
   public void getAttributes() {
     ClientCallImpl<Void, Void> call = new ClientCallImpl<>(
@@ -299,6 +299,18 @@ public class CompositeReadableBufferTest {
     verify(buffer).getByteBuffer();
   }
 
+  @Test
+  public void getByteBufferSkipsExhaustedComponent() {
+    composite = new CompositeReadableBuffer();
+    composite.addBuffer(ReadableBuffers.wrap(ByteBuffer.wrap("hello".getBytes(UTF_8))));
+    composite.addBuffer(ReadableBuffers.wrap(ByteBuffer.wrap(" world".getBytes(UTF_8))));
+    composite.skipBytes(5);
+    ByteBuffer byteBuffer = composite.getByteBuffer();
+    assertEquals(6, byteBuffer.remaining());
+    assertEquals(' ', byteBuffer.get());
+    assertEquals(6, composite.readableBytes());
+  }
+
   @Test
   public void closeShouldCloseBuffers() {
     composite = new CompositeReadableBuffer();
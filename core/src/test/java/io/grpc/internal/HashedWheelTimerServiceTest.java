@@ -0,0 +1,289 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.internal.HashedWheelTimerService.Wheel;
+import io.grpc.internal.HashedWheelTimerService.WheelTimeout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link HashedWheelTimerService}. */
+@RunWith(JUnit4.class)
+public class HashedWheelTimerServiceTest {
+  private static final long START = 1000;
+  private static final long TICK = 10;
+
+  private final Wheel wheel = new Wheel(START, TICK, 8);
+  private final List<WheelTimeout<?>> expired = new ArrayList<>();
+  private final HashedWheelTimerService service =
+      new HashedWheelTimerService(MoreExecutors.platformThreadFactory());
+
+  @After
+  public void tearDown() {
+    service.shutdown();
+  }
+
+  @Test
+  public void wheel_neverExpiresEarly() {
+    WheelTimeout<?> timeout = newTimeout(START + 25);
+    wheel.add(timeout);
+
+    wheel.expire(START + 24, expired);
+    assertThat(expired).isEmpty();
+    wheel.expire(START + 29, expired);
+    assertThat(expired).isEmpty();
+    // Fires on the first tick at or after the deadline.
+    wheel.expire(START + 30, expired);
+    assertThat(expired).containsExactly(timeout);
+    assertThat(wheel.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void wheel_laterRounds() {
+    // 8 buckets of 10ns, so these all land in the same bucket.
+    WheelTimeout<?> first = newTimeout(START + 20);
+    WheelTimeout<?> second = newTimeout(START + 100);
+    WheelTimeout<?> third = newTimeout(START + 180);
+    wheel.add(third);
+    wheel.add(first);
+    wheel.add(second);
+
+    wheel.expire(START + 20, expired);
+    assertThat(expired).containsExactly(first);
+    wheel.expire(START + 99, expired);
+    assertThat(expired).containsExactly(first);
+    wheel.expire(START + 100, expired);
+    assertThat(expired).containsExactly(first, second);
+    // Skipping many turns at once still expires everything due.
+    wheel.expire(START + 1000, expired);
+    assertThat(expired).containsExactly(first, second, third);
+  }
+
+  @Test
+  public void wheel_remove() {
+    WheelTimeout<?> first = newTimeout(START + 20);
+    WheelTimeout<?> second = newTimeout(START + 20);
+    WheelTimeout<?> third = newTimeout(START + 20);
+    wheel.add(first);
+    wheel.add(second);
+    wheel.add(third);
+
+    wheel.remove(second);
+    wheel.remove(second);
+    assertThat(wheel.size()).isEqualTo(2);
+    wheel.expire(START + 20, expired);
+    assertThat(expired).containsExactly(first, third);
+  }
+
+  @Test
+  public void wheel_nextTickNanos() {
+    wheel.add(newTimeout(START + 65));
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 70);
+    wheel.add(newTimeout(START + 31));
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 40);
+
+    wheel.expire(START + 40, expired);
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 70);
+    // A timeout for a later turn of the wheel shares its bucket with the current turn, but is not
+    // due on it.
+    wheel.add(newTimeout(START + 125));
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 70);
+  }
+
+  @Test
+  public void wheel_nextTickNanos_laterRounds() {
+    wheel.add(newTimeout(START + 455));
+    wheel.add(newTimeout(START + 305));
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 310);
+
+    wheel.expire(START + 310, expired);
+    assertThat(expired).hasSize(1);
+    assertThat(wheel.nextTickNanos()).isEqualTo(START + 460);
+
+    wheel.expire(START + 460, expired);
+    assertThat(expired).hasSize(2);
+    assertThat(wheel.nextTickNanos()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void wheel_pastDeadlineExpiresOnNextTick() {
+    wheel.expire(START + 55, expired);
+    wheel.add(newTimeout(START + 10));
+
+    wheel.expire(START + 55, expired);
+    assertThat(expired).isEmpty();
+    wheel.expire(START + 60, expired);
+    assertThat(expired).hasSize(1);
+  }
+
+  @Test
+  public void schedule() throws Exception {
+    final long start = System.nanoTime();
+    ScheduledFuture<Long> future = service.schedule(new Callable<Long>() {
+      @Override
+      public Long call() {
+        return System.nanoTime() - start;
+      }
+    }, 20, TimeUnit.MILLISECONDS);
+
+    assertThat(future.get(5, TimeUnit.SECONDS)).isAtLeast(TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  public void execute() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.execute(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void cancelledTimeoutDoesNotRun() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+    ScheduledFuture<?> cancelled = service.schedule(task, 30, TimeUnit.MILLISECONDS);
+    ScheduledFuture<?> kept = service.schedule(task, 40, TimeUnit.MILLISECONDS);
+    assertTrue(cancelled.cancel(false));
+
+    kept.get(5, TimeUnit.SECONDS);
+    assertThat(runs.get()).isEqualTo(1);
+    assertTrue(cancelled.isCancelled());
+  }
+
+  @Test
+  public void earlierTimeoutWakesUpWorker() throws Exception {
+    ScheduledFuture<?> late = service.schedule(new NoopRunnable(), 1, TimeUnit.HOURS);
+    // Let the worker park until the late timeout.
+    Thread.sleep(20);
+    ScheduledFuture<?> early = service.schedule(new NoopRunnable(), 1, TimeUnit.MILLISECONDS);
+
+    early.get(5, TimeUnit.SECONDS);
+    assertFalse(late.isDone());
+  }
+
+  @Test
+  public void scheduleAtFixedRate() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(3);
+    ScheduledFuture<?> future = service.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 0, 5, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(future.cancel(false));
+    assertTrue(future.isCancelled());
+  }
+
+  @Test
+  public void manyThreadsScheduleAndCancel() throws Exception {
+    final int threads = 4;
+    final int timeoutsPerThread = 10000;
+    final AtomicInteger runs = new AtomicInteger();
+    final AtomicInteger expectedRuns = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < timeoutsPerThread; i++) {
+            ScheduledFuture<?> future = service.schedule(new Runnable() {
+              @Override
+              public void run() {
+                runs.incrementAndGet();
+              }
+            }, i % 50, TimeUnit.MILLISECONDS);
+            // Some timeouts run before they can be cancelled.
+            if (i % 10 == 0 || !future.cancel(false)) {
+              expectedRuns.incrementAndGet();
+            }
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    // Every uncancelled timeout runs; the last one is due within 50ms.
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (runs.get() < expectedRuns.get() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(60);
+    assertThat(expectedRuns.get()).isAtLeast(threads * timeoutsPerThread / 10);
+    assertThat(runs.get()).isEqualTo(expectedRuns.get());
+  }
+
+  @Test
+  public void shutdownCancelsPendingTimeouts() throws Exception {
+    ScheduledFuture<?> future = service.schedule(new NoopRunnable(), 1, TimeUnit.HOURS);
+    service.shutdown();
+
+    assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(future.isCancelled());
+    try {
+      service.schedule(new NoopRunnable(), 1, TimeUnit.MILLISECONDS);
+      fail("Should have thrown");
+    } catch (RejectedExecutionException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void shutdownWithoutTimeouts() throws Exception {
+    service.shutdown();
+
+    assertTrue(service.isTerminated());
+  }
+
+  private WheelTimeout<?> newTimeout(long deadlineNanos) {
+    return new WheelTimeout<>(wheel, Executors.callable(new NoopRunnable()), deadlineNanos, 0);
+  }
+
+  private static final class NoopRunnable implements Runnable {
+    @Override
+    public void run() {}
+  }
+}
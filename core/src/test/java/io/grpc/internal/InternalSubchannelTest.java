@@ -139,6 +139,7 @@ public class InternalSubchannelTest {
 
   private InternalSubchannel internalSubchannel;
   private BlockingQueue<MockClientTransportInfo> transports;
+  private long connectionAttemptDelayNanos;
 
   @Before public void setUp() {
     when(mockBackoffPolicyProvider.get())
@@ -842,6 +843,141 @@ public class InternalSubchannelTest {
     verify(secondTransport).shutdown(any(Status.class));
   }
 
+  @Test public void racingAddresses_firstReadyWins() {
+    connectionAttemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(250);
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    SocketAddress addr3 = mock(SocketAddress.class);
+    createInternalSubchannel(addr1, addr2, addr3);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr1),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    MockClientTransportInfo transportInfo1 = transports.poll();
+
+    // The first address hangs, so the second is tried alongside it after the delay
+    fakeClock.forwardTime(249, TimeUnit.MILLISECONDS);
+    verify(mockTransportFactory, never())
+        .newClientTransport(
+            eq(addr2),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    fakeClock.forwardTime(1, TimeUnit.MILLISECONDS);
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr2),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    assertEquals(CONNECTING, internalSubchannel.getState());
+
+    // The second address wins, and the first is given up
+    MockClientTransportInfo transportInfo2 = transports.poll();
+    transportInfo2.listener.transportReady();
+    assertExactCallbackInvokes("onStateChange:READY");
+    assertSame(transportInfo2.transport,
+        ((CallTracingTransport) internalSubchannel.obtainActiveTransport()).delegate());
+    verify(transportInfo1.transport).shutdown(any(Status.class));
+    verify(transportInfo2.transport, never()).shutdown(any(Status.class));
+    transportInfo1.listener.transportShutdown(Status.UNAVAILABLE);
+    assertNoCallbackInvoke();
+    assertEquals(0, fakeClock.numPendingTasks());
+    verify(mockTransportFactory, never())
+        .newClientTransport(
+            eq(addr3),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+
+    // Stays on the winning address when addresses change
+    internalSubchannel.updateAddresses(
+        Arrays.asList(new EquivalentAddressGroup(Arrays.asList(addr2, addr3))));
+    assertEquals(READY, internalSubchannel.getState());
+    assertNoCallbackInvoke();
+
+    internalSubchannel.shutdown(SHUTDOWN_REASON);
+    verify(transportInfo2.transport).shutdown(SHUTDOWN_REASON);
+  }
+
+  @Test public void racingAddresses_failureStartsNextAttemptImmediately() {
+    connectionAttemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(250);
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    SocketAddress addr3 = mock(SocketAddress.class);
+    createInternalSubchannel(addr1, addr2, addr3);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr1),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    transports.poll().listener.transportShutdown(Status.UNAVAILABLE);
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr2),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    MockClientTransportInfo transportInfo2 = transports.poll();
+
+    // The delay starts over for the second address
+    fakeClock.forwardTime(250, TimeUnit.MILLISECONDS);
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr3),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    MockClientTransportInfo transportInfo3 = transports.poll();
+    assertEquals(0, fakeClock.numPendingTasks());
+
+    // Fails only once all the racing transports have failed
+    transportInfo3.listener.transportShutdown(Status.UNAVAILABLE);
+    assertNoCallbackInvoke();
+    assertEquals(CONNECTING, internalSubchannel.getState());
+    transportInfo2.listener.transportShutdown(Status.RESOURCE_EXHAUSTED);
+    assertExactCallbackInvokes("onStateChange:" + RESOURCE_EXHAUSTED_STATE);
+    verifyNoMoreInteractions(mockTransportFactory);
+
+    internalSubchannel.shutdown(SHUTDOWN_REASON);
+  }
+
+  @Test public void racingAddresses_updateAddressesShutsDownRemovedAttempts() {
+    connectionAttemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(250);
+    SocketAddress addr1 = mock(SocketAddress.class);
+    SocketAddress addr2 = mock(SocketAddress.class);
+    SocketAddress addr3 = mock(SocketAddress.class);
+    createInternalSubchannel(addr1, addr2);
+
+    assertNull(internalSubchannel.obtainActiveTransport());
+    assertExactCallbackInvokes("onStateChange:CONNECTING");
+    MockClientTransportInfo transportInfo1 = transports.poll();
+    fakeClock.forwardTime(250, TimeUnit.MILLISECONDS);
+    MockClientTransportInfo transportInfo2 = transports.poll();
+
+    internalSubchannel.updateAddresses(
+        Arrays.asList(new EquivalentAddressGroup(Arrays.asList(addr2, addr3))));
+    verify(transportInfo1.transport).shutdown(any(Status.class));
+    verify(transportInfo2.transport, never()).shutdown(any(Status.class));
+    assertEquals(CONNECTING, internalSubchannel.getState());
+
+    // The next attempt is scheduled from the racing address
+    fakeClock.forwardTime(250, TimeUnit.MILLISECONDS);
+    verify(mockTransportFactory)
+        .newClientTransport(
+            eq(addr3),
+            eq(createClientTransportOptions()),
+            isA(TransportLogger.class));
+    transportInfo1.listener.transportShutdown(Status.UNAVAILABLE);
+    transportInfo2.listener.transportReady();
+    assertExactCallbackInvokes("onStateChange:READY");
+    verify(transports.poll().transport).shutdown(any(Status.class));
+
+    internalSubchannel.shutdown(SHUTDOWN_REASON);
+  }
+
   @Test
   public void connectIsLazy() {
     SocketAddress addr = mock(SocketAddress.class);
@@ -1355,9 +1491,9 @@ public class InternalSubchannelTest {
     ChannelTracer subchannelTracer = new ChannelTracer(logId, 10,
         fakeClock.getTimeProvider().currentTimeNanos(), "Subchannel");
     internalSubchannel = new InternalSubchannel(addressGroups, AUTHORITY, USER_AGENT,
-        mockBackoffPolicyProvider, mockTransportFactory, fakeClock.getScheduledExecutorService(),
-        fakeClock.getStopwatchSupplier(), syncContext, mockInternalSubchannelCallback,
-        channelz, CallTracer.getDefaultFactory().create(),
+        mockBackoffPolicyProvider, connectionAttemptDelayNanos, mockTransportFactory,
+        fakeClock.getScheduledExecutorService(), fakeClock.getStopwatchSupplier(), syncContext,
+        mockInternalSubchannelCallback, channelz, CallTracer.getDefaultFactory().create(),
         subchannelTracer,
         logId,
         new ChannelLoggerImpl(subchannelTracer, fakeClock.getTimeProvider()));
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link LatencyHistogram}. */
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final FakeClock fakeClock = new FakeClock();
+  private final LatencyHistogram histogram =
+      new LatencyHistogram(WINDOW_NANOS, 10, fakeClock.getTimeProvider());
+
+  @Test
+  public void notEnoughSamples() {
+    for (int i = 0; i < 9; i++) {
+      histogram.record(1000);
+    }
+    assertThat(histogram.percentileNanos(50)).isEqualTo(-1);
+
+    histogram.record(1000);
+    assertThat(histogram.percentileNanos(50)).isEqualTo(1023);
+  }
+
+  @Test
+  public void percentiles() {
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    assertApproximately(histogram.percentileNanos(50), TimeUnit.MILLISECONDS.toNanos(50));
+    assertApproximately(histogram.percentileNanos(95), TimeUnit.MILLISECONDS.toNanos(95));
+    assertApproximately(histogram.percentileNanos(1), TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @Test
+  public void oldSamplesExpire() {
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    fakeClock.forwardNanos(WINDOW_NANOS);
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    // The previous window still counts.
+    assertApproximately(histogram.percentileNanos(90), TimeUnit.MILLISECONDS.toNanos(100));
+
+    fakeClock.forwardNanos(WINDOW_NANOS);
+    assertApproximately(histogram.percentileNanos(90), TimeUnit.MILLISECONDS.toNanos(10));
+
+    fakeClock.forwardNanos(WINDOW_NANOS);
+    assertThat(histogram.percentileNanos(90)).isEqualTo(-1);
+  }
+
+  @Test
+  public void longIdleDropsAllSamples() {
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    fakeClock.forwardNanos(5 * WINDOW_NANOS + 1);
+    assertThat(histogram.percentileNanos(50)).isEqualTo(-1);
+  }
+
+  private static void assertApproximately(long actual, long expected) {
+    assertThat(actual).isAtLeast(expected);
+    assertThat((double) actual).isAtMost(expected * 1.125);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link LongHistogram}. */
+@RunWith(JUnit4.class)
+public class LongHistogramTest {
+  @Test
+  public void bucketsCoverAllValues() {
+    assertThat(LongHistogram.bucketIndex(0)).isEqualTo(0);
+    assertThat(LongHistogram.bucketIndex(Long.MAX_VALUE))
+        .isEqualTo(LongHistogram.BUCKET_COUNT - 1);
+    assertThat(LongHistogram.bucketUpperBound(LongHistogram.BUCKET_COUNT - 1))
+        .isEqualTo(Long.MAX_VALUE);
+    for (int i = 1; i < LongHistogram.BUCKET_COUNT; i++) {
+      long lowerBound = LongHistogram.bucketUpperBound(i - 1) + 1;
+      assertThat(LongHistogram.bucketIndex(lowerBound)).isEqualTo(i);
+      assertThat(LongHistogram.bucketIndex(LongHistogram.bucketUpperBound(i))).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void bucketsWithinRelativeError() {
+    for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+      long upperBound = LongHistogram.bucketUpperBound(LongHistogram.bucketIndex(value));
+      assertThat(upperBound).isAtLeast(value);
+      assertThat((double) (upperBound - value)).isAtMost(value * 0.125);
+    }
+  }
+
+  @Test
+  public void recordAndPercentile() {
+    LongHistogram histogram = new LongHistogram();
+    assertThat(LongHistogram.percentile(histogram.getCounts(), 50)).isEqualTo(-1);
+
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+    assertThat(histogram.getCount(0)).isEqualTo(1);
+
+    long[] counts = histogram.getCounts();
+    assertThat(LongHistogram.percentile(counts, 0)).isEqualTo(0);
+    assertThat(LongHistogram.percentile(counts, 50)).isAtLeast(500);
+    assertThat(LongHistogram.percentile(counts, 50)).isAtMost(500 + 500 / 8);
+    assertThat(LongHistogram.percentile(counts, 100)).isAtLeast(1000);
+    assertThat(LongHistogram.percentile(counts, 100)).isAtMost(1000 + 1000 / 8);
+  }
+}
@@ -163,6 +163,17 @@ public class ManagedChannelImplBuilderTest {
     assertEquals(MoreExecutors.directExecutor(), builder.executorPool.getObject());
   }
 
+  @Test
+  public void virtualThreadExecutor() {
+    ObjectPool<? extends Executor> defaultValue = builder.executorPool;
+    assertEquals(builder, builder.virtualThreadExecutor());
+    if (VirtualThreadExecutor.getInstance() != null) {
+      assertEquals(VirtualThreadExecutor.getInstance(), builder.executorPool.getObject());
+    } else {
+      assertEquals(defaultValue, builder.executorPool);
+    }
+  }
+
   @Test
   public void offloadExecutor_normal() {
     Executor executor = mock(Executor.class);
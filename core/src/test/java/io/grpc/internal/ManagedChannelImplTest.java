@@ -774,6 +774,34 @@ public class ManagedChannelImplTest {
     assertNotNull(channelz.getRootChannel(channel.getLogId().getId()));
   }
 
+  @Test
+  public void channelzChanges() {
+    createChannel();
+    AbstractSubchannel subchannel =
+        (AbstractSubchannel) createSubchannelSafely(
+            helper, addressGroup, Attributes.EMPTY, subchannelStateListener);
+    InternalChannelz.ChangeList changes = channelz.getChangesSince(0);
+    assertThat(changes.rootChannels).containsExactly(channel);
+    assertThat(changes.subchannels)
+        .containsExactly(subchannel.getInstrumentedInternalSubchannel());
+
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.rootChannels).isEmpty();
+    assertThat(changes.subchannels).isEmpty();
+
+    ClientCall<String, Integer> call = channel.newCall(method, CallOptions.DEFAULT);
+    call.start(mockCallListener, new Metadata());
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.rootChannels).containsExactly(channel);
+    assertThat(changes.subchannels).isEmpty();
+
+    shutdownSafely(helper, subchannel);
+    timer.forwardTime(ManagedChannelImpl.SUBCHANNEL_SHUTDOWN_DELAY_SECONDS, TimeUnit.SECONDS);
+    changes = channelz.getChangesSince(changes.cursor);
+    assertThat(changes.removedIds)
+        .containsExactly(subchannel.getInstrumentedInternalSubchannel().getLogId().getId());
+  }
+
   @Test
   public void callsAndShutdown() {
     subtestCallsAndShutdown(false, false);
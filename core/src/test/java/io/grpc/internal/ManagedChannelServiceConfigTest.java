@@ -18,6 +18,7 @@ package io.grpc.internal;
 
 import static com.google.common.truth.Truth.assertThat;
 import static io.grpc.MethodDescriptor.MethodType.UNARY;
+import static io.grpc.Status.Code.RESOURCE_EXHAUSTED;
 import static io.grpc.Status.Code.UNAVAILABLE;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.fail;
@@ -33,6 +34,7 @@ import io.grpc.internal.ManagedChannelServiceConfig.MethodInfo;
 import io.grpc.testing.TestMethodDescriptors;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -294,6 +296,129 @@ public class ManagedChannelServiceConfigTest {
         .isNotNull();
   }
 
+  @Test
+  public void adaptiveThrottlingConfig() {
+    Map<String, ?> adaptiveThrottling = ImmutableMap.of(
+        "ratioForAccepts", 2.0D,
+        "history", "10s",
+        "throttledStatusCodes", ImmutableList.of("RESOURCE_EXHAUSTED"));
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()), "adaptiveThrottling", adaptiveThrottling);
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+
+    // Adaptive throttling does not depend on retry being enabled.
+    ManagedChannelServiceConfig serviceConfig =
+        ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, false, 0, 0, null);
+    AdaptiveThrottlingPolicy policy = serviceConfig
+        .getMethodConfig(methodForName("service1", "method1")).adaptiveThrottlingPolicy;
+    assertThat(policy.ratioForAccepts).isEqualTo(2.0f);
+    assertThat(policy.requestsPadding).isEqualTo(8);
+    assertThat(policy.historyNanos).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+    assertThat(policy.throttledStatusCodes).containsExactly(RESOURCE_EXHAUSTED);
+    // The default method config throttles all methods together.
+    assertThat(serviceConfig.getMethodConfig(methodForName("service2", "method2"))
+        .adaptiveThrottlingPolicy).isSameInstanceAs(policy);
+
+    // Reparsing gives an equal config, regardless of the throttler state.
+    policy.throttler.registerBackendResponse(true);
+    assertThat(ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, false, 0, 0, null))
+        .isEqualTo(serviceConfig);
+  }
+
+  @Test
+  public void adaptiveThrottlingConfig_defaults() {
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()),
+        "adaptiveThrottling", ImmutableMap.of());
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+    ManagedChannelServiceConfig serviceConfig =
+        ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, false, 0, 0, null);
+    AdaptiveThrottlingPolicy policy = serviceConfig
+        .getMethodConfig(methodForName("service1", "method1")).adaptiveThrottlingPolicy;
+    assertThat(policy.ratioForAccepts).isEqualTo(1.2f);
+    assertThat(policy.requestsPadding).isEqualTo(8);
+    assertThat(policy.historyNanos).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+    assertThat(policy.throttledStatusCodes).containsExactly(RESOURCE_EXHAUSTED, UNAVAILABLE);
+  }
+
+  @Test
+  public void adaptiveThrottlingConfig_ratioForAcceptsBelowOneNotAllowed() {
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()),
+        "adaptiveThrottling", ImmutableMap.of("ratioForAccepts", 0.5D));
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("ratioForAccepts must be at least 1");
+
+    ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, false, 0, 0, null);
+  }
+
+  @Test
+  public void hedgingConfig_adaptiveDelayAndBudget() {
+    Map<String, ?> hedgingPolicy = ImmutableMap.of(
+        "maxAttempts", 2.0D,
+        "hedgingDelay", "1s",
+        "hedgingDelayPercentile", 95.0D,
+        "hedgingBudgetPercent", 5.0D);
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()), "hedgingPolicy", hedgingPolicy);
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+
+    ManagedChannelServiceConfig serviceConfig =
+        ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, true, 5, 5, null);
+    HedgingPolicy policy = serviceConfig
+        .getMethodConfig(methodForName("service1", "method1")).hedgingPolicy;
+    assertThat(policy.hedgingDelayNanos).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    assertThat(policy.hedgingDelayPercentile).isEqualTo(95.0D);
+    assertThat(policy.hedgingBudgetPercent).isEqualTo(5.0D);
+    assertThat(policy.isLatencyTracked()).isTrue();
+
+    // Reparsing gives an equal config, regardless of the observed latencies.
+    policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    assertThat(policy.tryAcquireHedge()).isTrue();
+    assertThat(ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, true, 5, 5, null))
+        .isEqualTo(serviceConfig);
+  }
+
+  @Test
+  public void hedgingConfig_percentileOutOfRangeNotAllowed() {
+    Map<String, ?> hedgingPolicy = ImmutableMap.of(
+        "maxAttempts", 2.0D,
+        "hedgingDelay", "1s",
+        "hedgingDelayPercentile", 100.0D);
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()), "hedgingPolicy", hedgingPolicy);
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("hedgingDelayPercentile must be in (0, 100)");
+
+    ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, true, 5, 5, null);
+  }
+
+  @Test
+  public void hedgingConfig_zeroBudgetNotAllowed() {
+    Map<String, ?> hedgingPolicy = ImmutableMap.of(
+        "maxAttempts", 2.0D,
+        "hedgingDelay", "1s",
+        "hedgingBudgetPercent", 0.0D);
+    Map<String, ?> methodConfig = ImmutableMap.of(
+        "name", ImmutableList.of(ImmutableMap.of()), "hedgingPolicy", hedgingPolicy);
+    Map<String, ?> rawServiceConfig =
+        ImmutableMap.of("methodConfig", ImmutableList.of(methodConfig));
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("hedgingBudgetPercent must be in (0, 100]");
+
+    ManagedChannelServiceConfig.fromServiceConfig(rawServiceConfig, true, 5, 5, null);
+  }
+
   private static MethodDescriptor<?, ?> methodForName(String service, String method) {
     return MethodDescriptor.<Void, Void>newBuilder()
         .setFullMethodName(service + "/" + method)
@@ -17,6 +17,7 @@
 package io.grpc.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -26,14 +27,20 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import io.grpc.ByteBufferDrainable;
 import io.grpc.Codec;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.StreamTracer;
 import io.grpc.internal.testing.TestStreamTracer.TestBaseStreamTracer;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -352,6 +359,88 @@ public class MessageFramerTest {
     checkStats(0, 0);
   }
 
+  @Test
+  public void byteBufferDrainablePayloadWrittenIntoBuffer() {
+    ByteBufferDrainableInputStream message =
+        new ByteBufferDrainableInputStream(new byte[] {3, 14, 1, 5});
+    framer.writePayload(message);
+    framer.flush();
+    assertTrue(message.drainedToByteBuffer);
+    verify(sink).deliverFrame(
+        toWriteBuffer(new byte[] {0, 0, 0, 0, 4, 3, 14, 1, 5}), false, true, 1);
+    verifyNoMoreInteractions(sink);
+    assertEquals(1, allocator.allocCount);
+    checkStats(4, 4);
+  }
+
+  @Test
+  public void byteBufferDrainablePayloadSplitBetweenSinks() {
+    allocator = new BytesWritableBufferAllocator(12, 12);
+    framer = new MessageFramer(sink, allocator, statsTraceCtx);
+    ByteBufferDrainableInputStream message =
+        new ByteBufferDrainableInputStream(new byte[] {3, 14, 1, 5, 9, 2, 6, 5});
+    framer.writePayload(message);
+    assertFalse(message.drainedToByteBuffer);
+    verify(sink).deliverFrame(
+        toWriteBuffer(new byte[] {0, 0, 0, 0, 8, 3, 14, 1, 5, 9, 2, 6}), false, false, 1);
+    framer.flush();
+    verify(sink).deliverFrame(toWriteBuffer(new byte[] {5}), false, true, 0);
+    verifyNoMoreInteractions(sink);
+    assertEquals(2, allocator.allocCount);
+    checkStats(8, 8);
+  }
+
+  @Test
+  public void compressionDeciderSkipsSmallMessages() {
+    final List<String> compressionEvents = new ArrayList<>();
+    StreamTracer compressionTracer = new StreamTracer() {
+      @Override
+      public void outboundMessageCompression(
+          int seqNo, boolean compressed, long uncompressedSize, long optionalCompressedSize) {
+        compressionEvents.add(String.format(
+            "%d, %b, %d, %d", seqNo, compressed, uncompressedSize, optionalCompressedSize));
+      }
+    };
+    RecordingDecider decider = new RecordingDecider(500);
+    allocator = new BytesWritableBufferAllocator(100, Integer.MAX_VALUE);
+    framer = new MessageFramer(
+        sink, allocator, new StatsTraceContext(new StreamTracer[] {compressionTracer}))
+        .setCompressor(new Codec.Gzip())
+        .setMessageCompressionDecider(decider);
+
+    writeKnownLength(framer, new byte[100]);
+    framer.flush();
+    writeKnownLength(framer, new byte[1000]);
+    framer.flush();
+
+    verify(sink, times(2)).deliverFrame(frameCaptor.capture(), eq(false), eq(true), eq(1));
+    verify(sink).deliverFrame(frameCaptor.capture(), eq(false), eq(false), eq(0));
+    ByteWritableBuffer uncompressed = frameCaptor.getAllValues().get(0);
+    assertEquals(0x0, uncompressed.data[0]);
+    assertEquals(100, ByteBuffer.wrap(uncompressed.data, 1, 4).getInt());
+    ByteWritableBuffer compressedHeader = frameCaptor.getAllValues().get(2);
+    assertEquals(0x1, compressedHeader.data[0]);
+    int compressedLength = ByteBuffer.wrap(compressedHeader.data, 1, 4).getInt();
+    assertTrue(compressedLength < 1000);
+
+    assertEquals(Arrays.asList(100, 1000), decider.queriedLengths);
+    assertEquals(Arrays.asList(1000L, (long) compressedLength), decider.compressedSizes);
+    assertEquals(
+        Arrays.asList("0, false, 100, -1", "1, true, 1000, " + compressedLength),
+        compressionEvents);
+  }
+
+  @Test
+  public void compressionDeciderNotConsultedWithoutCompressor() {
+    RecordingDecider decider = new RecordingDecider(0);
+    framer.setMessageCompressionDecider(decider);
+    writeKnownLength(framer, new byte[] {3, 14});
+    framer.flush();
+    verify(sink).deliverFrame(toWriteBuffer(new byte[] {0, 0, 0, 0, 2, 3, 14}), false, true, 1);
+    assertTrue(decider.queriedLengths.isEmpty());
+    checkStats(2, 2);
+  }
+
   private static WritableBuffer toWriteBuffer(byte[] data) {
     return toWriteBufferWithMinSize(data, 0);
   }
@@ -362,6 +451,28 @@ public class MessageFramerTest {
     return buffer;
   }
 
+  private static final class RecordingDecider extends MessageCompressionPolicy.Decider {
+    private final int minMessageSize;
+    final List<Integer> queriedLengths = new ArrayList<>();
+    final List<Long> compressedSizes = new ArrayList<>();
+
+    RecordingDecider(int minMessageSize) {
+      this.minMessageSize = minMessageSize;
+    }
+
+    @Override
+    public boolean shouldCompress(int messageLength) {
+      queriedLengths.add(messageLength);
+      return messageLength >= minMessageSize;
+    }
+
+    @Override
+    public void messageCompressed(long uncompressedSize, long compressedSize) {
+      compressedSizes.add(uncompressedSize);
+      compressedSizes.add(compressedSize);
+    }
+  }
+
   private static void writeUnknownLength(MessageFramer framer, byte[] bytes) {
     framer.writePayload(new BufferedInputStream(new ByteArrayInputStream(bytes)));
   }
@@ -422,6 +533,21 @@ public class MessageFramerTest {
       return writeIdx;
     }
 
+    @Override
+    public boolean byteBufferSupported() {
+      return true;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+      return ByteBuffer.wrap(data, writeIdx, data.length - writeIdx).slice();
+    }
+
+    @Override
+    public void advanceWriteIndex(int length) {
+      writeIdx += length;
+    }
+
     @Override
     public void release() {
       data = null;
@@ -450,6 +576,32 @@ public class MessageFramerTest {
     }
   }
 
+  private static final class ByteBufferDrainableInputStream extends ByteArrayInputStream
+      implements ByteBufferDrainable {
+    boolean drainedToByteBuffer;
+
+    ByteBufferDrainableInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      int length = available();
+      target.write(buf, pos, length);
+      pos += length;
+      return length;
+    }
+
+    @Override
+    public int drainTo(ByteBuffer target) {
+      drainedToByteBuffer = true;
+      int length = available();
+      target.put(buf, pos, length);
+      pos += length;
+      return length;
+    }
+  }
+
   static class BytesWritableBufferAllocator implements WritableBufferAllocator {
     public int minSize;
     public int maxSize;
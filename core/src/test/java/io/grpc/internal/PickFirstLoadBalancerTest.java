@@ -36,6 +36,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import io.grpc.Attributes;
 import io.grpc.ConnectivityState;
@@ -49,10 +50,14 @@ import io.grpc.LoadBalancer.ResolvedAddresses;
 import io.grpc.LoadBalancer.Subchannel;
 import io.grpc.LoadBalancer.SubchannelPicker;
 import io.grpc.LoadBalancer.SubchannelStateListener;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
 import io.grpc.Status;
 import io.grpc.SynchronizationContext;
+import io.grpc.internal.PickFirstLoadBalancer.PickFirstLoadBalancerConfig;
 import java.net.SocketAddress;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -194,6 +199,55 @@ public class PickFirstLoadBalancerTest {
     verifyNoMoreInteractions(mockHelper, mockSubchannel);
   }
 
+  @Test
+  public void racesAddressesAfterDefaultDelay() throws Exception {
+    loadBalancer.handleResolvedAddresses(
+        ResolvedAddresses.newBuilder().setAddresses(servers).setAttributes(affinity).build());
+
+    verify(mockHelper).createSubchannel(createArgsCaptor.capture());
+    assertThat(createArgsCaptor.getValue().getOption(
+        InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS))
+        .isEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+  }
+
+  @Test
+  public void connectionAttemptDelayFromConfig() throws Exception {
+    loadBalancer.handleResolvedAddresses(
+        ResolvedAddresses.newBuilder()
+            .setAddresses(servers)
+            .setAttributes(affinity)
+            .setLoadBalancingPolicyConfig(new PickFirstLoadBalancerConfig(0))
+            .build());
+
+    verify(mockHelper).createSubchannel(createArgsCaptor.capture());
+    assertThat(createArgsCaptor.getValue().getOption(
+        InternalSubchannel.CONNECTION_ATTEMPT_DELAY_NANOS))
+        .isEqualTo(0L);
+  }
+
+  @Test
+  public void parseConfig() {
+    LoadBalancerProvider provider = new PickFirstLoadBalancerProvider();
+
+    ConfigOrError defaults =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.<String, Object>of());
+    assertThat(defaults.getConfig()).isEqualTo(PickFirstLoadBalancerConfig.DEFAULT);
+    ConfigOrError custom = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("connectionAttemptDelay", "0.1s"));
+    assertThat(custom.getConfig())
+        .isEqualTo(new PickFirstLoadBalancerConfig(TimeUnit.MILLISECONDS.toNanos(100)));
+    ConfigOrError disabled = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("connectionAttemptDelay", "0s"));
+    assertThat(disabled.getConfig()).isEqualTo(new PickFirstLoadBalancerConfig(0));
+
+    ConfigOrError negative = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("connectionAttemptDelay", "-1s"));
+    assertThat(negative.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    ConfigOrError wrongType = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("connectionAttemptDelay", 1.0));
+    assertThat(wrongType.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
   @Test
   public void pickAfterResolvedAndUnchanged() throws Exception {
     loadBalancer.handleResolvedAddresses(
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.ArgumentMatchers.any;
@@ -41,12 +42,14 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.MoreExecutors;
-import io.grpc.ClientStreamTracer;
+import io.grpc.ByteBufferDrainable;
 import io.grpc.Codec;
 import io.grpc.Compressor;
 import io.grpc.DecompressorRegistry;
+import io.grpc.KnownLength;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
@@ -94,8 +97,6 @@ public class RetriableStreamTest {
   private static final long MAX_BACKOFF_IN_SECONDS = 700;
   private static final double BACKOFF_MULTIPLIER = 2D;
   private static final double FAKE_RANDOM = .5D;
-  private static final ClientStreamTracer.StreamInfo STREAM_INFO =
-      ClientStreamTracer.StreamInfo.newBuilder().build();
 
   static {
     RetriableStream.setRandom(
@@ -164,10 +165,7 @@ public class RetriableStreamTest {
 
     @Override
     ClientStream newSubstream(
-        Metadata metadata, ClientStreamTracer.Factory tracerFactory, int previousAttempts,
-        boolean isTransparentRetry) {
-      bufferSizeTracer =
-          tracerFactory.newClientStreamTracer(STREAM_INFO, metadata);
+        Metadata metadata, int previousAttempts, boolean isTransparentRetry) {
       int actualPreviousRpcAttemptsInHeader = metadata.get(GRPC_PREVIOUS_RPC_ATTEMPTS) == null
           ? 0 : Integer.valueOf(metadata.get(GRPC_PREVIOUS_RPC_ATTEMPTS));
       return retriableStreamRecorder.newSubstream(actualPreviousRpcAttemptsInHeader);
@@ -184,8 +182,6 @@ public class RetriableStreamTest {
   private final RetriableStream<String> hedgingStream =
       newThrottledHedgingStream(null /* throttle */);
 
-  private ClientStreamTracer bufferSizeTracer;
-
   private RetriableStream<String> newThrottledRetriableStream(Throttle throttle) {
     return new RecordedRetriableStream(
         method, new Metadata(), channelBufferUsed, PER_RPC_BUFFER_LIMIT, CHANNEL_BUFFER_LIMIT,
@@ -200,6 +196,17 @@ public class RetriableStreamTest {
         null, HEDGING_POLICY, throttle);
   }
 
+  private RetriableStream<String> newHedgingStream(HedgingPolicy hedgingPolicy) {
+    return new RecordedRetriableStream(
+        method, new Metadata(), channelBufferUsed, PER_RPC_BUFFER_LIMIT, CHANNEL_BUFFER_LIMIT,
+        MoreExecutors.directExecutor(), fakeClock.getScheduledExecutorService(),
+        null, hedgingPolicy, null);
+  }
+
+  private static String messageOfSize(long size) {
+    return Strings.repeat("a", (int) size);
+  }
+
   @After
   public void tearDown() {
     assertEquals(0, fakeClock.numPendingTasks());
@@ -1067,12 +1074,12 @@ public class RetriableStreamTest {
 
     retriableStream.start(masterListener);
 
-    bufferSizeTracer.outboundWireSize(PER_RPC_BUFFER_LIMIT);
+    retriableStream.sendMessage(messageOfSize(PER_RPC_BUFFER_LIMIT));
 
     assertEquals(PER_RPC_BUFFER_LIMIT, channelBufferUsed.addAndGet(0));
 
     verify(retriableStreamRecorder, never()).postCommit();
-    bufferSizeTracer.outboundWireSize(2);
+    retriableStream.sendMessage(messageOfSize(2));
     verify(retriableStreamRecorder).postCommit();
 
     // verify channel buffer is adjusted
@@ -1091,7 +1098,8 @@ public class RetriableStreamTest {
     verify(mockStream1).start(sublistenerCaptor1.capture());
     verify(mockStream1).isReady();
 
-    bufferSizeTracer.outboundWireSize(PER_RPC_BUFFER_LIMIT - 1);
+    retriableStream.sendMessage(messageOfSize(PER_RPC_BUFFER_LIMIT - 1));
+    verify(mockStream1).writeMessage(any(InputStream.class));
 
     // retry
     ClientStream mockStream2 = mock(ClientStream.class);
@@ -1099,23 +1107,18 @@ public class RetriableStreamTest {
     sublistenerCaptor1.getValue().closed(
         Status.fromCode(RETRIABLE_STATUS_CODE_1), PROCESSED, new Metadata());
 
-    // bufferSizeTracer.outboundWireSize() quits immediately while backoff b/c substream1 is closed
+    // the message is only buffered while backoff, as no substream is sent it
     assertEquals(1, fakeClock.numPendingTasks());
-    bufferSizeTracer.outboundWireSize(2);
+    retriableStream.sendMessage(messageOfSize(2));
     verify(retriableStreamRecorder, never()).postCommit();
 
+    // bufferLimitExceeded while replaying the buffer to the new substream
     fakeClock.forwardTime((long) (INITIAL_BACKOFF_IN_SECONDS * FAKE_RANDOM), TimeUnit.SECONDS);
     verify(mockStream2).start(any(ClientStreamListener.class));
-    verify(mockStream2).isReady();
-
-    // bufferLimitExceeded
-    bufferSizeTracer.outboundWireSize(PER_RPC_BUFFER_LIMIT - 1);
-    verify(retriableStreamRecorder, never()).postCommit();
-    bufferSizeTracer.outboundWireSize(2);
+    verify(mockStream2, times(2)).writeMessage(any(InputStream.class));
     verify(retriableStreamRecorder).postCommit();
 
     verifyNoMoreInteractions(mockStream1);
-    verifyNoMoreInteractions(mockStream2);
   }
 
   @Test
@@ -1125,19 +1128,123 @@ public class RetriableStreamTest {
 
     retriableStream.start(masterListener);
 
-    bufferSizeTracer.outboundWireSize(100);
+    retriableStream.sendMessage(messageOfSize(100));
 
     assertEquals(100, channelBufferUsed.addAndGet(0));
 
     channelBufferUsed.addAndGet(CHANNEL_BUFFER_LIMIT - 200);
     verify(retriableStreamRecorder, never()).postCommit();
-    bufferSizeTracer.outboundWireSize(100 + 1);
+    retriableStream.sendMessage(messageOfSize(100 + 1));
     verify(retriableStreamRecorder).postCommit();
 
     // verify channel buffer is adjusted
     assertEquals(CHANNEL_BUFFER_LIMIT - 200, channelBufferUsed.addAndGet(0));
   }
 
+  @Test
+  public void messageSerializedOnceForAllAttempts() throws Exception {
+    final List<String> marshalled = new ArrayList<>();
+    MethodDescriptor<String, String> countingMethod = method.toBuilder()
+        .setRequestMarshaller(new StringMarshaller() {
+          @Override
+          public InputStream stream(String value) {
+            marshalled.add(value);
+            return super.stream(value);
+          }
+        })
+        .build();
+    RetriableStream<String> hedgingStream = new RecordedRetriableStream(
+        countingMethod, new Metadata(), channelBufferUsed, PER_RPC_BUFFER_LIMIT,
+        CHANNEL_BUFFER_LIMIT, MoreExecutors.directExecutor(),
+        fakeClock.getScheduledExecutorService(), null, HEDGING_POLICY, null);
+    ClientStream mockStream1 = mock(ClientStream.class);
+    ClientStream mockStream2 = mock(ClientStream.class);
+    doReturn(mockStream1).when(retriableStreamRecorder).newSubstream(0);
+    doReturn(mockStream2).when(retriableStreamRecorder).newSubstream(1);
+
+    hedgingStream.start(masterListener);
+    hedgingStream.sendMessage("msg");
+    fakeClock.forwardTime(HEDGING_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+
+    assertThat(marshalled).containsExactly("msg");
+    ArgumentCaptor<InputStream> messageCaptor = ArgumentCaptor.forClass(InputStream.class);
+    verify(mockStream1).writeMessage(messageCaptor.capture());
+    verify(mockStream2).writeMessage(messageCaptor.capture());
+    for (InputStream message : messageCaptor.getAllValues()) {
+      assertThat(message.available()).isEqualTo(3);
+      assertEquals("msg", method.parseRequest(message));
+    }
+    // Both attempts share one buffered copy.
+    assertEquals(3, channelBufferUsed.addAndGet(0));
+
+    hedgingStream.cancel(Status.CANCELLED);
+    assertEquals(0, channelBufferUsed.addAndGet(0));
+  }
+
+  @Test
+  public void messageSerializedOnlyOnceRetried() throws Exception {
+    final List<InputStream> marshalled = new ArrayList<>();
+    MethodDescriptor<String, String> countingMethod = method.toBuilder()
+        .setRequestMarshaller(new StringMarshaller() {
+          @Override
+          public InputStream stream(String value) {
+            InputStream stream = super.stream(value);
+            marshalled.add(stream);
+            return stream;
+          }
+        })
+        .build();
+    RetriableStream<String> retriableStream = new RecordedRetriableStream(
+        countingMethod, new Metadata(), channelBufferUsed, PER_RPC_BUFFER_LIMIT,
+        CHANNEL_BUFFER_LIMIT, MoreExecutors.directExecutor(),
+        fakeClock.getScheduledExecutorService(), RETRY_POLICY, null, null);
+    ClientStream mockStream1 = mock(ClientStream.class);
+    ClientStream mockStream2 = mock(ClientStream.class);
+    ClientStream mockStream3 = mock(ClientStream.class);
+    doReturn(mockStream1).when(retriableStreamRecorder).newSubstream(0);
+    doReturn(mockStream2).when(retriableStreamRecorder).newSubstream(1);
+    doReturn(mockStream3).when(retriableStreamRecorder).newSubstream(2);
+
+    retriableStream.start(masterListener);
+    retriableStream.sendMessage("msg");
+
+    // The first attempt is sent the marshalled message as is.
+    ArgumentCaptor<InputStream> messageCaptor = ArgumentCaptor.forClass(InputStream.class);
+    verify(mockStream1).writeMessage(messageCaptor.capture());
+    assertThat(marshalled).hasSize(1);
+    assertSame(marshalled.get(0), messageCaptor.getValue());
+    assertEquals(3, channelBufferUsed.addAndGet(0));
+
+    ArgumentCaptor<ClientStreamListener> sublistenerCaptor1 =
+        ArgumentCaptor.forClass(ClientStreamListener.class);
+    verify(mockStream1).start(sublistenerCaptor1.capture());
+    sublistenerCaptor1.getValue().closed(
+        Status.fromCode(RETRIABLE_STATUS_CODE_1), PROCESSED, new Metadata());
+    fakeClock.forwardTime((long) (INITIAL_BACKOFF_IN_SECONDS * FAKE_RANDOM), TimeUnit.SECONDS);
+    ArgumentCaptor<ClientStreamListener> sublistenerCaptor2 =
+        ArgumentCaptor.forClass(ClientStreamListener.class);
+    verify(mockStream2).start(sublistenerCaptor2.capture());
+    sublistenerCaptor2.getValue().closed(
+        Status.fromCode(RETRIABLE_STATUS_CODE_1), PROCESSED, new Metadata());
+    fakeClock.forwardTime(
+        (long) (INITIAL_BACKOFF_IN_SECONDS * BACKOFF_MULTIPLIER * FAKE_RANDOM), TimeUnit.SECONDS);
+    verify(mockStream3).start(any(ClientStreamListener.class));
+
+    // The retries share the bytes serialized when the message was first replayed.
+    assertThat(marshalled).hasSize(2);
+    verify(mockStream2).writeMessage(messageCaptor.capture());
+    verify(mockStream3).writeMessage(messageCaptor.capture());
+    for (InputStream message : messageCaptor.getAllValues().subList(1, 3)) {
+      assertThat(message).isInstanceOf(ByteBufferDrainable.class);
+      assertThat(message).isInstanceOf(KnownLength.class);
+      assertEquals("msg", method.parseRequest(message));
+    }
+    assertEquals(3, channelBufferUsed.addAndGet(0));
+
+    retriableStream.cancel(Status.CANCELLED);
+    assertEquals(0, channelBufferUsed.addAndGet(0));
+  }
+
   @Test
   public void updateHeaders() {
     Metadata originalHeaders = new Metadata();
@@ -2233,6 +2340,125 @@ public class RetriableStreamTest {
     inOrder.verifyNoMoreInteractions();
   }
 
+  @Test
+  public void hedging_adaptiveDelay() {
+    HedgingPolicy hedgingPolicy = new HedgingPolicy(
+        MAX_ATTEMPTS,
+        TimeUnit.SECONDS.toNanos(HEDGING_DELAY_IN_SECONDS),
+        ImmutableSet.of(NON_FATAL_STATUS_CODE_1, NON_FATAL_STATUS_CODE_2),
+        /* hedgingDelayPercentile= */ 90.0D,
+        /* hedgingBudgetPercent= */ null,
+        fakeClock.getTimeProvider());
+    long latencyNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    for (int i = 0; i < HedgingPolicy.MIN_LATENCY_SAMPLES; i++) {
+      ClientStream mockStream = mock(ClientStream.class);
+      doReturn(mockStream).when(retriableStreamRecorder).newSubstream(anyInt());
+      newHedgingStream(hedgingPolicy).start(masterListener);
+      ArgumentCaptor<ClientStreamListener> sublistenerCaptor =
+          ArgumentCaptor.forClass(ClientStreamListener.class);
+      verify(mockStream).start(sublistenerCaptor.capture());
+
+      fakeClock.forwardNanos(latencyNanos);
+      sublistenerCaptor.getValue().closed(Status.OK, PROCESSED, new Metadata());
+      assertEquals(0, fakeClock.numPendingTasks());
+    }
+    verify(retriableStreamRecorder, never()).newSubstream(1);
+
+    // Hedges at the observed p90 rather than at the configured delay
+    long expectedDelayNanos =
+        LongHistogram.bucketUpperBound(LongHistogram.bucketIndex(latencyNanos));
+    assertThat(expectedDelayNanos).isLessThan(TimeUnit.SECONDS.toNanos(HEDGING_DELAY_IN_SECONDS));
+    ClientStream mockStream1 = mock(ClientStream.class);
+    ClientStream mockStream2 = mock(ClientStream.class);
+    when(retriableStreamRecorder.newSubstream(anyInt())).thenReturn(mockStream1, mockStream2);
+    RetriableStream<String> stream = newHedgingStream(hedgingPolicy);
+    stream.start(masterListener);
+    fakeClock.forwardNanos(expectedDelayNanos - 1);
+    verify(mockStream2, never()).start(any(ClientStreamListener.class));
+    fakeClock.forwardNanos(1);
+    verify(mockStream2).start(any(ClientStreamListener.class));
+    verify(retriableStreamRecorder).newSubstream(1);
+
+    stream.cancel(Status.CANCELLED);
+  }
+
+  @Test
+  public void hedging_adaptiveDelay_latencyOfWholeCall() {
+    long hedgingDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    HedgingPolicy hedgingPolicy = new HedgingPolicy(
+        MAX_ATTEMPTS,
+        hedgingDelayNanos,
+        ImmutableSet.of(NON_FATAL_STATUS_CODE_1, NON_FATAL_STATUS_CODE_2),
+        /* hedgingDelayPercentile= */ 50.0D,
+        /* hedgingBudgetPercent= */ null,
+        fakeClock.getTimeProvider());
+    long hedgeLatencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    for (int i = 0; i < HedgingPolicy.MIN_LATENCY_SAMPLES; i++) {
+      ClientStream mockStream1 = mock(ClientStream.class);
+      ClientStream mockStream2 = mock(ClientStream.class);
+      when(retriableStreamRecorder.newSubstream(anyInt())).thenReturn(mockStream1, mockStream2);
+      newHedgingStream(hedgingPolicy).start(masterListener);
+      fakeClock.forwardNanos(hedgingDelayNanos);
+      ArgumentCaptor<ClientStreamListener> sublistenerCaptor2 =
+          ArgumentCaptor.forClass(ClientStreamListener.class);
+      verify(mockStream2).start(sublistenerCaptor2.capture());
+
+      // The hedge completes the call, successfully or not.
+      fakeClock.forwardNanos(hedgeLatencyNanos);
+      Status status = i % 2 == 0 ? Status.OK : Status.fromCode(FATAL_STATUS_CODE);
+      sublistenerCaptor2.getValue().closed(status, PROCESSED, new Metadata());
+      assertEquals(0, fakeClock.numPendingTasks());
+    }
+
+    // Measured from the start of the calls, not of the hedges that completed them.
+    assertEquals(
+        LongHistogram.bucketUpperBound(
+            LongHistogram.bucketIndex(hedgingDelayNanos + hedgeLatencyNanos)),
+        hedgingPolicy.currentHedgingDelayNanos());
+  }
+
+  @Test
+  public void hedging_budgetExhausted() {
+    HedgingPolicy hedgingPolicy = new HedgingPolicy(
+        MAX_ATTEMPTS,
+        TimeUnit.SECONDS.toNanos(HEDGING_DELAY_IN_SECONDS),
+        ImmutableSet.of(NON_FATAL_STATUS_CODE_1, NON_FATAL_STATUS_CODE_2),
+        /* hedgingDelayPercentile= */ null,
+        /* hedgingBudgetPercent= */ 10.0D,
+        fakeClock.getTimeProvider());
+    for (int i = 0; i < HedgingPolicy.MAX_BUDGET_HEDGES; i++) {
+      assertTrue(hedgingPolicy.tryAcquireHedge());
+    }
+    assertFalse(hedgingPolicy.tryAcquireHedge());
+
+    ClientStream mockStream1 = mock(ClientStream.class);
+    doReturn(mockStream1).when(retriableStreamRecorder).newSubstream(anyInt());
+    RetriableStream<String> stream = newHedgingStream(hedgingPolicy);
+    stream.start(masterListener);
+    assertEquals(1, fakeClock.numPendingTasks());
+
+    // No budget for the hedge, and no more hedges are scheduled.
+    fakeClock.forwardTime(HEDGING_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+    assertEquals(0, fakeClock.numPendingTasks());
+    verify(retriableStreamRecorder).newSubstream(0);
+    verify(retriableStreamRecorder, never()).newSubstream(1);
+
+    // The primary attempt still completes the call.
+    ArgumentCaptor<ClientStreamListener> sublistenerCaptor =
+        ArgumentCaptor.forClass(ClientStreamListener.class);
+    verify(mockStream1).start(sublistenerCaptor.capture());
+    sublistenerCaptor.getValue().closed(Status.OK, PROCESSED, new Metadata());
+    verify(masterListener).closed(
+        any(Status.class), any(RpcProgress.class), any(Metadata.class));
+
+    // Every ten calls earn one hedge at 10%.
+    for (int i = 0; i < 9; i++) {
+      hedgingPolicy.onCallStarted();
+    }
+    assertTrue(hedgingPolicy.tryAcquireHedge());
+    assertFalse(hedgingPolicy.tryAcquireHedge());
+  }
+
   @Test
   public void hedging_pushback_positive() {
     ClientStream mockStream1 = mock(ClientStream.class);
@@ -2362,8 +2588,7 @@ public class RetriableStreamTest {
     verify(mockStream1).start(sublistenerCaptor1.capture());
     verify(mockStream1).isReady();
 
-    ClientStreamTracer bufferSizeTracer1 = bufferSizeTracer;
-    bufferSizeTracer1.outboundWireSize(PER_RPC_BUFFER_LIMIT - 1);
+    hedgingStream.sendMessage(messageOfSize(PER_RPC_BUFFER_LIMIT - 1));
 
     fakeClock.forwardTime(HEDGING_DELAY_IN_SECONDS, TimeUnit.SECONDS);
     ArgumentCaptor<ClientStreamListener> sublistenerCaptor2 =
@@ -2372,23 +2597,20 @@ public class RetriableStreamTest {
     verify(mockStream1, times(2)).isReady();
     verify(mockStream2).isReady();
 
-    ClientStreamTracer bufferSizeTracer2 = bufferSizeTracer;
-    bufferSizeTracer2.outboundWireSize(PER_RPC_BUFFER_LIMIT - 1);
-
+    // the buffered message is replayed to the hedge, without using more buffer
+    verify(mockStream2).writeMessage(any(InputStream.class));
+    assertEquals(PER_RPC_BUFFER_LIMIT - 1, channelBufferUsed.addAndGet(0));
     verify(retriableStreamRecorder, never()).postCommit();
 
-    // bufferLimitExceeded
-    bufferSizeTracer2.outboundWireSize(2);
+    // bufferLimitExceeded, on the first substream the message is sent to
+    hedgingStream.sendMessage(messageOfSize(2));
 
     ArgumentCaptor<Status> statusCaptor = ArgumentCaptor.forClass(Status.class);
-    verify(mockStream1).cancel(statusCaptor.capture());
+    verify(mockStream2).cancel(statusCaptor.capture());
     assertEquals(Status.CANCELLED.getCode(), statusCaptor.getValue().getCode());
     assertEquals(CANCELLED_BECAUSE_COMMITTED, statusCaptor.getValue().getDescription());
     verify(retriableStreamRecorder).postCommit();
-
-    verifyNoMoreInteractions(mockStream1);
-    verify(mockStream2).isReady();
-    verifyNoMoreInteractions(mockStream2);
+    verify(mockStream1, times(2)).writeMessage(any(InputStream.class));
   }
 
   @Test
@@ -2404,8 +2626,7 @@ public class RetriableStreamTest {
     verify(mockStream1).start(sublistenerCaptor1.capture());
     verify(mockStream1).isReady();
 
-    ClientStreamTracer bufferSizeTracer1 = bufferSizeTracer;
-    bufferSizeTracer1.outboundWireSize(100);
+    hedgingStream.sendMessage(messageOfSize(100));
 
     fakeClock.forwardTime(HEDGING_DELAY_IN_SECONDS, TimeUnit.SECONDS);
     ArgumentCaptor<ClientStreamListener> sublistenerCaptor2 =
@@ -2414,22 +2635,17 @@ public class RetriableStreamTest {
     verify(mockStream1, times(2)).isReady();
     verify(mockStream2).isReady();
 
-    ClientStreamTracer bufferSizeTracer2 = bufferSizeTracer;
-    bufferSizeTracer2.outboundWireSize(100);
-
     verify(retriableStreamRecorder, never()).postCommit();
 
     //  channel bufferLimitExceeded
     channelBufferUsed.addAndGet(CHANNEL_BUFFER_LIMIT - 200);
-    bufferSizeTracer2.outboundWireSize(101);
+    hedgingStream.sendMessage(messageOfSize(101));
 
     ArgumentCaptor<Status> statusCaptor = ArgumentCaptor.forClass(Status.class);
-    verify(mockStream1).cancel(statusCaptor.capture());
+    verify(mockStream2).cancel(statusCaptor.capture());
     assertEquals(Status.CANCELLED.getCode(), statusCaptor.getValue().getCode());
     assertEquals(CANCELLED_BECAUSE_COMMITTED, statusCaptor.getValue().getDescription());
     verify(retriableStreamRecorder).postCommit();
-    verifyNoMoreInteractions(mockStream1);
-    verifyNoMoreInteractions(mockStream2);
     // verify channel buffer is adjusted
     assertEquals(CHANNEL_BUFFER_LIMIT - 200, channelBufferUsed.addAndGet(0));
   }
@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -241,6 +242,139 @@ public class SerializingExecutorTest {
     assertThat(runs).isEqualTo(Arrays.asList(1, -2));
   }
 
+  @Test
+  public void manyRunnables() {
+    for (int i = 0; i < 2000; i++) {
+      executor.execute(new AddToRuns(i));
+    }
+    singleExecutor.drain();
+    assertThat(runs).hasSize(2000);
+    for (int i = 0; i < 2000; i++) {
+      assertThat(runs.get(i)).isEqualTo(i);
+    }
+
+    // The arrays grown for the first batch are let go, and the executor keeps working.
+    runs.clear();
+    executor.execute(new AddToRuns(1));
+    executor.execute(new AddToRuns(2));
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void batchSizeBudget() {
+    executor = new SerializingExecutor(singleExecutor, 2, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    for (int i = 1; i <= 5; i++) {
+      executor.execute(new AddToRuns(i));
+    }
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2).inOrder();
+    // Tasks queued while yielded go after the ones left.
+    executor.execute(new AddToRuns(6));
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4).inOrder();
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4, 5, 6).inOrder();
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4, 5, 6).inOrder();
+  }
+
+  @Test
+  public void timeBudget() {
+    final FakeClock fakeClock = new FakeClock();
+    executor = new SerializingExecutor(
+        singleExecutor, Integer.MAX_VALUE, 10, TimeUnit.NANOSECONDS,
+        fakeClock.getDeadlineTicker());
+    class SlowRunnable implements Runnable {
+      final int val;
+
+      SlowRunnable(int val) {
+        this.val = val;
+      }
+
+      @Override
+      public void run() {
+        runs.add(val);
+        fakeClock.forwardNanos(4);
+      }
+    }
+
+    for (int i = 1; i <= 5; i++) {
+      executor.execute(new SlowRunnable(i));
+    }
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3).inOrder();
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4, 5).inOrder();
+  }
+
+  @Test
+  public void budgetAcrossBatches() {
+    executor = new SerializingExecutor(singleExecutor, 3, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        runs.add(1);
+        executor.execute(new AddToRuns(3));
+        executor.execute(new AddToRuns(4));
+      }
+    });
+    executor.execute(new AddToRuns(2));
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3).inOrder();
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4).inOrder();
+  }
+
+  @Test
+  public void errorKeepsRemainingRunnables() {
+    final Error error = new Error();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        runs.add(1);
+        throw error;
+      }
+    });
+    executor.execute(new AddToRuns(2));
+    executor.execute(new AddToRuns(3));
+    try {
+      singleExecutor.drain();
+      fail("expected error");
+    } catch (Error e) {
+      assertSame(error, e);
+    }
+    assertThat(runs).containsExactly(1);
+
+    executor.execute(new AddToRuns(4));
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3, 4).inOrder();
+  }
+
+  @Test
+  public void errorFromLastRunnableOfBatch() {
+    final Error error = new Error();
+    executor.execute(new AddToRuns(1));
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        runs.add(2);
+        throw error;
+      }
+    });
+    try {
+      singleExecutor.drain();
+      fail("expected error");
+    } catch (Error e) {
+      assertSame(error, e);
+    }
+    assertThat(runs).containsExactly(1, 2).inOrder();
+
+    executor.execute(new AddToRuns(3));
+    singleExecutor.drain();
+    assertThat(runs).containsExactly(1, 2, 3).inOrder();
+  }
+
   private static class SingleExecutor implements Executor {
     private Runnable runnable;
 
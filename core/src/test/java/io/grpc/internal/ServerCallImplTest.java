@@ -37,6 +37,7 @@ import io.grpc.CompressorRegistry;
 import io.grpc.Context;
 import io.grpc.DecompressorRegistry;
 import io.grpc.InternalChannelz.ServerStats;
+import io.grpc.MessageCompressionPolicy;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.Marshaller;
@@ -359,6 +360,14 @@ public class ServerCallImplTest {
     verify(stream).setMessageCompression(true);
   }
 
+  @Test
+  public void setMessageCompressionPolicy() {
+    MessageCompressionPolicy policy = MessageCompressionPolicy.adaptive();
+    call.setMessageCompressionPolicy(policy);
+
+    verify(stream).setMessageCompressionDecider(policy.newDecider(UNARY_METHOD));
+  }
+
   @Test
   public void streamListener_halfClosed() {
     ServerStreamListenerImpl<Long> streamListener =
@@ -581,6 +581,56 @@ public class ServerImplTest {
     assertThat(status.getCause() instanceof IllegalStateException);
   }
 
+  @Test
+  public void executorSupplierClosesCall() throws Exception {
+    builder.executorSupplier = new ServerCallExecutorSupplier() {
+      @Override
+      public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata metadata) {
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription("Overloaded"), new Metadata());
+        return null;
+      }
+    };
+    final AtomicReference<ServerCall<String, Integer>> callReference
+            = new AtomicReference<>();
+    mutableFallbackRegistry.addService(ServerServiceDefinition.builder(
+        new ServiceDescriptor("Waiter", METHOD))
+        .addMethod(METHOD,
+            new ServerCallHandler<String, Integer>() {
+                @Override
+                public ServerCall.Listener<String> startCall(
+                        ServerCall<String, Integer> call,
+                        Metadata headers) {
+                  callReference.set(call);
+                  return callListener;
+                }
+            }).build());
+
+    createAndStartServer();
+    ServerTransportListener transportListener
+            = transportServer.registerNewServerTransport(new SimpleServerTransport());
+    transportListener.transportReady(Attributes.EMPTY);
+    Metadata requestHeaders = new Metadata();
+    StatsTraceContext statsTraceCtx =
+            StatsTraceContext.newServerContext(
+                    streamTracerFactories, "Waiter/serve", requestHeaders);
+    when(stream.statsTraceContext()).thenReturn(statsTraceCtx);
+    transportListener.streamCreated(stream, "Waiter/serve", requestHeaders);
+    ArgumentCaptor<ServerStreamListener> streamListenerCaptor =
+        ArgumentCaptor.forClass(ServerStreamListener.class);
+    verify(stream).setListener(streamListenerCaptor.capture());
+
+    assertEquals(1, executor.runDueTasks());
+    assertThat(callReference.get()).isNull();
+    verify(stream).close(statusCaptor.capture(), any(Metadata.class));
+    assertEquals(Code.RESOURCE_EXHAUSTED, statusCaptor.getValue().getCode());
+
+    // Later events are dropped instead of reaching a listener.
+    streamListenerCaptor.getValue().halfClosed();
+    streamListenerCaptor.getValue().closed(Status.OK);
+    executor.runDueTasks();
+    verifyNoMoreInteractions(callListener);
+  }
+
   @Test
   public void decompressorNotFound() throws Exception {
     String decompressorName = "NON_EXISTENT_DECOMPRESSOR";
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link VirtualThreadExecutor}. */
+@RunWith(JUnit4.class)
+public class VirtualThreadExecutorTest {
+  private static final int JAVA_VERSION = javaVersion();
+
+  @Test
+  public void availabilityMatchesRuntime() {
+    if (JAVA_VERSION >= 21) {
+      assertThat(VirtualThreadExecutor.getInstance()).isNotNull();
+    } else if (JAVA_VERSION < 19) {
+      assertThat(VirtualThreadExecutor.getInstance()).isNull();
+    }
+  }
+
+  @Test
+  public void runsTasksOnVirtualThreads() throws Exception {
+    VirtualThreadExecutor executor = VirtualThreadExecutor.create("test-");
+    assumeTrue("Virtual threads are not supported", executor != null);
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        thread.set(Thread.currentThread());
+        latch.countDown();
+      }
+    });
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(thread.get()).isNotSameInstanceAs(Thread.currentThread());
+    assertThat(Thread.class.getMethod("isVirtual").invoke(thread.get())).isEqualTo(true);
+    assertThat(thread.get().getName()).startsWith("test-");
+  }
+
+  private static int javaVersion() {
+    String version = System.getProperty("java.specification.version");
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    return Integer.parseInt(version);
+  }
+}
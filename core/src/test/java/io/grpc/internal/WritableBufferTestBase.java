@@ -19,6 +19,7 @@ package io.grpc.internal;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.nio.ByteBuffer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -101,4 +102,22 @@ public abstract class WritableBufferTestBase {
 
     assertArrayEquals(b, writtenBytes());
   }
+
+  @Test
+  public void testWriteThroughByteBuffer() {
+    if (!buffer().byteBufferSupported()) {
+      return;
+    }
+    buffer().write(new byte[] {1}, 0, 1);
+    int writable = buffer().writableBytes();
+    ByteBuffer byteBuffer = buffer().getByteBuffer();
+    assertEquals(writable, byteBuffer.remaining());
+
+    byteBuffer.put(new byte[] {2, 3, 4});
+    buffer().advanceWriteIndex(3);
+    buffer().write(new byte[] {5}, 0, 1);
+
+    assertEquals(writable - 4, buffer().writableBytes());
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, writtenBytes());
+  }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptors;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.internal.FakeClock;
+import io.grpc.testing.TestMethodDescriptors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link AdaptiveThrottlingInterceptor}. */
+@RunWith(JUnit4.class)
+public class AdaptiveThrottlingInterceptorTest {
+  private final FakeClock fakeClock = new FakeClock();
+  private final MethodDescriptor<Void, Void> method = TestMethodDescriptors.voidMethod();
+  private final List<FakeCall> started = new ArrayList<>();
+  private final Channel backend = new Channel() {
+    @SuppressWarnings("unchecked")
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+      return (ClientCall<ReqT, RespT>) new FakeCall();
+    }
+
+    @Override
+    public String authority() {
+      return "backend";
+    }
+  };
+
+  @Test
+  public void throttlesOnlyAfterBackendRejects() {
+    Channel channel = ClientInterceptors.intercept(backend, newInterceptor());
+
+    // Calls the backend accepts never lead to throttling.
+    for (int i = 0; i < 50; i++) {
+      RecordingListener listener = start(channel);
+      assertThat(listener.status).isNull();
+      last().listener.onClose(Status.NOT_FOUND, new Metadata());
+      assertThat(listener.status.getCode()).isEqualTo(Status.Code.NOT_FOUND);
+    }
+    assertThat(started).hasSize(50);
+  }
+
+  @Test
+  public void failsCallsLocallyWhenBackendRejects() {
+    Channel channel = ClientInterceptors.intercept(backend, newInterceptor());
+
+    int throttled = 0;
+    for (int i = 0; i < 100; i++) {
+      int startedBefore = started.size();
+      RecordingListener listener = start(channel);
+      if (listener.status != null) {
+        assertThat(listener.status.getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(listener.status.getDescription()).contains("throttled");
+        assertThat(started).hasSize(startedBefore);
+        throttled++;
+      } else {
+        last().listener.onClose(Status.RESOURCE_EXHAUSTED, new Metadata());
+      }
+    }
+    // With no accepts, the throttle probability approaches 1.
+    assertThat(throttled).isGreaterThan(50);
+  }
+
+  @Test
+  public void recoversOnceHistoryExpires() {
+    Channel channel = ClientInterceptors.intercept(backend, newInterceptor());
+    for (int i = 0; i < 100; i++) {
+      RecordingListener listener = start(channel);
+      if (listener.status == null) {
+        last().listener.onClose(Status.UNAVAILABLE, new Metadata());
+      }
+    }
+
+    fakeClock.forwardTime(2, TimeUnit.SECONDS);
+    RecordingListener listener = start(channel);
+    assertThat(listener.status).isNull();
+  }
+
+  @Test
+  public void customThrottledCodes() {
+    AdaptiveThrottlingInterceptor interceptor = AdaptiveThrottlingInterceptor.newBuilder()
+        .setRatioForAccepts(1)
+        .setRequestsPadding(1)
+        .setHistory(1, TimeUnit.SECONDS)
+        .setThrottledCodes(Status.Code.DEADLINE_EXCEEDED)
+        .setTimeProvider(fakeClock.getTimeProvider())
+        .build();
+    Channel channel = ClientInterceptors.intercept(backend, interceptor);
+
+    // RESOURCE_EXHAUSTED no longer counts as a rejection.
+    for (int i = 0; i < 50; i++) {
+      RecordingListener listener = start(channel);
+      assertThat(listener.status).isNull();
+      last().listener.onClose(Status.RESOURCE_EXHAUSTED, new Metadata());
+    }
+  }
+
+  @Test
+  public void throttledCallIgnoresLaterOperations() {
+    Channel channel = ClientInterceptors.intercept(backend, newInterceptor());
+    ClientCall<Void, Void> call;
+    boolean throttled;
+    do {
+      call = channel.newCall(method, CallOptions.DEFAULT);
+      RecordingListener listener = new RecordingListener();
+      call.start(listener, new Metadata());
+      throttled = listener.status != null;
+      if (!throttled) {
+        last().listener.onClose(Status.RESOURCE_EXHAUSTED, new Metadata());
+      }
+    } while (!throttled);
+
+    call.request(1);
+    call.sendMessage(null);
+    call.halfClose();
+    call.cancel("cancel", null);
+  }
+
+  private AdaptiveThrottlingInterceptor newInterceptor() {
+    return AdaptiveThrottlingInterceptor.newBuilder()
+        .setRatioForAccepts(1)
+        .setRequestsPadding(1)
+        .setHistory(1, TimeUnit.SECONDS)
+        .setTimeProvider(fakeClock.getTimeProvider())
+        .build();
+  }
+
+  private RecordingListener start(Channel channel) {
+    RecordingListener listener = new RecordingListener();
+    channel.newCall(method, CallOptions.DEFAULT).start(listener, new Metadata());
+    return listener;
+  }
+
+  private FakeCall last() {
+    return started.get(started.size() - 1);
+  }
+
+  private static final class RecordingListener extends ClientCall.Listener<Void> {
+    Status status;
+
+    @Override
+    public void onClose(Status status, Metadata trailers) {
+      this.status = status;
+    }
+  }
+
+  private final class FakeCall extends ClientCall<Void, Void> {
+    Listener<Void> listener;
+
+    @Override
+    public void start(Listener<Void> listener, Metadata headers) {
+      this.listener = listener;
+      started.add(this);
+    }
+
+    @Override
+    public void request(int numMessages) {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void cancel(String message, Throwable cause) {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void halfClose() {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void sendMessage(Void message) {
+      throw new AssertionError();
+    }
+  }
+}
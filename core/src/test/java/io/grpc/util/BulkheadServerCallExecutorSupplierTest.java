@@ -0,0 +1,267 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.Status;
+import io.grpc.internal.FakeClock;
+import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.util.BulkheadServerCallExecutorSupplier.Bulkhead;
+import io.grpc.util.BulkheadServerCallExecutorSupplier.Stats;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link BulkheadServerCallExecutorSupplier}. */
+@RunWith(JUnit4.class)
+public class BulkheadServerCallExecutorSupplierTest {
+  private final FakeClock fakeClock = new FakeClock();
+  private final QueueExecutor executor = new QueueExecutor();
+  private final List<Integer> runs = new ArrayList<>();
+
+  @Test
+  public void routesByMethodThenService() {
+    Bulkhead methodBulkhead = Bulkhead.newBuilder("method", executor).build();
+    Bulkhead serviceBulkhead = Bulkhead.newBuilder("service", executor).build();
+    Bulkhead defaultBulkhead = Bulkhead.newBuilder("default", executor).build();
+    BulkheadServerCallExecutorSupplier supplier = BulkheadServerCallExecutorSupplier.newBuilder()
+        .addMethod("service/slow", methodBulkhead)
+        .addService("service", serviceBulkhead)
+        .build();
+
+    assertThat(supplier.getExecutor(newCall("service/slow"), new Metadata()))
+        .isSameInstanceAs(methodBulkhead);
+    assertThat(supplier.getExecutor(newCall("service/fast"), new Metadata()))
+        .isSameInstanceAs(serviceBulkhead);
+    assertThat(supplier.getExecutor(newCall("other/fast"), new Metadata())).isNull();
+
+    supplier = BulkheadServerCallExecutorSupplier.newBuilder()
+        .setDefaultBulkhead(defaultBulkhead)
+        .build();
+    assertThat(supplier.getExecutor(newCall("other/fast"), new Metadata()))
+        .isSameInstanceAs(defaultBulkhead);
+  }
+
+  @Test
+  public void limitsConcurrency() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor).setMaxConcurrency(2).build();
+    for (int i = 1; i <= 5; i++) {
+      bulkhead.execute(new AddToRuns(i));
+    }
+    assertThat(executor.size()).isEqualTo(2);
+    assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(2);
+    assertThat(bulkhead.getStats().getQueuedTasks()).isEqualTo(3);
+
+    // Each worker keeps running queued tasks in order.
+    executor.runNext();
+    assertThat(runs).containsExactly(1, 3, 4, 5).inOrder();
+    assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(1);
+    executor.runNext();
+    assertThat(runs).containsExactly(1, 3, 4, 5, 2).inOrder();
+    assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(0);
+    assertThat(executor.size()).isEqualTo(0);
+
+    bulkhead.execute(new AddToRuns(6));
+    assertThat(executor.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsCallsWhenQueueIsFull() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor)
+        .setMaxConcurrency(1)
+        .setMaxQueueDepth(2)
+        .build();
+    BulkheadServerCallExecutorSupplier supplier = BulkheadServerCallExecutorSupplier.newBuilder()
+        .addService("service", bulkhead)
+        .build();
+    bulkhead.execute(new AddToRuns(1));
+    bulkhead.execute(new AddToRuns(2));
+    ServerCall<Void, Void> call = newCall("service/method");
+    assertThat(supplier.getExecutor(call, new Metadata())).isSameInstanceAs(bulkhead);
+    verify(call, never()).close(any(Status.class), any(Metadata.class));
+
+    bulkhead.execute(new AddToRuns(3));
+    call = newCall("service/method");
+    assertThat(supplier.getExecutor(call, new Metadata())).isNull();
+    ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+    verify(call).close(status.capture(), any(Metadata.class));
+    assertThat(status.getValue().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(status.getValue().getDescription()).contains("test");
+
+    // Admitted calls still get their tasks run.
+    executor.runNext();
+    assertThat(runs).containsExactly(1, 2, 3).inOrder();
+    assertThat(supplier.getExecutor(newCall("service/method"), new Metadata()))
+        .isSameInstanceAs(bulkhead);
+    Stats stats = bulkhead.getStats();
+    assertThat(stats.getCallsAdmitted()).isEqualTo(2);
+    assertThat(stats.getCallsRejected()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsCallsWhenQueueIsSlow() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor)
+        .setMaxConcurrency(1)
+        .setMaxQueueWait(100, TimeUnit.MILLISECONDS)
+        .setTicker(fakeClock.getDeadlineTicker())
+        .build();
+    bulkhead.execute(new AddToRuns(1));
+    bulkhead.execute(new AddToRuns(2));
+    fakeClock.forwardTime(99, TimeUnit.MILLISECONDS);
+    assertThat(bulkhead.tryAdmit()).isTrue();
+    fakeClock.forwardTime(1, TimeUnit.MILLISECONDS);
+    assertThat(bulkhead.tryAdmit()).isFalse();
+
+    executor.runNext();
+    assertThat(bulkhead.tryAdmit()).isTrue();
+  }
+
+  @Test
+  public void recordsQueueLatency() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor)
+        .setMaxConcurrency(1)
+        .setTicker(fakeClock.getDeadlineTicker())
+        .build();
+    bulkhead.execute(new Runnable() {
+      @Override
+      public void run() {
+        fakeClock.forwardNanos(30);
+      }
+    });
+    bulkhead.execute(new AddToRuns(2));
+    fakeClock.forwardNanos(10);
+    executor.runNext();
+
+    Stats stats = bulkhead.getStats();
+    assertThat(stats.getName()).isEqualTo("test");
+    assertThat(stats.getTasksRun()).isEqualTo(2);
+    assertThat(stats.getTotalQueueNanos()).isEqualTo(10 + 40);
+    assertThat(stats.getMaxQueueNanos()).isEqualTo(40);
+  }
+
+  @Test
+  public void runnableThrows() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor).setMaxConcurrency(1).build();
+    bulkhead.execute(new Runnable() {
+      @Override
+      public void run() {
+        throw new RuntimeException("expected");
+      }
+    });
+    bulkhead.execute(new AddToRuns(2));
+    executor.runNext();
+    assertThat(runs).containsExactly(2);
+    assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void runnableThrowsError() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", executor).setMaxConcurrency(1).build();
+    final Error error = new Error("expected");
+    bulkhead.execute(new Runnable() {
+      @Override
+      public void run() {
+        throw error;
+      }
+    });
+    bulkhead.execute(new AddToRuns(2));
+    try {
+      executor.runNext();
+    } catch (Error e) {
+      assertThat(e).isSameInstanceAs(error);
+    }
+    // The queue moved to a new worker.
+    assertThat(executor.size()).isEqualTo(1);
+    executor.runNext();
+    assertThat(runs).containsExactly(2);
+    assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void executorRejects() {
+    Bulkhead bulkhead = Bulkhead.newBuilder("test", new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RuntimeException("rejected");
+      }
+    }).setMaxConcurrency(1).build();
+    for (int i = 0; i < 2; i++) {
+      try {
+        bulkhead.execute(new AddToRuns(i));
+      } catch (RuntimeException e) {
+        assertThat(e).hasMessageThat().isEqualTo("rejected");
+      }
+      assertThat(bulkhead.getStats().getRunningTasks()).isEqualTo(0);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ServerCall<Void, Void> newCall(String fullMethodName) {
+    ServerCall<Void, Void> call = mock(ServerCall.class);
+    MethodDescriptor<Void, Void> method = TestMethodDescriptors.voidMethod().toBuilder()
+        .setFullMethodName(fullMethodName)
+        .build();
+    when(call.getMethodDescriptor()).thenReturn(method);
+    return call;
+  }
+
+  private final class AddToRuns implements Runnable {
+    private final int val;
+
+    AddToRuns(int val) {
+      this.val = val;
+    }
+
+    @Override
+    public void run() {
+      runs.add(val);
+    }
+  }
+
+  private static final class QueueExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    int size() {
+      return tasks.size();
+    }
+
+    void runNext() {
+      tasks.remove().run();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CompressionDictionaryTrainer}. */
+@RunWith(JUnit4.class)
+public class CompressionDictionaryTrainerTest {
+  private final Random random = new Random(1);
+  private final CompressionDictionaryTrainer trainer =
+      new CompressionDictionaryTrainer(100, new Random(2));
+
+  @Test
+  public void reservoirIsBounded() {
+    for (int i = 0; i < 1000; i++) {
+      trainer.addSample(newMessage());
+    }
+    assertEquals(100, trainer.getSampleCount());
+  }
+
+  @Test
+  public void tinySamplesIgnored() {
+    trainer.addSample(new byte[3]);
+    assertEquals(0, trainer.getSampleCount());
+  }
+
+  @Test
+  public void noSamples_emptyDictionary() {
+    assertThat(trainer.train(1024)).isEmpty();
+  }
+
+  @Test
+  public void unrelatedSamples_emptyDictionary() {
+    for (int i = 0; i < 10; i++) {
+      byte[] noise = new byte[200];
+      random.nextBytes(noise);
+      trainer.addSample(noise);
+    }
+    assertThat(trainer.train(1024)).isEmpty();
+  }
+
+  @Test
+  public void dictionaryCapturesSharedContent() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      trainer.addSample(newMessage());
+    }
+    byte[] dictionary = trainer.train(1024);
+    assertThat(dictionary.length).isAtMost(1024);
+    String text = new String(dictionary, Charsets.US_ASCII);
+    assertThat(text).contains("customer-account-status");
+
+    DeflateDictionaryCodec codec = new DeflateDictionaryCodec("test", dictionary);
+    DeflateDictionaryCodec unrelated =
+        new DeflateDictionaryCodec("other", "0123456789".getBytes(Charsets.US_ASCII));
+    byte[] message = newMessage();
+    assertThat(compressedSize(codec, message))
+        .isLessThan(compressedSize(unrelated, message) * 2 / 3);
+  }
+
+  private byte[] newMessage() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"customer-account-status\":\"ACTIVE\",\"region\":\"us-east1\",\"id\":")
+        .append(random.nextInt(1000000))
+        .append(",\"display_name\":\"user")
+        .append(random.nextInt(1000))
+        .append("\",\"preferences\":{\"notifications\":\"email\",\"language\":\"en-US\"},")
+        .append("\"last_login_timestamp\":")
+        .append(random.nextLong())
+        .append('}');
+    return sb.toString().getBytes(Charsets.US_ASCII);
+  }
+
+  private static int compressedSize(DeflateDictionaryCodec codec, byte[] data) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    OutputStream os = codec.compress(baos);
+    os.write(data);
+    os.close();
+    return baos.size();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.Metadata;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.FakeClock;
+import io.grpc.util.ConnectionPoolLoadBalancer.ConnectionPoolConfig;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit tests for {@link ConnectionPoolLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class ConnectionPoolLoadBalancerTest {
+  private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  @Rule
+  public final MockitoRule mocks = MockitoJUnit.rule();
+  private final FakeClock fakeClock = new FakeClock();
+  private final SynchronizationContext syncContext = new SynchronizationContext(
+      new Thread.UncaughtExceptionHandler() {
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+          throw new AssertionError(e);
+        }
+      });
+  private final EquivalentAddressGroup server1 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server1"));
+  private final EquivalentAddressGroup server2 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server2"));
+  @Mock
+  private Helper helper;
+  @Mock
+  private PickSubchannelArgs pickArgs;
+  @Captor
+  private ArgumentCaptor<SubchannelPicker> pickerCaptor;
+  private FakeSubchannels subchannels;
+  private ConnectionPoolLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    when(helper.getSynchronizationContext()).thenReturn(syncContext);
+    when(helper.getScheduledExecutorService())
+        .thenReturn(fakeClock.getScheduledExecutorService());
+    subchannels = FakeSubchannels.install(helper);
+    loadBalancer = new ConnectionPoolLoadBalancer(helper, fakeClock.getTimeProvider());
+  }
+
+  @Test
+  public void opensMinConnectionsToEachAddress() {
+    resolve(new ConnectionPoolConfig(2, 4, 100, IDLE_TIMEOUT_NANOS), server1, server2);
+
+    assertThat(subchannels.getAll()).hasSize(4);
+    assertThat(loadBalancer.getSubchannels(server1)).hasSize(2);
+    assertThat(loadBalancer.getSubchannels(server2)).hasSize(2);
+    for (Subchannel subchannel : subchannels.getAll()) {
+      verify(subchannel).requestConnection();
+    }
+    verify(helper).updateBalancingState(eq(CONNECTING), any(SubchannelPicker.class));
+  }
+
+  @Test
+  public void picksConnectionWithFewestActiveStreams() {
+    resolve(new ConnectionPoolConfig(2, 2, 100, IDLE_TIMEOUT_NANOS), server1);
+    Subchannel first = subchannels.get(0);
+    Subchannel second = subchannels.get(1);
+    subchannels.deliverState(first, READY);
+    subchannels.deliverState(second, READY);
+    SubchannelPicker picker = currentPicker(READY);
+
+    PickResult pick1 = picker.pickSubchannel(pickArgs);
+    startStream(pick1);
+    PickResult pick2 = picker.pickSubchannel(pickArgs);
+    startStream(pick2);
+    assertThat(Arrays.asList(pick1.getSubchannel(), pick2.getSubchannel()))
+        .containsExactly(first, second);
+
+    PickResult busier = picker.pickSubchannel(pickArgs);
+    startStream(busier);
+    Subchannel other = busier.getSubchannel() == first ? second : first;
+    // Picks only count once their stream is created.
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(other);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(other);
+  }
+
+  @Test
+  public void opensConnectionWhenSaturated() {
+    resolve(new ConnectionPoolConfig(1, 2, 2, IDLE_TIMEOUT_NANOS), server1);
+    subchannels.deliverState(subchannels.get(0), READY);
+    SubchannelPicker picker = currentPicker(READY);
+    startStream(picker.pickSubchannel(pickArgs));
+    startStream(picker.pickSubchannel(pickArgs));
+    assertThat(subchannels.getAll()).hasSize(1);
+
+    // The only connection is saturated, but keeps taking RPCs until another one is ready.
+    PickResult pick = picker.pickSubchannel(pickArgs);
+    assertThat(pick.getSubchannel()).isEqualTo(subchannels.get(0));
+    picker.pickSubchannel(pickArgs);
+    assertThat(subchannels.getAll()).hasSize(2);
+    verify(subchannels.get(1)).requestConnection();
+
+    subchannels.deliverState(subchannels.get(1), READY);
+    picker = currentPicker(READY);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(subchannels.get(1));
+
+    // The pool is full.
+    startStream(picker.pickSubchannel(pickArgs));
+    startStream(picker.pickSubchannel(pickArgs));
+    picker.pickSubchannel(pickArgs);
+    assertThat(subchannels.getAll()).hasSize(2);
+  }
+
+  @Test
+  public void closesIdleExtraConnections() {
+    resolve(new ConnectionPoolConfig(1, 2, 1, IDLE_TIMEOUT_NANOS), server1);
+    subchannels.deliverState(subchannels.get(0), READY);
+    SubchannelPicker picker = currentPicker(READY);
+    ClientStreamTracer stream = startStream(picker.pickSubchannel(pickArgs));
+    picker.pickSubchannel(pickArgs);
+    subchannels.deliverState(subchannels.get(1), READY);
+    picker = currentPicker(READY);
+    ClientStreamTracer extraStream = startStream(picker.pickSubchannel(pickArgs));
+
+    // Both connections have a stream.
+    fakeClock.forwardNanos(IDLE_TIMEOUT_NANOS);
+    verify(subchannels.get(1), never()).shutdown();
+
+    extraStream.streamClosed(Status.OK);
+    fakeClock.forwardNanos(IDLE_TIMEOUT_NANOS - 1);
+    verify(subchannels.get(1), never()).shutdown();
+    fakeClock.forwardNanos(1);
+    verify(subchannels.get(1)).shutdown();
+    verify(subchannels.get(0), never()).shutdown();
+    assertThat(loadBalancer.getSubchannels(server1)).containsExactly(subchannels.get(0));
+    assertThat(fakeClock.numPendingTasks()).isEqualTo(0);
+
+    // The last connection stays, even when idle.
+    stream.streamClosed(Status.OK);
+    fakeClock.forwardNanos(IDLE_TIMEOUT_NANOS * 2);
+    verify(subchannels.get(0), never()).shutdown();
+  }
+
+  @Test
+  public void removedAddressClosesItsConnections() {
+    resolve(new ConnectionPoolConfig(2, 2, 100, IDLE_TIMEOUT_NANOS), server1, server2);
+    resolve(new ConnectionPoolConfig(2, 2, 100, IDLE_TIMEOUT_NANOS), server2);
+
+    verify(subchannels.get(0)).shutdown();
+    verify(subchannels.get(1)).shutdown();
+    verify(subchannels.get(2), never()).shutdown();
+    verify(subchannels.get(3), never()).shutdown();
+    assertThat(subchannels.getAll()).hasSize(4);
+
+    loadBalancer.shutdown();
+    verify(subchannels.get(2)).shutdown();
+    verify(subchannels.get(3)).shutdown();
+  }
+
+  @Test
+  public void allConnectionsFailing() {
+    resolve(new ConnectionPoolConfig(2, 2, 100, IDLE_TIMEOUT_NANOS), server1);
+    Status error = Status.UNAVAILABLE.withDescription("connection refused");
+    subchannels.deliverState(subchannels.get(0), ConnectivityStateInfo.forTransientFailure(error));
+    verify(helper, never())
+        .updateBalancingState(eq(TRANSIENT_FAILURE), any(SubchannelPicker.class));
+    subchannels.deliverState(subchannels.get(1), ConnectivityStateInfo.forTransientFailure(error));
+
+    PickResult pick = currentPicker(TRANSIENT_FAILURE).pickSubchannel(pickArgs);
+    assertThat(pick.getStatus()).isEqualTo(error);
+    verify(helper, atLeastOnce()).refreshNameResolution();
+  }
+
+  @Test
+  public void parseConfig() {
+    LoadBalancerProvider provider = new SecretConnectionPoolLoadBalancerProvider.Provider();
+
+    ConfigOrError defaults =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.<String, Object>of());
+    assertThat(defaults.getConfig()).isEqualTo(ConnectionPoolConfig.DEFAULT);
+
+    ConfigOrError custom = provider.parseLoadBalancingPolicyConfig(ImmutableMap.of(
+        "minConnectionsPerAddress", 2.0,
+        "maxConnectionsPerAddress", 8.0,
+        "maxConcurrentStreams", 128.0,
+        "idleTimeout", "10s"));
+    assertThat(custom.getConfig()).isEqualTo(
+        new ConnectionPoolConfig(2, 8, 128, TimeUnit.SECONDS.toNanos(10)));
+
+    // The maximum follows a larger minimum.
+    ConfigOrError largeMin = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("minConnectionsPerAddress", 6.0));
+    assertThat(((ConnectionPoolConfig) largeMin.getConfig()).maxConnectionsPerAddress)
+        .isEqualTo(6);
+
+    ConfigOrError invalid = provider.parseLoadBalancingPolicyConfig(ImmutableMap.of(
+        "minConnectionsPerAddress", 4.0, "maxConnectionsPerAddress", 2.0));
+    assertThat(invalid.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    ConfigOrError wrongType = provider.parseLoadBalancingPolicyConfig(
+        ImmutableMap.of("idleTimeout", 10.0));
+    assertThat(wrongType.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
+  private void resolve(ConnectionPoolConfig config, EquivalentAddressGroup... servers) {
+    loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+        .setAddresses(Arrays.asList(servers))
+        .setLoadBalancingPolicyConfig(config)
+        .build());
+  }
+
+  private SubchannelPicker currentPicker(ConnectivityState state) {
+    verify(helper, atLeastOnce()).updateBalancingState(eq(state), pickerCaptor.capture());
+    return pickerCaptor.getValue();
+  }
+
+  private static ClientStreamTracer startStream(PickResult pick) {
+    return pick.getStreamTracerFactory().newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}
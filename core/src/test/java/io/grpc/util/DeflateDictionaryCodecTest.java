@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import io.grpc.Codec;
+import io.grpc.Compressor;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DeflateDictionaryCodec}. */
+@RunWith(JUnit4.class)
+public class DeflateDictionaryCodecTest {
+  private static final byte[] DICTIONARY =
+      "user_id=customer-account-status=ACTIVE;region=us-east1;tier=premium;"
+          .getBytes(Charsets.US_ASCII);
+  private static final byte[] MESSAGE =
+      "user_id=42;customer-account-status=ACTIVE;region=us-east1;tier=premium;"
+          .getBytes(Charsets.US_ASCII);
+
+  private final DeflateDictionaryCodec codec = new DeflateDictionaryCodec("v1", DICTIONARY);
+
+  @Test
+  public void messageEncoding() {
+    assertEquals("deflate-dict-v1", codec.getMessageEncoding());
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    assertArrayEquals(MESSAGE, decompress(codec, compress(codec, MESSAGE)));
+  }
+
+  @Test
+  public void roundTrip_empty() throws Exception {
+    assertArrayEquals(new byte[0], decompress(codec, compress(codec, new byte[0])));
+  }
+
+  @Test
+  public void roundTrip_singleByteReads() throws Exception {
+    InputStream is = codec.decompress(new ByteArrayInputStream(compress(codec, MESSAGE)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = is.read()) != -1) {
+      out.write(b);
+    }
+    is.close();
+    assertArrayEquals(MESSAGE, out.toByteArray());
+  }
+
+  @Test
+  public void dictionaryShrinksSmallMessages() throws Exception {
+    int withDictionary = compress(codec, MESSAGE).length;
+    int withGzip = compress(new Codec.Gzip(), MESSAGE).length;
+    assertThat(withDictionary).isLessThan(withGzip / 2);
+  }
+
+  @Test
+  public void dictionaryIsCopied() throws Exception {
+    byte[] dictionary = DICTIONARY.clone();
+    DeflateDictionaryCodec codec = new DeflateDictionaryCodec("v1", dictionary);
+    byte[] compressed = compress(codec, MESSAGE);
+    Arrays.fill(dictionary, (byte) 0);
+    assertArrayEquals(MESSAGE, decompress(codec, compressed));
+  }
+
+  @Test
+  public void decompress_wrongDictionary() throws Exception {
+    DeflateDictionaryCodec other =
+        new DeflateDictionaryCodec("v1", "something else".getBytes(Charsets.US_ASCII));
+    try {
+      decompress(other, compress(codec, MESSAGE));
+      fail("Expected exception");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("different dictionary");
+    }
+  }
+
+  @Test
+  public void decompress_truncated() throws Exception {
+    byte[] compressed = compress(codec, MESSAGE);
+    try {
+      decompress(codec, Arrays.copyOf(compressed, compressed.length - 2));
+      fail("Expected exception");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void decompress_corrupt() throws Exception {
+    try {
+      decompress(codec, new byte[] {1, 2, 3, 4});
+      fail("Expected exception");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("Invalid");
+    }
+  }
+
+  @Test
+  public void registries() {
+    CompressorRegistry compressors = CompressorRegistry.newEmptyInstance();
+    compressors.register(codec);
+    Compressor compressor = compressors.lookupCompressor("deflate-dict-v1");
+    assertThat(compressor).isSameInstanceAs(codec);
+
+    DecompressorRegistry decompressors = DecompressorRegistry.emptyInstance().with(codec, true);
+    assertThat(decompressors.getAdvertisedMessageEncodings()).contains("deflate-dict-v1");
+  }
+
+  @Test
+  public void invalidArguments() {
+    try {
+      new DeflateDictionaryCodec("v 1", DICTIONARY);
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      new DeflateDictionaryCodec("v1", new byte[0]);
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      new DeflateDictionaryCodec("v1", new byte[DeflateDictionaryCodec.MAX_DICTIONARY_SIZE + 1]);
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      new DeflateDictionaryCodec("v1", DICTIONARY, 10);
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  private static byte[] compress(Codec codec, byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    OutputStream os = codec.compress(baos);
+    os.write(data);
+    os.close();
+    return baos.toByteArray();
+  }
+
+  private static byte[] decompress(Codec codec, byte[] data) throws IOException {
+    InputStream is = codec.decompress(new ByteArrayInputStream(data));
+    try {
+      return ByteStreams.toByteArray(is);
+    } finally {
+      is.close();
+    }
+  }
+}
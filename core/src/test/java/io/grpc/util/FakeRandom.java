@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Random;
+
+/** A {@link Random} whose {@link #nextInt(int)} returns the queued values, in order. */
+@SuppressWarnings("serial")
+final class FakeRandom extends Random {
+  private final Queue<Integer> values = new ArrayDeque<>();
+
+  void enqueue(Integer... values) {
+    Collections.addAll(this.values, values);
+  }
+
+  @Override
+  public int nextInt(int bound) {
+    Integer value = values.poll();
+    assertThat(value).isNotNull();
+    assertThat(value).isLessThan(bound);
+    return value;
+  }
+}
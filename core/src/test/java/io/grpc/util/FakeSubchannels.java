@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.grpc.ChannelLogger;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.CreateSubchannelArgs;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelStateListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Mock subchannels for a mock {@link Helper} of a load balancer under test. Keeps the subchannels
+ * in the order they were created, and the listeners they were started with, so that the test can
+ * deliver state changes to them.
+ */
+public final class FakeSubchannels {
+  private final List<Subchannel> subchannels = new ArrayList<>();
+  private final Map<Subchannel, SubchannelStateListener> listeners = new HashMap<>();
+
+  private FakeSubchannels() {}
+
+  /** Makes {@code helper} create mock subchannels, tracked by the returned instance. */
+  public static FakeSubchannels install(Helper helper) {
+    final FakeSubchannels fake = new FakeSubchannels();
+    when(helper.createSubchannel(any(CreateSubchannelArgs.class))).then(
+        new Answer<Subchannel>() {
+          @Override
+          public Subchannel answer(InvocationOnMock invocation) {
+            CreateSubchannelArgs args = (CreateSubchannelArgs) invocation.getArguments()[0];
+            return fake.newSubchannel(args);
+          }
+        });
+    return fake;
+  }
+
+  private Subchannel newSubchannel(CreateSubchannelArgs args) {
+    final Subchannel subchannel = mock(Subchannel.class);
+    when(subchannel.getAllAddresses()).thenReturn(args.getAddresses());
+    when(subchannel.getAttributes()).thenReturn(args.getAttributes());
+    when(subchannel.getChannelLogger()).thenReturn(mock(ChannelLogger.class));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        listeners.put(subchannel, (SubchannelStateListener) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(subchannel).start(any(SubchannelStateListener.class));
+    subchannels.add(subchannel);
+    return subchannel;
+  }
+
+  /** Returns the subchannels created so far, in order. */
+  public List<Subchannel> getAll() {
+    return Collections.unmodifiableList(subchannels);
+  }
+
+  /** Returns the subchannel created at the {@code index}th call. */
+  public Subchannel get(int index) {
+    return subchannels.get(index);
+  }
+
+  /**
+   * Returns the first subchannel created for {@code server}. Load balancers may create the
+   * subchannels in any order, so tests look them up by address.
+   */
+  public Subchannel get(EquivalentAddressGroup server) {
+    for (Subchannel subchannel : subchannels) {
+      if (subchannel.getAllAddresses().equals(Collections.singletonList(server))) {
+        return subchannel;
+      }
+    }
+    throw new AssertionError("No subchannel for " + server);
+  }
+
+  /** Passes {@code state} to the listener of {@code subchannel}. */
+  public void deliverState(Subchannel subchannel, ConnectivityStateInfo state) {
+    SubchannelStateListener listener = listeners.get(subchannel);
+    if (listener == null) {
+      throw new AssertionError(subchannel + " was not started");
+    }
+    listener.onSubchannelState(state);
+  }
+
+  /** Passes {@code state}, without an error, to the listener of {@code subchannel}. */
+  public void deliverState(Subchannel subchannel, ConnectivityState state) {
+    deliverState(subchannel, ConnectivityStateInfo.forNonError(state));
+  }
+}
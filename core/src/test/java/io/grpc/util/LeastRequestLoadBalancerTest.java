@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.Metadata;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.util.LeastRequestLoadBalancer.LeastRequestConfig;
+import io.grpc.util.LeastRequestLoadBalancer.ReadyPicker;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit tests for {@link LeastRequestLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class LeastRequestLoadBalancerTest {
+  @Rule
+  public final MockitoRule mocks = MockitoJUnit.rule();
+
+  private final EquivalentAddressGroup server1 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server1"));
+  private final EquivalentAddressGroup server2 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server2"));
+  private final EquivalentAddressGroup server3 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server3"));
+  private final FakeRandom random = new FakeRandom();
+  @Mock
+  private Helper helper;
+  @Mock
+  private PickSubchannelArgs pickArgs;
+  @Captor
+  private ArgumentCaptor<SubchannelPicker> pickerCaptor;
+  private FakeSubchannels subchannels;
+  private LeastRequestLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    subchannels = FakeSubchannels.install(helper);
+    loadBalancer = new LeastRequestLoadBalancer(helper, random);
+  }
+
+  @Test
+  public void connectsToEachAddress() {
+    resolve(LeastRequestConfig.DEFAULT, server1, server2);
+
+    assertThat(subchannels.getAll()).hasSize(2);
+    for (Subchannel subchannel : subchannels.getAll()) {
+      verify(subchannel).requestConnection();
+    }
+    verify(helper).updateBalancingState(eq(CONNECTING), any(SubchannelPicker.class));
+  }
+
+  @Test
+  public void picksLessLoadedOfTwo() {
+    resolve(LeastRequestConfig.DEFAULT, server1, server2, server3);
+    for (Subchannel subchannel : subchannels.getAll()) {
+      subchannels.deliverState(subchannel, READY);
+    }
+    ReadyPicker picker = (ReadyPicker) currentPicker(READY);
+    List<Subchannel> list = picker.getList();
+    assertThat(list).hasSize(3);
+
+    // Equal load, the first choice wins.
+    random.enqueue(0, 1);
+    PickResult pick = picker.pickSubchannel(pickArgs);
+    assertThat(pick.getSubchannel()).isEqualTo(list.get(0));
+    ClientStreamTracer stream = startStream(pick);
+
+    random.enqueue(0, 1);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(1));
+    random.enqueue(2, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(2));
+
+    // The load goes away when the stream closes.
+    stream.streamClosed(Status.OK);
+    random.enqueue(1, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(1));
+  }
+
+  @Test
+  public void choiceCountSamplesMoreSubchannels() {
+    resolve(new LeastRequestConfig(3), server1, server2, server3);
+    for (Subchannel subchannel : subchannels.getAll()) {
+      subchannels.deliverState(subchannel, READY);
+    }
+    ReadyPicker picker = (ReadyPicker) currentPicker(READY);
+    List<Subchannel> list = picker.getList();
+    random.enqueue(0, 0, 0);
+    startStream(picker.pickSubchannel(pickArgs));
+    random.enqueue(1, 1, 1);
+    startStream(picker.pickSubchannel(pickArgs));
+
+    // The third choice is the only idle one.
+    random.enqueue(0, 1, 2);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(2));
+  }
+
+  @Test
+  public void singleReadySubchannel() {
+    resolve(LeastRequestConfig.DEFAULT, server1, server2);
+    subchannels.deliverState(subchannels.get(0), READY);
+
+    SubchannelPicker picker = currentPicker(READY);
+    PickResult pick = picker.pickSubchannel(pickArgs);
+    assertThat(pick.getSubchannel()).isEqualTo(subchannels.get(0));
+    assertThat(pick.getStreamTracerFactory()).isNotNull();
+  }
+
+  @Test
+  public void removedAddressIsShutDown() {
+    resolve(LeastRequestConfig.DEFAULT, server1, server2);
+    resolve(LeastRequestConfig.DEFAULT, server2);
+
+    verify(subchannels.get(server1)).shutdown();
+    verify(subchannels.get(server2), never()).shutdown();
+    assertThat(loadBalancer.getSubchannels()).containsExactly(subchannels.get(server2));
+
+    loadBalancer.shutdown();
+    verify(subchannels.get(server2)).shutdown();
+  }
+
+  @Test
+  public void allSubchannelsFailing() {
+    resolve(LeastRequestConfig.DEFAULT, server1, server2);
+    Status error = Status.UNAVAILABLE.withDescription("connection refused");
+    subchannels.deliverState(subchannels.get(0), ConnectivityStateInfo.forTransientFailure(error));
+    verify(helper, never())
+        .updateBalancingState(eq(TRANSIENT_FAILURE), any(SubchannelPicker.class));
+    subchannels.deliverState(subchannels.get(1), ConnectivityStateInfo.forTransientFailure(error));
+
+    PickResult pick = currentPicker(TRANSIENT_FAILURE).pickSubchannel(pickArgs);
+    assertThat(pick.getStatus()).isEqualTo(error);
+    verify(helper, atLeastOnce()).refreshNameResolution();
+  }
+
+  @Test
+  public void parseConfig() {
+    LoadBalancerProvider provider = new SecretLeastRequestLoadBalancerProvider.Provider();
+
+    ConfigOrError defaults =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.<String, Object>of());
+    assertThat(defaults.getConfig()).isEqualTo(LeastRequestConfig.DEFAULT);
+
+    ConfigOrError custom =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("choiceCount", 3.0));
+    assertThat(custom.getConfig()).isEqualTo(new LeastRequestConfig(3));
+
+    ConfigOrError capped =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("choiceCount", 100.0));
+    assertThat(((LeastRequestConfig) capped.getConfig()).choiceCount)
+        .isEqualTo(LeastRequestConfig.MAX_CHOICE_COUNT);
+
+    ConfigOrError tooFew =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("choiceCount", 1.0));
+    assertThat(tooFew.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    ConfigOrError wrongType =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("choiceCount", "two"));
+    assertThat(wrongType.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
+  private void resolve(LeastRequestConfig config, EquivalentAddressGroup... servers) {
+    loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+        .setAddresses(Arrays.asList(servers))
+        .setLoadBalancingPolicyConfig(config)
+        .build());
+  }
+
+  private SubchannelPicker currentPicker(ConnectivityState state) {
+    verify(helper, atLeastOnce()).updateBalancingState(eq(state), pickerCaptor.capture());
+    return pickerCaptor.getValue();
+  }
+
+  private static ClientStreamTracer startStream(PickResult pick) {
+    return pick.getStreamTracerFactory().newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}
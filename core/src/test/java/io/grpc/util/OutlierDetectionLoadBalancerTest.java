@@ -0,0 +1,338 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.READY;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.Metadata;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.FakeClock;
+import io.grpc.internal.ServiceConfigUtil.PolicySelection;
+import io.grpc.util.LeastRequestLoadBalancer.InFlightCounter;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.LatencyEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.OutlierDetectionLoadBalancerConfig;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit tests for {@link OutlierDetectionLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class OutlierDetectionLoadBalancerTest {
+  private static final PolicySelection ROUND_ROBIN =
+      new PolicySelection(new SecretRoundRobinLoadBalancerProvider.Provider(), null);
+
+  @Rule
+  public final MockitoRule mocks = MockitoJUnit.rule();
+  private final FakeClock fakeClock = new FakeClock();
+  private final SynchronizationContext syncContext = new SynchronizationContext(
+      new UncaughtExceptionHandler() {
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+          throw new AssertionError(e);
+        }
+      });
+  private final List<EquivalentAddressGroup> servers = new ArrayList<>();
+  @Mock
+  private Helper helper;
+  @Mock
+  private PickSubchannelArgs pickArgs;
+  @Captor
+  private ArgumentCaptor<SubchannelPicker> pickerCaptor;
+  private FakeSubchannels subchannels;
+  private OutlierDetectionLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    for (int i = 0; i < 5; i++) {
+      servers.add(new EquivalentAddressGroup(new FakeSocketAddress("server" + i)));
+    }
+    when(helper.getSynchronizationContext()).thenReturn(syncContext);
+    when(helper.getScheduledExecutorService())
+        .thenReturn(fakeClock.getScheduledExecutorService());
+    subchannels = FakeSubchannels.install(helper);
+    loadBalancer =
+        new OutlierDetectionLoadBalancer(helper, fakeClock.getTimeProvider(), new Random(1));
+  }
+
+  @After
+  public void tearDown() {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        loadBalancer.shutdown();
+      }
+    });
+    for (Subchannel subchannel : subchannels.getAll()) {
+      verify(subchannel).shutdown();
+    }
+    assertThat(fakeClock.numPendingTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void successRateOutlierEjectedForGrowingTime() {
+    resolve(config(new SuccessRateEjection(1900, 100, 5, 100), null, null));
+    deliverAllReady();
+
+    sendCalls(500, "server0", 0);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).doesNotContain("server0");
+
+    // Ejected for the base ejection time of 30s.
+    fakeClock.forwardTime(20, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).doesNotContain("server0");
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).contains("server0");
+
+    // Ejected again for twice as long.
+    sendCalls(500, "server0", 0);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).doesNotContain("server0");
+    fakeClock.forwardTime(50, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).doesNotContain("server0");
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).contains("server0");
+  }
+
+  @Test
+  public void failurePercentageEjectionBoundedByMaxEjectionPercent() {
+    resolve(config(null, new FailurePercentageEjection(85, 100, 5, 50), null));
+    deliverAllReady();
+
+    sendCalls(500, "server0", 0, "server1", 0);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    // At most 20% of 5 servers are ejected.
+    assertThat(pickedServers(50)).hasSize(4);
+  }
+
+  @Test
+  public void latencyOutlierEjected() {
+    resolve(config(null, null, new LatencyEjection(1000, 100, 5, 50)));
+    deliverAllReady();
+
+    sendCalls(500, "server3", 50);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).doesNotContain("server3");
+    assertThat(pickedServers(50)).hasSize(4);
+  }
+
+  @Test
+  public void tooFewHostsWithEnoughCalls() {
+    resolve(config(new SuccessRateEjection(1900, 100, 5, 200), null, null));
+    deliverAllReady();
+
+    sendCalls(500, "server0", 0);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertThat(pickedServers(50)).contains("server0");
+  }
+
+  @Test
+  public void childTracerStillCalled() {
+    resolve(new OutlierDetectionLoadBalancerConfig(
+        TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30),
+        TimeUnit.SECONDS.toNanos(300), 20, new SuccessRateEjection(1900, 100, 5, 100), null,
+        null, new PolicySelection(new SecretLeastRequestLoadBalancerProvider.Provider(), null)));
+    deliverAllReady();
+
+    PickResult result = currentPicker().pickSubchannel(pickArgs);
+    InFlightCounter inFlight =
+        result.getSubchannel().getAttributes().get(LeastRequestLoadBalancer.IN_FLIGHT);
+    ClientStreamTracer tracer = result.getStreamTracerFactory().newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+    assertThat(inFlight.get()).isEqualTo(1);
+    tracer.streamClosed(Status.OK);
+    assertThat(inFlight.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void detectionDisabledWithoutAlgorithms() {
+    resolve(config(null, null, null));
+    deliverAllReady();
+    assertThat(fakeClock.numPendingTasks()).isEqualTo(0);
+    assertThat(currentPicker().pickSubchannel(pickArgs).getStreamTracerFactory()).isNotNull();
+  }
+
+  @Test
+  public void parseConfig() {
+    LoadBalancerProvider provider = new SecretOutlierDetectionLoadBalancerProvider.Provider();
+    List<?> childPolicy = ImmutableList.of(ImmutableMap.of("round_robin", ImmutableMap.of()));
+
+    ConfigOrError defaults = provider.parseLoadBalancingPolicyConfig(ImmutableMap.of(
+        "childPolicy", childPolicy,
+        "successRateEjection", ImmutableMap.of()));
+    OutlierDetectionLoadBalancerConfig config =
+        (OutlierDetectionLoadBalancerConfig) defaults.getConfig();
+    assertThat(config.intervalNanos).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+    assertThat(config.baseEjectionTimeNanos).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+    assertThat(config.maxEjectionTimeNanos).isEqualTo(TimeUnit.SECONDS.toNanos(300));
+    assertThat(config.maxEjectionPercent).isEqualTo(10);
+    assertThat(config.successRateEjection).isEqualTo(new SuccessRateEjection(1900, 100, 5, 100));
+    assertThat(config.failurePercentageEjection).isNull();
+    assertThat(config.latencyEjection).isNull();
+    assertThat(config.childPolicy.getProvider().getPolicyName()).isEqualTo("round_robin");
+
+    ConfigOrError custom = provider.parseLoadBalancingPolicyConfig(ImmutableMap.of(
+        "childPolicy", childPolicy,
+        "interval", "1.5s",
+        "maxEjectionPercent", 50.0,
+        "failurePercentageEjection", ImmutableMap.of("threshold", 50.0),
+        "latencyEjection", ImmutableMap.of("stdevFactor", 1000.0, "requestVolume", 20.0)));
+    config = (OutlierDetectionLoadBalancerConfig) custom.getConfig();
+    assertThat(config.intervalNanos).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1500));
+    assertThat(config.maxEjectionPercent).isEqualTo(50);
+    assertThat(config.failurePercentageEjection)
+        .isEqualTo(new FailurePercentageEjection(50, 100, 5, 50));
+    assertThat(config.latencyEjection).isEqualTo(new LatencyEjection(1000, 100, 5, 20));
+
+    ConfigOrError noChild = provider.parseLoadBalancingPolicyConfig(ImmutableMap.<String, Object>of(
+        "successRateEjection", ImmutableMap.of()));
+    assertThat(noChild.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    ConfigOrError badPercent = provider.parseLoadBalancingPolicyConfig(ImmutableMap.of(
+        "childPolicy", childPolicy,
+        "maxEjectionPercent", 101.0));
+    assertThat(badPercent.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
+  private static OutlierDetectionLoadBalancerConfig config(
+      SuccessRateEjection successRateEjection,
+      FailurePercentageEjection failurePercentageEjection,
+      LatencyEjection latencyEjection) {
+    return new OutlierDetectionLoadBalancerConfig(
+        TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30),
+        TimeUnit.SECONDS.toNanos(300), 20, successRateEjection, failurePercentageEjection,
+        latencyEjection, ROUND_ROBIN);
+  }
+
+  private void resolve(final OutlierDetectionLoadBalancerConfig config) {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+            .setAddresses(servers)
+            .setLoadBalancingPolicyConfig(config)
+            .build());
+      }
+    });
+  }
+
+  private void deliverAllReady() {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (Subchannel subchannel : subchannels.getAll()) {
+          subchannels.deliverState(subchannel, ConnectivityStateInfo.forNonError(READY));
+        }
+      }
+    });
+  }
+
+  private SubchannelPicker currentPicker() {
+    verify(helper, atLeastOnce()).updateBalancingState(eq(READY), pickerCaptor.capture());
+    return pickerCaptor.getValue();
+  }
+
+  /**
+   * Sends calls through the current picker. The calls to the given servers take the given
+   * milliseconds if positive, or fail if 0. The other calls take 1ms and succeed.
+   */
+  private void sendCalls(int count, Object... serverBehaviors) {
+    Map<String, Integer> behaviors = new HashMap<>();
+    for (int i = 0; i < serverBehaviors.length; i += 2) {
+      behaviors.put((String) serverBehaviors[i], (Integer) serverBehaviors[i + 1]);
+    }
+    SubchannelPicker picker = currentPicker();
+    for (int i = 0; i < count; i++) {
+      PickResult result = picker.pickSubchannel(pickArgs);
+      ClientStreamTracer tracer = result.getStreamTracerFactory().newClientStreamTracer(
+          ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+      Integer behavior = behaviors.get(serverName(result.getSubchannel()));
+      if (behavior == null) {
+        fakeClock.forwardNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        tracer.streamClosed(Status.OK);
+      } else if (behavior == 0) {
+        tracer.streamClosed(Status.UNAVAILABLE);
+      } else {
+        fakeClock.forwardNanos(TimeUnit.MILLISECONDS.toNanos(behavior));
+        tracer.streamClosed(Status.OK);
+      }
+    }
+  }
+
+  private Set<String> pickedServers(int picks) {
+    SubchannelPicker picker = currentPicker();
+    Set<String> picked = new HashSet<>();
+    for (int i = 0; i < picks; i++) {
+      picked.add(serverName(picker.pickSubchannel(pickArgs).getSubchannel()));
+    }
+    return picked;
+  }
+
+  private static String serverName(Subchannel subchannel) {
+    return ((FakeSocketAddress) subchannel.getAddresses().getAddresses().get(0)).name;
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.Metadata;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.FakeClock;
+import io.grpc.util.PeakEwmaLoadBalancer.PeakEwmaConfig;
+import io.grpc.util.PeakEwmaLoadBalancer.PeakEwmaPicker;
+import io.grpc.util.PeakEwmaLoadBalancer.PeakEwmaTracker;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit tests for {@link PeakEwmaLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class PeakEwmaLoadBalancerTest {
+  @Rule
+  public final MockitoRule mocks = MockitoJUnit.rule();
+
+  private final EquivalentAddressGroup server1 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server1"));
+  private final EquivalentAddressGroup server2 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server2"));
+  private final EquivalentAddressGroup server3 =
+      new EquivalentAddressGroup(new FakeSocketAddress("server3"));
+  private final FakeClock fakeClock = new FakeClock();
+  private final FakeRandom random = new FakeRandom();
+  @Mock
+  private Helper helper;
+  @Mock
+  private PickSubchannelArgs pickArgs;
+  @Captor
+  private ArgumentCaptor<SubchannelPicker> pickerCaptor;
+  private FakeSubchannels subchannels;
+  private PeakEwmaLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    subchannels = FakeSubchannels.install(helper);
+    loadBalancer = new PeakEwmaLoadBalancer(helper, fakeClock.getTimeProvider(), random);
+  }
+
+  @Test
+  public void picksLowerLatencyOfTwo() {
+    PeakEwmaPicker picker = resolveAllReady(server1, server2, server3);
+    List<Subchannel> list = picker.getList();
+    completeCall(list.get(0), 10);
+    completeCall(list.get(1), 20);
+
+    random.enqueue(0, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(0));
+    random.enqueue(1, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(0));
+    // The second choice skips the first one.
+    random.enqueue(0, 1);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(2));
+  }
+
+  @Test
+  public void inFlightCallsMultiplyLatency() {
+    PeakEwmaPicker picker = resolveAllReady(server1, server2);
+    List<Subchannel> list = picker.getList();
+    completeCall(list.get(0), 10);
+    completeCall(list.get(1), 25);
+
+    random.enqueue(0, 0);
+    startStream(picker.pickSubchannel(pickArgs));
+    random.enqueue(0, 0);
+    startStream(picker.pickSubchannel(pickArgs));
+    // 10ms times 3 is more than 25ms times 1.
+    random.enqueue(0, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(1));
+  }
+
+  @Test
+  public void latencySpikeTakesEffectImmediately() {
+    PeakEwmaPicker picker = resolveAllReady(server1, server2);
+    List<Subchannel> list = picker.getList();
+    for (int i = 0; i < 10; i++) {
+      completeCall(list.get(0), 10);
+      completeCall(list.get(1), 20);
+    }
+    PeakEwmaTracker tracker = getTracker(list.get(0));
+    assertThat(tracker.getCostNanos(fakeClock.getTicker().read()))
+        .isLessThan((double) TimeUnit.MILLISECONDS.toNanos(20));
+
+    // A pause on the first subchannel.
+    completeCall(list.get(0), 500);
+    assertThat(tracker.getCostNanos(fakeClock.getTicker().read()))
+        .isEqualTo((double) TimeUnit.MILLISECONDS.toNanos(500));
+    random.enqueue(0, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(1));
+  }
+
+  @Test
+  public void latencyDecaysOverTime() {
+    PeakEwmaPicker picker = resolveAllReady(server1, server2);
+    Subchannel subchannel = picker.getList().get(0);
+    PeakEwmaTracker tracker = getTracker(subchannel);
+    completeCall(subchannel, 100);
+    long now = fakeClock.getTicker().read();
+    double cost = tracker.getCostNanos(now);
+
+    // One decay time divides the cost by e.
+    assertThat(tracker.getCostNanos(now + TimeUnit.SECONDS.toNanos(10)))
+        .isWithin(1).of(cost / Math.E);
+    // Faster samples pull the average down, weighted by the time since the last sample.
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    completeCall(subchannel, 0);
+    assertThat(tracker.getCostNanos(fakeClock.getTicker().read()))
+        .isWithin(1).of(cost / Math.E);
+  }
+
+  @Test
+  public void latencyIsTimeToResponseHeaders() {
+    PeakEwmaPicker picker = resolveAllReady(server1);
+    PickResult pick = picker.pickSubchannel(pickArgs);
+    ClientStreamTracer stream = startStream(pick);
+    fakeClock.forwardTime(10, TimeUnit.MILLISECONDS);
+    stream.inboundHeaders();
+    fakeClock.forwardTime(1, TimeUnit.MINUTES);
+    stream.streamClosed(Status.OK);
+
+    // The latency was recorded a minute ago, and has decayed for it since.
+    PeakEwmaTracker tracker = getTracker(pick.getSubchannel());
+    assertThat(tracker.getCostNanos(fakeClock.getTicker().read()))
+        .isWithin(1).of(TimeUnit.MILLISECONDS.toNanos(10) * Math.exp(-6));
+  }
+
+  @Test
+  public void busySubchannelWithoutLatencyAvoided() {
+    PeakEwmaPicker picker = resolveAllReady(server1, server2);
+    List<Subchannel> list = picker.getList();
+    completeCall(list.get(1), 1000);
+    random.enqueue(0, 0);
+    startStream(picker.pickSubchannel(pickArgs));
+
+    // The first subchannel has not responded yet, so its latency is unknown.
+    random.enqueue(0, 0);
+    assertThat(picker.pickSubchannel(pickArgs).getSubchannel()).isEqualTo(list.get(1));
+  }
+
+  @Test
+  public void singleReadySubchannel() {
+    resolve(PeakEwmaConfig.DEFAULT, server1, server2);
+    subchannels.deliverState(subchannels.get(server1), READY);
+
+    PickResult pick = currentPicker(READY).pickSubchannel(pickArgs);
+    assertThat(pick.getSubchannel()).isEqualTo(subchannels.get(server1));
+    assertThat(pick.getStreamTracerFactory()).isNotNull();
+  }
+
+  @Test
+  public void removedAddressIsShutDown() {
+    resolve(PeakEwmaConfig.DEFAULT, server1, server2);
+    verify(helper).updateBalancingState(eq(CONNECTING), any(SubchannelPicker.class));
+    resolve(PeakEwmaConfig.DEFAULT, server2);
+
+    verify(subchannels.get(server1)).shutdown();
+    verify(subchannels.get(server2), never()).shutdown();
+    assertThat(loadBalancer.getSubchannels()).containsExactly(subchannels.get(server2));
+
+    loadBalancer.shutdown();
+    verify(subchannels.get(server2)).shutdown();
+  }
+
+  @Test
+  public void allSubchannelsFailing() {
+    resolve(PeakEwmaConfig.DEFAULT, server1, server2);
+    Status error = Status.UNAVAILABLE.withDescription("connection refused");
+    for (Subchannel subchannel : subchannels.getAll()) {
+      subchannels.deliverState(subchannel, ConnectivityStateInfo.forTransientFailure(error));
+    }
+
+    PickResult pick = currentPicker(TRANSIENT_FAILURE).pickSubchannel(pickArgs);
+    assertThat(pick.getStatus()).isEqualTo(error);
+    verify(helper, atLeastOnce()).refreshNameResolution();
+  }
+
+  @Test
+  public void parseConfig() {
+    LoadBalancerProvider provider = new SecretPeakEwmaLoadBalancerProvider.Provider();
+
+    ConfigOrError defaults =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.<String, Object>of());
+    assertThat(defaults.getConfig()).isEqualTo(PeakEwmaConfig.DEFAULT);
+
+    ConfigOrError custom =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("decayTime", "2.5s"));
+    assertThat(custom.getConfig())
+        .isEqualTo(new PeakEwmaConfig(TimeUnit.MILLISECONDS.toNanos(2500)));
+
+    ConfigOrError zero =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("decayTime", "0s"));
+    assertThat(zero.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    ConfigOrError wrongType =
+        provider.parseLoadBalancingPolicyConfig(ImmutableMap.of("decayTime", 10.0));
+    assertThat(wrongType.getError().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
+  private PeakEwmaPicker resolveAllReady(EquivalentAddressGroup... servers) {
+    resolve(PeakEwmaConfig.DEFAULT, servers);
+    for (Subchannel subchannel : subchannels.getAll()) {
+      subchannels.deliverState(subchannel, READY);
+    }
+    return (PeakEwmaPicker) currentPicker(READY);
+  }
+
+  private void resolve(PeakEwmaConfig config, EquivalentAddressGroup... servers) {
+    loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+        .setAddresses(Arrays.asList(servers))
+        .setLoadBalancingPolicyConfig(config)
+        .build());
+  }
+
+  /** Makes a call on {@code subchannel} that is closed after {@code latencyMillis}. */
+  private void completeCall(Subchannel subchannel, long latencyMillis) {
+    ClientStreamTracer stream = getTracker(subchannel).newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+    fakeClock.forwardTime(latencyMillis, TimeUnit.MILLISECONDS);
+    stream.streamClosed(Status.OK);
+  }
+
+  private SubchannelPicker currentPicker(ConnectivityState state) {
+    verify(helper, atLeastOnce()).updateBalancingState(eq(state), pickerCaptor.capture());
+    return pickerCaptor.getValue();
+  }
+
+  private static PeakEwmaTracker getTracker(Subchannel subchannel) {
+    return subchannel.getAttributes().get(PeakEwmaLoadBalancer.PEAK_EWMA);
+  }
+
+  private static ClientStreamTracer startStream(PickResult pick) {
+    return pick.getStreamTracerFactory().newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}
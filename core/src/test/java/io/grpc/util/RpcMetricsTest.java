@@ -0,0 +1,203 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerStreamTracer;
+import io.grpc.ServerStreamTracer.ServerCallInfo;
+import io.grpc.Status;
+import io.grpc.internal.FakeClock;
+import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.util.RpcMetrics.MethodSnapshot;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link RpcMetrics}. */
+@RunWith(JUnit4.class)
+public class RpcMetricsTest {
+  private final FakeClock fakeClock = new FakeClock();
+  private final RpcMetrics metrics = new RpcMetrics(fakeClock.getTicker());
+
+  @Test
+  public void serverCalls() {
+    for (int i = 1; i <= 10; i++) {
+      ServerStreamTracer tracer = startServerCall("pkg.Svc/Method");
+      tracer.inboundMessage(0);
+      tracer.inboundWireSize(100);
+      tracer.outboundMessage(0);
+      tracer.outboundWireSize(20);
+      fakeClock.forwardTime(i, TimeUnit.MILLISECONDS);
+      tracer.streamClosed(i == 10 ? Status.UNAVAILABLE : Status.OK);
+    }
+    startServerCall("pkg.Svc/Another");
+
+    List<MethodSnapshot> snapshots = metrics.getServerSnapshots();
+    assertThat(snapshots).hasSize(2);
+    assertThat(snapshots.get(0).getMethodName()).isEqualTo("pkg.Svc/Another");
+    assertThat(snapshots.get(0).getStarted()).isEqualTo(1);
+    assertThat(snapshots.get(0).getCompletedTotal()).isEqualTo(0);
+    assertThat(snapshots.get(0).getLatencyPercentileNanos(50)).isEqualTo(-1);
+
+    MethodSnapshot snapshot = snapshots.get(1);
+    assertThat(snapshot.getMethodName()).isEqualTo("pkg.Svc/Method");
+    assertThat(snapshot.getStarted()).isEqualTo(10);
+    assertThat(snapshot.getCompletedTotal()).isEqualTo(10);
+    assertThat(snapshot.getCompleted(Status.Code.OK)).isEqualTo(9);
+    assertThat(snapshot.getCompleted(Status.Code.UNAVAILABLE)).isEqualTo(1);
+    assertThat(snapshot.getReceivedMessages()).isEqualTo(10);
+    assertThat(snapshot.getReceivedBytes()).isEqualTo(1000);
+    assertThat(snapshot.getSentMessages()).isEqualTo(10);
+    assertThat(snapshot.getSentBytes()).isEqualTo(200);
+    assertThat(snapshot.getLatencySumNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(55));
+    long p50 = snapshot.getLatencyPercentileNanos(50);
+    assertThat(p50).isAtLeast(TimeUnit.MILLISECONDS.toNanos(5));
+    assertThat(p50).isAtMost(TimeUnit.MILLISECONDS.toNanos(5) * 9 / 8);
+
+    assertThat(metrics.getClientSnapshots()).isEmpty();
+  }
+
+  @Test
+  public void unknownServerMethodsShareOneEntry() {
+    ServerStreamTracer.Factory factory = metrics.getServerStreamTracerFactory();
+    for (int i = 0; i < 1000; i++) {
+      // Closed with UNIMPLEMENTED before the call is started
+      ServerStreamTracer tracer =
+          factory.newServerStreamTracer("pkg.Svc/Unknown" + i, new Metadata());
+      tracer.streamClosed(Status.UNIMPLEMENTED);
+    }
+    startServerCall("pkg.Svc/Method").streamClosed(Status.OK);
+
+    List<MethodSnapshot> snapshots = metrics.getServerSnapshots();
+    assertThat(snapshots).hasSize(2);
+    MethodSnapshot other = snapshots.get(0);
+    assertThat(other.getMethodName()).isEqualTo(RpcMetrics.OTHER_METHOD_NAME);
+    assertThat(other.getStarted()).isEqualTo(1000);
+    assertThat(other.getCompleted(Status.Code.UNIMPLEMENTED)).isEqualTo(1000);
+    assertThat(snapshots.get(1).getMethodName()).isEqualTo("pkg.Svc/Method");
+    assertThat(snapshots.get(1).getCompleted(Status.Code.OK)).isEqualTo(1);
+  }
+
+  @Test
+  public void clientCalls() {
+    MethodDescriptor<Void, Void> method = TestMethodDescriptors.voidMethod();
+    Channel channel = mock(Channel.class);
+    metrics.getClientInterceptor().interceptCall(method, CallOptions.DEFAULT, channel);
+    ArgumentCaptor<CallOptions> callOptionsCaptor = ArgumentCaptor.forClass(CallOptions.class);
+    verify(channel).newCall(same(method), callOptionsCaptor.capture());
+    List<ClientStreamTracer.Factory> factories =
+        callOptionsCaptor.getValue().getStreamTracerFactories();
+    assertThat(factories).hasSize(1);
+
+    ClientStreamTracer tracer = factories.get(0).newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+    tracer.outboundMessage(0);
+    tracer.outboundWireSize(30);
+    tracer.inboundMessage(0);
+    tracer.inboundWireSize(40);
+    fakeClock.forwardNanos(1000);
+    tracer.streamClosed(Status.DEADLINE_EXCEEDED);
+
+    List<MethodSnapshot> snapshots = metrics.getClientSnapshots();
+    assertThat(snapshots).hasSize(1);
+    MethodSnapshot snapshot = snapshots.get(0);
+    assertThat(snapshot.getMethodName()).isEqualTo(method.getFullMethodName());
+    assertThat(snapshot.getStarted()).isEqualTo(1);
+    assertThat(snapshot.getCompleted(Status.Code.DEADLINE_EXCEEDED)).isEqualTo(1);
+    assertThat(snapshot.getSentBytes()).isEqualTo(30);
+    assertThat(snapshot.getReceivedBytes()).isEqualTo(40);
+    assertThat(snapshot.getLatencySumNanos()).isEqualTo(1000);
+
+    // Calls of the same method share the metrics
+    metrics.getClientInterceptor().interceptCall(method, CallOptions.DEFAULT, channel);
+    verify(channel, times(2)).newCall(same(method), callOptionsCaptor.capture());
+    assertThat(callOptionsCaptor.getValue().getStreamTracerFactories())
+        .containsExactlyElementsIn(factories);
+  }
+
+  @Test
+  public void writeText() throws Exception {
+    ServerStreamTracer tracer = startServerCall("pkg.Svc/Method");
+    tracer.inboundWireSize(100);
+    fakeClock.forwardTime(2, TimeUnit.SECONDS);
+    tracer.streamClosed(Status.OK);
+
+    StringBuilder text = new StringBuilder();
+    metrics.writeText(text);
+    assertThat(text.toString()).isEqualTo(
+        "# TYPE grpc_server_started_total counter\n"
+        + "grpc_server_started_total{grpc_method=\"pkg.Svc/Method\"} 1\n"
+        + "# TYPE grpc_server_completed_total counter\n"
+        + "grpc_server_completed_total{grpc_method=\"pkg.Svc/Method\",grpc_status=\"OK\"} 1\n"
+        + "# TYPE grpc_server_sent_messages_total counter\n"
+        + "grpc_server_sent_messages_total{grpc_method=\"pkg.Svc/Method\"} 0\n"
+        + "# TYPE grpc_server_sent_bytes_total counter\n"
+        + "grpc_server_sent_bytes_total{grpc_method=\"pkg.Svc/Method\"} 0\n"
+        + "# TYPE grpc_server_received_messages_total counter\n"
+        + "grpc_server_received_messages_total{grpc_method=\"pkg.Svc/Method\"} 0\n"
+        + "# TYPE grpc_server_received_bytes_total counter\n"
+        + "grpc_server_received_bytes_total{grpc_method=\"pkg.Svc/Method\"} 100\n"
+        + "# TYPE grpc_server_latency_seconds summary\n"
+        + "grpc_server_latency_seconds{grpc_method=\"pkg.Svc/Method\",quantile=\"0.5\"} "
+        + "2.013265919\n"
+        + "grpc_server_latency_seconds{grpc_method=\"pkg.Svc/Method\",quantile=\"0.9\"} "
+        + "2.013265919\n"
+        + "grpc_server_latency_seconds{grpc_method=\"pkg.Svc/Method\",quantile=\"0.99\"} "
+        + "2.013265919\n"
+        + "grpc_server_latency_seconds_sum{grpc_method=\"pkg.Svc/Method\"} 2.000000000\n"
+        + "grpc_server_latency_seconds_count{grpc_method=\"pkg.Svc/Method\"} 1\n");
+  }
+
+  private ServerStreamTracer startServerCall(String fullMethodName) {
+    ServerStreamTracer tracer = metrics.getServerStreamTracerFactory()
+        .newServerStreamTracer(fullMethodName, new Metadata());
+    final MethodDescriptor<Void, Void> method = TestMethodDescriptors.voidMethod().toBuilder()
+        .setFullMethodName(fullMethodName)
+        .build();
+    tracer.serverCallStarted(new ServerCallInfo<Void, Void>() {
+      @Override
+      public MethodDescriptor<Void, Void> getMethodDescriptor() {
+        return method;
+      }
+
+      @Override
+      public Attributes getAttributes() {
+        return Attributes.EMPTY;
+      }
+
+      @Override
+      public String getAuthority() {
+        return null;
+      }
+    });
+    return tracer;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.perfmark.PerfMark;
+import io.perfmark.Tag;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmark for {@link WriteQueue} under the traffic of many streams sending small messages on one
+ * connection, like {@code StreamingPingPongsPerSecondBenchmark}. Every benchmark thread plays a
+ * stream that writes a burst of messages, each asking for a flush, and waits for the last one to
+ * be written. The flushes that reach the channel are counted, to show how well they coalesce.
+ */
+@State(Scope.Benchmark)
+public class WriteQueueBenchmark {
+  private static final AtomicLong flushCounter = new AtomicLong();
+  private static final AtomicLong messageCounter = new AtomicLong();
+  private static final StreamIdHolder STREAM_ID = new StreamIdHolder() {
+    @Override
+    public int id() {
+      return 1;
+    }
+
+    @Override
+    public Tag tag() {
+      return PerfMark.createTag();
+    }
+  };
+
+  @Param({"16", "1024"})
+  public int messageSize;
+
+  @Param({"8"})
+  public int burstSize;
+
+  private EventLoopGroup group;
+  private Channel serverChannel;
+  private Channel channel;
+  private WriteQueue writeQueue;
+  private ByteBuf message;
+
+  /**
+   * Counts the flushes and messages seen by the channel in each iteration.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    @Setup(Level.Iteration)
+    public void clean() {
+      flushCounter.set(0);
+      messageCounter.set(0);
+    }
+
+    public long flushes() {
+      return flushCounter.get();
+    }
+
+    public long messages() {
+      return messageCounter.get();
+    }
+  }
+
+  /**
+   * Setup.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    group = new DefaultEventLoopGroup(2);
+    LocalAddress address = new LocalAddress("WriteQueueBenchmark");
+    serverChannel = new ServerBootstrap()
+        .group(group)
+        .channel(LocalServerChannel.class)
+        .childHandler(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+          }
+        })
+        .bind(address).sync().channel();
+    channel = new Bootstrap()
+        .group(group)
+        .channel(LocalChannel.class)
+        .handler(new ChannelOutboundHandlerAdapter() {
+          @Override
+          public void flush(ChannelHandlerContext ctx) {
+            flushCounter.incrementAndGet();
+            ctx.flush();
+          }
+        })
+        .connect(address).sync().channel();
+    writeQueue = new WriteQueue(channel);
+    message = Unpooled.unreleasableBuffer(
+        Unpooled.directBuffer(messageSize).writeZero(messageSize));
+  }
+
+  /**
+   * Teardown.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    channel.close().sync();
+    serverChannel.close().sync();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+  }
+
+  /**
+   * Writes a burst of messages and waits until they are written.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(4)
+  public void writeBurst(Counters counters) throws Exception {
+    ChannelFuture last = null;
+    for (int i = 0; i < burstSize; i++) {
+      last = writeQueue.enqueue(
+          new SendGrpcFrameCommand(STREAM_ID, message.duplicate(), false), true);
+    }
+    messageCounter.addAndGet(burstSize);
+    last.sync();
+  }
+}
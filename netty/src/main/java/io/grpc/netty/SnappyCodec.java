@@ -0,0 +1,342 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.netty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.grpc.Codec;
+import io.grpc.ExperimentalApi;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A "snappy" compressor and decompressor, using the
+ * <a href="https://github.com/google/snappy/blob/master/framing_format.txt">Snappy framing
+ * format</a>. Snappy trades compression ratio for speed and typically compresses and decompresses
+ * several times faster than gzip, which makes it a better fit for bulk transfers where gzip costs
+ * too much CPU.
+ *
+ * <p>The codec is not registered by default. To use it, register it with the {@link
+ * io.grpc.CompressorRegistry} and advertise it with the {@link io.grpc.DecompressorRegistry} of
+ * both the client and the server, for example:
+ *
+ * <pre>
+ *   Codec snappy = new SnappyCodec();
+ *   CompressorRegistry compressors = CompressorRegistry.getDefaultInstance();
+ *   compressors.register(snappy);
+ *   DecompressorRegistry decompressors =
+ *       DecompressorRegistry.getDefaultInstance().with(snappy, true);
+ * </pre>
+ *
+ * <p>Calls then opt in with {@link io.grpc.CallOptions#withCompression} on the client and {@link
+ * io.grpc.ServerCall#setCompression} on the server. The server only compresses responses with
+ * snappy if the client advertised it.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/1704")
+public final class SnappyCodec implements Codec {
+  private static final byte[] STREAM_IDENTIFIER =
+      {(byte) 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y'};
+  private static final int CHUNK_HEADER_LENGTH = 4;
+  private static final int CHECKSUM_LENGTH = 4;
+  private static final int CHUNK_TYPE_COMPRESSED = 0x00;
+  private static final int CHUNK_TYPE_UNCOMPRESSED = 0x01;
+  private static final int CHUNK_TYPE_STREAM_IDENTIFIER = 0xff;
+  private static final int MIN_SKIPPABLE_CHUNK_TYPE = 0x80;
+  // Netty's encoder keeps match offsets in a short[], so it cannot encode larger chunks.
+  private static final int MAX_ENCODED_CHUNK_LENGTH = Short.MAX_VALUE;
+  private static final int MAX_DECODED_CHUNK_LENGTH = 65536;
+  // Worst case expansion of a snappy block, per the format description.
+  private static final int MAX_COMPRESSED_CHUNK_LENGTH =
+      32 + MAX_DECODED_CHUNK_LENGTH + MAX_DECODED_CHUNK_LENGTH / 6;
+  // Inputs shorter than this are not worth encoding.
+  private static final int MIN_COMPRESSIBLE_LENGTH = 18;
+
+  @SuppressWarnings("BetaApi") // Hashing is stable enough for our use of CRC-32C
+  private static final HashFunction CRC32C = Hashing.crc32c();
+
+  @Override
+  public String getMessageEncoding() {
+    return "snappy";
+  }
+
+  @Override
+  public OutputStream compress(OutputStream os) {
+    return new SnappyOutputStream(os);
+  }
+
+  @Override
+  public InputStream decompress(InputStream is) {
+    return new SnappyInputStream(is);
+  }
+
+  /** Returns the masked CRC-32C of the readable bytes of a heap {@code buf}. */
+  private static int maskedChecksum(ByteBuf buf) {
+    int crc = CRC32C.hashBytes(
+        buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes()).asInt();
+    return ((crc >>> 15) | (crc << 17)) + 0xa282ead8;
+  }
+
+  private static final class SnappyOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final Snappy snappy = new Snappy();
+    private final ByteBuf pending = Unpooled.buffer(256, MAX_ENCODED_CHUNK_LENGTH);
+    private final byte[] chunkHeader = new byte[CHUNK_HEADER_LENGTH + CHECKSUM_LENGTH];
+    private ByteBuf encoded;
+    private boolean streamIdentifierWritten;
+    private boolean closed;
+
+    SnappyOutputStream(OutputStream out) {
+      this.out = checkNotNull(out, "out");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (pending.maxWritableBytes() == 0) {
+        writeChunk();
+      }
+      pending.writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (pending.maxWritableBytes() == 0) {
+          writeChunk();
+        }
+        int toWrite = Math.min(len, pending.maxWritableBytes());
+        pending.writeBytes(b, off, toWrite);
+        off += toWrite;
+        len -= toWrite;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (pending.isReadable() || !streamIdentifierWritten) {
+          writeChunk();
+        }
+      } finally {
+        pending.release();
+        if (encoded != null) {
+          encoded.release();
+        }
+        out.close();
+      }
+    }
+
+    private void writeChunk() throws IOException {
+      if (!streamIdentifierWritten) {
+        out.write(STREAM_IDENTIFIER);
+        streamIdentifierWritten = true;
+      }
+      int length = pending.readableBytes();
+      if (length == 0) {
+        return;
+      }
+      int checksum = maskedChecksum(pending);
+      ByteBuf data = pending;
+      int chunkType = CHUNK_TYPE_UNCOMPRESSED;
+      if (length >= MIN_COMPRESSIBLE_LENGTH) {
+        if (encoded == null) {
+          encoded = Unpooled.buffer(length);
+        }
+        encoded.clear();
+        snappy.encode(pending.duplicate(), encoded, length);
+        snappy.reset();
+        // Incompressible data is cheaper to send, and to read, as is.
+        if (encoded.readableBytes() < length) {
+          data = encoded;
+          chunkType = CHUNK_TYPE_COMPRESSED;
+        }
+      }
+      int chunkLength = CHECKSUM_LENGTH + data.readableBytes();
+      chunkHeader[0] = (byte) chunkType;
+      chunkHeader[1] = (byte) chunkLength;
+      chunkHeader[2] = (byte) (chunkLength >>> 8);
+      chunkHeader[3] = (byte) (chunkLength >>> 16);
+      chunkHeader[4] = (byte) checksum;
+      chunkHeader[5] = (byte) (checksum >>> 8);
+      chunkHeader[6] = (byte) (checksum >>> 16);
+      chunkHeader[7] = (byte) (checksum >>> 24);
+      out.write(chunkHeader);
+      out.write(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes());
+      pending.clear();
+    }
+  }
+
+  private static final class SnappyInputStream extends InputStream {
+    private final InputStream in;
+    private final Snappy snappy = new Snappy();
+    private final byte[] chunkHeader = new byte[CHUNK_HEADER_LENGTH];
+    private final ByteBuf decoded = Unpooled.buffer(0, MAX_DECODED_CHUNK_LENGTH);
+    private ByteBuf chunk;
+    private boolean streamIdentifierRead;
+    private boolean closed;
+
+    SnappyInputStream(InputStream in) {
+      this.in = checkNotNull(in, "in");
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!decoded.isReadable() && !readChunk()) {
+        return -1;
+      }
+      return decoded.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!decoded.isReadable() && !readChunk()) {
+        return -1;
+      }
+      int toRead = Math.min(len, decoded.readableBytes());
+      decoded.readBytes(b, off, toRead);
+      return toRead;
+    }
+
+    @Override
+    public int available() {
+      return decoded.readableBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      decoded.release();
+      if (chunk != null) {
+        chunk.release();
+      }
+      in.close();
+    }
+
+    /**
+     * Decodes chunks until one produces data. Returns {@code false} if the end of the stream has
+     * been reached.
+     */
+    private boolean readChunk() throws IOException {
+      while (true) {
+        if (!readFully(chunkHeader, 0, CHUNK_HEADER_LENGTH, true)) {
+          return false;
+        }
+        int chunkType = chunkHeader[0] & 0xff;
+        int chunkLength = (chunkHeader[1] & 0xff)
+            | (chunkHeader[2] & 0xff) << 8
+            | (chunkHeader[3] & 0xff) << 16;
+        if (chunkType == CHUNK_TYPE_STREAM_IDENTIFIER) {
+          if (chunkLength != STREAM_IDENTIFIER.length - CHUNK_HEADER_LENGTH) {
+            throw new IOException("Invalid snappy stream identifier length: " + chunkLength);
+          }
+          byte[] identifier = new byte[chunkLength];
+          readFully(identifier, 0, chunkLength, false);
+          for (int i = 0; i < chunkLength; i++) {
+            if (identifier[i] != STREAM_IDENTIFIER[CHUNK_HEADER_LENGTH + i]) {
+              throw new IOException("Invalid snappy stream identifier");
+            }
+          }
+          streamIdentifierRead = true;
+          continue;
+        }
+        if (!streamIdentifierRead) {
+          throw new IOException("Snappy stream identifier missing");
+        }
+        if (chunkType == CHUNK_TYPE_COMPRESSED || chunkType == CHUNK_TYPE_UNCOMPRESSED) {
+          if (chunkLength < CHECKSUM_LENGTH
+              || chunkLength > CHECKSUM_LENGTH + MAX_COMPRESSED_CHUNK_LENGTH) {
+            throw new IOException("Invalid snappy chunk length: " + chunkLength);
+          }
+          readChunkData(chunkLength);
+          int expectedChecksum = chunk.readIntLE();
+          decoded.clear();
+          if (chunkType == CHUNK_TYPE_COMPRESSED) {
+            try {
+              snappy.decode(chunk, decoded);
+            } catch (DecompressionException | IndexOutOfBoundsException e) {
+              throw new IOException("Invalid snappy chunk", e);
+            } finally {
+              snappy.reset();
+            }
+          } else {
+            if (chunk.readableBytes() > MAX_DECODED_CHUNK_LENGTH) {
+              throw new IOException("Invalid snappy chunk length: " + chunkLength);
+            }
+            decoded.writeBytes(chunk);
+          }
+          if (maskedChecksum(decoded) != expectedChecksum) {
+            throw new IOException("Snappy chunk checksum mismatch");
+          }
+          if (decoded.isReadable()) {
+            return true;
+          }
+        } else if (chunkType >= MIN_SKIPPABLE_CHUNK_TYPE) {
+          // Padding and reserved skippable chunks.
+          readChunkData(chunkLength);
+        } else {
+          throw new IOException("Unsupported snappy chunk type: " + chunkType);
+        }
+      }
+    }
+
+    private void readChunkData(int chunkLength) throws IOException {
+      if (chunk == null) {
+        chunk = Unpooled.buffer(chunkLength);
+      }
+      chunk.clear();
+      chunk.ensureWritable(chunkLength);
+      readFully(chunk.array(), chunk.arrayOffset(), chunkLength, false);
+      chunk.writerIndex(chunkLength);
+    }
+
+    /**
+     * Reads exactly {@code len} bytes. Returns {@code false} if {@code eofAllowed} and the stream
+     * ended before the first byte.
+     */
+    private boolean readFully(byte[] b, int off, int len, boolean eofAllowed) throws IOException {
+      int read = 0;
+      while (read < len) {
+        int count = in.read(b, off + read, len - read);
+        if (count == -1) {
+          if (read == 0 && eofAllowed) {
+            return false;
+          }
+          throw new EOFException("Truncated snappy stream");
+        }
+        read += count;
+      }
+      return true;
+    }
+  }
+}
@@ -19,13 +19,16 @@ package io.grpc.netty;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import io.grpc.netty.KeepAliveEnforcer.SystemTicker;
+import io.grpc.netty.KeepAliveEnforcer.Ticker;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelPromise;
+import io.netty.util.internal.PlatformDependent;
 import io.perfmark.Link;
 import io.perfmark.PerfMark;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -33,9 +36,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 class WriteQueue {
 
-  // Dequeue in chunks, so we don't have to acquire the queue's log too often.
+  // Writes are coalesced into as few flushes as possible. While draining a long queue, a flush is
+  // still issued once this many message bytes were written and the channel can take more, so
+  // buffers are released and the peer starts receiving before the queue is empty.
   @VisibleForTesting
-  static final int DEQUE_CHUNK_SIZE = 128;
+  static final int FLUSH_BYTES_THRESHOLD = 32 * 1024;
+
+  // Nor is written data held back longer than this, even if the channel is not writable.
+  @VisibleForTesting
+  static final long MAX_FLUSH_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  // Reading the clock for every command would cost more than it saves.
+  @VisibleForTesting
+  static final int CLOCK_CHECK_INTERVAL = 64;
 
   /**
    * {@link Runnable} used to schedule work onto the tail of the event loop.
@@ -48,12 +61,20 @@ class WriteQueue {
   };
 
   private final Channel channel;
+  private final Ticker ticker;
   private final Queue<QueuedCommand> queue;
   private final AtomicBoolean scheduled = new AtomicBoolean();
 
   public WriteQueue(Channel channel) {
+    this(channel, SystemTicker.INSTANCE);
+  }
+
+  @VisibleForTesting
+  WriteQueue(Channel channel, Ticker ticker) {
     this.channel = Preconditions.checkNotNull(channel, "channel");
-    queue = new ConcurrentLinkedQueue<>();
+    this.ticker = Preconditions.checkNotNull(ticker, "ticker");
+    // Array backed, so enqueueing doesn't allocate a node per command. Only the event loop polls.
+    queue = PlatformDependent.newMpscQueue();
   }
 
   /**
@@ -122,15 +143,24 @@ class WriteQueue {
     PerfMark.startTask("WriteQueue.periodicFlush");
     try {
       QueuedCommand cmd;
-      int i = 0;
+      int unflushedCommands = 0;
+      long unflushedBytes = 0;
+      long lastFlushNanos = ticker.nanoTime();
       boolean flushedOnce = false;
       while ((cmd = queue.poll()) != null) {
+        if (cmd instanceof SendGrpcFrameCommand) {
+          unflushedBytes += ((SendGrpcFrameCommand) cmd).content().readableBytes();
+        }
         cmd.run(channel);
-        if (++i == DEQUE_CHUNK_SIZE) {
-          i = 0;
-          // Flush each chunk so we are releasing buffers periodically. In theory this loop
-          // might never end as new events are continuously added to the queue, if we never
-          // flushed in that case we would be guaranteed to OOM.
+        unflushedCommands++;
+        // Flush periodically so we are releasing buffers. In theory this loop might never end as
+        // new events are continuously added to the queue, if we never flushed in that case we
+        // would be guaranteed to OOM.
+        boolean flush = unflushedBytes >= FLUSH_BYTES_THRESHOLD && channel.isWritable();
+        if (!flush && unflushedCommands % CLOCK_CHECK_INTERVAL == 0) {
+          flush = ticker.nanoTime() - lastFlushNanos >= MAX_FLUSH_DELAY_NANOS;
+        }
+        if (flush) {
           PerfMark.startTask("WriteQueue.flush0");
           try {
             channel.flush();
@@ -138,10 +168,13 @@ class WriteQueue {
             PerfMark.stopTask("WriteQueue.flush0");
           }
           flushedOnce = true;
+          unflushedCommands = 0;
+          unflushedBytes = 0;
+          lastFlushNanos = ticker.nanoTime();
         }
       }
       // Must flush at least once, even if there were no writes.
-      if (i != 0 || !flushedOnce) {
+      if (unflushedCommands != 0 || !flushedOnce) {
         PerfMark.startTask("WriteQueue.flush1");
         try {
           channel.flush();
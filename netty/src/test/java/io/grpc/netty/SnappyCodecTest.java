@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.netty;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.SnappyFrameDecoder;
+import io.netty.handler.codec.compression.SnappyFrameEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SnappyCodec}. */
+@RunWith(JUnit4.class)
+public class SnappyCodecTest {
+  private final SnappyCodec codec = new SnappyCodec();
+
+  @Test
+  public void messageEncoding() {
+    assertEquals("snappy", codec.getMessageEncoding());
+  }
+
+  @Test
+  public void roundTrip_empty() throws Exception {
+    assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+  }
+
+  @Test
+  public void roundTrip_small() throws Exception {
+    byte[] data = "hello".getBytes(Charsets.US_ASCII);
+    assertArrayEquals(data, decompress(compress(data)));
+  }
+
+  @Test
+  public void roundTrip_compressibleSpanningChunks() throws Exception {
+    byte[] data = compressibleBytes(200 * 1024);
+    byte[] compressed = compress(data);
+    assertThat(compressed.length).isLessThan(data.length / 2);
+    assertArrayEquals(data, decompress(compressed));
+  }
+
+  @Test
+  public void roundTrip_incompressible() throws Exception {
+    byte[] data = new byte[100 * 1024];
+    new Random(1).nextBytes(data);
+    assertArrayEquals(data, decompress(compress(data)));
+  }
+
+  @Test
+  public void roundTrip_singleByteWrites() throws Exception {
+    byte[] data = compressibleBytes(40 * 1024);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    OutputStream os = codec.compress(baos);
+    for (byte b : data) {
+      os.write(b);
+    }
+    os.close();
+    InputStream is = codec.decompress(new ByteArrayInputStream(baos.toByteArray()));
+    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+    int b;
+    while ((b = is.read()) != -1) {
+      decompressed.write(b);
+    }
+    assertArrayEquals(data, decompressed.toByteArray());
+  }
+
+  @Test
+  public void decompress_nettyFrameEncoderOutput() throws Exception {
+    byte[] data = compressibleBytes(100 * 1024);
+    EmbeddedChannel channel = new EmbeddedChannel(new SnappyFrameEncoder());
+    channel.writeOutbound(Unpooled.wrappedBuffer(data));
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    ByteBuf buf;
+    while ((buf = channel.readOutbound()) != null) {
+      buf.readBytes(encoded, buf.readableBytes());
+      buf.release();
+    }
+    channel.finish();
+    assertArrayEquals(data, decompress(encoded.toByteArray()));
+  }
+
+  @Test
+  public void compress_readableByNettyFrameDecoder() throws Exception {
+    byte[] data = compressibleBytes(100 * 1024);
+    EmbeddedChannel channel = new EmbeddedChannel(new SnappyFrameDecoder(true));
+    channel.writeInbound(Unpooled.wrappedBuffer(compress(data)));
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    ByteBuf buf;
+    while ((buf = channel.readInbound()) != null) {
+      buf.readBytes(decoded, buf.readableBytes());
+      buf.release();
+    }
+    channel.finish();
+    assertArrayEquals(data, decoded.toByteArray());
+  }
+
+  @Test
+  public void decompress_checksumMismatch() throws Exception {
+    byte[] compressed = compress(compressibleBytes(1024));
+    // First byte of the first chunk's checksum, right after the stream identifier and header.
+    compressed[14] ^= 1;
+    try {
+      decompress(compressed);
+      fail("Expected exception");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("checksum");
+    }
+  }
+
+  @Test
+  public void decompress_missingStreamIdentifier() throws Exception {
+    byte[] compressed = compress(compressibleBytes(1024));
+    byte[] withoutIdentifier = new byte[compressed.length - 10];
+    System.arraycopy(compressed, 10, withoutIdentifier, 0, withoutIdentifier.length);
+    try {
+      decompress(withoutIdentifier);
+      fail("Expected exception");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("identifier");
+    }
+  }
+
+  @Test
+  public void decompress_truncated() throws Exception {
+    byte[] compressed = compress(compressibleBytes(1024));
+    byte[] truncated = new byte[compressed.length - 1];
+    System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+    try {
+      decompress(truncated);
+      fail("Expected exception");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+
+  private byte[] compress(byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    OutputStream os = codec.compress(baos);
+    os.write(data);
+    os.close();
+    return baos.toByteArray();
+  }
+
+  private byte[] decompress(byte[] data) throws IOException {
+    InputStream is = codec.decompress(new ByteArrayInputStream(data));
+    try {
+      return ByteStreams.toByteArray(is);
+    } finally {
+      is.close();
+    }
+  }
+
+  private static byte[] compressibleBytes(int length) {
+    String[] words = {"grpc ", "snappy ", "chunk ", "stream ", "message ", "frame "};
+    Random random = new Random(1);
+    StringBuilder sb = new StringBuilder(length + 16);
+    while (sb.length() < length) {
+      sb.append(words[random.nextInt(words.length)]);
+    }
+    sb.setLength(length);
+    return sb.toString().getBytes(Charsets.US_ASCII);
+  }
+}
@@ -21,11 +21,14 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.grpc.netty.KeepAliveEnforcer.Ticker;
 import io.grpc.netty.WriteQueue.QueuedCommand;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelPromise;
@@ -58,6 +61,7 @@ public class WriteQueueTest {
   @Mock
   public ChannelPromise promise;
 
+  private final FakeTicker ticker = new FakeTicker();
   private long writeCalledNanos;
   private long flushCalledNanos = writeCalledNanos;
 
@@ -131,9 +135,57 @@ public class WriteQueueTest {
   }
 
   @Test
-  public void maxWritesBeforeFlushShouldBeEnforced() {
-    WriteQueue queue = new WriteQueue(channel);
-    int writes = WriteQueue.DEQUE_CHUNK_SIZE + 10;
+  public void manySmallWritesShouldBeCoalesced() {
+    WriteQueue queue = new WriteQueue(channel, ticker);
+    int writes = 10 * WriteQueue.CLOCK_CHECK_INTERVAL;
+    for (int i = 0; i < writes; i++) {
+      queue.enqueue(new CuteCommand(), false);
+    }
+    queue.scheduleFlush();
+
+    verify(channel, times(writes)).write(isA(QueuedCommand.class), eq(promise));
+    verify(channel).flush();
+  }
+
+  @Test
+  public void flushAfterByteThresholdWhenWritable() {
+    when(channel.isWritable()).thenReturn(true);
+    WriteQueue queue = new WriteQueue(channel, ticker);
+    for (int i = 0; i < 3; i++) {
+      queue.enqueue(newFrame(WriteQueue.FLUSH_BYTES_THRESHOLD / 2), false);
+    }
+    queue.scheduleFlush();
+
+    verify(channel, times(3)).write(isA(SendGrpcFrameCommand.class), eq(promise));
+    verify(channel, times(2)).flush();
+  }
+
+  @Test
+  public void byteThresholdIgnoredWhileNotWritable() {
+    when(channel.isWritable()).thenReturn(false);
+    WriteQueue queue = new WriteQueue(channel, ticker);
+    for (int i = 0; i < 3; i++) {
+      queue.enqueue(newFrame(WriteQueue.FLUSH_BYTES_THRESHOLD / 2), false);
+    }
+    queue.scheduleFlush();
+
+    verify(channel, times(3)).write(isA(SendGrpcFrameCommand.class), eq(promise));
+    verify(channel).flush();
+  }
+
+  @Test
+  public void maxFlushDelayShouldBeEnforced() {
+    final long writeNanos = WriteQueue.MAX_FLUSH_DELAY_NANOS / WriteQueue.CLOCK_CHECK_INTERVAL + 1;
+    when(channel.write(any(QueuedCommand.class), eq(promise))).thenAnswer(
+        new Answer<ChannelFuture>() {
+          @Override
+          public ChannelFuture answer(InvocationOnMock invocation) {
+            ticker.nanos += writeNanos;
+            return promise;
+          }
+        });
+    WriteQueue queue = new WriteQueue(channel, ticker);
+    int writes = WriteQueue.CLOCK_CHECK_INTERVAL + 10;
     for (int i = 0; i < writes; i++) {
       queue.enqueue(new CuteCommand(), false);
     }
@@ -190,7 +242,7 @@ public class WriteQueueTest {
 
     flusher.start();
     flusherStarted.await();
-    int writes = 10 * WriteQueue.DEQUE_CHUNK_SIZE;
+    int writes = 100 * WriteQueue.CLOCK_CHECK_INTERVAL;
     for (int i = 0; i < writes; i++) {
       queue.enqueue(new CuteCommand(), false);
     }
@@ -201,7 +253,21 @@ public class WriteQueueTest {
     verify(channel, times(writes)).write(isA(CuteCommand.class), eq(promise));
   }
 
+  private SendGrpcFrameCommand newFrame(int size) {
+    return new SendGrpcFrameCommand(
+        mock(StreamIdHolder.class), Unpooled.wrappedBuffer(new byte[size]), false);
+  }
+
   static class CuteCommand extends WriteQueue.AbstractQueuedCommand {
 
   }
+
+  private static final class FakeTicker implements Ticker {
+    long nanos;
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+  }
 }
@@ -17,6 +17,7 @@
 package io.grpc.okhttp;
 
 import io.grpc.internal.WritableBuffer;
+import java.nio.ByteBuffer;
 import okio.Buffer;
 
 class OkHttpWritableBuffer implements WritableBuffer {
@@ -54,6 +55,21 @@ class OkHttpWritableBuffer implements WritableBuffer {
     return readableBytes;
   }
 
+  @Override
+  public boolean byteBufferSupported() {
+    return false;
+  }
+
+  @Override
+  public ByteBuffer getByteBuffer() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void advanceWriteIndex(int length) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void release() {
   }
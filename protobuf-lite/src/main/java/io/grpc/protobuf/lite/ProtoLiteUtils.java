@@ -25,6 +25,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
 import io.grpc.ExperimentalApi;
+import io.grpc.HasByteBuffer;
 import io.grpc.KnownLength;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor.Marshaller;
@@ -35,6 +36,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Utility methods for using protobuf with grpc.
@@ -173,7 +179,9 @@ public final class ProtoLiteUtils {
       try {
         if (stream instanceof KnownLength) {
           int size = stream.available();
-          if (size > 0 && size <= DEFAULT_MAX_MESSAGE_SIZE) {
+          // Parse directly from the buffers backing the stream if possible, without a copy.
+          cis = size > 0 ? newZeroCopyInputStream(stream, size) : null;
+          if (cis == null && size > 0 && size <= DEFAULT_MAX_MESSAGE_SIZE) {
             Reference<byte[]> ref;
             // buf should not be used after this method has returned.
             byte[] buf;
@@ -219,6 +227,49 @@ public final class ProtoLiteUtils {
       }
     }
 
+    /**
+     * Returns a {@link CodedInputStream} reading directly from the {@link ByteBuffer}s backing
+     * {@code stream}, or {@code null} if the stream does not expose its buffers in a form protobuf
+     * can decode without copying. On success all {@code size} bytes of {@code stream} have been
+     * skipped; the stream is marked beforehand so that the skipped buffers stay valid until the
+     * stream is closed.
+     */
+    @Nullable
+    private static CodedInputStream newZeroCopyInputStream(InputStream stream, int size)
+        throws IOException {
+      if (!(stream instanceof HasByteBuffer)
+          || !((HasByteBuffer) stream).byteBufferSupported()
+          || !stream.markSupported()) {
+        return null;
+      }
+      stream.mark(size);
+      List<ByteBuffer> buffers = new ArrayList<>(1);
+      int remaining = size;
+      while (remaining > 0) {
+        ByteBuffer buffer = ((HasByteBuffer) stream).getByteBuffer();
+        // Protobuf only decodes heap buffers in place when there is a single one. Anything else
+        // would be streamed through an intermediate copy, which is no better than the array path.
+        if (buffer == null
+            || !buffer.hasRemaining()
+            || (!buffer.isDirect() && (!buffers.isEmpty() || buffer.remaining() < remaining))) {
+          stream.reset();
+          return null;
+        }
+        int length = Math.min(buffer.remaining(), remaining);
+        ((Buffer) buffer).limit(buffer.position() + length);
+        buffers.add(buffer);
+        remaining -= length;
+        if (stream.skip(length) != length) {
+          stream.reset();
+          return null;
+        }
+      }
+      if (buffers.size() == 1) {
+        return CodedInputStream.newInstance(buffers.get(0));
+      }
+      return CodedInputStream.newInstance(buffers);
+    }
+
     private T parseFrom(CodedInputStream stream) throws InvalidProtocolBufferException {
       T message = parser.parseFrom(stream, globalRegistry);
       try {
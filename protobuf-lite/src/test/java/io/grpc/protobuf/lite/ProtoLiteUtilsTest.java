@@ -28,6 +28,7 @@ import com.google.protobuf.Empty;
 import com.google.protobuf.Enum;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Type;
+import io.grpc.ByteBufferDrainable;
 import io.grpc.Drainable;
 import io.grpc.KnownLength;
 import io.grpc.Metadata;
@@ -35,11 +36,15 @@ import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.MethodDescriptor.PrototypeMarshaller;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.internal.CompositeReadableBuffer;
 import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.ReadableBuffers;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
@@ -191,6 +196,37 @@ public class ProtoLiteUtilsTest {
     assertEquals(0, is.available());
   }
 
+  @Test
+  public void testDrainToByteBuffer_all() throws Exception {
+    byte[] golden = ByteStreams.toByteArray(marshaller.stream(proto));
+    InputStream is = marshaller.stream(proto);
+    ByteBuffer target = ByteBuffer.allocateDirect(golden.length + 1);
+    target.put((byte) 7);
+    int drained = ((ByteBufferDrainable) is).drainTo(target);
+    assertEquals(golden.length, drained);
+    assertEquals(golden.length + 1, target.position());
+    ((Buffer) target).flip();
+    assertEquals(7, target.get());
+    byte[] written = new byte[golden.length];
+    target.get(written);
+    assertArrayEquals(golden, written);
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void testDrainToByteBuffer_partial() throws Exception {
+    byte[] golden = ByteStreams.toByteArray(marshaller.stream(proto));
+    InputStream is = marshaller.stream(proto);
+    is.read();
+    ByteBuffer target = ByteBuffer.allocate(golden.length);
+    int drained = ((ByteBufferDrainable) is).drainTo(target);
+    assertEquals(golden.length - 1, drained);
+    assertArrayEquals(
+        Arrays.copyOfRange(golden, 1, golden.length),
+        Arrays.copyOf(target.array(), golden.length - 1));
+    assertEquals(0, is.available());
+  }
+
   @Test
   public void metadataMarshaller_roundtrip() {
     Metadata.BinaryMarshaller<Type> metadataMarshaller =
@@ -227,11 +263,56 @@ public class ProtoLiteUtilsTest {
     assertEquals(expect, result);
   }
 
+  @Test
+  public void parseFromDirectByteBuffers() throws Exception {
+    InputStream is = newByteBufferStream(proto.toByteArray(), 3, true);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseFromSingleHeapByteBuffer() throws Exception {
+    InputStream is = newByteBufferStream(proto.toByteArray(), 1, false);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseFromFragmentedHeapByteBuffers() throws Exception {
+    InputStream is = newByteBufferStream(proto.toByteArray(), 3, false);
+    assertEquals(proto, marshaller.parse(is));
+    assertEquals(0, is.available());
+  }
+
+  @Test
+  public void parseFromDirectByteBuffers_invalid() throws Exception {
+    InputStream is = newByteBufferStream(new byte[] {-127}, 1, true);
+    try {
+      marshaller.parse(is);
+      fail("Expected exception");
+    } catch (StatusRuntimeException ex) {
+      assertEquals(Status.Code.INTERNAL, ex.getStatus().getCode());
+    }
+  }
+
   @Test
   public void defaultMaxMessageSize() {
     assertEquals(GrpcUtil.DEFAULT_MAX_MESSAGE_SIZE, ProtoLiteUtils.DEFAULT_MAX_MESSAGE_SIZE);
   }
 
+  private static InputStream newByteBufferStream(byte[] bytes, int fragments, boolean direct) {
+    CompositeReadableBuffer composite = new CompositeReadableBuffer();
+    int fragmentSize = (bytes.length + fragments - 1) / fragments;
+    for (int offset = 0; offset < bytes.length; offset += fragmentSize) {
+      int length = Math.min(fragmentSize, bytes.length - offset);
+      ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+      buffer.put(bytes, offset, length);
+      ((Buffer) buffer).flip();
+      composite.addBuffer(ReadableBuffers.wrap(buffer));
+    }
+    return ReadableBuffers.openStream(composite, true);
+  }
+
   private static class CustomKnownLengthInputStream extends InputStream implements KnownLength {
     private int position = 0;
     private byte[] source;
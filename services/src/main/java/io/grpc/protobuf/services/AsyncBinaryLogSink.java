@@ -0,0 +1,312 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ExperimentalApi;
+import io.grpc.internal.GrpcUtil;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BinaryLogSink} that takes the messages off the RPC threads. {@link #write} only puts
+ * the message in a bounded lock-free queue, and a dedicated writer thread passes the queued
+ * messages in batches to the destination sink, by default rotating segment files in the JVM's
+ * temp dir. When the writer falls behind and the queue is full, messages are dropped rather than
+ * slowing down the RPCs; {@link #getDroppedCount} tells how many.
+ *
+ * <p>To reduce the volume, log a sample of the calls with the {@code s} option of the binary log
+ * config, for example {@code "*{h;m:256;s:1}"} for 1% of the calls.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/4017")
+public final class AsyncBinaryLogSink implements BinaryLogSink {
+  private static final Logger logger = Logger.getLogger(AsyncBinaryLogSink.class.getName());
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final BinaryLogSink sink;
+  private final RingBuffer queue;
+  private final Thread writerThread;
+  private final AtomicLong writtenCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private volatile boolean closed;
+  private volatile boolean writerParked;
+  @Nullable
+  private IOException closeException;
+
+  private AsyncBinaryLogSink(Builder builder) throws IOException {
+    BinaryLogSink sink = builder.sink;
+    if (sink == null) {
+      sink = new SegmentFileSink(
+          builder.directory != null
+              ? builder.directory : new File(System.getProperty("java.io.tmpdir")),
+          builder.maxSegmentBytes,
+          builder.maxSegments);
+    }
+    this.sink = sink;
+    this.queue = new RingBuffer(builder.queueCapacity);
+    this.writerThread =
+        GrpcUtil.getThreadFactory("grpc-binlog-writer-%d", true).newThread(new Writer());
+    writerThread.start();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Queues the message to be written, or drops it if the queue is full or the sink closed. */
+  @Override
+  public void write(MessageLite message) {
+    if (closed || !queue.offer(message)) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    if (writerParked) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  /** Returns the number of messages passed to the destination sink so far. */
+  public long getWrittenCount() {
+    return writtenCount.get();
+  }
+
+  /**
+   * Returns the number of messages dropped so far, because the queue was full, the sink closed or
+   * the destination sink failed.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * Writes out the messages already queued and closes the destination sink. Blocks until the
+   * writer thread is done.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    LockSupport.unpark(writerThread);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        writerThread.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    // The join orders the writer's store before this read.
+    if (closeException != null) {
+      throw closeException;
+    }
+  }
+
+  private final class Writer implements Runnable {
+    boolean failed;
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          // Read before draining, so that a message queued before close() is not left behind.
+          boolean wasClosed = closed;
+          if (drainBatch() > 0) {
+            continue;
+          }
+          if (wasClosed) {
+            break;
+          }
+          // Publish the intent to park before the last look at the queue; write() does the
+          // opposite, so one of them sees the other.
+          writerParked = true;
+          if (queue.isEmpty() && !closed) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+          }
+          writerParked = false;
+        }
+      } finally {
+        try {
+          sink.close();
+        } catch (IOException e) {
+          closeException = e;
+        }
+      }
+    }
+
+    private int drainBatch() {
+      int count = 0;
+      MessageLite message;
+      while (count < queue.capacity() && (message = queue.poll()) != null) {
+        count++;
+        if (failed) {
+          droppedCount.incrementAndGet();
+          continue;
+        }
+        try {
+          sink.write(message);
+          writtenCount.incrementAndGet();
+        } catch (RuntimeException e) {
+          logger.log(Level.SEVERE, "Caught exception while writing, dropping further messages", e);
+          droppedCount.incrementAndGet();
+          failed = true;
+        }
+      }
+      if (count > 0 && !failed && sink instanceof Flushable) {
+        try {
+          ((Flushable) sink).flush();
+        } catch (IOException e) {
+          logger.log(Level.SEVERE, "Caught exception while flushing, dropping further messages", e);
+          failed = true;
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * A bounded multi-producer single-consumer queue. Producers claim a slot with a CAS on the
+   * producer index and then publish the message in it; the consumer waits for a claimed slot to
+   * be published.
+   */
+  private static final class RingBuffer {
+    private final AtomicReferenceArray<MessageLite> slots;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    RingBuffer(int capacity) {
+      int size = Integer.highestOneBit(capacity - 1) << 1;
+      slots = new AtomicReferenceArray<>(Math.max(size, 2));
+      mask = slots.length() - 1;
+    }
+
+    int capacity() {
+      return slots.length();
+    }
+
+    boolean offer(MessageLite message) {
+      while (true) {
+        long index = producerIndex.get();
+        if (index - consumerIndex.get() >= slots.length()) {
+          return false;
+        }
+        if (producerIndex.compareAndSet(index, index + 1)) {
+          slots.lazySet((int) index & mask, message);
+          return true;
+        }
+      }
+    }
+
+    /** Only called by the consumer. */
+    @Nullable
+    MessageLite poll() {
+      long index = consumerIndex.get();
+      if (index == producerIndex.get()) {
+        return null;
+      }
+      int slot = (int) index & mask;
+      MessageLite message;
+      while ((message = slots.get(slot)) == null) {
+        // Claimed but not yet published
+        Thread.yield();
+      }
+      slots.lazySet(slot, null);
+      consumerIndex.lazySet(index + 1);
+      return message;
+    }
+
+    boolean isEmpty() {
+      return consumerIndex.get() == producerIndex.get();
+    }
+  }
+
+  /** Builder for {@link AsyncBinaryLogSink}. */
+  public static final class Builder {
+    private BinaryLogSink sink;
+    private File directory;
+    private long maxSegmentBytes = 64 * 1024 * 1024;
+    private int maxSegments = 10;
+    private int queueCapacity = 8192;
+
+    private Builder() {}
+
+    /**
+     * Sets the sink the messages are written to instead of the segment files. It is only called
+     * from the writer thread, and flushed after each batch if it is {@link Flushable}. Once it
+     * throws from a write or a flush, the remaining messages are dropped. Ownership is transferred
+     * to the built sink.
+     */
+    public Builder setSink(BinaryLogSink sink) {
+      this.sink = checkNotNull(sink, "sink");
+      return this;
+    }
+
+    /** Sets the directory of the segment files. Defaults to the JVM's temp dir. */
+    public Builder setDirectory(File directory) {
+      this.directory = checkNotNull(directory, "directory");
+      return this;
+    }
+
+    /** Sets the size at which a new segment file is started. Defaults to 64 MiB. */
+    public Builder setMaxSegmentBytes(long maxSegmentBytes) {
+      checkArgument(maxSegmentBytes > 0, "maxSegmentBytes must be positive");
+      this.maxSegmentBytes = maxSegmentBytes;
+      return this;
+    }
+
+    /** Sets the number of segment files kept; older ones are deleted. Defaults to 10. */
+    public Builder setMaxSegments(int maxSegments) {
+      checkArgument(maxSegments > 0, "maxSegments must be positive");
+      this.maxSegments = maxSegments;
+      return this;
+    }
+
+    /**
+     * Sets the number of messages that can be waiting for the writer thread, rounded up to a
+     * power of two. Defaults to 8192.
+     */
+    public Builder setQueueCapacity(int queueCapacity) {
+      checkArgument(
+          queueCapacity > 0 && queueCapacity <= 1 << 30, "queueCapacity out of range");
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * Builds the sink and starts its writer thread.
+     *
+     * @throws IOException if the first segment file cannot be created.
+     */
+    public AsyncBinaryLogSink build() throws IOException {
+      return new AsyncBinaryLogSink(this);
+    }
+  }
+}
@@ -63,6 +63,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -87,10 +88,24 @@ final class BinlogHelper {
 
   @VisibleForTesting
   final SinkWriter writer;
+  /** The fraction of the calls that are logged, in (0, 1]. */
+  @VisibleForTesting
+  final double samplingRate;
 
   @VisibleForTesting
   BinlogHelper(SinkWriter writer) {
+    this(writer, 1);
+  }
+
+  @VisibleForTesting
+  BinlogHelper(SinkWriter writer, double samplingRate) {
     this.writer = writer;
+    this.samplingRate = samplingRate;
+  }
+
+  /** Decides whether a new call is logged. Either all or none of a call's events are logged. */
+  private boolean isSampled() {
+    return samplingRate >= 1 || ThreadLocalRandom.current().nextDouble() < samplingRate;
   }
 
   // TODO(zpencer): move proto related static helpers into this class
@@ -397,6 +412,9 @@ final class BinlogHelper {
       @Override
       public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
           final MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (!isSampled()) {
+          return next.newCall(method, callOptions);
+        }
         final AtomicLong seq = new AtomicLong(1);
         final String methodName = method.getFullMethodName();
         final String authority = next.authority();
@@ -502,6 +520,9 @@ final class BinlogHelper {
           final ServerCall<ReqT, RespT> call,
           Metadata headers,
           ServerCallHandler<ReqT, RespT> next) {
+        if (!isSampled()) {
+          return next.startCall(call, headers);
+        }
         final AtomicLong seq = new AtomicLong(1);
         SocketAddress peer = getPeerSocket(call.getAttributes());
         String methodName = call.getMethodDescriptor().getFullMethodName();
@@ -713,6 +734,10 @@ final class BinlogHelper {
      *
      * <p>{@code {h(:\d+)?}, {m(:\d+)?}, {h(:\d+)?,m(:\d+)?}}
      *
+     * <p>Any of the forms may be followed by {@code s:<percent>}, for example {@code {h;m;s:1.5}},
+     * to log only that percentage of the calls. A sampling option alone, {@code {s:<percent>}},
+     * logs the sampled calls in full.
+     *
      * <p>If the {@code logConfig} is null, the returned binlog will have a limit of
      * Integer.MAX_VALUE.
      */
@@ -725,27 +750,35 @@ final class BinlogHelper {
                 sink, TimeProvider.SYSTEM_TIME_PROVIDER, Integer.MAX_VALUE, Integer.MAX_VALUE));
       }
       try {
-        final int maxHeaderBytes;
-        final int maxMsgBytes;
-        String[] parts = logConfig.split(";", 2);
-        if (parts.length == 2) {
-          if (!(parts[0].startsWith("h") && parts[1].startsWith("m"))) {
+        int maxHeaderBytes = 0;
+        int maxMsgBytes = 0;
+        boolean hasLimits = false;
+        double samplingRate = 1;
+        // The options must come in the order h, m, s
+        char lastOption = 0;
+        for (String part : logConfig.split(";", -1)) {
+          char option = part.isEmpty() ? 0 : part.charAt(0);
+          if (option == 'h' && lastOption == 0) {
+            maxHeaderBytes = optionalInt(part.substring(1));
+            hasLimits = true;
+          } else if (option == 'm' && (lastOption == 0 || lastOption == 'h')) {
+            maxMsgBytes = optionalInt(part.substring(1));
+            hasLimits = true;
+          } else if (option == 's' && lastOption != 's') {
+            samplingRate = percentage(part.substring(1)) / 100;
+          } else {
             throw new IllegalArgumentException("Illegal log config pattern");
           }
-          maxHeaderBytes = optionalInt(parts[0].substring(1));
-          maxMsgBytes = optionalInt(parts[1].substring(1));
-        } else if (parts[0].startsWith("h")) {
-          maxHeaderBytes = optionalInt(parts[0].substring(1));
-          maxMsgBytes = 0;
-        } else if (parts[0].startsWith("m")) {
-          maxHeaderBytes = 0;
-          maxMsgBytes = optionalInt(parts[0].substring(1));
-        } else {
-          throw new IllegalArgumentException("Illegal log config pattern");
+          lastOption = option;
+        }
+        if (!hasLimits) {
+          maxHeaderBytes = Integer.MAX_VALUE;
+          maxMsgBytes = Integer.MAX_VALUE;
         }
         return new BinlogHelper(
             new SinkWriterImpl(
-                sink, TimeProvider.SYSTEM_TIME_PROVIDER, maxHeaderBytes, maxMsgBytes));
+                sink, TimeProvider.SYSTEM_TIME_PROVIDER, maxHeaderBytes, maxMsgBytes),
+            samplingRate);
       } catch (NumberFormatException e) {
         throw new IllegalArgumentException("Illegal log config pattern");
       }
@@ -774,6 +807,26 @@ final class BinlogHelper {
       return Integer.parseInt(s);
     }
 
+    /** Parses the percentage of the form ":12" or ":0.5", which must be in (0, 100]. */
+    static double percentage(String s) {
+      if (!s.startsWith(":")) {
+        throw new IllegalArgumentException("Illegal log config pattern");
+      }
+      s = s.substring(1);
+      int dot = s.indexOf('.');
+      if (dot == -1) {
+        checkDigits(s);
+      } else {
+        checkDigits(s.substring(0, dot));
+        checkDigits(s.substring(dot + 1));
+      }
+      double percentage = Double.parseDouble(s);
+      if (!(percentage > 0 && percentage <= 100)) {
+        throw new IllegalArgumentException("Illegal log config pattern");
+      }
+      return percentage;
+    }
+
     /**
      * Returns true if the input string is a glob of the form: {@code <package-service>/*}.
      */
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ExperimentalApi;
+import io.grpc.binarylog.v1.GrpcLogEntry;
+import io.grpc.binarylog.v1.GrpcLogEntry.EventType;
+import io.grpc.util.CompressionDictionaryTrainer;
+import io.grpc.util.DeflateDictionaryCodec;
+
+/**
+ * A {@link BinaryLogSink} that feeds the logged messages to a {@link
+ * CompressionDictionaryTrainer}, to build a {@link DeflateDictionaryCodec} dictionary from real
+ * traffic. Only complete message payloads are used; headers, trailers and payloads truncated by
+ * the binary log config are ignored. Use a config whose {@code m} limit covers the messages of
+ * interest, for example {@code "package.Service/Method{m:1024}"}.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/4017")
+public final class DictionaryTrainingSink implements BinaryLogSink {
+  private final CompressionDictionaryTrainer trainer;
+
+  public DictionaryTrainingSink(CompressionDictionaryTrainer trainer) {
+    this.trainer = checkNotNull(trainer, "trainer");
+  }
+
+  @Override
+  public void write(MessageLite message) {
+    if (!(message instanceof GrpcLogEntry)) {
+      return;
+    }
+    GrpcLogEntry entry = (GrpcLogEntry) message;
+    if (entry.getType() != EventType.EVENT_TYPE_CLIENT_MESSAGE
+        && entry.getType() != EventType.EVENT_TYPE_SERVER_MESSAGE) {
+      return;
+    }
+    if (entry.getPayloadTruncated() || !entry.hasMessage()) {
+      return;
+    }
+    trainer.addSample(entry.getMessage().getData().toByteArray());
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the proto messages with {@link MessageLite#writeDelimitedTo(OutputStream)} to a series of
+ * segment files with a prefix of BINARY_INFO, starting a new segment when the current one would
+ * exceed the size limit and deleting the oldest segments beyond the count limit. Writes are
+ * buffered until {@link #flush}, so that a batch of messages costs a single write to the file.
+ * If a write fails, the sink closes itself and throws, and later writes are ignored.
+ *
+ * <p>Not thread-safe; {@link AsyncBinaryLogSink} calls it from its writer thread only.
+ */
+final class SegmentFileSink implements BinaryLogSink, Flushable {
+  private static final Logger logger = Logger.getLogger(SegmentFileSink.class.getName());
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final long maxSegmentBytes;
+  private final int maxSegments;
+  private final ArrayDeque<File> segments = new ArrayDeque<>();
+  private int segmentIndex;
+  private OutputStream out;
+  private long segmentBytes;
+  private boolean closed;
+
+  SegmentFileSink(File directory, long maxSegmentBytes, int maxSegments) throws IOException {
+    checkArgument(maxSegmentBytes > 0, "maxSegmentBytes must be positive");
+    checkArgument(maxSegments > 0, "maxSegments must be positive");
+    this.directory = checkNotNull(directory, "directory");
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxSegments = maxSegments;
+    startSegment();
+  }
+
+  @VisibleForTesting
+  List<File> getSegments() {
+    return new ArrayList<>(segments);
+  }
+
+  /**
+   * Writes the message to the current segment.
+   *
+   * @throws IllegalStateException if the message or a new segment cannot be written, in which
+   *     case the sink is closed.
+   */
+  @Override
+  public void write(MessageLite message) {
+    if (closed) {
+      logger.log(Level.FINEST, "Attempt to write after SegmentFileSink is closed.");
+      return;
+    }
+    int size = message.getSerializedSize();
+    long bytes = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    try {
+      if (segmentBytes > 0 && segmentBytes + bytes > maxSegmentBytes) {
+        out.close();
+        startSegment();
+      }
+      message.writeDelimitedTo(out);
+      segmentBytes += bytes;
+    } catch (IOException e) {
+      closeQuietly();
+      throw new IllegalStateException("Failed to write binary log segment", e);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (!closed) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    out.close();
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Caught exception while closing", e);
+    }
+  }
+
+  private void startSegment() throws IOException {
+    File segment = File.createTempFile("BINARY_INFO." + segmentIndex++ + ".", "", directory);
+    logger.log(Level.FINE, "Writing binary logs to {0}", segment.getAbsolutePath());
+    out = new BufferedOutputStream(new FileOutputStream(segment), BUFFER_SIZE);
+    segmentBytes = 0;
+    segments.add(segment);
+    while (segments.size() > maxSegments) {
+      File oldest = segments.remove();
+      if (!oldest.delete()) {
+        logger.log(Level.WARNING, "Failed to delete binary log segment {0}", oldest);
+      }
+    }
+  }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.ExperimentalApi;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A server interceptor that limits the number of unary calls in flight, and adapts the limit to
+ * the latency it observes. Calls over the limit fail fast with {@link
+ * Status.Code#RESOURCE_EXHAUSTED} instead of queueing, with a {@code grpc-retry-pushback-ms}
+ * trailer that tells clients with a retry policy when to try again. The retry policy must list
+ * {@code RESOURCE_EXHAUSTED} as retryable for clients to act on it.
+ *
+ * <p>The limit follows the gradient between the lowest latency seen, which is the latency without
+ * queueing, and the recent latency. While the recent latency stays within a tolerance of the
+ * lowest, the limit grows by about its square root per window of calls; as latency rises past
+ * the tolerance, the limit shrinks in proportion, down to half per window. The lowest latency is
+ * forgotten every so often, so that a lasting change in the service's latency is picked up.
+ *
+ * <p>Latency is measured from the end of the interceptor chain to the end of the call. Register
+ * {@link #getStreamTracerFactory} with the server as well to measure from the arrival of the call
+ * instead, which also covers the time it waited for an executor thread:
+ *
+ * <pre>
+ * AdaptiveConcurrencyLimitInterceptor limiter =
+ *     AdaptiveConcurrencyLimitInterceptor.newBuilder().build();
+ * server = ServerBuilder.forPort(port)
+ *     .intercept(limiter)
+ *     .addStreamTracerFactory(limiter.getStreamTracerFactory())
+ *     ...
+ * </pre>
+ *
+ * <p>Streaming calls are not limited, since their duration says little about load.
+ */
+@ExperimentalApi("https://github.com/grpc/grpc-java/issues/6012")
+@ThreadSafe
+public final class AdaptiveConcurrencyLimitInterceptor implements ServerInterceptor {
+  @VisibleForTesting
+  static final Metadata.Key<String> RETRY_PUSHBACK_KEY =
+      Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+  /** Windows after which the lowest latency is forgotten. */
+  @VisibleForTesting
+  static final int MIN_RTT_RESET_WINDOWS = 100;
+  private static final String SERVER_WIDE = "";
+
+  private final boolean perMethod;
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double rttTolerance;
+  private final double smoothing;
+  private final int windowSize;
+  private final Deadline.Ticker ticker;
+  private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+  private final Context.Key<CallTracer> callTracerKey =
+      Context.key("adaptive-concurrency-limit-tracer");
+  private final ServerStreamTracer.Factory streamTracerFactory = new ServerStreamTracer.Factory() {
+    @Override
+    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+      return new CallTracer(ticker.nanoTime());
+    }
+  };
+
+  private AdaptiveConcurrencyLimitInterceptor(Builder builder) {
+    this.perMethod = builder.perMethod;
+    this.initialLimit = builder.initialLimit;
+    this.minLimit = builder.minLimit;
+    this.maxLimit = builder.maxLimit;
+    this.rttTolerance = builder.rttTolerance;
+    this.smoothing = builder.smoothing;
+    this.windowSize = builder.windowSize;
+    this.ticker = builder.ticker;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a tracer factory that lets the interceptor measure latency from the arrival of each
+   * call. It is optional, but when used it must be registered with the same server.
+   */
+  public ServerStreamTracer.Factory getStreamTracerFactory() {
+    return streamTracerFactory;
+  }
+
+  /**
+   * Returns the current limit of calls in flight for the given method, or for the whole server
+   * when limits are not per method.
+   */
+  public int getLimit(String fullMethodName) {
+    Limit limit = limits.get(perMethod ? fullMethodName : SERVER_WIDE);
+    return limit != null ? limit.getLimit() : initialLimit;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    MethodDescriptor<ReqT, RespT> method = call.getMethodDescriptor();
+    if (method.getType() != MethodDescriptor.MethodType.UNARY) {
+      return next.startCall(call, headers);
+    }
+    final Limit limit = getOrCreateLimit(method.getFullMethodName());
+    if (!limit.tryAcquire()) {
+      Metadata trailers = new Metadata();
+      trailers.put(RETRY_PUSHBACK_KEY, String.valueOf(limit.getPushbackMillis()));
+      call.close(
+          Status.RESOURCE_EXHAUSTED.withDescription(
+              "Concurrency limit of " + limit.getLimit() + " reached"),
+          trailers);
+      return new ServerCall.Listener<ReqT>() {};
+    }
+    CallTracer tracer = callTracerKey.get();
+    if (tracer != null) {
+      tracer.setLimit(limit);
+      return next.startCall(call, headers);
+    }
+    final long startNanos = ticker.nanoTime();
+    final AtomicBoolean released = new AtomicBoolean();
+    ServerCall<ReqT, RespT> releasingCall = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+      @Override
+      public void close(Status status, Metadata trailers) {
+        if (released.compareAndSet(false, true)) {
+          limit.release(startNanos);
+        }
+        super.close(status, trailers);
+      }
+    };
+    ServerCall.Listener<ReqT> listener;
+    try {
+      listener = next.startCall(releasingCall, headers);
+    } catch (RuntimeException e) {
+      if (released.compareAndSet(false, true)) {
+        limit.release(startNanos);
+      }
+      throw e;
+    }
+    return new SimpleForwardingServerCallListener<ReqT>(listener) {
+      @Override
+      public void onCancel() {
+        if (released.compareAndSet(false, true)) {
+          limit.release(startNanos);
+        }
+        super.onCancel();
+      }
+    };
+  }
+
+  private Limit getOrCreateLimit(String fullMethodName) {
+    String key = perMethod ? fullMethodName : SERVER_WIDE;
+    Limit limit = limits.get(key);
+    if (limit == null) {
+      limit = new Limit();
+      Limit existing = limits.putIfAbsent(key, limit);
+      if (existing != null) {
+        limit = existing;
+      }
+    }
+    return limit;
+  }
+
+  /**
+   * Times a call from its arrival, and releases its place in the limit when it ends.
+   */
+  private final class CallTracer extends ServerStreamTracer {
+    private final long startNanos;
+    @GuardedBy("this")
+    private Limit limit;
+    @GuardedBy("this")
+    private boolean closed;
+
+    CallTracer(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public Context filterContext(Context context) {
+      return context.withValue(callTracerKey, this);
+    }
+
+    synchronized void setLimit(Limit limit) {
+      if (closed) {
+        limit.release(startNanos);
+      } else {
+        this.limit = limit;
+      }
+    }
+
+    @Override
+    public synchronized void streamClosed(Status status) {
+      closed = true;
+      if (limit != null) {
+        limit.release(startNanos);
+        limit = null;
+      }
+    }
+  }
+
+  /**
+   * The limit of one method, or of the whole server.
+   */
+  private final class Limit {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit = initialLimit;
+    @GuardedBy("this")
+    private long minRttNanos;
+    @GuardedBy("this")
+    private long lastRttNanos;
+    @GuardedBy("this")
+    private int windowsSinceMinRttReset;
+    @GuardedBy("this")
+    private long windowRttSum;
+    @GuardedBy("this")
+    private int windowCount;
+    @GuardedBy("this")
+    private int windowMaxInFlight;
+
+    int getLimit() {
+      return (int) limit;
+    }
+
+    boolean tryAcquire() {
+      while (true) {
+        int current = inFlight.get();
+        if (current >= (int) limit) {
+          return false;
+        }
+        if (inFlight.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release(long startNanos) {
+      long rttNanos = ticker.nanoTime() - startNanos;
+      int current = inFlight.getAndDecrement();
+      addSample(rttNanos, current);
+    }
+
+    /**
+     * Suggests how long a rejected client should wait: about the time a call takes now.
+     */
+    synchronized long getPushbackMillis() {
+      return Math.max(1, TimeUnit.NANOSECONDS.toMillis(lastRttNanos));
+    }
+
+    private synchronized void addSample(long rttNanos, int inFlight) {
+      windowRttSum += rttNanos;
+      windowCount++;
+      windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+      if (windowCount < windowSize) {
+        return;
+      }
+      long rtt = Math.max(1, windowRttSum / windowCount);
+      int maxInFlight = windowMaxInFlight;
+      windowRttSum = 0;
+      windowCount = 0;
+      windowMaxInFlight = 0;
+      lastRttNanos = rtt;
+      if (minRttNanos == 0 || rtt < minRttNanos
+          || ++windowsSinceMinRttReset >= MIN_RTT_RESET_WINDOWS) {
+        minRttNanos = rtt;
+        windowsSinceMinRttReset = 0;
+      }
+
+      double current = limit;
+      double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRttNanos / rtt));
+      double newLimit;
+      if (gradient == 1.0 && maxInFlight < current / 2) {
+        // The calls didn't use the limit, so their latency says nothing about a higher one.
+        newLimit = current;
+      } else {
+        newLimit = current * gradient + Math.sqrt(current);
+      }
+      newLimit = current * (1 - smoothing) + newLimit * smoothing;
+      limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+  }
+
+  /**
+   * Builder for {@link AdaptiveConcurrencyLimitInterceptor}.
+   */
+  public static final class Builder {
+    private boolean perMethod;
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 1000;
+    private double rttTolerance = 1.5;
+    private double smoothing = 0.2;
+    private int windowSize = 20;
+    private Deadline.Ticker ticker = Deadline.getSystemTicker();
+
+    private Builder() {}
+
+    /**
+     * Keeps a separate limit for every method, instead of one for the whole server. Defaults to
+     * {@code false}.
+     */
+    public Builder setPerMethod(boolean perMethod) {
+      this.perMethod = perMethod;
+      return this;
+    }
+
+    /**
+     * Sets the limit to start from. Defaults to 20.
+     */
+    public Builder setInitialLimit(int initialLimit) {
+      checkArgument(initialLimit > 0, "initialLimit must be positive");
+      this.initialLimit = initialLimit;
+      return this;
+    }
+
+    /**
+     * Sets the bounds of the limit. Defaults to 4 and 1000.
+     */
+    public Builder setLimitBounds(int minLimit, int maxLimit) {
+      checkArgument(minLimit > 0, "minLimit must be positive");
+      checkArgument(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      return this;
+    }
+
+    /**
+     * Sets how many times the lowest latency the recent latency may be before the limit
+     * shrinks. Defaults to 1.5.
+     */
+    public Builder setRttTolerance(double rttTolerance) {
+      checkArgument(rttTolerance >= 1, "rttTolerance must be at least 1");
+      this.rttTolerance = rttTolerance;
+      return this;
+    }
+
+    /**
+     * Sets how far the limit moves towards the new estimate after each window, from 0 exclusive
+     * to 1. Defaults to 0.2.
+     */
+    public Builder setSmoothing(double smoothing) {
+      checkArgument(smoothing > 0 && smoothing <= 1, "smoothing must be in (0, 1]");
+      this.smoothing = smoothing;
+      return this;
+    }
+
+    /**
+     * Sets the number of calls whose average latency is compared to the lowest latency. Defaults
+     * to 20.
+     */
+    public Builder setWindowSize(int windowSize) {
+      checkArgument(windowSize > 0, "windowSize must be positive");
+      this.windowSize = windowSize;
+      return this;
+    }
+
+    @VisibleForTesting
+    Builder setTicker(Deadline.Ticker ticker) {
+      this.ticker = checkNotNull(ticker, "ticker");
+      return this;
+    }
+
+    /**
+     * Builds the interceptor. The initial limit is clamped to the limit bounds.
+     */
+    public AdaptiveConcurrencyLimitInterceptor build() {
+      initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+      return new AdaptiveConcurrencyLimitInterceptor(this);
+    }
+  }
+}
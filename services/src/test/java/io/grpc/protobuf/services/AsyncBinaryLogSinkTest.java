@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.binarylog.v1.GrpcLogEntry;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link AsyncBinaryLogSink}.
+ */
+@RunWith(JUnit4.class)
+public class AsyncBinaryLogSinkTest {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void writesToSinkInOrderAndFlushes() throws Exception {
+    RecordingSink recordingSink = new RecordingSink();
+    AsyncBinaryLogSink sink = AsyncBinaryLogSink.newBuilder().setSink(recordingSink).build();
+    for (int i = 1; i <= 1000; i++) {
+      sink.write(entry(i));
+    }
+    sink.close();
+
+    assertThat(recordingSink.messages).hasSize(1000);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(recordingSink.messages.get(i)).isEqualTo(entry(i + 1));
+    }
+    assertThat(recordingSink.flushes).isGreaterThan(0);
+    assertThat(recordingSink.closed).isTrue();
+    assertThat(sink.getWrittenCount()).isEqualTo(1000);
+    assertThat(sink.getDroppedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void dropsWhenQueueFull() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    RecordingSink blockingSink = new RecordingSink() {
+      @Override
+      public synchronized void write(MessageLite message) {
+        super.write(message);
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    AsyncBinaryLogSink sink =
+        AsyncBinaryLogSink.newBuilder().setSink(blockingSink).setQueueCapacity(2).build();
+    sink.write(entry(1));
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // The writer is stuck on the first message, and the queue holds two more.
+    sink.write(entry(2));
+    sink.write(entry(3));
+    sink.write(entry(4));
+    assertThat(sink.getDroppedCount()).isEqualTo(1);
+
+    release.countDown();
+    sink.close();
+    assertThat(blockingSink.messages).containsExactly(entry(1), entry(2), entry(3)).inOrder();
+    assertThat(sink.getWrittenCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void writeAfterCloseIsDropped() throws Exception {
+    RecordingSink recordingSink = new RecordingSink();
+    AsyncBinaryLogSink sink = AsyncBinaryLogSink.newBuilder().setSink(recordingSink).build();
+    sink.close();
+    sink.write(entry(1));
+
+    assertThat(recordingSink.messages).isEmpty();
+    assertThat(sink.getDroppedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void writesToSegmentFiles() throws Exception {
+    File directory = tempFolder.newFolder();
+    AsyncBinaryLogSink sink = AsyncBinaryLogSink.newBuilder().setDirectory(directory).build();
+    sink.write(entry(1));
+    sink.write(entry(2));
+    sink.close();
+
+    File[] files = directory.listFiles();
+    assertThat(files).hasLength(1);
+    DataInputStream input = new DataInputStream(new FileInputStream(files[0]));
+    try {
+      assertThat(GrpcLogEntry.parseDelimitedFrom(input)).isEqualTo(entry(1));
+      assertThat(GrpcLogEntry.parseDelimitedFrom(input)).isEqualTo(entry(2));
+      assertThat(input.read()).isEqualTo(-1);
+    } finally {
+      input.close();
+    }
+  }
+
+  @Test
+  public void dropsRemainingMessagesWhenSegmentCannotBeWritten() throws Exception {
+    File directory = tempFolder.newFolder();
+    AsyncBinaryLogSink sink = AsyncBinaryLogSink.newBuilder()
+        .setDirectory(directory)
+        .setMaxSegmentBytes(1)
+        .build();
+    // Starting the next segment throws an IOException once the directory is gone.
+    for (File file : directory.listFiles()) {
+      assertThat(file.delete()).isTrue();
+    }
+    assertThat(directory.delete()).isTrue();
+
+    sink.write(entry(1));
+    sink.write(entry(2));
+    sink.write(entry(3));
+    sink.close();
+
+    assertThat(sink.getWrittenCount()).isEqualTo(1);
+    assertThat(sink.getDroppedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void dropsRemainingMessagesWhenSinkThrows() throws Exception {
+    RecordingSink failingSink = new RecordingSink() {
+      @Override
+      public synchronized void write(MessageLite message) {
+        if (!messages.isEmpty()) {
+          throw new IllegalStateException("disk full");
+        }
+        super.write(message);
+      }
+    };
+    AsyncBinaryLogSink sink = AsyncBinaryLogSink.newBuilder().setSink(failingSink).build();
+    for (int i = 1; i <= 10; i++) {
+      sink.write(entry(i));
+    }
+    sink.close();
+
+    assertThat(failingSink.messages).containsExactly(entry(1));
+    assertThat(sink.getWrittenCount()).isEqualTo(1);
+    assertThat(sink.getDroppedCount()).isEqualTo(9);
+  }
+
+  private static GrpcLogEntry entry(long callId) {
+    return GrpcLogEntry.newBuilder().setCallId(callId).build();
+  }
+
+  private static class RecordingSink implements BinaryLogSink, Flushable {
+    final List<MessageLite> messages = new ArrayList<>();
+    int flushes;
+    boolean closed;
+
+    @Override
+    public synchronized void write(MessageLite message) {
+      messages.add(message);
+    }
+
+    @Override
+    public synchronized void flush() {
+      flushes++;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+    }
+  }
+}
@@ -239,6 +239,27 @@ public final class BinlogHelperTest {
         makeOptions("h:256;m"));
   }
 
+  @Test
+  public void createLogFromOptionString_sampling() throws Exception {
+    assertThat(makeOptions(null).samplingRate).isEqualTo(1.0);
+    assertThat(makeOptions("h;m").samplingRate).isEqualTo(1.0);
+
+    BinlogHelper sampled = makeOptions("h:256;m:256;s:10");
+    assertSameLimits(BOTH_256, sampled);
+    assertThat(sampled.samplingRate).isWithin(1e-9).of(0.1);
+
+    sampled = makeOptions("m:256;s:0.5");
+    assertSameLimits(MSG_256, sampled);
+    assertThat(sampled.samplingRate).isWithin(1e-9).of(0.005);
+
+    // Sampling alone logs the sampled calls in full
+    sampled = makeOptions("s:100");
+    assertSameLimits(BOTH_FULL, sampled);
+    assertThat(sampled.samplingRate).isEqualTo(1.0);
+
+    assertThat(makeLog("p.s/m{h;s:25}", "p.s/m").samplingRate).isWithin(1e-9).of(0.25);
+  }
+
   private void assertIllegalPatternDetected(String perSvcOrMethodConfig) {
     try {
       FactoryImpl.createBinaryLog(sink, perSvcOrMethodConfig);
@@ -282,6 +303,15 @@ public final class BinlogHelperTest {
     assertIllegalPatternDetected("m:123;h:123");
     // NumberFormatException
     assertIllegalPatternDetected("h:99999999999999");
+    // The sampling percentage comes last, and must be in (0, 100]
+    assertIllegalPatternDetected("s:10;h");
+    assertIllegalPatternDetected("h;s");
+    assertIllegalPatternDetected("h;s:");
+    assertIllegalPatternDetected("h;s:0");
+    assertIllegalPatternDetected("h;s:101");
+    assertIllegalPatternDetected("h;s:1e1");
+    assertIllegalPatternDetected("h;s:-1");
+    assertIllegalPatternDetected("h;s:10;s:10");
   }
 
   @Test
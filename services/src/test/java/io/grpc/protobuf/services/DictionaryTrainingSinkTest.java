@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.protobuf.ByteString;
+import io.grpc.binarylog.v1.GrpcLogEntry;
+import io.grpc.binarylog.v1.GrpcLogEntry.EventType;
+import io.grpc.binarylog.v1.Message;
+import io.grpc.util.CompressionDictionaryTrainer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DictionaryTrainingSink}.
+ */
+@RunWith(JUnit4.class)
+public class DictionaryTrainingSinkTest {
+  private static final Message MESSAGE = Message.newBuilder()
+      .setLength(16)
+      .setData(ByteString.copyFromUtf8("0123456789abcdef"))
+      .build();
+
+  private final CompressionDictionaryTrainer trainer = new CompressionDictionaryTrainer(10);
+  private final DictionaryTrainingSink sink = new DictionaryTrainingSink(trainer);
+
+  @Test
+  public void samplesClientAndServerMessages() {
+    sink.write(GrpcLogEntry.newBuilder()
+        .setType(EventType.EVENT_TYPE_CLIENT_MESSAGE)
+        .setMessage(MESSAGE)
+        .build());
+    sink.write(GrpcLogEntry.newBuilder()
+        .setType(EventType.EVENT_TYPE_SERVER_MESSAGE)
+        .setMessage(MESSAGE)
+        .build());
+    assertEquals(2, trainer.getSampleCount());
+  }
+
+  @Test
+  public void ignoresTruncatedMessages() {
+    sink.write(GrpcLogEntry.newBuilder()
+        .setType(EventType.EVENT_TYPE_CLIENT_MESSAGE)
+        .setMessage(MESSAGE)
+        .setPayloadTruncated(true)
+        .build());
+    assertEquals(0, trainer.getSampleCount());
+  }
+
+  @Test
+  public void ignoresOtherEvents() {
+    sink.write(GrpcLogEntry.newBuilder()
+        .setType(EventType.EVENT_TYPE_CLIENT_HEADER)
+        .build());
+    sink.write(GrpcLogEntry.newBuilder()
+        .setType(EventType.EVENT_TYPE_CLIENT_HALF_CLOSE)
+        .build());
+    assertEquals(0, trainer.getSampleCount());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.protobuf.services;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import io.grpc.binarylog.v1.GrpcLogEntry;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link SegmentFileSink}.
+ */
+@RunWith(JUnit4.class)
+public class SegmentFileSinkTest {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void rotatesAndDeletesOldSegments() throws Exception {
+    File directory = tempFolder.newFolder();
+    GrpcLogEntry entry = GrpcLogEntry.newBuilder().setCallId(1234).setSequenceIdWithinCall(1)
+        .build();
+    int entryBytes = entry.getSerializedSize() + 1;
+    SegmentFileSink sink = new SegmentFileSink(directory, 2 * entryBytes, 2);
+    List<File> segments = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      sink.write(entry);
+      for (File segment : sink.getSegments()) {
+        if (!segments.contains(segment)) {
+          segments.add(segment);
+        }
+      }
+    }
+    sink.close();
+
+    // Two entries per segment, and only the last two segments are kept.
+    assertThat(segments).hasSize(3);
+    assertThat(segments.get(0).exists()).isFalse();
+    assertThat(readEntries(segments.get(1))).hasSize(2);
+    assertThat(readEntries(segments.get(2))).containsExactly(entry);
+    assertThat(directory.listFiles()).hasLength(2);
+  }
+
+  @Test
+  public void flushWritesOutBufferedEntries() throws Exception {
+    File directory = tempFolder.newFolder();
+    SegmentFileSink sink = new SegmentFileSink(directory, Long.MAX_VALUE, 1);
+    GrpcLogEntry entry = GrpcLogEntry.newBuilder().setCallId(1234).build();
+    sink.write(entry);
+    File segment = sink.getSegments().get(0);
+    assertThat(segment.length()).isEqualTo(0);
+
+    sink.flush();
+    assertThat(readEntries(segment)).containsExactly(entry);
+    sink.close();
+  }
+
+  @Test
+  public void writeAfterCloseIsSilent() throws Exception {
+    SegmentFileSink sink = new SegmentFileSink(tempFolder.newFolder(), Long.MAX_VALUE, 1);
+    sink.close();
+    sink.write(GrpcLogEntry.newBuilder().setCallId(1234).build());
+  }
+
+  @Test
+  public void failedRotationThrowsAndCloses() throws Exception {
+    File directory = tempFolder.newFolder();
+    SegmentFileSink sink = new SegmentFileSink(directory, 1, 1);
+    GrpcLogEntry entry = GrpcLogEntry.newBuilder().setCallId(1234).build();
+    sink.write(entry);
+    assertThat(sink.getSegments().get(0).delete()).isTrue();
+    assertThat(directory.delete()).isTrue();
+
+    try {
+      sink.write(entry);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+    }
+    // Closed, so later writes are ignored.
+    sink.write(entry);
+    sink.flush();
+  }
+
+  private static List<GrpcLogEntry> readEntries(File file) throws Exception {
+    List<GrpcLogEntry> entries = new ArrayList<>();
+    DataInputStream input = new DataInputStream(new FileInputStream(file));
+    try {
+      GrpcLogEntry entry;
+      while ((entry = GrpcLogEntry.parseDelimitedFrom(input)) != null) {
+        entries.add(entry);
+      }
+    } finally {
+      input.close();
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.services;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import io.grpc.internal.FakeClock;
+import io.grpc.testing.TestMethodDescriptors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link AdaptiveConcurrencyLimitInterceptor}. */
+@RunWith(JUnit4.class)
+public class AdaptiveConcurrencyLimitInterceptorTest {
+  private static final MethodDescriptor<Void, Void> UNARY =
+      TestMethodDescriptors.voidMethod().toBuilder().setFullMethodName("service/unary").build();
+
+  private final FakeClock fakeClock = new FakeClock();
+  private final List<ServerCall<Void, Void>> handlerCalls = new ArrayList<>();
+  private final ServerCallHandler<Void, Void> handler = new ServerCallHandler<Void, Void>() {
+    @Override
+    public ServerCall.Listener<Void> startCall(ServerCall<Void, Void> call, Metadata headers) {
+      handlerCalls.add(call);
+      return new ServerCall.Listener<Void>() {};
+    }
+  };
+
+  private AdaptiveConcurrencyLimitInterceptor.Builder newBuilder() {
+    return AdaptiveConcurrencyLimitInterceptor.newBuilder()
+        .setTicker(fakeClock.getDeadlineTicker());
+  }
+
+  @Test
+  public void rejectsCallsOverLimit() {
+    AdaptiveConcurrencyLimitInterceptor interceptor =
+        newBuilder().setInitialLimit(2).setLimitBounds(1, 10).setWindowSize(100).build();
+    ServerCall<Void, Void> first = startCall(interceptor, UNARY);
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(2);
+    verify(first, never()).close(any(Status.class), any(Metadata.class));
+
+    ServerCall<Void, Void> rejected = startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(2);
+    ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+    ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+    verify(rejected).close(status.capture(), trailers.capture());
+    assertThat(status.getValue().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(trailers.getValue().get(AdaptiveConcurrencyLimitInterceptor.RETRY_PUSHBACK_KEY))
+        .isEqualTo("1");
+
+    handlerCalls.get(0).close(Status.OK, new Metadata());
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(3);
+  }
+
+  @Test
+  public void cancelReleasesCall() {
+    AdaptiveConcurrencyLimitInterceptor interceptor =
+        newBuilder().setInitialLimit(1).setLimitBounds(1, 10).setWindowSize(100).build();
+    ServerCall.Listener<Void> listener = interceptor.interceptCall(
+        newCall(UNARY), new Metadata(), handler);
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(1);
+
+    listener.onCancel();
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(2);
+  }
+
+  @Test
+  public void streamingCallsAreNotLimited() {
+    AdaptiveConcurrencyLimitInterceptor interceptor =
+        newBuilder().setInitialLimit(1).setLimitBounds(1, 10).build();
+    MethodDescriptor<Void, Void> streaming =
+        UNARY.toBuilder().setType(MethodType.BIDI_STREAMING).build();
+    for (int i = 0; i < 5; i++) {
+      startCall(interceptor, streaming);
+    }
+    assertThat(handlerCalls).hasSize(5);
+  }
+
+  @Test
+  public void limitGrowsWhileLatencyIsStable() {
+    AdaptiveConcurrencyLimitInterceptor interceptor =
+        newBuilder().setInitialLimit(10).setWindowSize(10).setSmoothing(1).build();
+    runWindow(interceptor, 10, 10);
+    // 10 * 1 + sqrt(10)
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(13);
+    runWindow(interceptor, 10, 10);
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(16);
+  }
+
+  @Test
+  public void limitShrinksWhenLatencyRises() {
+    AdaptiveConcurrencyLimitInterceptor interceptor = newBuilder()
+        .setInitialLimit(16)
+        .setWindowSize(10)
+        .setRttTolerance(1)
+        .setSmoothing(1)
+        .build();
+    runWindow(interceptor, 10, 10);
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(20);
+    runWindow(interceptor, 10, 20);
+    // 20 * 0.5 + sqrt(20)
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(14);
+    // The gradient doesn't go below 0.5.
+    runWindow(interceptor, 10, 40);
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(11);
+  }
+
+  @Test
+  public void limitDoesNotGrowWhenUnused() {
+    AdaptiveConcurrencyLimitInterceptor interceptor =
+        newBuilder().setInitialLimit(10).setWindowSize(10).setSmoothing(1).build();
+    for (int i = 0; i < 30; i++) {
+      runWindow(interceptor, 1, 10);
+    }
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(10);
+  }
+
+  @Test
+  public void limitStaysWithinBounds() {
+    AdaptiveConcurrencyLimitInterceptor interceptor = newBuilder()
+        .setInitialLimit(10)
+        .setLimitBounds(8, 12)
+        .setWindowSize(1)
+        .setRttTolerance(1)
+        .setSmoothing(1)
+        .build();
+    for (int i = 0; i < 5; i++) {
+      runWindow(interceptor, 10, 10);
+    }
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(12);
+    for (int i = 0; i < 5; i++) {
+      runWindow(interceptor, 8, 1000);
+    }
+    assertThat(interceptor.getLimit(UNARY.getFullMethodName())).isEqualTo(8);
+  }
+
+  @Test
+  public void perMethodLimits() {
+    AdaptiveConcurrencyLimitInterceptor interceptor = newBuilder()
+        .setPerMethod(true)
+        .setInitialLimit(1)
+        .setLimitBounds(1, 10)
+        .setWindowSize(100)
+        .build();
+    MethodDescriptor<Void, Void> other =
+        UNARY.toBuilder().setFullMethodName("service/other").build();
+    startCall(interceptor, UNARY);
+    startCall(interceptor, other);
+    assertThat(handlerCalls).hasSize(2);
+    startCall(interceptor, other);
+    assertThat(handlerCalls).hasSize(2);
+  }
+
+  @Test
+  public void streamTracerMeasuresFromArrival() {
+    AdaptiveConcurrencyLimitInterceptor interceptor = newBuilder()
+        .setInitialLimit(1)
+        .setLimitBounds(1, 10)
+        .setWindowSize(1)
+        .build();
+    ServerStreamTracer tracer = interceptor.getStreamTracerFactory()
+        .newServerStreamTracer(UNARY.getFullMethodName(), new Metadata());
+    Context context = tracer.filterContext(Context.ROOT);
+    fakeClock.forwardTime(7, TimeUnit.MILLISECONDS);
+    Context previous = context.attach();
+    try {
+      startCall(interceptor, UNARY);
+    } finally {
+      context.detach(previous);
+    }
+    assertThat(handlerCalls).hasSize(1);
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(1);
+
+    // The tracer, not the call, releases the limit.
+    tracer.streamClosed(Status.OK);
+    startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(2);
+    ServerCall<Void, Void> rejected = startCall(interceptor, UNARY);
+    assertThat(handlerCalls).hasSize(2);
+    ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+    verify(rejected).close(any(Status.class), trailers.capture());
+    // The pushback is the latency of the last window, including the time before the interceptor.
+    assertThat(trailers.getValue().get(AdaptiveConcurrencyLimitInterceptor.RETRY_PUSHBACK_KEY))
+        .isEqualTo("7");
+  }
+
+  /**
+   * Starts {@code concurrency} calls, lets {@code latencyMillis} pass and completes them.
+   */
+  private void runWindow(
+      AdaptiveConcurrencyLimitInterceptor interceptor, int concurrency, long latencyMillis) {
+    handlerCalls.clear();
+    for (int i = 0; i < concurrency; i++) {
+      startCall(interceptor, UNARY);
+    }
+    assertThat(handlerCalls).hasSize(concurrency);
+    fakeClock.forwardTime(latencyMillis, TimeUnit.MILLISECONDS);
+    for (ServerCall<Void, Void> call : handlerCalls) {
+      call.close(Status.OK, new Metadata());
+    }
+    if (concurrency < 10) {
+      // Fill the window.
+      for (int i = concurrency; i < 10; i++) {
+        handlerCalls.clear();
+        startCall(interceptor, UNARY);
+        fakeClock.forwardTime(latencyMillis, TimeUnit.MILLISECONDS);
+        handlerCalls.get(0).close(Status.OK, new Metadata());
+      }
+    }
+  }
+
+  private ServerCall<Void, Void> startCall(
+      AdaptiveConcurrencyLimitInterceptor interceptor, MethodDescriptor<Void, Void> method) {
+    ServerCall<Void, Void> call = newCall(method);
+    interceptor.interceptCall(call, new Metadata(), handler);
+    return call;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ServerCall<Void, Void> newCall(MethodDescriptor<Void, Void> method) {
+    ServerCall<Void, Void> call = mock(ServerCall.class);
+    when(call.getMethodDescriptor()).thenReturn(method);
+    return call;
+  }
+}
@@ -721,6 +721,9 @@ public final class ClientCalls {
     /**
      * Waits until there is a Runnable, then executes it and all queued Runnables after it.
      * Must only be called by one thread at a time.
+     *
+     * <p>Waiting parks without holding a monitor, so a virtual thread waiting here gives up its
+     * carrier thread.
      */
     public void waitAndDrain() throws InterruptedException {
       throwIfInterrupted();
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ChannelLogger;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.CreateSubchannelArgs;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancer.SubchannelStateListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.PickSubchannelArgsImpl;
+import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.xds.RingHashLoadBalancer.Ring;
+import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for {@link RingHashLoadBalancer}: picking from, fully building and incrementally
+ * rebuilding a ring of 1M entries over 1k endpoints. The ring takes 12 bytes per entry.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class RingHashLoadBalancerBenchmark {
+
+  @Param({"1000"})
+  public int endpointCount;
+
+  @Param({"1048576"})
+  public int ringSize;
+
+  @Param({"0", "125"})
+  public int hashBalanceFactor;
+
+  private SubchannelPicker picker;
+  private PickSubchannelArgs[] pickArgs;
+  private int pickIndex;
+  private List<EquivalentAddressGroup> addrKeys;
+  private int[] counts;
+  private Ring ring;
+  private List<EquivalentAddressGroup> changedAddrKeys;
+  private int[] changedCounts;
+
+  /**
+   * Sets up a balancer with all subchannels READY, and the inputs of ring builds.
+   */
+  @Setup
+  public void setUp() {
+    addrKeys = new ArrayList<>(endpointCount);
+    for (int i = 0; i < endpointCount; i++) {
+      addrKeys.add(new EquivalentAddressGroup(
+          InetSocketAddress.createUnresolved("10.0." + (i / 256) + "." + (i % 256), 443)));
+    }
+    FakeHelper helper = new FakeHelper();
+    RingHashLoadBalancer loadBalancer = new RingHashLoadBalancer(helper);
+    loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+        .setAddresses(addrKeys)
+        .setLoadBalancingPolicyConfig(new RingHashConfig(ringSize, ringSize, hashBalanceFactor))
+        .build());
+    for (FakeSubchannel subchannel : helper.subchannels) {
+      subchannel.listener.onSubchannelState(
+          ConnectivityStateInfo.forNonError(ConnectivityState.READY));
+    }
+    picker = helper.picker;
+
+    pickArgs = new PickSubchannelArgs[1024];
+    for (int i = 0; i < pickArgs.length; i++) {
+      pickArgs[i] = new PickSubchannelArgsImpl(
+          TestMethodDescriptors.voidMethod(), new Metadata(),
+          CallOptions.DEFAULT.withOption(
+              XdsNameResolver.RPC_HASH_KEY, XxHash64.INSTANCE.hashInt(i)));
+    }
+
+    counts = new int[endpointCount];
+    Arrays.fill(counts, ringSize / endpointCount);
+    ring = Ring.build(null, addrKeys, counts);
+    // One endpoint replaced, as in a rolling restart.
+    changedAddrKeys = new ArrayList<>(addrKeys);
+    changedAddrKeys.set(0, new EquivalentAddressGroup(
+        InetSocketAddress.createUnresolved("10.1.0.0", 443)));
+    changedCounts = counts;
+  }
+
+  /**
+   * Picks a subchannel for a call.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public PickResult pick() {
+    return picker.pickSubchannel(pickArgs[pickIndex++ & (pickArgs.length - 1)]);
+  }
+
+  /**
+   * Builds the ring from scratch.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Ring buildRing() {
+    return Ring.build(null, changedAddrKeys, changedCounts);
+  }
+
+  /**
+   * Rebuilds the ring after one endpoint is replaced.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Ring rebuildRing() {
+    return Ring.build(ring, changedAddrKeys, changedCounts);
+  }
+
+  private static final class FakeHelper extends Helper {
+    private final SynchronizationContext syncContext = new SynchronizationContext(
+        new UncaughtExceptionHandler() {
+          @Override
+          public void uncaughtException(Thread t, Throwable e) {
+            throw new AssertionError(e);
+          }
+        });
+    private final List<FakeSubchannel> subchannels = new ArrayList<>();
+    private SubchannelPicker picker;
+
+    @Override
+    public Subchannel createSubchannel(CreateSubchannelArgs args) {
+      FakeSubchannel subchannel = new FakeSubchannel(args);
+      subchannels.add(subchannel);
+      return subchannel;
+    }
+
+    @Override
+    public void updateBalancingState(ConnectivityState newState, SubchannelPicker newPicker) {
+      picker = newPicker;
+    }
+
+    @Override
+    public SynchronizationContext getSynchronizationContext() {
+      return syncContext;
+    }
+
+    @Override
+    public String getAuthority() {
+      return "foo.googleapis.com";
+    }
+
+    @Override
+    public ChannelLogger getChannelLogger() {
+      return new ChannelLogger() {
+        @Override
+        public void log(ChannelLogLevel level, String message) {}
+
+        @Override
+        public void log(ChannelLogLevel level, String messageFormat, Object... args) {}
+      };
+    }
+
+    @Override
+    public ManagedChannel createOobChannel(EquivalentAddressGroup eag, String authority) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class FakeSubchannel extends Subchannel {
+    private final CreateSubchannelArgs args;
+    private SubchannelStateListener listener;
+
+    FakeSubchannel(CreateSubchannelArgs args) {
+      this.args = args;
+    }
+
+    @Override
+    public void start(SubchannelStateListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public void requestConnection() {}
+
+    @Override
+    public List<EquivalentAddressGroup> getAllAddresses() {
+      return args.getAddresses();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+      return args.getAttributes();
+    }
+  }
+}
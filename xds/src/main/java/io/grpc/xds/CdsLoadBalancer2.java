@@ -21,10 +21,12 @@ import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 import static io.grpc.xds.XdsLbPolicies.CLUSTER_RESOLVER_POLICY_NAME;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import io.grpc.InternalLogId;
 import io.grpc.LoadBalancer;
 import io.grpc.LoadBalancerProvider;
 import io.grpc.LoadBalancerRegistry;
+import io.grpc.NameResolver.ConfigOrError;
 import io.grpc.Status;
 import io.grpc.SynchronizationContext;
 import io.grpc.internal.ObjectPool;
@@ -32,6 +34,7 @@ import io.grpc.internal.ServiceConfigUtil.PolicySelection;
 import io.grpc.xds.CdsLoadBalancerProvider.CdsConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig.DiscoveryMechanism;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
 import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
 import io.grpc.xds.XdsClient.CdsResourceWatcher;
 import io.grpc.xds.XdsClient.CdsUpdate;
@@ -158,7 +161,8 @@ final class CdsLoadBalancer2 extends LoadBalancer {
               instance = DiscoveryMechanism.forEds(
                   clusterState.name, clusterState.result.edsServiceName(),
                   clusterState.result.lrsServerName(), clusterState.result.maxConcurrentRequests(),
-                  clusterState.result.upstreamTlsContext());
+                  clusterState.result.upstreamTlsContext(),
+                  clusterState.result.outlierDetection());
             } else {  // logical DNS
               instance = DiscoveryMechanism.forLogicalDns(
                   clusterState.name, clusterState.result.dnsHostName(),
@@ -188,7 +192,23 @@ final class CdsLoadBalancer2 extends LoadBalancer {
       Object lbConfig = null;
       if (root.result.lbPolicy() == LbPolicy.RING_HASH) {
         lbProvider = lbRegistry.getProvider("ring_hash");
-        lbConfig = new RingHashConfig(root.result.minRingSize(), root.result.maxRingSize());
+        lbConfig = new RingHashConfig(root.result.minRingSize(), root.result.maxRingSize(),
+            root.result.hashBalanceFactor());
+      } else if (root.result.lbPolicy() == LbPolicy.MAGLEV) {
+        lbProvider = lbRegistry.getProvider("maglev");
+        lbConfig = new MaglevConfig(root.result.maglevTableSize());
+      } else if (root.result.lbPolicy() == LbPolicy.LEAST_REQUEST) {
+        lbProvider = lbRegistry.getProvider("least_request");
+        if (lbProvider != null) {
+          // The least_request config is private to its provider, so go through its parser.
+          ConfigOrError parsedConfig = lbProvider.parseLoadBalancingPolicyConfig(
+              ImmutableMap.of("choiceCount", (double) root.result.choiceCount()));
+          if (parsedConfig.getError() != null) {
+            handleClusterDiscoveryError(parsedConfig.getError());
+            return;
+          }
+          lbConfig = parsedConfig.getConfig();
+        }
       }
       if (lbProvider == null) {
         lbProvider = lbRegistry.getProvider("round_robin");
@@ -37,9 +37,12 @@ import com.google.re2j.Pattern;
 import com.google.re2j.PatternSyntaxException;
 import io.envoyproxy.envoy.config.cluster.v3.CircuitBreakers.Thresholds;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.CommonLbConfig.ConsistentHashingLbConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.CustomClusterType;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.DiscoveryType;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.LbPolicy;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.LeastRequestLbConfig;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.MaglevLbConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.RingHashLbConfig;
 import io.envoyproxy.envoy.config.core.v3.HttpProtocolOptions;
 import io.envoyproxy.envoy.config.core.v3.RoutingPriority;
@@ -69,6 +72,8 @@ import io.grpc.SynchronizationContext;
 import io.grpc.SynchronizationContext.ScheduledHandle;
 import io.grpc.internal.BackoffPolicy;
 import io.grpc.internal.TimeProvider;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
 import io.grpc.xds.AbstractXdsClient.ResourceType;
 import io.grpc.xds.Bootstrapper.ServerInfo;
 import io.grpc.xds.Endpoints.DropOverload;
@@ -85,6 +90,7 @@ import io.grpc.xds.Filter.NamedFilterConfig;
 import io.grpc.xds.Filter.ServerInterceptorBuilder;
 import io.grpc.xds.LoadStatsManager2.ClusterDropStats;
 import io.grpc.xds.LoadStatsManager2.ClusterLocalityStats;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
 import io.grpc.xds.VirtualHost.Route;
 import io.grpc.xds.VirtualHost.Route.RouteAction;
 import io.grpc.xds.VirtualHost.Route.RouteAction.ClusterWeight;
@@ -92,6 +98,7 @@ import io.grpc.xds.VirtualHost.Route.RouteAction.HashPolicy;
 import io.grpc.xds.VirtualHost.Route.RouteAction.RetryPolicy;
 import io.grpc.xds.VirtualHost.Route.RouteMatch;
 import io.grpc.xds.VirtualHost.Route.RouteMatch.PathMatcher;
+import io.grpc.xds.XdsClient.CdsUpdate.OutlierDetection;
 import io.grpc.xds.XdsClient.ResourceStore;
 import io.grpc.xds.XdsClient.XdsResponseHandler;
 import io.grpc.xds.XdsLogger.XdsLogLevel;
@@ -132,6 +139,20 @@ final class ClientXdsClient extends XdsClient implements XdsResponseHandler, Res
   @VisibleForTesting
   static final long MAX_RING_HASH_LB_POLICY_RING_SIZE = 8 * 1024 * 1024L;
   @VisibleForTesting
+  static final int DEFAULT_LEAST_REQUEST_LB_POLICY_CHOICE_COUNT = 2;
+  @VisibleForTesting
+  static final int DEFAULT_MAGLEV_LB_POLICY_TABLE_SIZE = 65537;
+  @VisibleForTesting
+  static final int MAX_MAGLEV_LB_POLICY_TABLE_SIZE = 5000011;
+  @VisibleForTesting
+  static final long DEFAULT_OUTLIER_DETECTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+  @VisibleForTesting
+  static final long DEFAULT_OUTLIER_DETECTION_BASE_EJECTION_TIME_NANOS =
+      TimeUnit.SECONDS.toNanos(30);
+  @VisibleForTesting
+  static final long DEFAULT_OUTLIER_DETECTION_MAX_EJECTION_TIME_NANOS =
+      TimeUnit.SECONDS.toNanos(300);
+  @VisibleForTesting
   static final String AGGREGATE_CLUSTER_TYPE_NAME = "envoy.clusters.aggregate";
   @VisibleForTesting
   static final String HASH_POLICY_FILTER_STATE_KEY = "io.grpc.channel_id";
@@ -1527,9 +1548,45 @@ final class ClientXdsClient extends XdsClient implements XdsResponseHandler, Res
         throw new ResourceInvalidException(
             "Cluster " + cluster.getName() + ": invalid ring_hash_lb_config: " + lbConfig);
       }
-      updateBuilder.ringHashLbPolicy(minRingSize, maxRingSize);
+      ConsistentHashingLbConfig hashingConfig =
+          cluster.getCommonLbConfig().getConsistentHashingLbConfig();
+      long hashBalanceFactor = 0;
+      if (hashingConfig.hasHashBalanceFactor()) {
+        hashBalanceFactor = hashingConfig.getHashBalanceFactor().getValue();
+        if (hashBalanceFactor < 100) {
+          throw new ResourceInvalidException(
+              "Cluster " + cluster.getName() + ": invalid hash_balance_factor: "
+                  + hashBalanceFactor);
+        }
+      }
+      updateBuilder.ringHashLbPolicy(
+          minRingSize, maxRingSize, (int) Math.min(hashBalanceFactor, Integer.MAX_VALUE));
     } else if (cluster.getLbPolicy() == LbPolicy.ROUND_ROBIN) {
       updateBuilder.roundRobinLbPolicy();
+    } else if (cluster.getLbPolicy() == LbPolicy.LEAST_REQUEST) {
+      LeastRequestLbConfig lbConfig = cluster.getLeastRequestLbConfig();
+      long choiceCount =
+          lbConfig.hasChoiceCount()
+              ? lbConfig.getChoiceCount().getValue()
+              : DEFAULT_LEAST_REQUEST_LB_POLICY_CHOICE_COUNT;
+      if (choiceCount < 2) {
+        throw new ResourceInvalidException(
+            "Cluster " + cluster.getName() + ": invalid least_request_lb_config: " + lbConfig);
+      }
+      // Larger values are capped by the least_request policy.
+      updateBuilder.leastRequestLbPolicy((int) Math.min(choiceCount, Integer.MAX_VALUE));
+    } else if (cluster.getLbPolicy() == LbPolicy.MAGLEV) {
+      MaglevLbConfig lbConfig = cluster.getMaglevLbConfig();
+      long tableSize =
+          lbConfig.hasTableSize()
+              ? lbConfig.getTableSize().getValue()
+              : DEFAULT_MAGLEV_LB_POLICY_TABLE_SIZE;
+      if (tableSize < 0 || tableSize > MAX_MAGLEV_LB_POLICY_TABLE_SIZE
+          || !MaglevConfig.isPrime(tableSize)) {
+        throw new ResourceInvalidException(
+            "Cluster " + cluster.getName() + ": invalid maglev_lb_config: " + lbConfig);
+      }
+      updateBuilder.maglevLbPolicy((int) tableSize);
     } else {
       throw new ResourceInvalidException(
           "Cluster " + cluster.getName() + ": unsupported lb policy: " + cluster.getLbPolicy());
@@ -1558,6 +1615,68 @@ final class ClientXdsClient extends XdsClient implements XdsResponseHandler, Res
         clusterName, clusterConfig.getClustersList()));
   }
 
+  // Fields without a default in the proto default as in gRFC A50. The consecutive errors
+  // ejections are not supported.
+  private static StructOrError<OutlierDetection> parseOutlierDetection(
+      io.envoyproxy.envoy.config.cluster.v3.OutlierDetection proto) {
+    long intervalNanos = DEFAULT_OUTLIER_DETECTION_INTERVAL_NANOS;
+    long baseEjectionTimeNanos = DEFAULT_OUTLIER_DETECTION_BASE_EJECTION_TIME_NANOS;
+    long maxEjectionTimeNanos = DEFAULT_OUTLIER_DETECTION_MAX_EJECTION_TIME_NANOS;
+    for (Duration duration : Arrays.asList(
+        proto.getInterval(), proto.getBaseEjectionTime(), proto.getMaxEjectionTime())) {
+      if (!Durations.isValid(duration)) {
+        return StructOrError.fromError("invalid outlier_detection: " + proto);
+      }
+    }
+    if (proto.hasInterval()) {
+      intervalNanos = Durations.toNanos(proto.getInterval());
+    }
+    if (proto.hasBaseEjectionTime()) {
+      baseEjectionTimeNanos = Durations.toNanos(proto.getBaseEjectionTime());
+    }
+    if (proto.hasMaxEjectionTime()) {
+      maxEjectionTimeNanos = Durations.toNanos(proto.getMaxEjectionTime());
+    }
+    int maxEjectionPercent =
+        proto.hasMaxEjectionPercent() ? proto.getMaxEjectionPercent().getValue() : 10;
+    int enforcingSuccessRate =
+        proto.hasEnforcingSuccessRate() ? proto.getEnforcingSuccessRate().getValue() : 100;
+    int enforcingFailurePercentage = proto.getEnforcingFailurePercentage().getValue();
+    int failurePercentageThreshold = proto.hasFailurePercentageThreshold()
+        ? proto.getFailurePercentageThreshold().getValue() : 85;
+    // Unsigned values above Integer.MAX_VALUE show as negative.
+    if (intervalNanos <= 0 || baseEjectionTimeNanos <= 0 || maxEjectionTimeNanos <= 0
+        || maxEjectionPercent < 0 || maxEjectionPercent > 100
+        || enforcingSuccessRate < 0 || enforcingSuccessRate > 100
+        || enforcingFailurePercentage < 0 || enforcingFailurePercentage > 100
+        || failurePercentageThreshold < 0 || failurePercentageThreshold > 100) {
+      return StructOrError.fromError("invalid outlier_detection: " + proto);
+    }
+
+    SuccessRateEjection successRateEjection = null;
+    if (enforcingSuccessRate > 0) {
+      successRateEjection = new SuccessRateEjection(
+          proto.hasSuccessRateStdevFactor() ? proto.getSuccessRateStdevFactor().getValue() : 1900,
+          enforcingSuccessRate,
+          proto.hasSuccessRateMinimumHosts() ? proto.getSuccessRateMinimumHosts().getValue() : 5,
+          proto.hasSuccessRateRequestVolume()
+              ? proto.getSuccessRateRequestVolume().getValue() : 100);
+    }
+    FailurePercentageEjection failurePercentageEjection = null;
+    if (enforcingFailurePercentage > 0) {
+      failurePercentageEjection = new FailurePercentageEjection(
+          failurePercentageThreshold,
+          enforcingFailurePercentage,
+          proto.hasFailurePercentageMinimumHosts()
+              ? proto.getFailurePercentageMinimumHosts().getValue() : 5,
+          proto.hasFailurePercentageRequestVolume()
+              ? proto.getFailurePercentageRequestVolume().getValue() : 50);
+    }
+    return StructOrError.fromStruct(OutlierDetection.create(
+        intervalNanos, baseEjectionTimeNanos, maxEjectionTimeNanos, maxEjectionPercent,
+        successRateEjection, failurePercentageEjection));
+  }
+
   private static StructOrError<CdsUpdate.Builder> parseNonAggregateCluster(
       Cluster cluster, Set<String> edsResources, Set<String> certProviderInstances) {
     String clusterName = cluster.getName();
@@ -1620,8 +1739,18 @@ final class ClientXdsClient extends XdsClient implements XdsResponseHandler, Res
       } else {
         edsResources.add(clusterName);
       }
-      return StructOrError.fromStruct(CdsUpdate.forEds(
-          clusterName, edsServiceName, lrsServerName, maxConcurrentRequests, upstreamTlsContext));
+      CdsUpdate.Builder updateBuilder = CdsUpdate.forEds(
+          clusterName, edsServiceName, lrsServerName, maxConcurrentRequests, upstreamTlsContext);
+      if (cluster.hasOutlierDetection()) {
+        StructOrError<OutlierDetection> outlierDetection =
+            parseOutlierDetection(cluster.getOutlierDetection());
+        if (outlierDetection.getErrorDetail() != null) {
+          return StructOrError.fromError(
+              "Cluster " + clusterName + ": " + outlierDetection.getErrorDetail());
+        }
+        updateBuilder.outlierDetection(outlierDetection.getStruct());
+      }
+      return StructOrError.fromStruct(updateBuilder);
     } else if (type.equals(DiscoveryType.LOGICAL_DNS)) {
       if (!cluster.hasLoadAssignment()) {
         return StructOrError.fromError(
@@ -18,6 +18,7 @@ package io.grpc.xds;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static io.grpc.xds.XdsLbPolicies.OUTLIER_DETECTION_POLICY_NAME;
 import static io.grpc.xds.XdsLbPolicies.PRIORITY_POLICY_NAME;
 import static io.grpc.xds.XdsLbPolicies.WEIGHTED_TARGET_POLICY_NAME;
 
@@ -39,6 +40,7 @@ import io.grpc.internal.ObjectPool;
 import io.grpc.internal.ServiceConfigUtil.PolicySelection;
 import io.grpc.util.ForwardingLoadBalancerHelper;
 import io.grpc.util.GracefulSwitchLoadBalancer;
+import io.grpc.util.OutlierDetectionLoadBalancer.OutlierDetectionLoadBalancerConfig;
 import io.grpc.xds.ClusterImplLoadBalancerProvider.ClusterImplConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig.DiscoveryMechanism;
@@ -50,6 +52,7 @@ import io.grpc.xds.PriorityLoadBalancerProvider.PriorityLbConfig;
 import io.grpc.xds.PriorityLoadBalancerProvider.PriorityLbConfig.PriorityChildConfig;
 import io.grpc.xds.WeightedTargetLoadBalancerProvider.WeightedPolicySelection;
 import io.grpc.xds.WeightedTargetLoadBalancerProvider.WeightedTargetConfig;
+import io.grpc.xds.XdsClient.CdsUpdate.OutlierDetection;
 import io.grpc.xds.XdsClient.EdsResourceWatcher;
 import io.grpc.xds.XdsClient.EdsUpdate;
 import io.grpc.xds.XdsLogger.XdsLogLevel;
@@ -174,7 +177,8 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
         ClusterState state;
         if (instance.type == DiscoveryMechanism.Type.EDS) {
           state = new EdsClusterState(instance.cluster, instance.edsServiceName,
-              instance.lrsServerName, instance.maxConcurrentRequests, instance.tlsContext);
+              instance.lrsServerName, instance.maxConcurrentRequests, instance.tlsContext,
+              instance.outlierDetection);
         } else {  // logical DNS
           state = new LogicalDnsClusterState(instance.cluster, instance.dnsHostName,
               instance.lrsServerName, instance.maxConcurrentRequests, instance.tlsContext);
@@ -337,12 +341,15 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
     private final class EdsClusterState extends ClusterState implements EdsResourceWatcher {
       @Nullable
       private final String edsServiceName;
+      @Nullable
+      private final OutlierDetection outlierDetection;
 
       private EdsClusterState(String name, @Nullable String edsServiceName,
           @Nullable String lrsServerName, @Nullable Long maxConcurrentRequests,
-          @Nullable UpstreamTlsContext tlsContext) {
+          @Nullable UpstreamTlsContext tlsContext, @Nullable OutlierDetection outlierDetection) {
         super(name, lrsServerName, maxConcurrentRequests, tlsContext);
         this.edsServiceName = edsServiceName;
+        this.outlierDetection = outlierDetection;
       }
 
       @Override
@@ -424,7 +431,8 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
             Map<String, PriorityChildConfig> priorityChildConfigs =
                 generateEdsBasedPriorityChildConfigs(
                     name, edsServiceName, lrsServerName, maxConcurrentRequests, tlsContext,
-                    endpointLbPolicy, lbRegistry, prioritizedLocalityWeights, dropOverloads);
+                    outlierDetection, endpointLbPolicy, lbRegistry, prioritizedLocalityWeights,
+                    dropOverloads);
             status = Status.OK;
             resolved = true;
             result = new ClusterResolutionResult(addresses, priorityChildConfigs, priorities);
@@ -670,13 +678,15 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
   /**
    * Generates configs to be used in the priority LB policy for priorities in an EDS cluster.
    *
-   * <p>priority LB -> cluster_impl LB (one per priority) -> (weighted_target LB
-   * -> round_robin (one per locality)) / ring_hash
+   * <p>priority LB -> (outlier_detection LB, if enabled) -> cluster_impl LB (one per priority)
+   * -> (weighted_target LB -> round_robin or least_request (one per locality))
+   * / ring_hash or maglev
    */
   private static Map<String, PriorityChildConfig> generateEdsBasedPriorityChildConfigs(
       String cluster, @Nullable String edsServiceName, @Nullable String lrsServerName,
       @Nullable Long maxConcurrentRequests, @Nullable UpstreamTlsContext tlsContext,
-      PolicySelection endpointLbPolicy, LoadBalancerRegistry lbRegistry,
+      @Nullable OutlierDetection outlierDetection, PolicySelection endpointLbPolicy,
+      LoadBalancerRegistry lbRegistry,
       Map<String, Map<Locality, Integer>> prioritizedLocalityWeights,
       List<DropOverload> dropOverloads) {
     Map<String, PriorityChildConfig> configs = new HashMap<>();
@@ -686,10 +696,12 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
       // created. If the endpoint-level LB policy is round_robin, it creates a two-level LB
       // hierarchy: a locality-level LB policy that balances load according to locality weights
       // followed by an endpoint-level LB policy that simply rounds robin the endpoints within
-      // the locality. If the endpoint-level LB policy is ring_hash, it creates a unified LB
-      // policy that balances load by weighing the product of each endpoint's weight and the
-      // weight of the locality it belongs to.
-      if (endpointLbPolicy.getProvider().getPolicyName().equals("round_robin")) {
+      // the locality. least_request is layered the same way. If the endpoint-level LB policy is
+      // ring_hash or maglev, it creates a unified LB policy that balances load by weighing the
+      // product of each endpoint's weight and the weight of the locality it belongs to.
+      String endpointPolicyName = endpointLbPolicy.getProvider().getPolicyName();
+      if (endpointPolicyName.equals("round_robin")
+          || endpointPolicyName.equals("least_request")) {
         Map<Locality, Integer> localityWeights = prioritizedLocalityWeights.get(priority);
         Map<String, WeightedPolicySelection> targets = new HashMap<>();
         for (Locality locality : localityWeights.keySet()) {
@@ -710,8 +722,20 @@ final class ClusterResolverLoadBalancer extends LoadBalancer {
           lbRegistry.getProvider(XdsLbPolicies.CLUSTER_IMPL_POLICY_NAME);
       PolicySelection clusterImplPolicy =
           new PolicySelection(clusterImplLbProvider, clusterImplConfig);
+      PolicySelection priorityChildPolicy = clusterImplPolicy;
+      if (outlierDetection != null) {
+        LoadBalancerProvider outlierDetectionLbProvider =
+            lbRegistry.getProvider(OUTLIER_DETECTION_POLICY_NAME);
+        OutlierDetectionLoadBalancerConfig outlierDetectionConfig =
+            new OutlierDetectionLoadBalancerConfig(outlierDetection.intervalNanos(),
+                outlierDetection.baseEjectionTimeNanos(), outlierDetection.maxEjectionTimeNanos(),
+                outlierDetection.maxEjectionPercent(), outlierDetection.successRateEjection(),
+                outlierDetection.failurePercentageEjection(), null, clusterImplPolicy);
+        priorityChildPolicy =
+            new PolicySelection(outlierDetectionLbProvider, outlierDetectionConfig);
+      }
       PriorityChildConfig priorityChildConfig =
-          new PriorityChildConfig(clusterImplPolicy, true /* ignoreReresolution */);
+          new PriorityChildConfig(priorityChildPolicy, true /* ignoreReresolution */);
       configs.put(priority, priorityChildConfig);
     }
     return configs;
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Sets;
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.InternalLogId;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.xds.XdsLogger.XdsLogLevel;
+import io.grpc.xds.XdsSubchannelPickers.ErrorPicker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A {@link LoadBalancer} that provides consistent hashing with Maglev hashing. Each host fills
+ * slots of a lookup table, of a prime size, in the order of its own permutation of the slots,
+ * until the table is full. Hosts take turns in proportion to their weights. A request is routed
+ * to the host owning the slot its hash maps to, so a pick is a single table lookup. Adding or
+ * removing a host moves few slots between the remaining hosts.
+ *
+ * <p>See "Maglev: A Fast and Reliable Software Network Load Balancer", NSDI 2016.
+ */
+final class MaglevLoadBalancer extends LoadBalancer {
+  private static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO =
+      Attributes.Key.create("state-info");
+  private static final Status RPC_HASH_NOT_FOUND =
+      Status.INTERNAL.withDescription("RPC hash not found. Probably a bug because xds resolver"
+          + " config selector always generates a hash.");
+  // Independent hashes for the offset and the skip of a host's permutation.
+  private static final XxHash64 offsetHashFunc = XxHash64.INSTANCE;
+  private static final XxHash64 skipHashFunc = new XxHash64(1);
+
+  private final XdsLogger logger;
+  private final SynchronizationContext syncContext;
+  private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
+  private final Helper helper;
+
+  private Table table;
+  private ConnectivityState currentState;
+
+  MaglevLoadBalancer(Helper helper) {
+    this.helper = checkNotNull(helper, "helper");
+    syncContext = checkNotNull(helper.getSynchronizationContext(), "syncContext");
+    logger = XdsLogger.withLogId(InternalLogId.allocate("maglev_lb", helper.getAuthority()));
+    logger.log(XdsLogLevel.INFO, "Created");
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    logger.log(XdsLogLevel.DEBUG, "Received resolution result: {0}", resolvedAddresses);
+    List<EquivalentAddressGroup> addrList = resolvedAddresses.getAddresses();
+    if (addrList.isEmpty()) {
+      handleNameResolutionError(Status.UNAVAILABLE.withDescription("Maglev lb error: EDS "
+          + "resolution was successful, but returned server addresses are empty."));
+      return;
+    }
+    Map<EquivalentAddressGroup, EquivalentAddressGroup> latestAddrs = stripAttrs(addrList);
+    Set<EquivalentAddressGroup> removedAddrs =
+        Sets.newHashSet(Sets.difference(subchannels.keySet(), latestAddrs.keySet()));
+
+    MaglevConfig config = (MaglevConfig) resolvedAddresses.getLoadBalancingPolicyConfig();
+    // Sorted by hash key, so that the table does not depend on the order of the addresses.
+    Map<String, EquivalentAddressGroup> addrKeys = new TreeMap<>();
+    Map<EquivalentAddressGroup, Long> serverWeights = new HashMap<>();
+    for (EquivalentAddressGroup eag : addrList) {
+      Long weight = eag.getAttributes().get(InternalXdsAttributes.ATTR_SERVER_WEIGHT);
+      // Same as ring_hash, repeated addresses and per-address weights both count.
+      if (weight == null) {
+        weight = 1L;
+      }
+      EquivalentAddressGroup addrKey = stripAttrs(eag);
+      Long existingWeight = serverWeights.get(addrKey);
+      serverWeights.put(addrKey, existingWeight == null ? weight : existingWeight + weight);
+      addrKeys.put(hashKey(addrKey), addrKey);
+
+      Subchannel existingSubchannel = subchannels.get(addrKey);
+      if (existingSubchannel != null) {
+        existingSubchannel.updateAddresses(Collections.singletonList(eag));
+        continue;
+      }
+      Attributes attr = Attributes.newBuilder().set(
+          STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE))).build();
+      final Subchannel subchannel = helper.createSubchannel(
+          CreateSubchannelArgs.newBuilder().setAddresses(eag).setAttributes(attr).build());
+      subchannel.start(new SubchannelStateListener() {
+        @Override
+        public void onSubchannelState(ConnectivityStateInfo newState) {
+          processSubchannelState(subchannel, newState);
+        }
+      });
+      subchannels.put(addrKey, subchannel);
+    }
+    List<EquivalentAddressGroup> sortedAddrKeys = new ArrayList<>(addrKeys.values());
+    long[] weights = new long[sortedAddrKeys.size()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = serverWeights.get(sortedAddrKeys.get(i));
+    }
+    table = Table.build(sortedAddrKeys, weights, config.tableSize);
+
+    // Shut down subchannels for delisted addresses.
+    List<Subchannel> removedSubchannels = new ArrayList<>();
+    for (EquivalentAddressGroup addr : removedAddrs) {
+      removedSubchannels.add(subchannels.remove(addr));
+    }
+
+    // Update the picker before shutting down the subchannels, to reduce the chance of race
+    // between picking a subchannel and shutting it down.
+    updateBalancingState();
+    for (Subchannel subchann : removedSubchannels) {
+      shutdownSubchannel(subchann);
+    }
+  }
+
+  @Override
+  public void handleNameResolutionError(Status error) {
+    if (currentState != READY) {
+      helper.updateBalancingState(TRANSIENT_FAILURE, new ErrorPicker(error));
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    logger.log(XdsLogLevel.INFO, "Shutdown");
+    for (Subchannel subchannel : subchannels.values()) {
+      shutdownSubchannel(subchannel);
+    }
+    subchannels.clear();
+  }
+
+  /**
+   * Updates the overall balancing state by aggregating the connectivity states of all
+   * subchannels, with the same rules as ring_hash.
+   */
+  private void updateBalancingState() {
+    checkState(!subchannels.isEmpty(), "no subchannel has been created");
+    int failureCount = 0;
+    boolean hasConnecting = false;
+    Subchannel idleSubchannel = null;
+    ConnectivityState overallState = null;
+    for (Subchannel subchannel : subchannels.values()) {
+      ConnectivityState state = getSubchannelStateInfoRef(subchannel).value.getState();
+      if (state == READY) {
+        overallState = READY;
+        break;
+      }
+      if (state == TRANSIENT_FAILURE) {
+        failureCount++;
+      } else if (state == CONNECTING) {
+        hasConnecting = true;
+      } else if (state == IDLE) {
+        if (idleSubchannel == null) {
+          idleSubchannel = subchannel;
+        }
+      }
+    }
+    if (overallState == null) {
+      if (failureCount >= 2) {
+        // Recover by connecting to a subchannel that has not failed, since there may be no
+        // picks while reporting TRANSIENT_FAILURE.
+        if (!hasConnecting && idleSubchannel != null) {
+          idleSubchannel.requestConnection();
+        }
+        overallState = TRANSIENT_FAILURE;
+      } else if (hasConnecting) {
+        overallState = CONNECTING;
+      } else if (idleSubchannel != null) {
+        overallState = IDLE;
+      } else {
+        overallState = TRANSIENT_FAILURE;
+      }
+    }
+    helper.updateBalancingState(overallState, new MaglevPicker(syncContext, table, subchannels));
+    currentState = overallState;
+  }
+
+  private void processSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+    if (subchannels.get(stripAttrs(subchannel.getAddresses())) != subchannel) {
+      return;
+    }
+    if (stateInfo.getState() == TRANSIENT_FAILURE || stateInfo.getState() == IDLE) {
+      helper.refreshNameResolution();
+    }
+    Ref<ConnectivityStateInfo> subchannelStateRef = getSubchannelStateInfoRef(subchannel);
+
+    // Don't proactively reconnect if the subchannel enters IDLE, even if previously was connected.
+    // If the subchannel was previously in TRANSIENT_FAILURE, it is considered to stay in
+    // TRANSIENT_FAILURE until it becomes READY.
+    if (subchannelStateRef.value.getState() == TRANSIENT_FAILURE) {
+      if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+        return;
+      }
+    }
+    subchannelStateRef.value = stateInfo;
+    updateBalancingState();
+  }
+
+  private static void shutdownSubchannel(Subchannel subchannel) {
+    subchannel.shutdown();
+    getSubchannelStateInfoRef(subchannel).value = ConnectivityStateInfo.forNonError(SHUTDOWN);
+  }
+
+  private static Map<EquivalentAddressGroup, EquivalentAddressGroup> stripAttrs(
+      List<EquivalentAddressGroup> groupList) {
+    Map<EquivalentAddressGroup, EquivalentAddressGroup> addrs =
+        new HashMap<>(groupList.size() * 2);
+    for (EquivalentAddressGroup group : groupList) {
+      addrs.put(stripAttrs(group), group);
+    }
+    return addrs;
+  }
+
+  private static EquivalentAddressGroup stripAttrs(EquivalentAddressGroup eag) {
+    return new EquivalentAddressGroup(eag.getAddresses());
+  }
+
+  private static String hashKey(EquivalentAddressGroup addrKey) {
+    return addrKey.getAddresses().toString();
+  }
+
+  private static Ref<ConnectivityStateInfo> getSubchannelStateInfoRef(
+      Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(STATE_INFO), "STATE_INFO");
+  }
+
+  /** Returns {@code value} modulo {@code divisor}, with {@code value} taken as unsigned. */
+  private static long unsignedMod(long value, long divisor) {
+    return ((value >>> 1) % divisor * 2 + (value & 1)) % divisor;
+  }
+
+  private static final class MaglevPicker extends SubchannelPicker {
+    private final SynchronizationContext syncContext;
+    private final int[] entries;
+    // Avoid synchronization between pickSubchannel and subchannel's connectivity state change,
+    // freeze picker's view of subchannel's connectivity state. Indexed like the table's endpoints.
+    private final SubchannelView[] pickableSubchannels;  // read-only
+
+    private MaglevPicker(
+        SynchronizationContext syncContext, Table table,
+        Map<EquivalentAddressGroup, Subchannel> subchannels) {
+      this.syncContext = syncContext;
+      entries = table.entries;
+      pickableSubchannels = new SubchannelView[table.addrKeys.size()];
+      for (int i = 0; i < pickableSubchannels.length; i++) {
+        Subchannel subchannel = subchannels.get(table.addrKeys.get(i));
+        pickableSubchannels[i] =
+            new SubchannelView(subchannel, subchannel.getAttributes().get(STATE_INFO).value);
+      }
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      Long requestHash = args.getCallOptions().getOption(XdsNameResolver.RPC_HASH_KEY);
+      if (requestHash == null) {
+        return PickResult.withError(RPC_HASH_NOT_FOUND);
+      }
+      int start = (int) unsignedMod(requestHash, entries.length);
+
+      // Same as ring_hash, walking the following table slots instead of the ring: pick the first
+      // READY subchannel, queue the pick if one of the first two subchannels is pending, and
+      // trigger connection for the first IDLE subchannel not preceded by a pending one.
+      boolean hasPending = false;  // true if having subchannel(s) in CONNECTING or IDLE
+      boolean canBuffer = true;  // true if RPCs can be buffered with a pending subchannel
+      Subchannel firstSubchannel = null;
+      Subchannel secondSubchannel = null;
+      for (int i = 0; i < entries.length; i++) {
+        int index = start + i;
+        if (index >= entries.length) {
+          index -= entries.length;
+        }
+        SubchannelView subchannel = pickableSubchannels[entries[index]];
+        if (subchannel.stateInfo.getState() == READY) {
+          return PickResult.withSubchannel(subchannel.subchannel);
+        }
+
+        // RPCs can be buffered if any of the first two subchannels is pending. Otherwise, RPCs
+        // are failed unless there is a READY connection.
+        if (firstSubchannel == null) {
+          firstSubchannel = subchannel.subchannel;
+        } else if (subchannel.subchannel != firstSubchannel) {
+          if (secondSubchannel == null) {
+            secondSubchannel = subchannel.subchannel;
+          } else if (subchannel.subchannel != secondSubchannel) {
+            canBuffer = false;
+          }
+        }
+        if (subchannel.stateInfo.getState() == TRANSIENT_FAILURE) {
+          continue;
+        }
+        if (!hasPending) {  // first non-failing subchannel
+          if (subchannel.stateInfo.getState() == IDLE) {
+            final Subchannel finalSubchannel = subchannel.subchannel;
+            syncContext.execute(new Runnable() {
+              @Override
+              public void run() {
+                finalSubchannel.requestConnection();
+              }
+            });
+          }
+          if (canBuffer) {  // done if this is the first or second two subchannel
+            return PickResult.withNoResult();  // queue the pick and re-process later
+          }
+          hasPending = true;
+        }
+      }
+      // Fail the pick with error status of the original subchannel hit by hash.
+      SubchannelView originalSubchannel = pickableSubchannels[entries[start]];
+      return PickResult.withError(originalSubchannel.stateInfo.getStatus());
+    }
+  }
+
+  /**
+   * An unmodifiable view of a subchannel with state not subject to its real connectivity
+   * state changes.
+   */
+  private static final class SubchannelView {
+    private final Subchannel subchannel;
+    private final ConnectivityStateInfo stateInfo;
+
+    private SubchannelView(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+      this.subchannel = subchannel;
+      this.stateInfo = stateInfo;
+    }
+  }
+
+  /**
+   * The lookup table: slot {@code s} belongs to the endpoint {@code addrKeys.get(entries[s])}.
+   */
+  @VisibleForTesting
+  static final class Table {
+    final int[] entries;
+    final List<EquivalentAddressGroup> addrKeys;
+
+    private Table(int[] entries, List<EquivalentAddressGroup> addrKeys) {
+      this.entries = entries;
+      this.addrKeys = addrKeys;
+    }
+
+    /**
+     * Populates a table of {@code tableSize} slots, a prime, for the endpoints {@code addrKeys}
+     * with the given weights.
+     */
+    static Table build(List<EquivalentAddressGroup> addrKeys, long[] weights, int tableSize) {
+      int endpointCount = addrKeys.size();
+      // Endpoint i visits the slots offset[i], offset[i] + skip[i], offset[i] + 2 * skip[i], ...
+      // modulo the table size, a permutation of all slots since the size is prime.
+      long[] offsets = new long[endpointCount];
+      long[] skips = new long[endpointCount];
+      long[] next = new long[endpointCount];
+      double[] targets = new double[endpointCount];
+      long maxWeight = 0;
+      for (int i = 0; i < endpointCount; i++) {
+        String key = hashKey(addrKeys.get(i));
+        offsets[i] = unsignedMod(offsetHashFunc.hashAsciiString(key), tableSize);
+        skips[i] = unsignedMod(skipHashFunc.hashAsciiString(key), tableSize - 1) + 1;
+        maxWeight = Math.max(maxWeight, weights[i]);
+      }
+      int[] entries = new int[tableSize];
+      Arrays.fill(entries, -1);
+      int filled = 0;
+      // An endpoint with the maximum weight takes a slot on every iteration, one with a third
+      // of it on every third iteration.
+      for (long iteration = 1; filled < tableSize; iteration++) {
+        for (int i = 0; i < endpointCount && filled < tableSize; i++) {
+          if ((double) iteration * weights[i] < targets[i]) {
+            continue;
+          }
+          targets[i] += maxWeight;
+          int slot;
+          do {
+            slot = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+            next[i]++;
+          } while (entries[slot] >= 0);
+          entries[slot] = i;
+          filled++;
+        }
+      }
+      return new Table(entries, Collections.unmodifiableList(addrKeys));
+    }
+  }
+
+  /**
+   * A lighter weight Reference than AtomicReference.
+   */
+  private static final class Ref<T> {
+    T value;
+
+    Ref(T value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Configures the table of a Maglev load balancer.
+   */
+  static final class MaglevConfig {
+    final int tableSize;
+
+    MaglevConfig(int tableSize) {
+      checkArgument(isPrime(tableSize), "tableSize %s is not a prime", tableSize);
+      this.tableSize = tableSize;
+    }
+
+    static boolean isPrime(long n) {
+      if (n < 2) {
+        return false;
+      }
+      for (long d = 2; d * d <= n; d++) {
+        if (n % d == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("tableSize", tableSize)
+          .toString();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Internal;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
+import java.util.Map;
+
+/**
+ * The provider for the "maglev" balancing policy. Its optional "tableSize" must be a prime.
+ */
+@Internal
+public final class MaglevLoadBalancerProvider extends LoadBalancerProvider {
+
+  // Same as ClientXdsClient.DEFAULT_MAGLEV_LB_POLICY_TABLE_SIZE
+  @VisibleForTesting
+  static final int DEFAULT_TABLE_SIZE = 65537;
+  // Same as ClientXdsClient.MAX_MAGLEV_LB_POLICY_TABLE_SIZE
+  static final int MAX_TABLE_SIZE = 5000011;
+
+  @Override
+  public LoadBalancer newLoadBalancer(Helper helper) {
+    return new MaglevLoadBalancer(helper);
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public int getPriority() {
+    return 5;
+  }
+
+  @Override
+  public String getPolicyName() {
+    return "maglev";
+  }
+
+  @Override
+  public ConfigOrError parseLoadBalancingPolicyConfig(Map<String, ?> rawLoadBalancingPolicyConfig) {
+    Long tableSize = JsonUtil.getNumberAsLong(rawLoadBalancingPolicyConfig, "tableSize");
+    if (tableSize == null) {
+      tableSize = (long) DEFAULT_TABLE_SIZE;
+    }
+    if (tableSize > MAX_TABLE_SIZE || !MaglevConfig.isPrime(tableSize)) {
+      return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(
+          "Invalid 'tableSize'"));
+    }
+    return ConfigOrError.fromConfig(new MaglevConfig(tableSize.intValue()));
+  }
+}
@@ -25,24 +25,31 @@ import static io.grpc.ConnectivityState.READY;
 import static io.grpc.ConnectivityState.SHUTDOWN;
 import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.Sets;
 import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
 import io.grpc.ConnectivityState;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.InternalLogId;
 import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.SynchronizationContext;
 import io.grpc.xds.XdsLogger.XdsLogLevel;
 import io.grpc.xds.XdsSubchannelPickers.ErrorPicker;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * A {@link LoadBalancer} that provides consistent hashing based load balancing to upstream hosts.
@@ -51,10 +58,16 @@ import java.util.Set;
  * the nearest corresponding host clockwise around the ring. Each host is placed on the ring some
  * number of times proportional to its weight. With the ring partitioned appropriately, the
  * addition or removal of one host from a set of N hosts will affect only 1/N requests.
+ *
+ * <p>With a hash balance factor configured, loads are bounded: a host already serving more than
+ * its share of the in-flight requests, scaled by the factor, is passed over for the next host
+ * around the ring.
  */
 final class RingHashLoadBalancer extends LoadBalancer {
   private static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO =
       Attributes.Key.create("state-info");
+  private static final Attributes.Key<InFlightCounter> IN_FLIGHT =
+      Attributes.Key.create("in-flight");
   private static final Status RPC_HASH_NOT_FOUND =
       Status.INTERNAL.withDescription("RPC hash not found. Probably a bug because xds resolver"
           + " config selector always generates a hash.");
@@ -65,7 +78,11 @@ final class RingHashLoadBalancer extends LoadBalancer {
   private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
   private final Helper helper;
 
-  private List<RingEntry> ring;
+  private final AtomicInteger totalInFlight = new AtomicInteger();
+
+  @Nullable
+  private Ring ring;
+  private int hashBalanceFactor;
   private ConnectivityState currentState;
 
   RingHashLoadBalancer(Helper helper) {
@@ -89,7 +106,8 @@ final class RingHashLoadBalancer extends LoadBalancer {
         Sets.newHashSet(Sets.difference(subchannels.keySet(), latestAddrs.keySet()));
 
     RingHashConfig config = (RingHashConfig) resolvedAddresses.getLoadBalancingPolicyConfig();
-    Map<EquivalentAddressGroup, Long> serverWeights = new HashMap<>();
+    // Keep the address order, so that the ring does not depend on hash map iteration order.
+    Map<EquivalentAddressGroup, Long> serverWeights = new LinkedHashMap<>();
     long totalWeight = 0L;
     for (EquivalentAddressGroup eag : addrList) {
       Long weight = eag.getAttributes().get(InternalXdsAttributes.ATTR_SERVER_WEIGHT);
@@ -112,8 +130,10 @@ final class RingHashLoadBalancer extends LoadBalancer {
         existingSubchannel.updateAddresses(Collections.singletonList(eag));
         continue;
       }
-      Attributes attr = Attributes.newBuilder().set(
-          STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE))).build();
+      Attributes attr = Attributes.newBuilder()
+          .set(STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE)))
+          .set(IN_FLIGHT, new InFlightCounter(totalInFlight))
+          .build();
       final Subchannel subchannel = helper.createSubchannel(
           CreateSubchannelArgs.newBuilder().setAddresses(eag).setAttributes(attr).build());
       subchannel.start(new SubchannelStateListener() {
@@ -135,7 +155,20 @@ final class RingHashLoadBalancer extends LoadBalancer {
     double scale = Math.min(
         Math.ceil(normalizedMinWeight * config.minRingSize) / normalizedMinWeight,
         (double) config.maxRingSize);
-    ring = buildRing(serverWeights, totalWeight, scale);
+    List<EquivalentAddressGroup> addrKeys = new ArrayList<>(serverWeights.keySet());
+    int[] counts = new int[addrKeys.size()];
+    double currentHashes = 0.0;
+    double targetHashes = 0.0;
+    for (int i = 0; i < counts.length; i++) {
+      targetHashes += scale * serverWeights.get(addrKeys.get(i)) / totalWeight;
+      double count = Math.ceil(targetHashes) - currentHashes;
+      if (count > 0) {
+        counts[i] = (int) count;
+        currentHashes += count;
+      }
+    }
+    ring = Ring.build(ring, addrKeys, counts);
+    hashBalanceFactor = config.hashBalanceFactor;
 
     // Shut down subchannels for delisted addresses.
     List<Subchannel> removedSubchannels = new ArrayList<>();
@@ -151,32 +184,6 @@ final class RingHashLoadBalancer extends LoadBalancer {
     }
   }
 
-  private static List<RingEntry> buildRing(
-      Map<EquivalentAddressGroup, Long> serverWeights, long totalWeight, double scale) {
-    List<RingEntry> ring = new ArrayList<>();
-    double currentHashes = 0.0;
-    double targetHashes = 0.0;
-    for (Map.Entry<EquivalentAddressGroup, Long> entry : serverWeights.entrySet()) {
-      EquivalentAddressGroup addrKey = entry.getKey();
-      double normalizedWeight = (double) entry.getValue() / totalWeight;
-      // TODO(chengyuanzhang): is using the list of socket address correct?
-      StringBuilder sb = new StringBuilder(addrKey.getAddresses().toString());
-      sb.append('_');
-      targetHashes += scale * normalizedWeight;
-      long i = 0L;
-      while (currentHashes < targetHashes) {
-        sb.append(i);
-        long hash = hashFunc.hashAsciiString(sb.toString());
-        ring.add(new RingEntry(hash, addrKey));
-        i++;
-        currentHashes++;
-        sb.setLength(sb.length() - 1);
-      }
-    }
-    Collections.sort(ring);
-    return Collections.unmodifiableList(ring);
-  }
-
   @Override
   public void handleNameResolutionError(Status error) {
     if (currentState != READY) {
@@ -246,7 +253,8 @@ final class RingHashLoadBalancer extends LoadBalancer {
         overallState = TRANSIENT_FAILURE;
       }
     }
-    RingHashPicker picker = new RingHashPicker(syncContext, ring, subchannels);
+    RingHashPicker picker =
+        new RingHashPicker(syncContext, ring, subchannels, hashBalanceFactor, totalInFlight);
     // TODO(chengyuanzhang): avoid unnecessary reprocess caused by duplicated server addr updates
     helper.updateBalancingState(overallState, picker);
     currentState = overallState;
@@ -303,24 +311,37 @@ final class RingHashLoadBalancer extends LoadBalancer {
 
   private static final class RingHashPicker extends SubchannelPicker {
     private final SynchronizationContext syncContext;
-    private final List<RingEntry> ring;
+    private final long[] hashes;
+    private final int[] endpoints;
     // Avoid synchronization between pickSubchannel and subchannel's connectivity state change,
-    // freeze picker's view of subchannel's connectivity state.
-    // TODO(chengyuanzhang): can be more performance-friendly with
-    //  IdentityHashMap<Subchannel, ConnectivityStateInfo> and RingEntry contains Subchannel.
-    private final Map<EquivalentAddressGroup, SubchannelView> pickableSubchannels;  // read-only
+    // freeze picker's view of subchannel's connectivity state. Indexed like the ring's endpoints.
+    private final SubchannelView[] pickableSubchannels;  // read-only
+    // 0 if loads are not bounded.
+    private final int hashBalanceFactor;
+    private final int readyCount;
+    private final AtomicInteger totalInFlight;
 
     private RingHashPicker(
-        SynchronizationContext syncContext, List<RingEntry> ring,
-        Map<EquivalentAddressGroup, Subchannel> subchannels) {
+        SynchronizationContext syncContext, Ring ring,
+        Map<EquivalentAddressGroup, Subchannel> subchannels, int hashBalanceFactor,
+        AtomicInteger totalInFlight) {
       this.syncContext = syncContext;
-      this.ring = ring;
-      pickableSubchannels = new HashMap<>(subchannels.size());
-      for (Map.Entry<EquivalentAddressGroup, Subchannel> entry : subchannels.entrySet()) {
-        Subchannel subchannel = entry.getValue();
+      hashes = ring.hashes;
+      endpoints = ring.endpoints;
+      this.hashBalanceFactor = hashBalanceFactor;
+      this.totalInFlight = totalInFlight;
+      pickableSubchannels = new SubchannelView[ring.addrKeys.size()];
+      int readyCount = 0;
+      for (int i = 0; i < pickableSubchannels.length; i++) {
+        Subchannel subchannel = subchannels.get(ring.addrKeys.get(i));
         ConnectivityStateInfo stateInfo = subchannel.getAttributes().get(STATE_INFO).value;
-        pickableSubchannels.put(entry.getKey(), new SubchannelView(subchannel, stateInfo));
+        pickableSubchannels[i] = new SubchannelView(
+            subchannel, stateInfo, subchannel.getAttributes().get(IN_FLIGHT));
+        if (stateInfo.getState() == READY) {
+          readyCount++;
+        }
       }
+      this.readyCount = readyCount;
     }
 
     @Override
@@ -332,29 +353,25 @@ final class RingHashLoadBalancer extends LoadBalancer {
 
       // Find the ring entry with hash next to (clockwise) the RPC's hash.
       int low = 0;
-      int high = ring.size();
-      int mid;
-      while (true) {
-        mid = (low + high) / 2;
-        if (mid == ring.size()) {
-          mid = 0;
-          break;
-        }
-        long midVal = ring.get(mid).hash;
-        long midValL = mid == 0 ? 0 : ring.get(mid - 1).hash;
-        if (requestHash <= midVal && requestHash > midValL) {
-          break;
-        }
-        if (midVal < requestHash) {
+      int high = hashes.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (hashes[mid] < requestHash) {
           low = mid + 1;
         } else {
-          high =  mid - 1;
-        }
-        if (low > high) {
-          mid = 0;
-          break;
+          high = mid;
         }
       }
+      int start = low == hashes.length ? 0 : low;
+
+      // With bounded loads, a READY subchannel already serving its share of the in-flight RPCs
+      // is passed over for the next one on the ring.
+      int maxInFlight = Integer.MAX_VALUE;
+      if (hashBalanceFactor > 0 && readyCount > 0) {
+        maxInFlight = (int) Math.ceil(
+            (totalInFlight.get() + 1) * (hashBalanceFactor / 100.0) / readyCount);
+      }
+      SubchannelView overloaded = null;  // the first READY subchannel over the bound
 
       // Try finding a READY subchannel. Starting from the ring entry next to the RPC's hash.
       // If the one of the first two subchannels is not in TRANSIENT_FAILURE, return result
@@ -365,12 +382,20 @@ final class RingHashLoadBalancer extends LoadBalancer {
       boolean canBuffer = true;  // true if RPCs can be buffered with a pending subchannel
       Subchannel firstSubchannel = null;
       Subchannel secondSubchannel = null;
-      for (int i = 0; i < ring.size(); i++) {
-        int index = (mid + i) % ring.size();
-        EquivalentAddressGroup addrKey = ring.get(index).addrKey;
-        SubchannelView subchannel = pickableSubchannels.get(addrKey);
+      for (int i = 0; i < hashes.length; i++) {
+        int index = start + i;
+        if (index >= hashes.length) {
+          index -= hashes.length;
+        }
+        SubchannelView subchannel = pickableSubchannels[endpoints[index]];
         if (subchannel.stateInfo.getState() == READY) {
-          return PickResult.withSubchannel(subchannel.subchannel);
+          if (subchannel.inFlight.get() < maxInFlight) {
+            return pickResult(subchannel);
+          }
+          if (overloaded == null) {
+            overloaded = subchannel;
+          }
+          continue;
         }
 
         // RPCs can be buffered if any of the first two subchannels is pending. Otherwise, RPCs
@@ -397,16 +422,29 @@ final class RingHashLoadBalancer extends LoadBalancer {
               }
             });
           }
-          if (canBuffer) {  // done if this is the first or second two subchannel
+          // Done if this is the first or second subchannel, unless an overloaded READY one
+          // can take the RPC instead of queuing it.
+          if (canBuffer && overloaded == null) {
             return PickResult.withNoResult();  // queue the pick and re-process later
           }
           hasPending = true;
         }
       }
+      if (overloaded != null) {
+        // Every READY subchannel is over the bound.
+        return pickResult(overloaded);
+      }
       // Fail the pick with error status of the original subchannel hit by hash.
-      SubchannelView originalSubchannel = pickableSubchannels.get(ring.get(mid).addrKey);
+      SubchannelView originalSubchannel = pickableSubchannels[endpoints[start]];
       return PickResult.withError(originalSubchannel.stateInfo.getStatus());
     }
+
+    private PickResult pickResult(SubchannelView subchannel) {
+      if (hashBalanceFactor > 0) {
+        return PickResult.withSubchannel(subchannel.subchannel, subchannel.inFlight);
+      }
+      return PickResult.withSubchannel(subchannel.subchannel);
+    }
   }
 
   /**
@@ -416,25 +454,225 @@ final class RingHashLoadBalancer extends LoadBalancer {
   private static final class SubchannelView {
     private final Subchannel subchannel;
     private final ConnectivityStateInfo stateInfo;
+    private final InFlightCounter inFlight;
 
-    private SubchannelView(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+    private SubchannelView(
+        Subchannel subchannel, ConnectivityStateInfo stateInfo, InFlightCounter inFlight) {
       this.subchannel = subchannel;
       this.stateInfo = stateInfo;
+      this.inFlight = inFlight;
     }
   }
 
-  private static final class RingEntry implements Comparable<RingEntry> {
-    private final long hash;
-    private final EquivalentAddressGroup addrKey;
+  /** Counts the in-flight RPCs of a subchannel, and of all subchannels together. */
+  private static final class InFlightCounter extends ClientStreamTracer.Factory {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger total;
 
-    private RingEntry(long hash, EquivalentAddressGroup addrKey) {
-      this.hash = hash;
-      this.addrKey = addrKey;
+    InFlightCounter(AtomicInteger total) {
+      this.total = total;
     }
 
     @Override
-    public int compareTo(RingEntry entry) {
-      return Long.compare(hash, entry.hash);
+    public ClientStreamTracer newClientStreamTracer(
+        ClientStreamTracer.StreamInfo info, Metadata headers) {
+      inFlight.incrementAndGet();
+      total.incrementAndGet();
+      return new ClientStreamTracer() {
+        @Override
+        public void streamClosed(Status status) {
+          inFlight.decrementAndGet();
+          total.decrementAndGet();
+        }
+      };
+    }
+
+    int get() {
+      return inFlight.get();
+    }
+  }
+
+  /**
+   * The ring, as parallel arrays sorted by hash: entry {@code i} has the hash {@code hashes[i]}
+   * and belongs to the endpoint {@code addrKeys.get(endpoints[i])}. An endpoint with {@code
+   * counts[e]} entries has the hashes of the keys {@code "<addresses>_0"} to {@code
+   * "<addresses>_<counts[e] - 1>"}, so a rebuild can keep the entries of the previous ring and
+   * only hash what changed.
+   */
+  @VisibleForTesting
+  static final class Ring {
+    final long[] hashes;
+    final int[] endpoints;
+    final List<EquivalentAddressGroup> addrKeys;
+    final int[] counts;
+
+    private Ring(
+        long[] hashes, int[] endpoints, List<EquivalentAddressGroup> addrKeys, int[] counts) {
+      this.hashes = hashes;
+      this.endpoints = endpoints;
+      this.addrKeys = addrKeys;
+      this.counts = counts;
+    }
+
+    /**
+     * Builds the ring with {@code counts[e]} entries for each endpoint {@code addrKeys.get(e)},
+     * reusing the entries of {@code previous} that stay. Costs time linear in the ring size, plus
+     * hashing and sorting the entries that are new.
+     */
+    static Ring build(
+        @Nullable Ring previous, List<EquivalentAddressGroup> addrKeys, int[] counts) {
+      if (previous != null && previous.addrKeys.equals(addrKeys)
+          && Arrays.equals(previous.counts, counts)) {
+        return previous;
+      }
+      int endpointCount = addrKeys.size();
+      int total = 0;
+      for (int count : counts) {
+        total += count;
+      }
+      // The entries of endpoint e with a suffix below fromSuffix[e] are on the previous ring.
+      int[] fromSuffix = new int[endpointCount];
+      int[] oldToNew = null;
+      long[][] dropped = null;
+      if (previous != null) {
+        Map<EquivalentAddressGroup, Integer> newIndexes = new HashMap<>(endpointCount * 2);
+        for (int i = 0; i < endpointCount; i++) {
+          newIndexes.put(addrKeys.get(i), i);
+        }
+        oldToNew = new int[previous.addrKeys.size()];
+        dropped = new long[oldToNew.length][];
+        for (int old = 0; old < oldToNew.length; old++) {
+          Integer index = newIndexes.get(previous.addrKeys.get(old));
+          if (index == null) {
+            oldToNew[old] = -1;
+            continue;
+          }
+          oldToNew[old] = index;
+          int oldCount = previous.counts[old];
+          fromSuffix[index] = Math.min(oldCount, counts[index]);
+          if (counts[index] < oldCount) {
+            dropped[old] = hashEntries(addrKeys.get(index), counts[index], oldCount);
+            Arrays.sort(dropped[old]);
+          }
+        }
+      }
+
+      int addedCount = total;
+      for (int i = 0; i < endpointCount; i++) {
+        addedCount -= fromSuffix[i];
+      }
+      long[] addedHashes = new long[addedCount];
+      int[] addedEndpoints = new int[addedCount];
+      int n = 0;
+      for (int i = 0; i < endpointCount; i++) {
+        long[] endpointHashes = hashEntries(addrKeys.get(i), fromSuffix[i], counts[i]);
+        System.arraycopy(endpointHashes, 0, addedHashes, n, endpointHashes.length);
+        Arrays.fill(addedEndpoints, n, n + endpointHashes.length, i);
+        n += endpointHashes.length;
+      }
+      sort(addedHashes, addedEndpoints, 0, addedCount);
+
+      // Merge the kept entries of the previous ring with the new ones.
+      long[] hashes = new long[total];
+      int[] endpoints = new int[total];
+      int out = 0;
+      int added = 0;
+      int prev = 0;
+      int prevSize = previous == null ? 0 : previous.hashes.length;
+      while (out < total) {
+        while (prev < prevSize && !keep(previous, prev, oldToNew, dropped)) {
+          prev++;
+        }
+        if (prev < prevSize
+            && (added == addedCount || previous.hashes[prev] <= addedHashes[added])) {
+          hashes[out] = previous.hashes[prev];
+          endpoints[out] = oldToNew[previous.endpoints[prev]];
+          prev++;
+        } else if (added < addedCount) {
+          hashes[out] = addedHashes[added];
+          endpoints[out] = addedEndpoints[added];
+          added++;
+        } else {
+          break;
+        }
+        out++;
+      }
+      if (out < total) {
+        // An endpoint had two keys with the same hash, and the dropped one took the kept one
+        // along. Too rare to handle other than by starting over.
+        return build(null, addrKeys, counts);
+      }
+      return new Ring(
+          hashes, endpoints, Collections.unmodifiableList(new ArrayList<>(addrKeys)), counts);
+    }
+
+    private static boolean keep(Ring previous, int entry, int[] oldToNew, long[][] dropped) {
+      int old = previous.endpoints[entry];
+      if (oldToNew[old] < 0) {
+        return false;
+      }
+      return dropped[old] == null || Arrays.binarySearch(dropped[old], previous.hashes[entry]) < 0;
+    }
+
+    /** Returns the hashes of an endpoint's ring entries with suffixes in [from, to). */
+    private static long[] hashEntries(EquivalentAddressGroup addrKey, int from, int to) {
+      long[] hashes = new long[Math.max(0, to - from)];
+      // TODO(chengyuanzhang): is using the list of socket address correct?
+      StringBuilder sb = new StringBuilder(addrKey.getAddresses().toString());
+      sb.append('_');
+      int prefixLength = sb.length();
+      for (int i = from; i < to; i++) {
+        sb.setLength(prefixLength);
+        sb.append(i);
+        hashes[i - from] = hashFunc.hashAsciiString(sb.toString());
+      }
+      return hashes;
+    }
+
+    /** Sorts [from, to) of both arrays by hash. */
+    private static void sort(long[] hashes, int[] endpoints, int from, int to) {
+      while (to - from > 16) {
+        long pivot = median(hashes[from], hashes[(from + to) >>> 1], hashes[to - 1]);
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+          while (hashes[i] < pivot) {
+            i++;
+          }
+          while (hashes[j] > pivot) {
+            j--;
+          }
+          if (i <= j) {
+            swap(hashes, endpoints, i++, j--);
+          }
+        }
+        // Recurse into the smaller part and loop on the larger one, bounding the stack depth.
+        if (j + 1 - from < to - i) {
+          sort(hashes, endpoints, from, j + 1);
+          from = i;
+        } else {
+          sort(hashes, endpoints, i, to);
+          to = j + 1;
+        }
+      }
+      for (int i = from + 1; i < to; i++) {
+        for (int j = i; j > from && hashes[j - 1] > hashes[j]; j--) {
+          swap(hashes, endpoints, j - 1, j);
+        }
+      }
+    }
+
+    private static long median(long a, long b, long c) {
+      return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(long[] hashes, int[] endpoints, int i, int j) {
+      long hash = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = hash;
+      int endpoint = endpoints[i];
+      endpoints[i] = endpoints[j];
+      endpoints[j] = endpoint;
     }
   }
 
@@ -456,13 +694,22 @@ final class RingHashLoadBalancer extends LoadBalancer {
   static final class RingHashConfig {
     final long minRingSize;
     final long maxRingSize;
+    // In percent of the average in-flight RPCs per READY subchannel, or 0 if loads are not bounded.
+    final int hashBalanceFactor;
 
     RingHashConfig(long minRingSize, long maxRingSize) {
+      this(minRingSize, maxRingSize, 0);
+    }
+
+    RingHashConfig(long minRingSize, long maxRingSize, int hashBalanceFactor) {
       checkArgument(minRingSize > 0, "minRingSize <= 0");
       checkArgument(maxRingSize > 0, "maxRingSize <= 0");
       checkArgument(minRingSize <= maxRingSize, "minRingSize > maxRingSize");
+      checkArgument(hashBalanceFactor == 0 || hashBalanceFactor >= 100,
+          "hashBalanceFactor must be 0 or at least 100");
       this.minRingSize = minRingSize;
       this.maxRingSize = maxRingSize;
+      this.hashBalanceFactor = hashBalanceFactor;
     }
 
     @Override
@@ -470,6 +717,7 @@ final class RingHashLoadBalancer extends LoadBalancer {
       return MoreObjects.toStringHelper(this)
           .add("minRingSize", minRingSize)
           .add("maxRingSize", maxRingSize)
+          .add("hashBalanceFactor", hashBalanceFactor)
           .toString();
     }
   }
@@ -29,7 +29,8 @@ import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
 import java.util.Map;
 
 /**
- * The provider for the "ring_hash" balancing policy.
+ * The provider for the "ring_hash" balancing policy. Its optional "hashBalanceFactor", at least
+ * 100, bounds the load of each host to that percentage of the average.
  */
 @Internal
 public final class RingHashLoadBalancerProvider extends LoadBalancerProvider {
@@ -84,6 +85,16 @@ public final class RingHashLoadBalancerProvider extends LoadBalancerProvider {
       return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(
           "Invalid 'mingRingSize'/'maxRingSize'"));
     }
-    return ConfigOrError.fromConfig(new RingHashConfig(minRingSize, maxRingSize));
+    Integer hashBalanceFactor =
+        JsonUtil.getNumberAsInteger(rawLoadBalancingPolicyConfig, "hashBalanceFactor");
+    if (hashBalanceFactor == null) {
+      hashBalanceFactor = 0;
+    }
+    if (hashBalanceFactor != 0 && hashBalanceFactor < 100) {
+      return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(
+          "Invalid 'hashBalanceFactor'"));
+    }
+    return ConfigOrError.fromConfig(
+        new RingHashConfig(minRingSize, maxRingSize, hashBalanceFactor));
   }
 }
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+
+import com.github.udpa.udpa.data.orca.v1.OrcaLoadReport;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.Sets;
+import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.InternalLogId;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.SynchronizationContext.ScheduledHandle;
+import io.grpc.internal.TimeProvider;
+import io.grpc.xds.OrcaOobUtil.OrcaOobReportListener;
+import io.grpc.xds.OrcaOobUtil.OrcaReportingConfig;
+import io.grpc.xds.OrcaOobUtil.OrcaReportingHelperWrapper;
+import io.grpc.xds.OrcaPerRequestUtil.OrcaPerRequestReportListener;
+import io.grpc.xds.XdsLogger.XdsLogLevel;
+import io.grpc.xds.XdsSubchannelPickers.ErrorPicker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LoadBalancer} that rounds robin over the ready subchannels in proportion to weights
+ * derived from the ORCA load reports of their backends: a backend serving more queries per second
+ * at the same CPU utilization gets more RPCs. The reports come either with each RPC or,
+ * if {@code enableOobLoadReport} is set, out-of-band.
+ *
+ * <p>Weights are recomputed every {@code weightUpdatePeriod}. A backend has no weight until it
+ * has reported for {@code blackoutPeriod}, and loses it when it has not reported for {@code
+ * weightExpirationPeriod}. Backends without a weight get the mean weight of the others.
+ */
+final class WeightedRoundRobinLoadBalancer extends LoadBalancer {
+  private static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO =
+      Attributes.Key.create("state-info");
+  @VisibleForTesting
+  static final Attributes.Key<WeightedSubchannelState> WEIGHT_STATE =
+      Attributes.Key.create("weight-state");
+
+  private final XdsLogger logger;
+  private final Helper helper;
+  private final SynchronizationContext syncContext;
+  private final TimeProvider timeProvider;
+  private final Random random;
+  private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
+  private final Runnable updateWeightTask = new Runnable() {
+    @Override
+    public void run() {
+      if (currentPicker instanceof WeightedRoundRobinPicker) {
+        ((WeightedRoundRobinPicker) currentPicker).updateWeights();
+      }
+      scheduleWeightUpdate();
+    }
+  };
+
+  private WeightedRoundRobinConfig config = WeightedRoundRobinConfig.DEFAULT;
+  @Nullable
+  private ConnectivityState currentState;
+  @Nullable
+  private SubchannelPicker currentPicker;
+  @Nullable
+  private ScheduledHandle weightUpdateTimer;
+
+  WeightedRoundRobinLoadBalancer(Helper helper) {
+    this(helper, TimeProvider.MONOTONIC_TIME_PROVIDER, new Random());
+  }
+
+  @VisibleForTesting
+  WeightedRoundRobinLoadBalancer(Helper helper, TimeProvider timeProvider, Random random) {
+    this.helper = checkNotNull(helper, "helper");
+    this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+    this.random = checkNotNull(random, "random");
+    syncContext = checkNotNull(helper.getSynchronizationContext(), "syncContext");
+    logger = XdsLogger.withLogId(
+        InternalLogId.allocate("weighted_round_robin_lb", helper.getAuthority()));
+    logger.log(XdsLogLevel.INFO, "Created");
+  }
+
+  @Override
+  public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+    logger.log(XdsLogLevel.DEBUG, "Received resolution result: {0}", resolvedAddresses);
+    Object lbConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+    config = lbConfig instanceof WeightedRoundRobinConfig
+        ? (WeightedRoundRobinConfig) lbConfig : WeightedRoundRobinConfig.DEFAULT;
+
+    Map<EquivalentAddressGroup, EquivalentAddressGroup> latestAddrs = new HashMap<>();
+    for (EquivalentAddressGroup eag : resolvedAddresses.getAddresses()) {
+      latestAddrs.put(stripAttrs(eag), eag);
+    }
+    Set<EquivalentAddressGroup> removedAddrs =
+        Sets.newHashSet(Sets.difference(subchannels.keySet(), latestAddrs.keySet()));
+
+    for (Map.Entry<EquivalentAddressGroup, EquivalentAddressGroup> latestEntry :
+        latestAddrs.entrySet()) {
+      Subchannel existingSubchannel = subchannels.get(latestEntry.getKey());
+      if (existingSubchannel != null) {
+        existingSubchannel.updateAddresses(Collections.singletonList(latestEntry.getValue()));
+        getWeightState(existingSubchannel).setOobReporting(config);
+        continue;
+      }
+      // Out-of-band reports do not say which backend they are from, so each subchannel gets its
+      // own reporting helper.
+      WeightedSubchannelState weightState = new WeightedSubchannelState(timeProvider);
+      weightState.orcaHelper =
+          OrcaOobUtil.getInstance().newOrcaReportingHelperWrapper(helper, weightState);
+      weightState.setOobReporting(config);
+      Attributes attrs = Attributes.newBuilder()
+          .set(STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE)))
+          .set(WEIGHT_STATE, weightState)
+          .build();
+      final Subchannel subchannel = weightState.orcaHelper.asHelper().createSubchannel(
+          CreateSubchannelArgs.newBuilder()
+              .setAddresses(latestEntry.getValue())
+              .setAttributes(attrs)
+              .build());
+      subchannel.start(new SubchannelStateListener() {
+        @Override
+        public void onSubchannelState(ConnectivityStateInfo newState) {
+          processSubchannelState(subchannel, newState);
+        }
+      });
+      subchannels.put(latestEntry.getKey(), subchannel);
+      subchannel.requestConnection();
+    }
+
+    List<Subchannel> removedSubchannels = new ArrayList<>();
+    for (EquivalentAddressGroup addr : removedAddrs) {
+      removedSubchannels.add(subchannels.remove(addr));
+    }
+    // Update the picker before shutting down the subchannels, to reduce the chance of the race
+    // between picking a subchannel and shutting it down.
+    updateBalancingState();
+    for (Subchannel subchannel : removedSubchannels) {
+      shutdownSubchannel(subchannel);
+    }
+  }
+
+  @Override
+  public void handleNameResolutionError(Status error) {
+    if (currentState != READY) {
+      updateBalancingState(TRANSIENT_FAILURE, new ErrorPicker(error));
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    logger.log(XdsLogLevel.INFO, "Shutdown");
+    if (weightUpdateTimer != null) {
+      weightUpdateTimer.cancel();
+      weightUpdateTimer = null;
+    }
+    for (Subchannel subchannel : subchannels.values()) {
+      shutdownSubchannel(subchannel);
+    }
+    subchannels.clear();
+  }
+
+  private void processSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+    if (subchannels.get(stripAttrs(subchannel.getAddresses())) != subchannel) {
+      return;
+    }
+    if (stateInfo.getState() == TRANSIENT_FAILURE || stateInfo.getState() == IDLE) {
+      helper.refreshNameResolution();
+    }
+    if (stateInfo.getState() == IDLE) {
+      subchannel.requestConnection();
+    }
+    Ref<ConnectivityStateInfo> subchannelStateRef = getSubchannelStateInfoRef(subchannel);
+    if (subchannelStateRef.value.getState() == TRANSIENT_FAILURE
+        && (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE)) {
+      return;
+    }
+    subchannelStateRef.value = stateInfo;
+    updateBalancingState();
+  }
+
+  private void updateBalancingState() {
+    List<Subchannel> activeList = new ArrayList<>(subchannels.size());
+    for (Subchannel subchannel : subchannels.values()) {
+      if (getSubchannelStateInfoRef(subchannel).value.getState() == READY) {
+        activeList.add(subchannel);
+      }
+    }
+    if (!activeList.isEmpty()) {
+      if (currentPicker instanceof WeightedRoundRobinPicker
+          && ((WeightedRoundRobinPicker) currentPicker).isEquivalentTo(activeList, config)) {
+        return;
+      }
+      WeightedRoundRobinPicker picker = new WeightedRoundRobinPicker(
+          activeList, config, timeProvider, random);
+      picker.updateWeights();
+      updateBalancingState(READY, picker);
+      if (weightUpdateTimer == null) {
+        scheduleWeightUpdate();
+      }
+      return;
+    }
+    boolean isConnecting = false;
+    Status aggStatus = null;
+    for (Subchannel subchannel : subchannels.values()) {
+      ConnectivityStateInfo stateInfo = getSubchannelStateInfoRef(subchannel).value;
+      if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+        isConnecting = true;
+      } else if (aggStatus == null) {
+        aggStatus = stateInfo.getStatus();
+      }
+    }
+    if (isConnecting || aggStatus == null) {
+      updateBalancingState(CONNECTING, XdsSubchannelPickers.BUFFER_PICKER);
+    } else {
+      updateBalancingState(TRANSIENT_FAILURE, new ErrorPicker(aggStatus));
+    }
+  }
+
+  private void updateBalancingState(ConnectivityState state, SubchannelPicker picker) {
+    if (state != currentState || picker != currentPicker) {
+      helper.updateBalancingState(state, picker);
+      currentState = state;
+      currentPicker = picker;
+    }
+  }
+
+  private void scheduleWeightUpdate() {
+    weightUpdateTimer = syncContext.schedule(
+        updateWeightTask, config.weightUpdatePeriodNanos, TimeUnit.NANOSECONDS,
+        helper.getScheduledExecutorService());
+  }
+
+  private static void shutdownSubchannel(Subchannel subchannel) {
+    subchannel.shutdown();
+    getSubchannelStateInfoRef(subchannel).value = ConnectivityStateInfo.forNonError(SHUTDOWN);
+  }
+
+  private static EquivalentAddressGroup stripAttrs(EquivalentAddressGroup eag) {
+    return new EquivalentAddressGroup(eag.getAddresses());
+  }
+
+  private static Ref<ConnectivityStateInfo> getSubchannelStateInfoRef(Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(STATE_INFO), "STATE_INFO");
+  }
+
+  private static WeightedSubchannelState getWeightState(Subchannel subchannel) {
+    return checkNotNull(subchannel.getAttributes().get(WEIGHT_STATE), "WEIGHT_STATE");
+  }
+
+  /**
+   * The weight of one backend, from its ORCA reports. Per-request reports arrive on transport
+   * threads, so the fields are volatile and a report racing with another may be lost, which only
+   * delays the weight by one report.
+   */
+  @VisibleForTesting
+  static final class WeightedSubchannelState
+      implements OrcaOobReportListener, OrcaPerRequestReportListener {
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final TimeProvider timeProvider;
+    final ClientStreamTracer.Factory perRequestTracerFactory;
+    OrcaReportingHelperWrapper orcaHelper;
+    private volatile long lastUpdatedNanos = NEVER;
+    private volatile long nonEmptySinceNanos = NEVER;
+    private volatile double weight;
+
+    WeightedSubchannelState(TimeProvider timeProvider) {
+      this.timeProvider = timeProvider;
+      perRequestTracerFactory =
+          OrcaPerRequestUtil.getInstance().newOrcaClientStreamTracerFactory(this);
+    }
+
+    void setOobReporting(WeightedRoundRobinConfig config) {
+      // The reporting RPC cannot be stopped once started. Its reports keep feeding the weight.
+      if (config.enableOobLoadReport) {
+        orcaHelper.setReportingConfig(OrcaReportingConfig.newBuilder()
+            .setReportInterval(config.oobReportingPeriodNanos, TimeUnit.NANOSECONDS)
+            .build());
+      }
+    }
+
+    @Override
+    public void onLoadReport(OrcaLoadReport report) {
+      double newWeight = report.getCpuUtilization() > 0 && report.getRps() > 0
+          ? report.getRps() / report.getCpuUtilization() : 0;
+      if (newWeight == 0) {
+        return;
+      }
+      long now = timeProvider.currentTimeNanos();
+      if (nonEmptySinceNanos == NEVER) {
+        nonEmptySinceNanos = now;
+      }
+      lastUpdatedNanos = now;
+      weight = newWeight;
+    }
+
+    /** Returns the weight to use at {@code now}, or 0 if there is none. */
+    double getWeight(long now, WeightedRoundRobinConfig config) {
+      if (lastUpdatedNanos == NEVER) {
+        return 0;
+      }
+      if (now - lastUpdatedNanos >= config.weightExpirationPeriodNanos) {
+        // Start the blackout period again when the reports come back.
+        nonEmptySinceNanos = NEVER;
+        return 0;
+      }
+      if (nonEmptySinceNanos == NEVER
+          || now - nonEmptySinceNanos < config.blackoutPeriodNanos) {
+        return 0;
+      }
+      return weight;
+    }
+  }
+
+  @VisibleForTesting
+  static final class WeightedRoundRobinPicker extends SubchannelPicker {
+    private final List<Subchannel> list; // non-empty
+    private final WeightedSubchannelState[] weightStates;
+    private final WeightedRoundRobinConfig config;
+    private final TimeProvider timeProvider;
+    private final Random random;
+    private volatile StaticStrideScheduler scheduler;
+
+    WeightedRoundRobinPicker(List<Subchannel> list, WeightedRoundRobinConfig config,
+        TimeProvider timeProvider, Random random) {
+      checkArgument(!list.isEmpty(), "empty list");
+      this.list = list;
+      this.config = config;
+      this.timeProvider = timeProvider;
+      this.random = random;
+      weightStates = new WeightedSubchannelState[list.size()];
+      for (int i = 0; i < weightStates.length; i++) {
+        weightStates[i] = getWeightState(list.get(i));
+      }
+    }
+
+    @Override
+    public PickResult pickSubchannel(PickSubchannelArgs args) {
+      int index = scheduler.pick();
+      Subchannel subchannel = list.get(index);
+      if (config.enableOobLoadReport) {
+        return PickResult.withSubchannel(subchannel);
+      }
+      return PickResult.withSubchannel(subchannel, weightStates[index].perRequestTracerFactory);
+    }
+
+    /** Rebuilds the scheduler from the current weights. Runs in the SynchronizationContext. */
+    void updateWeights() {
+      long now = timeProvider.currentTimeNanos();
+      double[] weights = new double[weightStates.length];
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = weightStates[i].getWeight(now, config);
+      }
+      scheduler = new StaticStrideScheduler(weights, random);
+    }
+
+    boolean isEquivalentTo(List<Subchannel> otherList, WeightedRoundRobinConfig otherConfig) {
+      return list.size() == otherList.size()
+          && config.equals(otherConfig)
+          && new HashSet<>(list).containsAll(otherList);
+    }
+
+    @VisibleForTesting
+    List<Subchannel> getList() {
+      return list;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("list", list)
+          .add("scheduler", scheduler)
+          .toString();
+    }
+  }
+
+  /**
+   * A scheduler that picks the entries in proportion to their weights without a lock, so that
+   * concurrent picks do not contend. The weights are scaled so that the largest is {@link
+   * #MAX_SCALED_WEIGHT}. A shared sequence number visits the entries in turn, and a visit of an
+   * entry of scaled weight {@code w} only picks it for {@code w} out of every {@code
+   * MAX_SCALED_WEIGHT} turns, spread evenly. As in the gRFC A58 scheduler, weights below a tenth
+   * of the largest are raised to a tenth, so that a pick takes fewer than {@link #MAX_RATIO}
+   * visits on average and allocates nothing. Entries without a weight get the mean weight of the
+   * others, or all entries the same weight if none has one.
+   */
+  @VisibleForTesting
+  static final class StaticStrideScheduler {
+    private static final int MAX_SCALED_WEIGHT = 0xFFFF;
+    private static final int MAX_RATIO = 10;
+    private static final int MIN_SCALED_WEIGHT = (MAX_SCALED_WEIGHT + MAX_RATIO - 1) / MAX_RATIO;
+
+    private final int[] scaledWeights;
+    private final AtomicInteger sequence;
+
+    StaticStrideScheduler(double[] weights, Random random) {
+      int size = weights.length;
+      double sum = 0;
+      double max = 0;
+      int weighted = 0;
+      for (double weight : weights) {
+        if (weight > 0) {
+          sum += weight;
+          max = Math.max(max, weight);
+          weighted++;
+        }
+      }
+      double mean = weighted > 0 ? sum / weighted : 1;
+      double scale = MAX_SCALED_WEIGHT / (weighted > 0 ? max : mean);
+      scaledWeights = new int[size];
+      for (int i = 0; i < size; i++) {
+        double weight = weights[i] > 0 ? weights[i] : mean;
+        scaledWeights[i] = Math.max(MIN_SCALED_WEIGHT, (int) Math.round(weight * scale));
+      }
+      // Start at a random point, so that clients picking from the same backends do not all begin
+      // with the same one.
+      sequence = new AtomicInteger(random.nextInt());
+    }
+
+    /** Returns the index of the next entry. */
+    int pick() {
+      int size = scaledWeights.length;
+      while (true) {
+        long seq = sequence.getAndIncrement() & 0xFFFFFFFFL;
+        int index = (int) (seq % size);
+        long turn = seq / size;
+        int weight = scaledWeights[index];
+        // Offset the entries from each other, so that they are not all skipped on the same turns.
+        long offset = (long) MAX_SCALED_WEIGHT / 2 * index;
+        if ((weight * turn + offset) % MAX_SCALED_WEIGHT >= MAX_SCALED_WEIGHT - weight) {
+          return index;
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("scaledWeights", Arrays.toString(scaledWeights))
+          .toString();
+    }
+  }
+
+  static final class WeightedRoundRobinConfig {
+    static final WeightedRoundRobinConfig DEFAULT = new WeightedRoundRobinConfig(
+        false, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(10),
+        TimeUnit.MINUTES.toNanos(3), TimeUnit.SECONDS.toNanos(1));
+
+    final boolean enableOobLoadReport;
+    final long oobReportingPeriodNanos;
+    final long blackoutPeriodNanos;
+    final long weightExpirationPeriodNanos;
+    final long weightUpdatePeriodNanos;
+
+    WeightedRoundRobinConfig(boolean enableOobLoadReport, long oobReportingPeriodNanos,
+        long blackoutPeriodNanos, long weightExpirationPeriodNanos,
+        long weightUpdatePeriodNanos) {
+      this.enableOobLoadReport = enableOobLoadReport;
+      this.oobReportingPeriodNanos = oobReportingPeriodNanos;
+      this.blackoutPeriodNanos = blackoutPeriodNanos;
+      this.weightExpirationPeriodNanos = weightExpirationPeriodNanos;
+      this.weightUpdatePeriodNanos = weightUpdatePeriodNanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof WeightedRoundRobinConfig)) {
+        return false;
+      }
+      WeightedRoundRobinConfig that = (WeightedRoundRobinConfig) o;
+      return enableOobLoadReport == that.enableOobLoadReport
+          && oobReportingPeriodNanos == that.oobReportingPeriodNanos
+          && blackoutPeriodNanos == that.blackoutPeriodNanos
+          && weightExpirationPeriodNanos == that.weightExpirationPeriodNanos
+          && weightUpdatePeriodNanos == that.weightUpdatePeriodNanos;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(enableOobLoadReport, oobReportingPeriodNanos,
+          blackoutPeriodNanos, weightExpirationPeriodNanos, weightUpdatePeriodNanos);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("enableOobLoadReport", enableOobLoadReport)
+          .add("oobReportingPeriodNanos", oobReportingPeriodNanos)
+          .add("blackoutPeriodNanos", blackoutPeriodNanos)
+          .add("weightExpirationPeriodNanos", weightExpirationPeriodNanos)
+          .add("weightUpdatePeriodNanos", weightUpdatePeriodNanos)
+          .toString();
+    }
+  }
+
+  /**
+   * A lighter weight Reference than AtomicReference.
+   */
+  private static final class Ref<T> {
+    T value;
+
+    Ref(T value) {
+      this.value = value;
+    }
+  }
+}
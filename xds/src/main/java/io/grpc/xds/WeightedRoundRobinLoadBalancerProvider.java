@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Internal;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status;
+import io.grpc.internal.JsonUtil;
+import io.grpc.xds.WeightedRoundRobinLoadBalancer.WeightedRoundRobinConfig;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The provider for the "weighted_round_robin" balancing policy. All fields of its config are
+ * optional:
+ *
+ * <pre>
+ * {"weighted_round_robin": {
+ *   "enableOobLoadReport": false,
+ *   "oobReportingPeriod": "10s",
+ *   "blackoutPeriod": "10s",
+ *   "weightExpirationPeriod": "180s",
+ *   "weightUpdatePeriod": "1s"
+ * }}
+ * </pre>
+ */
+@Internal
+public final class WeightedRoundRobinLoadBalancerProvider extends LoadBalancerProvider {
+
+  // Recomputing the weights more often than this costs more than it helps.
+  @VisibleForTesting
+  static final long MIN_WEIGHT_UPDATE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Override
+  public LoadBalancer newLoadBalancer(Helper helper) {
+    return new WeightedRoundRobinLoadBalancer(helper);
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public int getPriority() {
+    return 5;
+  }
+
+  @Override
+  public String getPolicyName() {
+    return "weighted_round_robin";
+  }
+
+  @Override
+  public ConfigOrError parseLoadBalancingPolicyConfig(Map<String, ?> rawConfig) {
+    try {
+      WeightedRoundRobinConfig defaults = WeightedRoundRobinConfig.DEFAULT;
+      Boolean enableOobLoadReport = JsonUtil.getBoolean(rawConfig, "enableOobLoadReport");
+      Long oobReportingPeriod = JsonUtil.getStringAsDuration(rawConfig, "oobReportingPeriod");
+      Long blackoutPeriod = JsonUtil.getStringAsDuration(rawConfig, "blackoutPeriod");
+      Long weightExpirationPeriod =
+          JsonUtil.getStringAsDuration(rawConfig, "weightExpirationPeriod");
+      Long weightUpdatePeriod = JsonUtil.getStringAsDuration(rawConfig, "weightUpdatePeriod");
+      if ((oobReportingPeriod != null && oobReportingPeriod <= 0)
+          || (blackoutPeriod != null && blackoutPeriod < 0)
+          || (weightExpirationPeriod != null && weightExpirationPeriod <= 0)) {
+        return ConfigOrError.fromError(Status.INVALID_ARGUMENT.withDescription(
+            "Invalid weighted_round_robin periods: " + rawConfig));
+      }
+      return ConfigOrError.fromConfig(new WeightedRoundRobinConfig(
+          enableOobLoadReport != null ? enableOobLoadReport : defaults.enableOobLoadReport,
+          oobReportingPeriod != null ? oobReportingPeriod : defaults.oobReportingPeriodNanos,
+          blackoutPeriod != null ? blackoutPeriod : defaults.blackoutPeriodNanos,
+          weightExpirationPeriod != null
+              ? weightExpirationPeriod : defaults.weightExpirationPeriodNanos,
+          weightUpdatePeriod != null
+              ? Math.max(weightUpdatePeriod, MIN_WEIGHT_UPDATE_PERIOD_NANOS)
+              : defaults.weightUpdatePeriodNanos));
+    } catch (RuntimeException e) {
+      return ConfigOrError.fromError(
+          Status.INVALID_ARGUMENT.withCause(e).withDescription(
+              "Failed parsing configuration for " + getPolicyName()));
+    }
+  }
+}
@@ -23,6 +23,8 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Any;
 import io.grpc.Status;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
 import io.grpc.xds.AbstractXdsClient.ResourceType;
 import io.grpc.xds.Bootstrapper.ServerInfo;
 import io.grpc.xds.Endpoints.DropOverload;
@@ -119,6 +121,15 @@ abstract class XdsClient {
     // Only valid if lbPolicy is "ring_hash".
     abstract long maxRingSize();
 
+    // Only valid if lbPolicy is "ring_hash". 0 if loads are not bounded.
+    abstract int hashBalanceFactor();
+
+    // Only valid if lbPolicy is "maglev".
+    abstract int maglevTableSize();
+
+    // Only valid if lbPolicy is "least_request".
+    abstract int choiceCount();
+
     // Alternative resource name to be used in EDS requests.
     /// Only valid for EDS cluster.
     @Nullable
@@ -150,6 +161,11 @@ abstract class XdsClient {
     @Nullable
     abstract ImmutableList<String> prioritizedClusterNames();
 
+    // Outlier detection of the endpoints. Null if not enabled.
+    // Only valid for EDS cluster.
+    @Nullable
+    abstract OutlierDetection outlierDetection();
+
     static Builder forAggregate(String clusterName, List<String> prioritizedClusterNames) {
       checkNotNull(prioritizedClusterNames, "prioritizedClusterNames");
       return new AutoValue_XdsClient_CdsUpdate.Builder()
@@ -157,6 +173,9 @@ abstract class XdsClient {
           .clusterType(ClusterType.AGGREGATE)
           .minRingSize(0)
           .maxRingSize(0)
+          .hashBalanceFactor(0)
+          .maglevTableSize(0)
+          .choiceCount(0)
           .prioritizedClusterNames(ImmutableList.copyOf(prioritizedClusterNames));
     }
 
@@ -168,6 +187,9 @@ abstract class XdsClient {
           .clusterType(ClusterType.EDS)
           .minRingSize(0)
           .maxRingSize(0)
+          .hashBalanceFactor(0)
+          .maglevTableSize(0)
+          .choiceCount(0)
           .edsServiceName(edsServiceName)
           .lrsServerName(lrsServerName)
           .maxConcurrentRequests(maxConcurrentRequests)
@@ -182,6 +204,9 @@ abstract class XdsClient {
           .clusterType(ClusterType.LOGICAL_DNS)
           .minRingSize(0)
           .maxRingSize(0)
+          .hashBalanceFactor(0)
+          .maglevTableSize(0)
+          .choiceCount(0)
           .dnsHostName(dnsHostName)
           .lrsServerName(lrsServerName)
           .maxConcurrentRequests(maxConcurrentRequests)
@@ -193,7 +218,7 @@ abstract class XdsClient {
     }
 
     enum LbPolicy {
-      ROUND_ROBIN, RING_HASH
+      ROUND_ROBIN, RING_HASH, LEAST_REQUEST, MAGLEV
     }
 
     // FIXME(chengyuanzhang): delete this after UpstreamTlsContext's toString() is fixed.
@@ -205,12 +230,16 @@ abstract class XdsClient {
           .add("lbPolicy", lbPolicy())
           .add("minRingSize", minRingSize())
           .add("maxRingSize", maxRingSize())
+          .add("hashBalanceFactor", hashBalanceFactor())
+          .add("maglevTableSize", maglevTableSize())
+          .add("choiceCount", choiceCount())
           .add("edsServiceName", edsServiceName())
           .add("dnsHostName", dnsHostName())
           .add("lrsServerName", lrsServerName())
           .add("maxConcurrentRequests", maxConcurrentRequests())
           // Exclude upstreamTlsContext as its string representation is cumbersome.
           .add("prioritizedClusterNames", prioritizedClusterNames())
+          .add("outlierDetection", outlierDetection())
           .toString();
     }
 
@@ -222,7 +251,8 @@ abstract class XdsClient {
       // Private, use one of the static factory methods instead.
       protected abstract Builder clusterType(ClusterType clusterType);
 
-      // Private, use roundRobinLbPolicy() or ringHashLbPolicy(long, long).
+      // Private, use roundRobinLbPolicy(), ringHashLbPolicy(long, long),
+      // leastRequestLbPolicy(int) or maglevLbPolicy(int).
       protected abstract Builder lbPolicy(LbPolicy lbPolicy);
 
       Builder roundRobinLbPolicy() {
@@ -230,7 +260,12 @@ abstract class XdsClient {
       }
 
       Builder ringHashLbPolicy(long minRingSize, long maxRingSize) {
-        return this.lbPolicy(LbPolicy.RING_HASH).minRingSize(minRingSize).maxRingSize(maxRingSize);
+        return ringHashLbPolicy(minRingSize, maxRingSize, 0);
+      }
+
+      Builder ringHashLbPolicy(long minRingSize, long maxRingSize, int hashBalanceFactor) {
+        return this.lbPolicy(LbPolicy.RING_HASH).minRingSize(minRingSize).maxRingSize(maxRingSize)
+            .hashBalanceFactor(hashBalanceFactor);
       }
 
       // Private, use ringHashLbPolicy(long, long).
@@ -239,6 +274,23 @@ abstract class XdsClient {
       // Private, use ringHashLbPolicy(long, long).
       protected abstract Builder maxRingSize(long maxRingSize);
 
+      // Private, use ringHashLbPolicy(long, long, int).
+      protected abstract Builder hashBalanceFactor(int hashBalanceFactor);
+
+      Builder leastRequestLbPolicy(int choiceCount) {
+        return this.lbPolicy(LbPolicy.LEAST_REQUEST).choiceCount(choiceCount);
+      }
+
+      // Private, use leastRequestLbPolicy(int).
+      protected abstract Builder choiceCount(int choiceCount);
+
+      Builder maglevLbPolicy(int tableSize) {
+        return this.lbPolicy(LbPolicy.MAGLEV).maglevTableSize(tableSize);
+      }
+
+      // Private, use maglevLbPolicy(int).
+      protected abstract Builder maglevTableSize(int maglevTableSize);
+
       // Private, use CdsUpdate.forEds() instead.
       protected abstract Builder edsServiceName(String edsServiceName);
 
@@ -257,8 +309,40 @@ abstract class XdsClient {
       // Private, use CdsUpdate.forAggregate() instead.
       protected abstract Builder prioritizedClusterNames(List<String> prioritizedClusterNames);
 
+      abstract Builder outlierDetection(OutlierDetection outlierDetection);
+
       abstract CdsUpdate build();
     }
+
+    /**
+     * The parsed {@code Cluster.outlier_detection}, with the defaults filled in. An ejection
+     * algorithm is null if its enforcement percentage is 0.
+     */
+    @AutoValue
+    abstract static class OutlierDetection {
+      abstract long intervalNanos();
+
+      abstract long baseEjectionTimeNanos();
+
+      abstract long maxEjectionTimeNanos();
+
+      abstract int maxEjectionPercent();
+
+      @Nullable
+      abstract SuccessRateEjection successRateEjection();
+
+      @Nullable
+      abstract FailurePercentageEjection failurePercentageEjection();
+
+      static OutlierDetection create(long intervalNanos, long baseEjectionTimeNanos,
+          long maxEjectionTimeNanos, int maxEjectionPercent,
+          @Nullable SuccessRateEjection successRateEjection,
+          @Nullable FailurePercentageEjection failurePercentageEjection) {
+        return new AutoValue_XdsClient_CdsUpdate_OutlierDetection(intervalNanos,
+            baseEjectionTimeNanos, maxEjectionTimeNanos, maxEjectionPercent, successRateEjection,
+            failurePercentageEjection);
+      }
+    }
   }
 
   static final class EdsUpdate implements ResourceUpdate {
@@ -23,6 +23,7 @@ final class XdsLbPolicies {
   static final String PRIORITY_POLICY_NAME = "priority_experimental";
   static final String CLUSTER_IMPL_POLICY_NAME = "cluster_impl_experimental";
   static final String WEIGHTED_TARGET_POLICY_NAME = "weighted_target_experimental";
+  static final String OUTLIER_DETECTION_POLICY_NAME = "outlier_detection_experimental";
 
   private XdsLbPolicies() {}
 }
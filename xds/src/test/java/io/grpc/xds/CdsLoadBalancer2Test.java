@@ -42,12 +42,15 @@ import io.grpc.Status;
 import io.grpc.Status.Code;
 import io.grpc.SynchronizationContext;
 import io.grpc.internal.ObjectPool;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
 import io.grpc.xds.CdsLoadBalancerProvider.CdsConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig.DiscoveryMechanism;
 import io.grpc.xds.EnvoyServerProtoData.UpstreamTlsContext;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
 import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
 import io.grpc.xds.XdsClient.CdsUpdate;
+import io.grpc.xds.XdsClient.CdsUpdate.OutlierDetection;
 import io.grpc.xds.internal.sds.CommonTlsContextTestsUtil;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -55,6 +58,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.junit.After;
 import org.junit.Before;
@@ -118,6 +122,7 @@ public class CdsLoadBalancer2Test {
     lbRegistry.register(new FakeLoadBalancerProvider(CLUSTER_RESOLVER_POLICY_NAME));
     lbRegistry.register(new FakeLoadBalancerProvider("round_robin"));
     lbRegistry.register(new FakeLoadBalancerProvider("ring_hash"));
+    lbRegistry.register(new FakeLoadBalancerProvider("maglev"));
     loadBalancer = new CdsLoadBalancer2(helper, lbRegistry);
     loadBalancer.handleResolvedAddresses(
         ResolvedAddresses.newBuilder()
@@ -157,6 +162,47 @@ public class CdsLoadBalancer2Test {
     assertThat(childLbConfig.lbPolicy.getProvider().getPolicyName()).isEqualTo("round_robin");
   }
 
+  @Test
+  public void discoverTopLevelEdsCluster_leastRequest() {
+    lbRegistry.register(
+        LoadBalancerRegistry.getDefaultRegistry().getProvider("least_request"));
+    CdsUpdate update =
+        CdsUpdate.forEds(CLUSTER, EDS_SERVICE_NAME, LRS_SERVER_NAME, 100L, upstreamTlsContext)
+            .leastRequestLbPolicy(3).build();
+    xdsClient.deliverCdsUpdate(CLUSTER, update);
+    FakeLoadBalancer childBalancer = Iterables.getOnlyElement(childBalancers);
+    ClusterResolverConfig childLbConfig = (ClusterResolverConfig) childBalancer.config;
+    assertThat(childLbConfig.lbPolicy.getProvider().getPolicyName()).isEqualTo("least_request");
+    assertThat(childLbConfig.lbPolicy.getConfig().toString()).contains("choiceCount=3");
+  }
+
+  @Test
+  public void discoverTopLevelEdsCluster_maglev() {
+    CdsUpdate update =
+        CdsUpdate.forEds(CLUSTER, EDS_SERVICE_NAME, LRS_SERVER_NAME, 100L, upstreamTlsContext)
+            .maglevLbPolicy(251).build();
+    xdsClient.deliverCdsUpdate(CLUSTER, update);
+    FakeLoadBalancer childBalancer = Iterables.getOnlyElement(childBalancers);
+    ClusterResolverConfig childLbConfig = (ClusterResolverConfig) childBalancer.config;
+    assertThat(childLbConfig.lbPolicy.getProvider().getPolicyName()).isEqualTo("maglev");
+    assertThat(((MaglevConfig) childLbConfig.lbPolicy.getConfig()).tableSize).isEqualTo(251);
+  }
+
+  @Test
+  public void discoverTopLevelEdsCluster_outlierDetection() {
+    OutlierDetection outlierDetection = OutlierDetection.create(
+        TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30),
+        TimeUnit.SECONDS.toNanos(300), 10, null, new FailurePercentageEjection(85, 100, 5, 50));
+    CdsUpdate update =
+        CdsUpdate.forEds(CLUSTER, EDS_SERVICE_NAME, LRS_SERVER_NAME, 100L, upstreamTlsContext)
+            .roundRobinLbPolicy().outlierDetection(outlierDetection).build();
+    xdsClient.deliverCdsUpdate(CLUSTER, update);
+    FakeLoadBalancer childBalancer = Iterables.getOnlyElement(childBalancers);
+    ClusterResolverConfig childLbConfig = (ClusterResolverConfig) childBalancer.config;
+    DiscoveryMechanism instance = Iterables.getOnlyElement(childLbConfig.discoveryMechanisms);
+    assertThat(instance.outlierDetection).isEqualTo(outlierDetection);
+  }
+
   @Test
   public void discoverTopLevelLogicalDnsCluster() {
     CdsUpdate update =
@@ -238,7 +284,7 @@ public class CdsLoadBalancer2Test {
     // CLUSTER (aggr.) -> [cluster1 (aggr.), cluster2 (logical DNS)]
     CdsUpdate update =
         CdsUpdate.forAggregate(CLUSTER, Arrays.asList(cluster1, cluster2))
-            .ringHashLbPolicy(100L, 1000L).build();
+            .ringHashLbPolicy(100L, 1000L, 150).build();
     xdsClient.deliverCdsUpdate(CLUSTER, update);
     assertThat(xdsClient.watchers.keySet()).containsExactly(CLUSTER, cluster1, cluster2);
     assertThat(childBalancers).isEmpty();
@@ -283,6 +329,8 @@ public class CdsLoadBalancer2Test {
         .isEqualTo("ring_hash");  // dominated by top-level cluster's config
     assertThat(((RingHashConfig) childLbConfig.lbPolicy.getConfig()).minRingSize).isEqualTo(100L);
     assertThat(((RingHashConfig) childLbConfig.lbPolicy.getConfig()).maxRingSize).isEqualTo(1000L);
+    assertThat(((RingHashConfig) childLbConfig.lbPolicy.getConfig()).hashBalanceFactor)
+        .isEqualTo(150);
   }
 
   @Test
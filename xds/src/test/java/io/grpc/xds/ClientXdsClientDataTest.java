@@ -29,11 +29,16 @@ import com.google.protobuf.UInt64Value;
 import com.google.protobuf.util.Durations;
 import com.google.re2j.Pattern;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.CommonLbConfig;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.CommonLbConfig.ConsistentHashingLbConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.DiscoveryType;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.EdsClusterConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.LbPolicy;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.LeastRequestLbConfig;
+import io.envoyproxy.envoy.config.cluster.v3.Cluster.MaglevLbConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.RingHashLbConfig;
 import io.envoyproxy.envoy.config.cluster.v3.Cluster.RingHashLbConfig.HashFunction;
+import io.envoyproxy.envoy.config.cluster.v3.OutlierDetection;
 import io.envoyproxy.envoy.config.core.v3.Address;
 import io.envoyproxy.envoy.config.core.v3.AggregatedConfigSource;
 import io.envoyproxy.envoy.config.core.v3.CidrRange;
@@ -95,6 +100,8 @@ import io.envoyproxy.envoy.type.v3.FractionalPercent;
 import io.envoyproxy.envoy.type.v3.FractionalPercent.DenominatorType;
 import io.envoyproxy.envoy.type.v3.Int64Range;
 import io.grpc.Status.Code;
+import io.grpc.util.OutlierDetectionLoadBalancer.FailurePercentageEjection;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
 import io.grpc.xds.ClientXdsClient.ResourceInvalidException;
 import io.grpc.xds.ClientXdsClient.StructOrError;
 import io.grpc.xds.Endpoints.LbEndpoint;
@@ -1247,6 +1254,55 @@ public class ClientXdsClientDataTest {
         .isEqualTo(ClientXdsClient.DEFAULT_RING_HASH_LB_POLICY_MAX_RING_SIZE);
   }
 
+  @Test
+  public void parseCluster_leastRequestLbPolicy() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.LEAST_REQUEST)
+        .build();
+
+    CdsUpdate update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.lbPolicy()).isEqualTo(CdsUpdate.LbPolicy.LEAST_REQUEST);
+    assertThat(update.choiceCount())
+        .isEqualTo(ClientXdsClient.DEFAULT_LEAST_REQUEST_LB_POLICY_CHOICE_COUNT);
+
+    cluster = cluster.toBuilder()
+        .setLeastRequestLbConfig(
+            LeastRequestLbConfig.newBuilder().setChoiceCount(UInt32Value.of(3)))
+        .build();
+    update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.choiceCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void parseCluster_leastRequestLbPolicy_invalidChoiceCount()
+      throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.LEAST_REQUEST)
+        .setLeastRequestLbConfig(
+            LeastRequestLbConfig.newBuilder().setChoiceCount(UInt32Value.of(1)))
+        .build();
+
+    thrown.expect(ResourceInvalidException.class);
+    thrown.expectMessage("Cluster cluster-foo.googleapis.com: invalid least_request_lb_config");
+    ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+  }
+
   @Test
   public void parseCluster_transportSocketMatches_exception() throws ResourceInvalidException {
     Cluster cluster = Cluster.newBuilder()
@@ -1321,6 +1377,151 @@ public class ClientXdsClientDataTest {
     ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
   }
 
+  @Test
+  public void parseCluster_maglevLbPolicy() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.MAGLEV)
+        .build();
+
+    CdsUpdate update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.lbPolicy()).isEqualTo(CdsUpdate.LbPolicy.MAGLEV);
+    assertThat(update.maglevTableSize())
+        .isEqualTo(ClientXdsClient.DEFAULT_MAGLEV_LB_POLICY_TABLE_SIZE);
+
+    cluster = cluster.toBuilder()
+        .setMaglevLbConfig(MaglevLbConfig.newBuilder().setTableSize(UInt64Value.of(251)))
+        .build();
+    update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.maglevTableSize()).isEqualTo(251);
+  }
+
+  @Test
+  public void parseCluster_maglevLbPolicy_tableSizeNotPrime() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.MAGLEV)
+        .setMaglevLbConfig(MaglevLbConfig.newBuilder().setTableSize(UInt64Value.of(1000)))
+        .build();
+
+    thrown.expect(ResourceInvalidException.class);
+    thrown.expectMessage("Cluster cluster-foo.googleapis.com: invalid maglev_lb_config");
+    ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+  }
+
+  @Test
+  public void parseCluster_outlierDetection() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.ROUND_ROBIN)
+        .build();
+
+    CdsUpdate update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.outlierDetection()).isNull();
+
+    cluster = cluster.toBuilder()
+        .setOutlierDetection(OutlierDetection.getDefaultInstance())
+        .build();
+    update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.outlierDetection()).isEqualTo(CdsUpdate.OutlierDetection.create(
+        ClientXdsClient.DEFAULT_OUTLIER_DETECTION_INTERVAL_NANOS,
+        ClientXdsClient.DEFAULT_OUTLIER_DETECTION_BASE_EJECTION_TIME_NANOS,
+        ClientXdsClient.DEFAULT_OUTLIER_DETECTION_MAX_EJECTION_TIME_NANOS, 10,
+        new SuccessRateEjection(1900, 100, 5, 100), null));
+
+    cluster = cluster.toBuilder()
+        .setOutlierDetection(OutlierDetection.newBuilder()
+            .setInterval(Durations.fromSeconds(1))
+            .setMaxEjectionPercent(UInt32Value.of(50))
+            .setEnforcingSuccessRate(UInt32Value.of(0))
+            .setEnforcingFailurePercentage(UInt32Value.of(80))
+            .setFailurePercentageThreshold(UInt32Value.of(90)))
+        .build();
+    update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.outlierDetection()).isEqualTo(CdsUpdate.OutlierDetection.create(
+        TimeUnit.SECONDS.toNanos(1),
+        ClientXdsClient.DEFAULT_OUTLIER_DETECTION_BASE_EJECTION_TIME_NANOS,
+        ClientXdsClient.DEFAULT_OUTLIER_DETECTION_MAX_EJECTION_TIME_NANOS, 50,
+        null, new FailurePercentageEjection(90, 80, 5, 50)));
+  }
+
+  @Test
+  public void parseCluster_invalidOutlierDetection() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.ROUND_ROBIN)
+        .setOutlierDetection(
+            OutlierDetection.newBuilder().setMaxEjectionPercent(UInt32Value.of(101)))
+        .build();
+
+    thrown.expect(ResourceInvalidException.class);
+    thrown.expectMessage("Cluster cluster-foo.googleapis.com: invalid outlier_detection");
+    ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+  }
+
+  @Test
+  public void parseCluster_ringHashLbPolicy_hashBalanceFactor() throws ResourceInvalidException {
+    Cluster cluster = Cluster.newBuilder()
+        .setName("cluster-foo.googleapis.com")
+        .setType(DiscoveryType.EDS)
+        .setEdsClusterConfig(
+            EdsClusterConfig.newBuilder()
+                .setEdsConfig(
+                    ConfigSource.newBuilder()
+                        .setAds(AggregatedConfigSource.getDefaultInstance()))
+                .setServiceName("service-foo.googleapis.com"))
+        .setLbPolicy(LbPolicy.RING_HASH)
+        .build();
+
+    CdsUpdate update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.hashBalanceFactor()).isEqualTo(0);
+
+    cluster = cluster.toBuilder()
+        .setCommonLbConfig(
+            CommonLbConfig.newBuilder().setConsistentHashingLbConfig(
+                ConsistentHashingLbConfig.newBuilder().setHashBalanceFactor(UInt32Value.of(150))))
+        .build();
+    update = ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+    assertThat(update.hashBalanceFactor()).isEqualTo(150);
+
+    cluster = cluster.toBuilder()
+        .setCommonLbConfig(
+            CommonLbConfig.newBuilder().setConsistentHashingLbConfig(
+                ConsistentHashingLbConfig.newBuilder().setHashBalanceFactor(UInt32Value.of(50))))
+        .build();
+    thrown.expect(ResourceInvalidException.class);
+    thrown.expectMessage("Cluster cluster-foo.googleapis.com: invalid hash_balance_factor: 50");
+    ClientXdsClient.parseCluster(cluster, new HashSet<String>(), null);
+  }
+
   @Test
   public void parseServerSideListener_invalidTrafficDirection() throws ResourceInvalidException {
     Listener listener =
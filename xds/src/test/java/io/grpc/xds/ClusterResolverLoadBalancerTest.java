@@ -18,6 +18,7 @@ package io.grpc.xds;
 
 import static com.google.common.truth.Truth.assertThat;
 import static io.grpc.xds.XdsLbPolicies.CLUSTER_IMPL_POLICY_NAME;
+import static io.grpc.xds.XdsLbPolicies.OUTLIER_DETECTION_POLICY_NAME;
 import static io.grpc.xds.XdsLbPolicies.PRIORITY_POLICY_NAME;
 import static io.grpc.xds.XdsLbPolicies.WEIGHTED_TARGET_POLICY_NAME;
 import static org.mockito.ArgumentMatchers.any;
@@ -56,6 +57,8 @@ import io.grpc.internal.FakeClock.ScheduledTask;
 import io.grpc.internal.GrpcUtil;
 import io.grpc.internal.ObjectPool;
 import io.grpc.internal.ServiceConfigUtil.PolicySelection;
+import io.grpc.util.OutlierDetectionLoadBalancer.OutlierDetectionLoadBalancerConfig;
+import io.grpc.util.OutlierDetectionLoadBalancer.SuccessRateEjection;
 import io.grpc.xds.ClusterImplLoadBalancerProvider.ClusterImplConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig;
 import io.grpc.xds.ClusterResolverLoadBalancerProvider.ClusterResolverConfig.DiscoveryMechanism;
@@ -68,6 +71,7 @@ import io.grpc.xds.PriorityLoadBalancerProvider.PriorityLbConfig.PriorityChildCo
 import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
 import io.grpc.xds.WeightedTargetLoadBalancerProvider.WeightedPolicySelection;
 import io.grpc.xds.WeightedTargetLoadBalancerProvider.WeightedTargetConfig;
+import io.grpc.xds.XdsClient.CdsUpdate.OutlierDetection;
 import io.grpc.xds.internal.sds.CommonTlsContextTestsUtil;
 import java.net.SocketAddress;
 import java.net.URI;
@@ -171,6 +175,7 @@ public class ClusterResolverLoadBalancerTest {
     lbRegistry.register(new FakeLoadBalancerProvider(PRIORITY_POLICY_NAME));
     lbRegistry.register(new FakeLoadBalancerProvider(CLUSTER_IMPL_POLICY_NAME));
     lbRegistry.register(new FakeLoadBalancerProvider(WEIGHTED_TARGET_POLICY_NAME));
+    lbRegistry.register(new FakeLoadBalancerProvider(OUTLIER_DETECTION_POLICY_NAME));
     lbRegistry.register(
         new FakeLoadBalancerProvider("pick_first")); // needed by logical_dns
     NameResolver.Args args = NameResolver.Args.newBuilder()
@@ -264,6 +269,46 @@ public class ClusterResolverLoadBalancerTest {
     assertThat(ringHashConfig.maxRingSize).isEqualTo(100L);
   }
 
+  @Test
+  public void edsClusterWithOutlierDetection() {
+    OutlierDetection outlierDetection = OutlierDetection.create(
+        TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30),
+        TimeUnit.SECONDS.toNanos(300), 10, new SuccessRateEjection(1900, 100, 5, 100), null);
+    DiscoveryMechanism edsDiscoveryMechanism = DiscoveryMechanism.forEds(
+        CLUSTER1, EDS_SERVICE_NAME1, LRS_SERVER_NAME, 100L, tlsContext, outlierDetection);
+    ClusterResolverConfig config = new ClusterResolverConfig(
+        Collections.singletonList(edsDiscoveryMechanism), ringHash);
+    deliverLbConfig(config);
+
+    EquivalentAddressGroup endpoint = makeAddress("endpoint-addr-1");
+    LocalityLbEndpoints localityLbEndpoints =
+        LocalityLbEndpoints.create(
+            Collections.singletonList(
+                LbEndpoint.create(endpoint, 0 /* loadBalancingWeight */, true)),
+            10 /* localityWeight */, 1 /* priority */);
+    xdsClient.deliverClusterLoadAssignment(
+        EDS_SERVICE_NAME1, Collections.singletonMap(locality1, localityLbEndpoints));
+    FakeLoadBalancer childBalancer = Iterables.getOnlyElement(childBalancers);
+    PriorityLbConfig priorityLbConfig = (PriorityLbConfig) childBalancer.config;
+    PriorityChildConfig priorityChildConfig =
+        Iterables.getOnlyElement(priorityLbConfig.childConfigs.values());
+    assertThat(priorityChildConfig.policySelection.getProvider().getPolicyName())
+        .isEqualTo(OUTLIER_DETECTION_POLICY_NAME);
+    OutlierDetectionLoadBalancerConfig outlierDetectionConfig =
+        (OutlierDetectionLoadBalancerConfig) priorityChildConfig.policySelection.getConfig();
+    assertThat(outlierDetectionConfig.intervalNanos).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+    assertThat(outlierDetectionConfig.maxEjectionPercent).isEqualTo(10);
+    assertThat(outlierDetectionConfig.successRateEjection)
+        .isEqualTo(outlierDetection.successRateEjection());
+    assertThat(outlierDetectionConfig.failurePercentageEjection).isNull();
+    assertThat(outlierDetectionConfig.childPolicy.getProvider().getPolicyName())
+        .isEqualTo(CLUSTER_IMPL_POLICY_NAME);
+    assertClusterImplConfig(
+        (ClusterImplConfig) outlierDetectionConfig.childPolicy.getConfig(), CLUSTER1,
+        EDS_SERVICE_NAME1, LRS_SERVER_NAME, 100L, tlsContext,
+        Collections.<DropOverload>emptyList(), "ring_hash");
+  }
+
   @Test
   public void onlyEdsClusters_receivedEndpoints() {
     ClusterResolverConfig config = new ClusterResolverConfig(
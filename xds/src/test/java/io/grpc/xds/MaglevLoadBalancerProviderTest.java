@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import io.grpc.InternalServiceProviders;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status.Code;
+import io.grpc.internal.JsonParser;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MaglevLoadBalancerProvider}. */
+@RunWith(JUnit4.class)
+public class MaglevLoadBalancerProviderTest {
+  private final MaglevLoadBalancerProvider provider = new MaglevLoadBalancerProvider();
+
+  @Test
+  public void provided() {
+    for (LoadBalancerProvider current : InternalServiceProviders.getCandidatesViaServiceLoader(
+        LoadBalancerProvider.class, getClass().getClassLoader())) {
+      if (current instanceof MaglevLoadBalancerProvider) {
+        return;
+      }
+    }
+    fail("MaglevLoadBalancerProvider not registered");
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_defaults() throws IOException {
+    ConfigOrError configOrError = provider.parseLoadBalancingPolicyConfig(parseJsonObject("{}"));
+    assertThat(((MaglevConfig) configOrError.getConfig()).tableSize)
+        .isEqualTo(MaglevLoadBalancerProvider.DEFAULT_TABLE_SIZE);
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_valid() throws IOException {
+    ConfigOrError configOrError =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject("{\"tableSize\" : 251}"));
+    assertThat(((MaglevConfig) configOrError.getConfig()).tableSize).isEqualTo(251);
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_invalid() throws IOException {
+    ConfigOrError notPrime =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject("{\"tableSize\" : 1000}"));
+    assertThat(notPrime.getError().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+    assertThat(notPrime.getError().getDescription()).isEqualTo("Invalid 'tableSize'");
+
+    ConfigOrError tooLarge =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject("{\"tableSize\" : 5000101}"));
+    assertThat(tooLarge.getError().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, ?> parseJsonObject(String json) throws IOException {
+    return (Map<String, ?>) JsonParser.parse(json);
+  }
+}
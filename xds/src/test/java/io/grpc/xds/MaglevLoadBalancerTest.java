@@ -0,0 +1,291 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.CreateSubchannelArgs;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.LoadBalancer.SubchannelStateListener;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.PickSubchannelArgsImpl;
+import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.xds.MaglevLoadBalancer.MaglevConfig;
+import io.grpc.xds.MaglevLoadBalancer.Table;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/** Unit tests for {@link MaglevLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class MaglevLoadBalancerTest {
+  private static final String AUTHORITY = "foo.googleapis.com";
+  private static final MaglevConfig CONFIG = new MaglevConfig(1009);
+
+  private final SynchronizationContext syncContext = new SynchronizationContext(
+      new UncaughtExceptionHandler() {
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+          throw new AssertionError(e);
+        }
+      });
+  private final Helper helper = mock(Helper.class);
+  private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
+  private final Map<Subchannel, SubchannelStateListener> listeners = new HashMap<>();
+  private final List<Subchannel> connectionRequests = new ArrayList<>();
+  private final XxHash64 hashFunc = XxHash64.INSTANCE;
+  private MaglevLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    when(helper.getAuthority()).thenReturn(AUTHORITY);
+    when(helper.getSynchronizationContext()).thenReturn(syncContext);
+    when(helper.createSubchannel(any(CreateSubchannelArgs.class))).then(
+        new Answer<Subchannel>() {
+          @Override
+          public Subchannel answer(InvocationOnMock invocation) {
+            CreateSubchannelArgs args = (CreateSubchannelArgs) invocation.getArguments()[0];
+            final Subchannel subchannel = mock(Subchannel.class);
+            when(subchannel.getAllAddresses()).thenReturn(args.getAddresses());
+            when(subchannel.getAttributes()).thenReturn(args.getAttributes());
+            doAnswer(new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) {
+                listeners.put(
+                    subchannel, (SubchannelStateListener) invocation.getArguments()[0]);
+                return null;
+              }
+            }).when(subchannel).start(any(SubchannelStateListener.class));
+            doAnswer(new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) {
+                connectionRequests.add(subchannel);
+                return null;
+              }
+            }).when(subchannel).requestConnection();
+            subchannels.put(
+                new EquivalentAddressGroup(args.getAddresses().get(0).getAddresses()),
+                subchannel);
+            return subchannel;
+          }
+        });
+    loadBalancer = new MaglevLoadBalancer(helper);
+  }
+
+  @After
+  public void tearDown() {
+    loadBalancer.shutdown();
+    for (Subchannel subchannel : subchannels.values()) {
+      verify(subchannel).shutdown();
+    }
+  }
+
+  @Test
+  public void tableSharedInProportionToWeights() {
+    List<EquivalentAddressGroup> servers = createServerAddrs(3);
+    Table table = Table.build(servers, new long[] {1, 2, 3}, 65537);
+
+    int[] counts = new int[3];
+    for (int entry : table.entries) {
+      counts[entry]++;
+    }
+    assertThat(counts[0] + counts[1] + counts[2]).isEqualTo(65537);
+    assertThat((double) counts[0]).isWithin(10).of(65537 / 6.0);
+    assertThat((double) counts[1]).isWithin(10).of(65537 * 2 / 6.0);
+    assertThat((double) counts[2]).isWithin(10).of(65537 * 3 / 6.0);
+  }
+
+  @Test
+  public void removingHostMovesFewOtherSlots() {
+    List<EquivalentAddressGroup> servers = createServerAddrs(10);
+    long[] weights = new long[10];
+    Arrays.fill(weights, 1);
+    Table before = Table.build(servers, weights, 65537);
+    Table after = Table.build(servers.subList(1, 10), Arrays.copyOf(weights, 9), 65537);
+
+    int moved = 0;
+    for (int slot = 0; slot < 65537; slot++) {
+      EquivalentAddressGroup owner = before.addrKeys.get(before.entries[slot]);
+      if (!owner.equals(servers.get(0))
+          && !owner.equals(after.addrKeys.get(after.entries[slot]))) {
+        moved++;
+      }
+    }
+    // Only the removed host's tenth of the slots has to move, and little else does.
+    assertThat(moved).isLessThan(65537 / 50);
+  }
+
+  @Test
+  public void pickIndependentOfAddressOrder() {
+    List<EquivalentAddressGroup> servers = createServerAddrs(5);
+    resolve(servers);
+    deliverAllReady();
+    SubchannelPicker picker = currentPicker(READY);
+
+    List<EquivalentAddressGroup> reversed = new ArrayList<>(servers);
+    Collections.reverse(reversed);
+    resolve(reversed);
+    SubchannelPicker reversedPicker = currentPicker(READY);
+    for (int i = 0; i < 100; i++) {
+      assertThat(reversedPicker.pickSubchannel(pickArgs(hashFunc.hashInt(i))).getSubchannel())
+          .isSameInstanceAs(picker.pickSubchannel(pickArgs(hashFunc.hashInt(i))).getSubchannel());
+    }
+  }
+
+  @Test
+  public void idleHostConnectsAndQueuesPick() {
+    resolve(createServerAddrs(2));
+    verify(helper).updateBalancingState(eq(IDLE), any(SubchannelPicker.class));
+
+    PickResult result = currentPicker(IDLE).pickSubchannel(pickArgs(hashFunc.hashVoid()));
+    assertThat(result.getStatus().isOk()).isTrue();
+    assertThat(result.getSubchannel()).isNull();
+    assertThat(connectionRequests).hasSize(1);
+  }
+
+  @Test
+  public void failingHostSkippedForNextReadyHost() {
+    List<EquivalentAddressGroup> servers = createServerAddrs(3);
+    resolve(servers);
+    deliverAllReady();
+    SubchannelPicker picker = currentPicker(READY);
+    PickSubchannelArgs args = pickArgs(hashFunc.hashVoid());
+    Subchannel hashed = picker.pickSubchannel(args).getSubchannel();
+
+    deliverState(hashed, ConnectivityStateInfo.forTransientFailure(Status.UNAVAILABLE));
+    Subchannel picked = currentPicker(READY).pickSubchannel(args).getSubchannel();
+    assertThat(picked).isNotNull();
+    assertThat(picked).isNotSameInstanceAs(hashed);
+  }
+
+  @Test
+  public void allHostsFailing() {
+    resolve(createServerAddrs(2));
+    Status error = Status.UNAVAILABLE.withDescription("unreachable");
+    for (Subchannel subchannel : subchannels.values()) {
+      deliverState(subchannel, ConnectivityStateInfo.forTransientFailure(error));
+    }
+    PickResult result =
+        currentPicker(TRANSIENT_FAILURE).pickSubchannel(pickArgs(hashFunc.hashVoid()));
+    assertThat(result.getStatus()).isEqualTo(error);
+    verify(helper, atLeastOnce()).refreshNameResolution();
+  }
+
+  @Test
+  public void missingRpcHash() {
+    resolve(createServerAddrs(1));
+    PickResult result = currentPicker(IDLE).pickSubchannel(new PickSubchannelArgsImpl(
+        TestMethodDescriptors.voidMethod(), new Metadata(), CallOptions.DEFAULT));
+    assertThat(result.getStatus().getCode()).isEqualTo(Status.Code.INTERNAL);
+  }
+
+  private void resolve(List<EquivalentAddressGroup> servers) {
+    loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+        .setAddresses(servers)
+        .setLoadBalancingPolicyConfig(CONFIG)
+        .build());
+  }
+
+  private void deliverAllReady() {
+    for (Subchannel subchannel : subchannels.values()) {
+      deliverState(subchannel, ConnectivityStateInfo.forNonError(READY));
+    }
+  }
+
+  private void deliverState(Subchannel subchannel, ConnectivityStateInfo state) {
+    listeners.get(subchannel).onSubchannelState(state);
+  }
+
+  private SubchannelPicker currentPicker(ConnectivityState state) {
+    ArgumentCaptor<SubchannelPicker> pickerCaptor = ArgumentCaptor.forClass(null);
+    verify(helper, atLeastOnce()).updateBalancingState(eq(state), pickerCaptor.capture());
+    return pickerCaptor.getValue();
+  }
+
+  private static PickSubchannelArgs pickArgs(long hash) {
+    return new PickSubchannelArgsImpl(
+        TestMethodDescriptors.voidMethod(), new Metadata(),
+        CallOptions.DEFAULT.withOption(XdsNameResolver.RPC_HASH_KEY, hash));
+  }
+
+  private static List<EquivalentAddressGroup> createServerAddrs(int count) {
+    List<EquivalentAddressGroup> addrs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      addrs.add(new EquivalentAddressGroup(new FakeSocketAddress("server" + i), Attributes.EMPTY));
+    }
+    return addrs;
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof FakeSocketAddress
+          && name.equals(((FakeSocketAddress) other).name);
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}
@@ -81,6 +81,19 @@ public class RingHashLoadBalancerProviderTest {
     assertThat(config.maxRingSize).isEqualTo(100L);
   }
 
+  @Test
+  public void parseLoadBalancingConfig_hashBalanceFactor() throws IOException {
+    ConfigOrError configOrError =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject("{\"hashBalanceFactor\" : 150}"));
+    assertThat(((RingHashConfig) configOrError.getConfig()).hashBalanceFactor).isEqualTo(150);
+
+    configOrError =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject("{\"hashBalanceFactor\" : 99}"));
+    assertThat(configOrError.getError().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+    assertThat(configOrError.getError().getDescription())
+        .isEqualTo("Invalid 'hashBalanceFactor'");
+  }
+
   @Test
   public void parseLoadBalancingConfig_missingRingSize_useDefaults() throws IOException {
     String lbConfig = "{}";
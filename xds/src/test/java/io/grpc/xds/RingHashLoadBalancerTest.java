@@ -37,6 +37,7 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.Iterables;
 import io.grpc.Attributes;
 import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.LoadBalancer.CreateSubchannelArgs;
@@ -53,10 +54,12 @@ import io.grpc.Status.Code;
 import io.grpc.SynchronizationContext;
 import io.grpc.internal.PickSubchannelArgsImpl;
 import io.grpc.testing.TestMethodDescriptors;
+import io.grpc.xds.RingHashLoadBalancer.Ring;
 import io.grpc.xds.RingHashLoadBalancer.RingHashConfig;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -663,6 +666,75 @@ public class RingHashLoadBalancerTest {
     assertThat(ratio12).isWithin(0.03).of((double) 10 / 100);
   }
 
+  @Test
+  public void boundedLoad_overloadedHostPassedOverForNextHost() {
+    RingHashConfig config = new RingHashConfig(10, 100, 100);
+    List<EquivalentAddressGroup> servers = createWeightedServerAddrs(1, 1);
+    loadBalancer.handleResolvedAddresses(
+        ResolvedAddresses.newBuilder()
+            .setAddresses(servers).setLoadBalancingPolicyConfig(config).build());
+    for (Subchannel subchannel : subchannels.values()) {
+      deliverSubchannelState(subchannel, ConnectivityStateInfo.forNonError(READY));
+    }
+    verify(helper, times(2)).updateBalancingState(eq(READY), pickerCaptor.capture());
+    SubchannelPicker picker = pickerCaptor.getValue();
+    PickSubchannelArgs args = new PickSubchannelArgsImpl(
+        TestMethodDescriptors.voidMethod(), new Metadata(),
+        CallOptions.DEFAULT.withOption(XdsNameResolver.RPC_HASH_KEY, hashFunc.hashVoid()));
+
+    PickResult first = picker.pickSubchannel(args);
+    ClientStreamTracer firstStream = startStream(first);
+    // Each of the two hosts may take one of the two in-flight RPCs.
+    PickResult second = picker.pickSubchannel(args);
+    assertThat(second.getSubchannel()).isNotSameInstanceAs(first.getSubchannel());
+    startStream(second);
+    // Balanced, so the hashed host takes the third one.
+    assertThat(picker.pickSubchannel(args).getSubchannel())
+        .isSameInstanceAs(first.getSubchannel());
+
+    firstStream.streamClosed(Status.OK);
+    assertThat(picker.pickSubchannel(args).getSubchannel())
+        .isSameInstanceAs(first.getSubchannel());
+  }
+
+  @Test
+  public void unboundedLoad_noStreamTracer() {
+    RingHashConfig config = new RingHashConfig(10, 100);
+    List<EquivalentAddressGroup> servers = createWeightedServerAddrs(1, 1);
+    loadBalancer.handleResolvedAddresses(
+        ResolvedAddresses.newBuilder()
+            .setAddresses(servers).setLoadBalancingPolicyConfig(config).build());
+    for (Subchannel subchannel : subchannels.values()) {
+      deliverSubchannelState(subchannel, ConnectivityStateInfo.forNonError(READY));
+    }
+    verify(helper, times(2)).updateBalancingState(eq(READY), pickerCaptor.capture());
+    PickSubchannelArgs args = new PickSubchannelArgsImpl(
+        TestMethodDescriptors.voidMethod(), new Metadata(),
+        CallOptions.DEFAULT.withOption(XdsNameResolver.RPC_HASH_KEY, hashFunc.hashVoid()));
+    PickResult result = pickerCaptor.getValue().pickSubchannel(args);
+    assertThat(result.getSubchannel()).isNotNull();
+    assertThat(result.getStreamTracerFactory()).isNull();
+  }
+
+  @Test
+  public void ringRebuiltIncrementally_sameAsBuiltFromScratch() {
+    List<EquivalentAddressGroup> servers = createWeightedServerAddrs(1, 1, 1, 1);
+    Ring previous = Ring.build(null, servers.subList(0, 3), new int[] {300, 200, 100});
+    assertThat(previous.hashes).hasLength(600);
+
+    // server0 shrinks, server1 is removed, server2 grows and server3 is new.
+    List<EquivalentAddressGroup> addrKeys =
+        Arrays.asList(servers.get(3), servers.get(2), servers.get(0));
+    int[] counts = new int[] {150, 250, 50};
+    Ring incremental = Ring.build(previous, addrKeys, counts);
+    Ring scratch = Ring.build(null, addrKeys, counts);
+    assertThat(incremental.hashes).hasLength(450);
+    assertThat(incremental.hashes).isEqualTo(scratch.hashes);
+    assertThat(incremental.endpoints).isEqualTo(scratch.endpoints);
+
+    assertThat(Ring.build(incremental, addrKeys, counts)).isSameInstanceAs(incremental);
+  }
+
   @Test
   public void nameResolutionErrorWithNoActiveSubchannels() {
     Status error = Status.UNAVAILABLE.withDescription("not reachable");
@@ -698,6 +770,11 @@ public class RingHashLoadBalancerTest {
     verifyNoMoreInteractions(helper);
   }
 
+  private static ClientStreamTracer startStream(PickResult pick) {
+    return pick.getStreamTracerFactory().newClientStreamTracer(
+        ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+  }
+
   private void deliverSubchannelState(Subchannel subchannel, ConnectivityStateInfo state) {
     subchannelStateListeners.get(subchannel).onSubchannelState(state);
   }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import io.grpc.InternalServiceProviders;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver.ConfigOrError;
+import io.grpc.Status.Code;
+import io.grpc.internal.JsonParser;
+import io.grpc.xds.WeightedRoundRobinLoadBalancer.WeightedRoundRobinConfig;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link WeightedRoundRobinLoadBalancerProvider}. */
+@RunWith(JUnit4.class)
+public class WeightedRoundRobinLoadBalancerProviderTest {
+  private final WeightedRoundRobinLoadBalancerProvider provider =
+      new WeightedRoundRobinLoadBalancerProvider();
+
+  @Test
+  public void provided() {
+    for (LoadBalancerProvider current : InternalServiceProviders.getCandidatesViaServiceLoader(
+        LoadBalancerProvider.class, getClass().getClassLoader())) {
+      if (current instanceof WeightedRoundRobinLoadBalancerProvider) {
+        return;
+      }
+    }
+    fail("WeightedRoundRobinLoadBalancerProvider not registered");
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_defaults() throws IOException {
+    ConfigOrError configOrError = provider.parseLoadBalancingPolicyConfig(parseJsonObject("{}"));
+    assertThat(configOrError.getConfig()).isEqualTo(WeightedRoundRobinConfig.DEFAULT);
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_valid() throws IOException {
+    String lbConfig = "{\"enableOobLoadReport\" : true, \"oobReportingPeriod\" : \"5s\", "
+        + "\"blackoutPeriod\" : \"0s\", \"weightExpirationPeriod\" : \"60s\", "
+        + "\"weightUpdatePeriod\" : \"0.01s\"}";
+    ConfigOrError configOrError =
+        provider.parseLoadBalancingPolicyConfig(parseJsonObject(lbConfig));
+    assertThat(configOrError.getConfig()).isEqualTo(new WeightedRoundRobinConfig(
+        true, TimeUnit.SECONDS.toNanos(5), 0, TimeUnit.SECONDS.toNanos(60),
+        WeightedRoundRobinLoadBalancerProvider.MIN_WEIGHT_UPDATE_PERIOD_NANOS));
+  }
+
+  @Test
+  public void parseLoadBalancingConfig_invalid() throws IOException {
+    ConfigOrError configOrError = provider.parseLoadBalancingPolicyConfig(
+        parseJsonObject("{\"weightExpirationPeriod\" : \"0s\"}"));
+    assertThat(configOrError.getError().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+
+    configOrError = provider.parseLoadBalancingPolicyConfig(
+        parseJsonObject("{\"blackoutPeriod\" : 10}"));
+    assertThat(configOrError.getError().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, ?> parseJsonObject(String json) throws IOException {
+    return (Map<String, ?>) JsonParser.parse(json);
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2021 The gRPC Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.grpc.xds;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.github.udpa.udpa.data.orca.v1.OrcaLoadReport;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Helper;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.ResolvedAddresses;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.FakeClock;
+import io.grpc.util.FakeSubchannels;
+import io.grpc.xds.WeightedRoundRobinLoadBalancer.StaticStrideScheduler;
+import io.grpc.xds.WeightedRoundRobinLoadBalancer.WeightedRoundRobinConfig;
+import io.grpc.xds.WeightedRoundRobinLoadBalancer.WeightedRoundRobinPicker;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit tests for {@link WeightedRoundRobinLoadBalancer}. */
+@RunWith(JUnit4.class)
+public class WeightedRoundRobinLoadBalancerTest {
+  private static final String AUTHORITY = "foo.googleapis.com";
+
+  @Rule
+  public final MockitoRule mocks = MockitoJUnit.rule();
+  private final FakeClock fakeClock = new FakeClock();
+  private final SynchronizationContext syncContext = new SynchronizationContext(
+      new UncaughtExceptionHandler() {
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+          throw new AssertionError(e);
+        }
+      });
+  private final List<EquivalentAddressGroup> servers = Arrays.asList(
+      new EquivalentAddressGroup(new FakeSocketAddress("server0")),
+      new EquivalentAddressGroup(new FakeSocketAddress("server1")),
+      new EquivalentAddressGroup(new FakeSocketAddress("server2")));
+  @Mock
+  private Helper helper;
+  @Mock
+  private PickSubchannelArgs pickArgs;
+  @Captor
+  private ArgumentCaptor<SubchannelPicker> pickerCaptor;
+  private FakeSubchannels subchannels;
+  private WeightedRoundRobinLoadBalancer loadBalancer;
+
+  @Before
+  public void setUp() {
+    when(helper.getAuthority()).thenReturn(AUTHORITY);
+    when(helper.getSynchronizationContext()).thenReturn(syncContext);
+    when(helper.getScheduledExecutorService())
+        .thenReturn(fakeClock.getScheduledExecutorService());
+    subchannels = FakeSubchannels.install(helper);
+    loadBalancer = new WeightedRoundRobinLoadBalancer(
+        helper, fakeClock.getTimeProvider(), new Random(1));
+  }
+
+  @After
+  public void tearDown() {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        loadBalancer.shutdown();
+      }
+    });
+    for (Subchannel subchannel : subchannels.getAll()) {
+      verify(subchannel).shutdown();
+    }
+    assertThat(fakeClock.numPendingTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void equalWeightsWithoutReports() {
+    resolve(servers);
+    verify(helper).updateBalancingState(eq(CONNECTING), any(SubchannelPicker.class));
+    deliverAllReady();
+
+    assertThat(pickCounts(currentPicker(), 300)).isEqualTo(new int[] {100, 100, 100});
+  }
+
+  @Test
+  public void picksFollowReportedWeights() {
+    resolve(servers);
+    deliverAllReady();
+    WeightedRoundRobinPicker picker = currentPicker();
+    report(picker, 0, 0.5, 100);
+    report(picker, 1, 1.0, 100);
+    report(picker, 2, 1.0, 100);
+
+    // New reports count only after the blackout period.
+    fakeClock.forwardTime(5, TimeUnit.SECONDS);
+    assertThat(pickCounts(picker, 300)).isEqualTo(new int[] {100, 100, 100});
+
+    fakeClock.forwardTime(5, TimeUnit.SECONDS);
+    int[] counts = pickCounts(picker, 400);
+    assertApproximately(counts[0], 200);
+    assertApproximately(counts[1], 100);
+    assertApproximately(counts[2], 100);
+  }
+
+  @Test
+  public void backendWithoutWeightGetsMeanWeight() {
+    resolve(servers);
+    deliverAllReady();
+    WeightedRoundRobinPicker picker = currentPicker();
+    report(picker, 0, 0.25, 100);
+    report(picker, 1, 1.0, 100);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+
+    // Weights are 400, 100 and their mean 250.
+    int[] counts = pickCounts(picker, 750);
+    assertApproximately(counts[0], 400);
+    assertApproximately(counts[1], 100);
+    assertApproximately(counts[2], 250);
+  }
+
+  @Test
+  public void weightsExpire() {
+    resolve(servers);
+    deliverAllReady();
+    WeightedRoundRobinPicker picker = currentPicker();
+    report(picker, 0, 0.5, 100);
+    report(picker, 1, 1.0, 100);
+    fakeClock.forwardTime(10, TimeUnit.SECONDS);
+    assertApproximately(pickCounts(picker, 450)[0], 200);
+
+    fakeClock.forwardTime(3, TimeUnit.MINUTES);
+    assertThat(pickCounts(picker, 300)).isEqualTo(new int[] {100, 100, 100});
+
+    // A backend reporting again goes through the blackout period again.
+    report(picker, 0, 0.5, 100);
+    report(picker, 1, 1.0, 100);
+    fakeClock.forwardTime(1, TimeUnit.SECONDS);
+    assertThat(pickCounts(picker, 300)).isEqualTo(new int[] {100, 100, 100});
+  }
+
+  @Test
+  public void perRequestReportsByDefault() {
+    resolve(servers);
+    deliverAllReady();
+    PickResult pick = currentPicker().pickSubchannel(pickArgs);
+    assertThat(pick.getStreamTracerFactory()).isNotNull();
+  }
+
+  @Test
+  public void allSubchannelsFailing() {
+    resolve(servers);
+    Status error = Status.UNAVAILABLE.withDescription("connection refused");
+    for (Subchannel subchannel : subchannels.getAll()) {
+      deliverState(subchannel, ConnectivityStateInfo.forTransientFailure(error));
+    }
+    verify(helper).updateBalancingState(eq(TRANSIENT_FAILURE), pickerCaptor.capture());
+    assertThat(pickerCaptor.getValue().pickSubchannel(pickArgs).getStatus()).isEqualTo(error);
+    verify(helper, atLeastOnce()).refreshNameResolution();
+  }
+
+  @Test
+  public void staticStrideScheduler() {
+    StaticStrideScheduler scheduler =
+        new StaticStrideScheduler(new double[] {1, 2, 3, 0}, new Random(1));
+    int[] counts = new int[4];
+    for (int i = 0; i < 800; i++) {
+      counts[scheduler.pick()]++;
+    }
+    assertApproximately(counts[0], 100);
+    assertApproximately(counts[1], 200);
+    assertApproximately(counts[2], 300);
+    assertApproximately(counts[3], 200);
+  }
+
+  @Test
+  public void staticStrideSchedulerBoundsWeightRatio() {
+    double[] weights = new double[100];
+    Arrays.fill(weights, 1);
+    weights[0] = 1000;
+    StaticStrideScheduler scheduler = new StaticStrideScheduler(weights, new Random(1));
+    int[] counts = new int[weights.length];
+    int picks = 10000;
+    long visits = 0;
+    int last = scheduler.pick();
+    for (int i = 0; i < picks; i++) {
+      int index = scheduler.pick();
+      counts[index]++;
+      // The heaviest entry is picked on each visit, so picks are at most one round of visits apart.
+      visits += (index - last + weights.length - 1) % weights.length + 1;
+      last = index;
+    }
+    // The light entries are picked a tenth as often as the heaviest, not a thousandth.
+    assertThat((double) counts[0] / counts[1]).isWithin(0.5).of(10);
+    assertThat(visits).isLessThan(10L * picks);
+  }
+
+  private void resolve(final List<EquivalentAddressGroup> addresses) {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+            .setAddresses(addresses)
+            .setLoadBalancingPolicyConfig(WeightedRoundRobinConfig.DEFAULT)
+            .build());
+      }
+    });
+  }
+
+  private void deliverAllReady() {
+    for (Subchannel subchannel : subchannels.getAll()) {
+      deliverState(subchannel, ConnectivityStateInfo.forNonError(READY));
+    }
+  }
+
+  private void deliverState(final Subchannel subchannel, final ConnectivityStateInfo state) {
+    syncContext.execute(new Runnable() {
+      @Override
+      public void run() {
+        subchannels.deliverState(subchannel, state);
+      }
+    });
+  }
+
+  private WeightedRoundRobinPicker currentPicker() {
+    verify(helper, atLeastOnce()).updateBalancingState(eq(READY), pickerCaptor.capture());
+    return (WeightedRoundRobinPicker) pickerCaptor.getValue();
+  }
+
+  private void report(WeightedRoundRobinPicker picker, int server, double cpu, long rps) {
+    for (Subchannel subchannel : picker.getList()) {
+      if (subchannel.getAllAddresses().get(0).equals(servers.get(server))) {
+        subchannel.getAttributes().get(WeightedRoundRobinLoadBalancer.WEIGHT_STATE).onLoadReport(
+            OrcaLoadReport.newBuilder().setCpuUtilization(cpu).setRps(rps).build());
+      }
+    }
+  }
+
+  private int[] pickCounts(SubchannelPicker picker, int picks) {
+    int[] counts = new int[servers.size()];
+    for (int i = 0; i < picks; i++) {
+      Subchannel subchannel = picker.pickSubchannel(pickArgs).getSubchannel();
+      counts[servers.indexOf(subchannel.getAllAddresses().get(0))]++;
+    }
+    return counts;
+  }
+
+  private static void assertApproximately(int actual, int expected) {
+    assertThat(actual).isAtLeast(expected - 1);
+    assertThat(actual).isAtMost(expected + 1);
+  }
+
+  private static final class FakeSocketAddress extends SocketAddress {
+    private final String name;
+
+    FakeSocketAddress(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "FakeSocketAddress-" + name;
+    }
+  }
+}